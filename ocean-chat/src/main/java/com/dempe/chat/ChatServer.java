@@ -1,5 +1,7 @@
 package com.dempe.chat;
 
+import com.dempe.chat.connector.AdmissionHandler;
+import com.dempe.chat.connector.ConnectorDrainer;
 import com.dempe.chat.connector.ConnectorServer;
 import com.dempe.chat.connector.MQTTHandler;
 import org.slf4j.Logger;
@@ -26,7 +28,11 @@ public class ChatServer {
         LOGGER.info("app context init");
         MQTTHandler mqttHandler = ctx.getBean(MQTTHandler.class);
         LOGGER.info("app context init");
-        new ConnectorServer(mqttHandler).start();
+        AdmissionHandler admissionHandler = ctx.getBean(AdmissionHandler.class);
+        ConnectorServer connectorServer = new ConnectorServer(mqttHandler, admissionHandler);
+        // 收到SIGTERM时先分散断开已有连接，见ConnectorDrainer
+        connectorServer.setDrainer(ctx.getBean(ConnectorDrainer.class));
+        connectorServer.start();
     }
 
 }
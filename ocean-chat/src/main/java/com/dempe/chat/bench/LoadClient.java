@@ -0,0 +1,244 @@
+package com.dempe.chat.bench;
+
+import com.dempe.chat.common.mqtt.messages.AbstractMessage;
+import com.dempe.chat.common.mqtt.messages.ConnAckMessage;
+import com.dempe.chat.common.mqtt.messages.ConnectMessage;
+import com.dempe.chat.common.mqtt.messages.PingReqMessage;
+import com.dempe.chat.common.mqtt.messages.PubAckMessage;
+import com.dempe.chat.common.mqtt.messages.PublishMessage;
+import com.dempe.chat.common.mqtt.messages.SubscribeMessage;
+import com.dempe.ocean.common.R;
+import com.dempe.ocean.common.TopicType;
+import com.dempe.ocean.utils.BatchPayload;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压测中的单个mqtt客户端，所有回调都在该连接所属的event loop上执行
+ * 消息体前8字节为发送时的System.nanoTime()，接收方据此计算端到端延迟
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 11:20
+ * To change this template use File | Settings | File Templates.
+ */
+class LoadClient extends ChannelHandlerAdapter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadClient.class);
+
+    private static final String BATCH_PREFIX = TopicType.BATCH.getType() + R.SPLIT;
+
+    // 未确认的QoS1 PUBLISH按packet id取模记录，同时在途超过这个数时延迟统计会丢样本
+    private static final int PUBLISH_SLOTS_MASK = 4095;
+
+    private final LoadGenerator generator;
+    private final long uid;
+    private Channel channel;
+    private boolean connected;
+    private long pingSentNanos;
+    // 按packet id记录QoS1 PUBLISH的发送时间，收到PUBACK时统计确认延迟；第一次发送时才分配，只连接不发消息的客户端不占内存
+    private long[] publishSentNanos;
+    private int nextMessageId = 1;
+    private ScheduledFuture<?> trafficFuture;
+
+    LoadClient(LoadGenerator generator, long uid) {
+        this.generator = generator;
+        this.uid = uid;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        channel = ctx.channel();
+        ConnectMessage connect = new ConnectMessage();
+        connect.setProtocolVersion((byte) 3);
+        connect.setClientID(String.valueOf(uid));
+        connect.setCleanSession(true);
+        connect.setKeepAlive(generator.keepAlive);
+        connect.setUserFlag(true);
+        connect.setUsername(String.valueOf(uid));
+        connect.setPasswordFlag(true);
+        connect.setPassword("pwd".getBytes("UTF-8"));
+        ctx.writeAndFlush(connect);
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object message) throws Exception {
+        AbstractMessage msg = (AbstractMessage) message;
+        switch (msg.getMessageType()) {
+            case AbstractMessage.CONNACK:
+                onConnAck((ConnAckMessage) msg);
+                break;
+            case AbstractMessage.PUBLISH:
+                onPublish((PublishMessage) msg);
+                break;
+            case AbstractMessage.PUBACK:
+                onPubAck((PubAckMessage) msg);
+                break;
+            case AbstractMessage.PINGRESP:
+                if (pingSentNanos != 0) {
+                    generator.pingLatency.record((System.nanoTime() - pingSentNanos) / 1000);
+                    generator.pingReceived.incrementAndGet();
+                    pingSentNanos = 0;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (trafficFuture != null) {
+            trafficFuture.cancel(false);
+        }
+        if (connected) {
+            connected = false;
+            generator.connected.decrementAndGet();
+            generator.closed.incrementAndGet();
+        }
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        LOGGER.warn("load client {} error: {}", uid, cause.getMessage());
+        ctx.close();
+    }
+
+    private void onConnAck(ConnAckMessage msg) {
+        if (msg.getReturnCode() != ConnAckMessage.CONNECTION_ACCEPTED) {
+            LOGGER.warn("load client {} rejected with code {}", uid, msg.getReturnCode());
+            generator.connectFailed.incrementAndGet();
+            channel.close();
+            return;
+        }
+        connected = true;
+        generator.connected.incrementAndGet();
+        if (generator.liveEnabled()) {
+            SubscribeMessage subscribe = new SubscribeMessage();
+            subscribe.setMessageID(nextMessageId());
+            subscribe.addSubscription(new SubscribeMessage.Couple(AbstractMessage.QOSType.MOST_ONE.byteValue(), generator.liveRoom));
+            channel.writeAndFlush(subscribe);
+        }
+        long interval = generator.sendIntervalMicros();
+        if (interval > 0) {
+            long initialDelay = ThreadLocalRandom.current().nextLong(interval);
+            trafficFuture = channel.eventLoop().scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    sendTraffic();
+                }
+            }, initialDelay, interval, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private void onPublish(PublishMessage msg) {
+        ByteBuffer payload = msg.getPayload();
+        String topic = msg.getTopicName();
+        if (payload != null && topic.startsWith(BATCH_PREFIX)) {
+            // 服务端合并下发的多条消息
+            String originTopic = topic.substring(BATCH_PREFIX.length());
+            for (ByteBuffer part : BatchPayload.decode(payload)) {
+                record(originTopic, part);
+            }
+        } else if (payload != null) {
+            record(topic, payload);
+        }
+        if (msg.getQos() == AbstractMessage.QOSType.LEAST_ONE && msg.getMessageID() != null) {
+            PubAckMessage ack = new PubAckMessage();
+            ack.setMessageID(msg.getMessageID());
+            channel.writeAndFlush(ack);
+        }
+    }
+
+    private void onPubAck(PubAckMessage msg) {
+        Integer messageID = msg.getMessageID();
+        if (messageID == null || publishSentNanos == null) {
+            return;
+        }
+        int slot = messageID & PUBLISH_SLOTS_MASK;
+        if (publishSentNanos[slot] == 0) {
+            return;
+        }
+        generator.ackLatency.record((System.nanoTime() - publishSentNanos[slot]) / 1000);
+        publishSentNanos[slot] = 0;
+    }
+
+    private void record(String topic, ByteBuffer payload) {
+        if (payload.remaining() < 8) {
+            return;
+        }
+        long latencyMicros = (System.nanoTime() - payload.getLong(payload.position())) / 1000;
+        if (topic.startsWith(TopicType.FRIEND.getType())) {
+            generator.friendLatency.record(latencyMicros);
+            generator.friendReceived.incrementAndGet();
+        } else if (topic.startsWith(TopicType.GROUP.getType())) {
+            generator.groupLatency.record(latencyMicros);
+            generator.groupReceived.incrementAndGet();
+        } else if (topic.startsWith(TopicType.LIVE.getType())) {
+            generator.liveLatency.record(latencyMicros);
+            generator.liveReceived.incrementAndGet();
+        }
+    }
+
+    private void sendTraffic() {
+        if (!connected || !channel.isActive()) {
+            return;
+        }
+        if (!channel.isWritable()) {
+            // 服务端处理不过来时不继续堆积，这一轮跳过
+            return;
+        }
+        switch (generator.nextTrafficKind()) {
+            case 0:
+                publish(TopicType.FRIEND.getType() + R.SPLIT + generator.randomPeer(uid));
+                generator.friendSent.incrementAndGet();
+                break;
+            case 1:
+                publish(TopicType.GROUP.getType() + R.SPLIT + generator.groupOf(uid));
+                generator.groupSent.incrementAndGet();
+                break;
+            case 3:
+                publish(generator.liveRoom);
+                generator.liveSent.incrementAndGet();
+                break;
+            default:
+                if (pingSentNanos == 0) {
+                    pingSentNanos = System.nanoTime();
+                    channel.writeAndFlush(new PingReqMessage());
+                    generator.pingSent.incrementAndGet();
+                }
+                break;
+        }
+    }
+
+    private void publish(String topic) {
+        ByteBuffer payload = ByteBuffer.allocate(generator.payloadSize);
+        payload.putLong(0, System.nanoTime());
+        PublishMessage msg = new PublishMessage();
+        msg.setTopicName(topic);
+        msg.setQos(AbstractMessage.QOSType.LEAST_ONE);
+        int messageID = nextMessageId();
+        msg.setMessageID(messageID);
+        msg.setPayload(payload);
+        if (publishSentNanos == null) {
+            publishSentNanos = new long[PUBLISH_SLOTS_MASK + 1];
+        }
+        publishSentNanos[messageID & PUBLISH_SLOTS_MASK] = System.nanoTime();
+        channel.writeAndFlush(msg);
+    }
+
+    private int nextMessageId() {
+        int id = nextMessageId;
+        nextMessageId = nextMessageId == 0xFFFF ? 1 : nextMessageId + 1;
+        return id;
+    }
+}
@@ -0,0 +1,267 @@
+package com.dempe.chat.bench;
+
+import com.dempe.chat.common.mqtt.codec.MQTTDecoder;
+import com.dempe.chat.common.mqtt.codec.MQTTEncoder;
+import com.dempe.ocean.utils.LatencyHistogram;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * connector端到端压测工具，在一个进程里用netty模拟大量mqtt客户端
+ * 先用LoadTestServer启动connector(logic层为内存实现)，再启动本类，参数均通过系统属性配置：
+ * <pre>
+ * bench.host/bench.port      connector地址，默认localhost:9999
+ * bench.clients              连接数，默认1000
+ * bench.localIps             本地绑定ip列表(逗号分隔)，单个源ip只有约6万个端口，10万以上连接需要多个，例如127.0.0.1,127.0.0.2
+ * bench.connectRate          每秒新建连接数，默认5000
+ * bench.msgRate              所有客户端合计每秒发送的消息数，默认1000
+ * bench.mix                  好友:群组:ping[:直播] 的流量比例，默认 8:1:1，直播权重大于0时所有客户端进入同一个直播频道
+ * bench.liveRoom             直播频道topic，默认l|bench
+ * bench.payloadSize          消息体大小(字节)，至少8字节用来携带发送时间，默认64
+ * bench.groupSize            每个群的人数，需与server端一致，默认50
+ * bench.durationSec          压测时长，默认60
+ * bench.reportSec            统计输出间隔，默认5
+ * </pre>
+ * 延迟为同一进程内发送方到接收方的端到端耗时(微秒)，吞吐为每秒收到的消息数
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 11:05
+ * To change this template use File | Settings | File Templates.
+ */
+public class LoadGenerator {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+    static final long DEFAULT_UID_BASE = 100000L;
+    static final int DEFAULT_GROUP_SIZE = 50;
+
+    final String host = System.getProperty("bench.host", "localhost");
+    final int port = Integer.getInteger("bench.port", 9999);
+    final int clients = Integer.getInteger("bench.clients", 1000);
+    final int connectRate = Integer.getInteger("bench.connectRate", 5000);
+    final int msgRate = Integer.getInteger("bench.msgRate", 1000);
+    final int payloadSize = Math.max(8, Integer.getInteger("bench.payloadSize", 64));
+    final int groupSize = Integer.getInteger("bench.groupSize", DEFAULT_GROUP_SIZE);
+    final long uidBase = Long.getLong("bench.uidBase", DEFAULT_UID_BASE);
+    final int durationSec = Integer.getInteger("bench.durationSec", 60);
+    final int reportSec = Integer.getInteger("bench.reportSec", 5);
+    final int keepAlive = Integer.getInteger("bench.keepAlive", 60);
+    private final List<InetSocketAddress> localAddresses = Lists.newArrayList();
+    private final int friendWeight;
+    private final int groupWeight;
+    private final int pingWeight;
+    private final int liveWeight;
+    final String liveRoom = System.getProperty("bench.liveRoom", "l|bench");
+
+    final AtomicInteger connected = new AtomicInteger();
+    final AtomicInteger connectFailed = new AtomicInteger();
+    final AtomicInteger closed = new AtomicInteger();
+
+    final AtomicLong friendSent = new AtomicLong();
+    final AtomicLong groupSent = new AtomicLong();
+    final AtomicLong pingSent = new AtomicLong();
+    final AtomicLong liveSent = new AtomicLong();
+    final AtomicLong friendReceived = new AtomicLong();
+    final AtomicLong groupReceived = new AtomicLong();
+    final AtomicLong pingReceived = new AtomicLong();
+    final AtomicLong liveReceived = new AtomicLong();
+
+    final LatencyHistogram friendLatency = new LatencyHistogram();
+    final LatencyHistogram groupLatency = new LatencyHistogram();
+    final LatencyHistogram pingLatency = new LatencyHistogram();
+    final LatencyHistogram liveLatency = new LatencyHistogram();
+    final LatencyHistogram ackLatency = new LatencyHistogram();
+
+    private final LatencyHistogram friendTotal = new LatencyHistogram();
+    private final LatencyHistogram groupTotal = new LatencyHistogram();
+    private final LatencyHistogram pingTotal = new LatencyHistogram();
+    private final LatencyHistogram liveTotal = new LatencyHistogram();
+    private final LatencyHistogram ackTotal = new LatencyHistogram();
+
+    public LoadGenerator() {
+        String ips = System.getProperty("bench.localIps", "");
+        for (String ip : Splitter.on(',').trimResults().omitEmptyStrings().split(ips)) {
+            localAddresses.add(new InetSocketAddress(ip, 0));
+        }
+        List<String> mix = Splitter.on(':').trimResults().splitToList(System.getProperty("bench.mix", "8:1:1"));
+        if (mix.size() != 3 && mix.size() != 4) {
+            throw new IllegalArgumentException("bench.mix should be friend:group:ping[:live], found " + mix);
+        }
+        friendWeight = Integer.parseInt(mix.get(0));
+        groupWeight = Integer.parseInt(mix.get(1));
+        pingWeight = Integer.parseInt(mix.get(2));
+        liveWeight = mix.size() > 3 ? Integer.parseInt(mix.get(3)) : 0;
+        if (friendWeight + groupWeight + pingWeight + liveWeight <= 0) {
+            throw new IllegalArgumentException("bench.mix should contain at least one positive weight");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator().run();
+    }
+
+    public void run() throws InterruptedException {
+        LOGGER.info("load test start, target {}:{}, clients {}, msgRate {}/s, mix {}:{}:{}:{}, payload {} bytes",
+                host, port, clients, msgRate, friendWeight, groupWeight, pingWeight, liveWeight, payloadSize);
+        EventLoopGroup group = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors(),
+                new DefaultThreadFactory("load-client"));
+        try {
+            Bootstrap b = new Bootstrap();
+            b.group(group)
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .option(ChannelOption.SO_REUSEADDR, true)
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 30000)
+                    .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+
+            long start = System.currentTimeMillis();
+            connectAll(b);
+            LOGGER.info("all {} connect requests issued in {} ms", clients, System.currentTimeMillis() - start);
+
+            long deadline = start + TimeUnit.SECONDS.toMillis(durationSec);
+            long lastReport = start;
+            long lastReceived = 0;
+            while (System.currentTimeMillis() < deadline) {
+                TimeUnit.SECONDS.sleep(reportSec);
+                long now = System.currentTimeMillis();
+                long received = friendReceived.get() + groupReceived.get() + pingReceived.get() + liveReceived.get();
+                report(now - start, (received - lastReceived) * 1000D / Math.max(1, now - lastReport));
+                lastReport = now;
+                lastReceived = received;
+            }
+            reportTotal(System.currentTimeMillis() - start);
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    private void connectAll(Bootstrap b) throws InterruptedException {
+        final InetSocketAddress remote = new InetSocketAddress(host, port);
+        final AtomicLong nextUid = new AtomicLong(uidBase);
+        b.handler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel ch) throws Exception {
+                ChannelPipeline p = ch.pipeline();
+                p.addLast("mqttDecoder", new MQTTDecoder());
+                p.addLast("mqttEncoder", new MQTTEncoder());
+                p.addLast("loadClient", new LoadClient(LoadGenerator.this, nextUid.getAndIncrement()));
+            }
+        });
+        int batch = Math.max(1, connectRate / 10);
+        for (int i = 0; i < clients; i++) {
+            ChannelFuture f = localAddresses.isEmpty() ? b.connect(remote)
+                    : b.connect(remote, localAddresses.get(i % localAddresses.size()));
+            f.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    if (!future.isSuccess()) {
+                        connectFailed.incrementAndGet();
+                    }
+                }
+            });
+            if ((i + 1) % batch == 0) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+        }
+    }
+
+    /**
+     * 每个客户端的发送间隔(微秒)，让所有客户端合计达到bench.msgRate
+     */
+    long sendIntervalMicros() {
+        if (msgRate <= 0) {
+            return 0;
+        }
+        return Math.max(1L, clients * 1000000L / msgRate);
+    }
+
+    /**
+     * 按bench.mix的权重随机选择一种流量，0好友 1群组 2ping 3直播
+     */
+    int nextTrafficKind() {
+        int r = ThreadLocalRandom.current().nextInt(friendWeight + groupWeight + pingWeight + liveWeight);
+        if (r < friendWeight) {
+            return 0;
+        }
+        if (r < friendWeight + groupWeight) {
+            return 1;
+        }
+        return r < friendWeight + groupWeight + pingWeight ? 2 : 3;
+    }
+
+    boolean liveEnabled() {
+        return liveWeight > 0;
+    }
+
+    long randomPeer(long self) {
+        if (clients <= 1) {
+            return self;
+        }
+        long peer = uidBase + ThreadLocalRandom.current().nextInt(clients - 1);
+        return peer >= self ? peer + 1 : peer;
+    }
+
+    long groupOf(long uid) {
+        return (uid - uidBase) / groupSize;
+    }
+
+    private void report(long elapsedMs, double throughput) {
+        LatencyHistogram friend = friendLatency.getAndReset();
+        LatencyHistogram group = groupLatency.getAndReset();
+        LatencyHistogram ping = pingLatency.getAndReset();
+        LatencyHistogram live = liveLatency.getAndReset();
+        LatencyHistogram ack = ackLatency.getAndReset();
+        friendTotal.add(friend);
+        groupTotal.add(group);
+        pingTotal.add(ping);
+        liveTotal.add(live);
+        ackTotal.add(ack);
+        LOGGER.info("[{}s] connected {}, failed {}, closed {}, sent f/g/p/l {}/{}/{}/{}, recv f/g/p/l {}/{}/{}/{}, throughput {} msg/s",
+                elapsedMs / 1000, connected.get(), connectFailed.get(), closed.get(),
+                friendSent.get(), groupSent.get(), pingSent.get(), liveSent.get(),
+                friendReceived.get(), groupReceived.get(), pingReceived.get(), liveReceived.get(), String.format("%.1f", throughput));
+        LOGGER.info("  friend latency(us) {}", friend.summary());
+        LOGGER.info("  group  latency(us) {}", group.summary());
+        LOGGER.info("  ping   latency(us) {}", ping.summary());
+        LOGGER.info("  live   latency(us) {}", live.summary());
+        LOGGER.info("  puback latency(us) {}", ack.summary());
+    }
+
+    private void reportTotal(long elapsedMs) {
+        friendTotal.add(friendLatency.getAndReset());
+        groupTotal.add(groupLatency.getAndReset());
+        pingTotal.add(pingLatency.getAndReset());
+        liveTotal.add(liveLatency.getAndReset());
+        ackTotal.add(ackLatency.getAndReset());
+        long received = friendReceived.get() + groupReceived.get() + pingReceived.get() + liveReceived.get();
+        LOGGER.info("==== load test finished in {} s, connected {}, failed {}, avg throughput {} msg/s ====",
+                elapsedMs / 1000, connected.get(), connectFailed.get(),
+                String.format("%.1f", received * 1000D / Math.max(1, elapsedMs)));
+        LOGGER.info("  friend latency(us) {}", friendTotal.summary());
+        LOGGER.info("  group  latency(us) {}", groupTotal.summary());
+        LOGGER.info("  ping   latency(us) {}", pingTotal.summary());
+        LOGGER.info("  live   latency(us) {}", liveTotal.summary());
+        LOGGER.info("  puback latency(us) {}", ackTotal.summary());
+    }
+}
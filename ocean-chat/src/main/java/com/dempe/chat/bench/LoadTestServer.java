@@ -0,0 +1,47 @@
+package com.dempe.chat.bench;
+
+import com.dempe.chat.connector.AdmissionHandler;
+import com.dempe.chat.connector.ConnectorDrainer;
+import com.dempe.chat.connector.ConnectorServer;
+import com.dempe.chat.connector.MQTTHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.io.IOException;
+
+/**
+ * 压测用的connector启动类
+ * 与ChatServer相同，只是logic层换成bench_stub.xml里的内存实现，单机即可跑起来，不需要mongo和logic server
+ * -Dbench.heapReportSec=N 每N秒输出一次每个连接的堆占用
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 10:52
+ * To change this template use File | Settings | File Templates.
+ */
+public class LoadTestServer {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(LoadTestServer.class);
+
+    public static void main(String[] args) throws IOException {
+        // 压测客户端都来自同一个ip，默认不做单ip限流
+        if (System.getProperty("ocean.admission.ipRate") == null) {
+            System.setProperty("ocean.admission.ipRate", "0");
+        }
+        ApplicationContext ctx = new ClassPathXmlApplicationContext(
+                new String[]{"classpath:application-bean.xml", "classpath:bench_stub.xml"});
+        LOGGER.info("load test context init with stub logic services");
+        MQTTHandler mqttHandler = ctx.getBean(MQTTHandler.class);
+        AdmissionHandler admissionHandler = ctx.getBean(AdmissionHandler.class);
+        // 每个连接的堆占用，见SessionHeapReporter
+        long heapReportSec = Long.getLong("bench.heapReportSec", 0);
+        if (heapReportSec > 0) {
+            new SessionHeapReporter(heapReportSec).start();
+        }
+        ConnectorServer connectorServer = new ConnectorServer(mqttHandler, admissionHandler);
+        // 收到SIGTERM时先分散断开已有连接，见ConnectorDrainer
+        connectorServer.setDrainer(ctx.getBean(ConnectorDrainer.class));
+        connectorServer.start();
+    }
+}
@@ -0,0 +1,61 @@
+package com.dempe.chat.bench;
+
+import com.dempe.chat.connector.SessionSlab;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接的堆内存占用测量，LoadTestServer在-Dbench.heapReportSec>0时启动
+ * 启动server前GC后记下基线，之后每隔一段时间GC一次，输出(当前堆占用-基线)/连接数；
+ * 配合LoadGenerator的-Dbench.msgRate=0建立大量空闲连接，得到每个空闲连接的堆开销
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 04:00
+ * To change this template use File | Settings | File Templates.
+ */
+public class SessionHeapReporter implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionHeapReporter.class);
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final long intervalSec;
+    private final long baseline;
+
+    public SessionHeapReporter(long intervalSec) {
+        this.intervalSec = intervalSec;
+        this.baseline = usedAfterGc();
+        LOGGER.info("heap baseline {} KB", baseline / 1024);
+    }
+
+    public void start() {
+        Thread thread = new Thread(this, "heap-reporter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                TimeUnit.SECONDS.sleep(intervalSec);
+            } catch (InterruptedException e) {
+                return;
+            }
+            int sessions = SessionSlab.getInstance().size();
+            long delta = usedAfterGc() - baseline;
+            LOGGER.info("sessions {}, heap delta {} KB, {} bytes/session", sessions, delta / 1024,
+                    sessions == 0 ? 0 : delta / sessions);
+        }
+    }
+
+    private long usedAfterGc() {
+        // 两次GC，让上一轮晋升的垃圾也被回收
+        System.gc();
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
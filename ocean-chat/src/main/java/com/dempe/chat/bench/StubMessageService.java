@@ -0,0 +1,68 @@
+package com.dempe.chat.bench;
+
+import com.dempe.chat.connector.inbox.MemoryInboxStore;
+import com.dempe.logic.api.MessageService;
+import com.dempe.ocean.db.model.im.InboxMessage;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压测用的内存版MessageService，配合-Docean.sync.store=rpc测试connector走rpc存储时的表现
+ * 存储直接复用connector的MemoryInboxStore，每次调用按bench.rpcDelayMs模拟rpc耗时
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 00:15
+ * To change this template use File | Settings | File Templates.
+ */
+public class StubMessageService implements MessageService {
+
+    private final long rpcDelayMs = Long.getLong("bench.rpcDelayMs", 0L);
+
+    private final MemoryInboxStore store = new MemoryInboxStore();
+
+    @Override
+    public long append(String uid, String topic, byte[] payload) {
+        simulateRpc();
+        return store.append(uid, topic, payload);
+    }
+
+    @Override
+    public long[] appendAll(long[] uids, String topic, byte[] payload) {
+        simulateRpc();
+        return store.appendAll(uids, topic, payload);
+    }
+
+    @Override
+    public long[] appendBatch(List<InboxMessage> messages) {
+        simulateRpc();
+        long[] seqs = new long[messages.size()];
+        for (int i = 0; i < seqs.length; i++) {
+            InboxMessage message = messages.get(i);
+            seqs[i] = store.append(message.getUid(), message.getTopic(), message.getPayload());
+        }
+        return seqs;
+    }
+
+    @Override
+    public long latestSeq(String uid) {
+        simulateRpc();
+        return store.latestSeq(uid);
+    }
+
+    @Override
+    public List<InboxMessage> fetch(String uid, long afterSeq, int limit) {
+        simulateRpc();
+        return store.fetch(uid, afterSeq, limit);
+    }
+
+    private void simulateRpc() {
+        if (rpcDelayMs > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(rpcDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.dempe.chat.bench;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dempe.logic.api.UserGroupService;
+import com.dempe.ocean.utils.JsonResult;
+import com.dempe.ocean.utils.LongHashSet;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压测用的内存版UserGroupService
+ * 群组成员按uid连续分段生成：群n的成员为 bench.uidBase + n * bench.groupSize 起的 bench.groupSize 个uid，
+ * 与LoadGenerator的分组规则保持一致；saveUserGroup/delUserGroup在生成的成员基础上增删
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 10:46
+ * To change this template use File | Settings | File Templates.
+ */
+public class StubUserGroupService implements UserGroupService {
+
+    private final long uidBase = Long.getLong("bench.uidBase", LoadGenerator.DEFAULT_UID_BASE);
+    private final int groupSize = Integer.getInteger("bench.groupSize", LoadGenerator.DEFAULT_GROUP_SIZE);
+    private final long rpcDelayMs = Long.getLong("bench.rpcDelayMs", 0L);
+
+    // 成员集合本身不是线程安全的，读写时锁住集合
+    private final ConcurrentMap<String, LongHashSet> groups = Maps.newConcurrentMap();
+
+    @Override
+    public long[] listUidByGroupId(String groupId) {
+        simulateRpc();
+        LongHashSet members = members(groupId);
+        synchronized (members) {
+            return members.toSortedArray();
+        }
+    }
+
+    @Override
+    public Map<String, long[]> listUidsByGroupIds(Collection<String> groupIds) {
+        simulateRpc();
+        Map<String, long[]> result = Maps.newHashMapWithExpectedSize(groupIds.size());
+        for (String groupId : groupIds) {
+            LongHashSet members = members(groupId);
+            synchronized (members) {
+                result.put(groupId, members.toArray());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long[] listUidsByGroupId(String groupId, long afterUid, int limit) {
+        simulateRpc();
+        long[] uids;
+        LongHashSet members = members(groupId);
+        synchronized (members) {
+            uids = members.toSortedArray();
+        }
+        int from = 0;
+        while (from < uids.length && uids[from] <= afterUid) {
+            from++;
+        }
+        return Arrays.copyOfRange(uids, from, Math.min(uids.length, from + Math.max(0, limit)));
+    }
+
+    @Override
+    public JSONObject saveUserGroup(Long uid, String groupId) {
+        LongHashSet members = members(groupId);
+        synchronized (members) {
+            members.add(uid);
+        }
+        return JsonResult.getJsonResult(0);
+    }
+
+    @Override
+    public JSONObject delUserGroup(String groupId, Long uid) {
+        LongHashSet members = members(groupId);
+        synchronized (members) {
+            members.remove(uid);
+        }
+        return JsonResult.getJsonResult(0);
+    }
+
+    private LongHashSet members(String groupId) {
+        LongHashSet members = groups.get(groupId);
+        if (members == null) {
+            LongHashSet generated = generate(groupId);
+            members = groups.putIfAbsent(groupId, generated);
+            if (members == null) {
+                members = generated;
+            }
+        }
+        return members;
+    }
+
+    private LongHashSet generate(String groupId) {
+        LongHashSet uids = new LongHashSet(groupSize);
+        long index;
+        try {
+            index = Long.parseLong(groupId);
+        } catch (NumberFormatException e) {
+            return uids;
+        }
+        long first = uidBase + index * groupSize;
+        for (int i = 0; i < groupSize; i++) {
+            uids.add(first + i);
+        }
+        return uids;
+    }
+
+    private void simulateRpc() {
+        if (rpcDelayMs > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(rpcDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.dempe.chat.bench;
+
+import com.alibaba.fastjson.JSONObject;
+import com.dempe.logic.api.UserService;
+import com.dempe.ocean.db.model.User;
+import com.dempe.ocean.utils.JsonResult;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压测用的内存版UserService，不依赖mongo和logic server
+ * 所有用户都能登录成功，bench.rpcDelayMs可以模拟logic层的rpc耗时
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 10:40
+ * To change this template use File | Settings | File Templates.
+ */
+public class StubUserService implements UserService {
+
+    private final long rpcDelayMs = Long.getLong("bench.rpcDelayMs", 0L);
+
+    @Override
+    public User login(String uid, String pwd) {
+        simulateRpc();
+        User user = new User();
+        try {
+            user.setUid(Long.valueOf(uid));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        user.setUserName(uid);
+        user.setPwd(pwd);
+        return user;
+    }
+
+    @Override
+    public List<User> listUserByUids(long[] uids) {
+        simulateRpc();
+        List<User> users = Lists.newArrayListWithCapacity(uids.length);
+        for (long uid : uids) {
+            User user = new User();
+            user.setUid(uid);
+            user.setUserName(String.valueOf(uid));
+            users.add(user);
+        }
+        return users;
+    }
+
+    @Override
+    public JSONObject imInit() {
+        JSONObject result = new JSONObject();
+        result.put("init", "success");
+        return JsonResult.getJsonResult(result);
+    }
+
+    @Override
+    public JSONObject chInit() {
+        JSONObject result = new JSONObject();
+        result.put("init", "success");
+        return JsonResult.getJsonResult(result);
+    }
+
+    private void simulateRpc() {
+        if (rpcDelayMs > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(rpcDelayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -2,15 +2,16 @@ package com.dempe.chat.common;
 
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
-import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,23 +32,34 @@ public class BootServer {
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
     private ServerBootstrap b;
-    private DefaultEventExecutorGroup executorGroup;
-    private ChannelInitializer channelInitializer;
+    private ChannelInitializer<SocketChannel> channelInitializer;
+    private Class<? extends ServerChannel> channelClass = NioServerSocketChannel.class;
+    private volatile Channel serverChannel;
+    // 调用过unbind，event loop由调用方在处理完已有连接后stop
+    private volatile boolean unbound;
 
 
     public BootServer() {
         init();
     }
 
-    public BootServer(ChannelInitializer channelInitializer) {
+    public BootServer(ChannelInitializer<SocketChannel> channelInitializer) {
         this.channelInitializer = channelInitializer;
         init();
     }
 
+    /**
+     * @param channelClass 监听用的server channel，默认NioServerSocketChannel
+     */
+    public BootServer(ChannelInitializer<SocketChannel> channelInitializer, Class<? extends ServerChannel> channelClass) {
+        this.channelInitializer = channelInitializer;
+        this.channelClass = channelClass;
+        init();
+    }
+
 
     public void init() {
-        executorGroup = new DefaultEventExecutorGroup(Runtime.getRuntime().availableProcessors(),
-                new DefaultThreadFactory("decode-worker-thread-pool"));
+        // 业务处理的线程模型见ProcessorDispatcher，这里只有io线程
         init(channelInitializer);
 
     }
@@ -56,20 +68,32 @@ public class BootServer {
     public void start() throws IOException {
         try {
             ChannelFuture f = b.bind(9999).sync();
+            serverChannel = f.channel();
             f.channel().closeFuture().sync();
         } catch (InterruptedException e) {
             LOGGER.error(e.getMessage(), e);
         } finally {
-            stop();
+            if (!unbound) {
+                stop();
+            }
         }
     }
 
-    public void init(ChannelInitializer channelInitializer) {
+    /**
+     * 关闭监听，不再接受新连接，已有的连接不受影响
+     */
+    public ChannelFuture unbind() {
+        unbound = true;
+        Channel channel = serverChannel;
+        return channel == null ? null : channel.close();
+    }
+
+    public void init(ChannelInitializer<SocketChannel> channelInitializer) {
         bossGroup = new NioEventLoopGroup();
         workerGroup = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors() * 2);
         b = new ServerBootstrap();
         b.group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(channelClass)
 //                .option(ChannelOption.TCP_NODELAY, true)
 //                .option(ChannelOption.SO_KEEPALIVE, config.soKeepAlive())
                 .handler(new LoggingHandler(LogLevel.INFO))
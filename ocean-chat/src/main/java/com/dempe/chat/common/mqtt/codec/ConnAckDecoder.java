@@ -2,7 +2,6 @@ package com.dempe.chat.common.mqtt.codec;
 
 import com.dempe.chat.common.mqtt.messages.ConnAckMessage;
 import io.netty.buffer.ByteBuf;
-import io.netty.util.AttributeMap;
 
 import java.util.List;
 
@@ -12,7 +11,7 @@ import java.util.List;
 class ConnAckDecoder extends DemuxDecoder {
 
     @Override
-    void decode(AttributeMap ctx, ByteBuf in, List<Object> out) throws Exception {
+    void decode(MQTTDecoder ctx, ByteBuf in, List<Object> out) throws Exception {
         in.resetReaderIndex();
         //Common decoding part
         ConnAckMessage message = new ConnAckMessage();
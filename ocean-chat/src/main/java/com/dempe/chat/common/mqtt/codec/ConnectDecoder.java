@@ -19,9 +19,6 @@ import com.dempe.chat.common.mqtt.messages.AbstractMessage;
 import com.dempe.chat.common.mqtt.messages.ConnectMessage;
 import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.CorruptedFrameException;
-import io.netty.util.Attribute;
-import io.netty.util.AttributeKey;
-import io.netty.util.AttributeMap;
 
 import java.io.UnsupportedEncodingException;
 import java.util.List;
@@ -31,10 +28,8 @@ import java.util.List;
  */
 public class ConnectDecoder extends DemuxDecoder {
 
-    static final AttributeKey<Boolean> CONNECT_STATUS = AttributeKey.valueOf("connected");
-
     @Override
-    void decode(AttributeMap ctx, ByteBuf in, List<Object> out) throws UnsupportedEncodingException {
+    void decode(MQTTDecoder ctx, ByteBuf in, List<Object> out) throws UnsupportedEncodingException {
         in.resetReaderIndex();
         //Common decoding part
         ConnectMessage message = new ConnectMessage();
@@ -48,7 +43,6 @@ public class ConnectDecoder extends DemuxDecoder {
         int protocolNameLen = in.readUnsignedShort();
         byte[] encProtoName;
         String protoName;
-        Attribute<Integer> versionAttr = ctx.attr(MQTTDecoder.PROTOCOL_VERSION);
         switch (protocolNameLen) {
             case 6:
                 //MQTT version 3.1 "MQIsdp"
@@ -67,7 +61,7 @@ public class ConnectDecoder extends DemuxDecoder {
                 }
                 message.setProtocolName(protoName);
 
-                versionAttr.set((int) Utils.VERSION_3_1);
+                ctx.protocolVersion = Utils.VERSION_3_1;
                 break;
             case 4:
                 //MQTT version 3.1.1 "MQTT"
@@ -84,7 +78,7 @@ public class ConnectDecoder extends DemuxDecoder {
                     throw new CorruptedFrameException("Invalid protoName: " + protoName);
                 }
                 message.setProtocolName(protoName);
-                versionAttr.set((int) Utils.VERSION_3_1_1);
+                ctx.protocolVersion = Utils.VERSION_3_1_1;
                 break;
             default:
                 //protocol broken
@@ -100,14 +94,10 @@ public class ConnectDecoder extends DemuxDecoder {
             }
 
             //check if this is another connect from the same client on the same session
-            Attribute<Boolean> connectAttr = ctx.attr(ConnectDecoder.CONNECT_STATUS);
-            Boolean alreadyConnected = connectAttr.get();
-            if (alreadyConnected == null) {
-                //never set
-                connectAttr.set(true);
-            } else if (alreadyConnected) {
+            if (ctx.connected) {
                 throw new CorruptedFrameException("Received a second CONNECT on the same network connection");
             }
+            ctx.connected = true;
         }
 
         //Connection flag
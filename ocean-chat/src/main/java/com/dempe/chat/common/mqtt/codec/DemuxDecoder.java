@@ -18,7 +18,6 @@ package com.dempe.chat.common.mqtt.codec;
 import com.dempe.chat.common.mqtt.messages.AbstractMessage;
 import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.CorruptedFrameException;
-import io.netty.util.AttributeMap;
 
 import java.util.List;
 
@@ -26,7 +25,7 @@ import java.util.List;
  * @author andrea
  */
 abstract class DemuxDecoder {
-    abstract void decode(AttributeMap ctx, ByteBuf in, List<Object> out) throws Exception;
+    abstract void decode(MQTTDecoder ctx, ByteBuf in, List<Object> out) throws Exception;
 
     /**
      * Decodes the first 2 bytes of the MQTT packet.
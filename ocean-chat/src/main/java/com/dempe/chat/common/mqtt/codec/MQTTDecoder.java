@@ -16,43 +16,44 @@
 package com.dempe.chat.common.mqtt.codec;
 
 import com.dempe.chat.common.mqtt.messages.AbstractMessage;
-import com.google.common.collect.Maps;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
 import io.netty.handler.codec.CorruptedFrameException;
-import io.netty.util.AttributeKey;
 
 import java.util.List;
-import java.util.Map;
 
 /**
+ * 各类型的DemuxDecoder都是无状态的，所有连接共用一张按消息类型索引的表；
+ * 连接级的协议版本和CONNECT状态直接放在decoder的字段上，不再占用ChannelHandlerContext的attribute
+ *
  * @author andrea
  */
 public class MQTTDecoder extends ByteToMessageDecoder {
 
-    //3 = 3.1, 4 = 3.1.1
-    static final AttributeKey<Integer> PROTOCOL_VERSION = AttributeKey.valueOf("version");
-
-    private final Map<Byte, DemuxDecoder> m_decoderMap = Maps.newHashMap();
+    private static final DemuxDecoder[] DECODERS = new DemuxDecoder[16];
 
-    public MQTTDecoder() {
-        m_decoderMap.put(AbstractMessage.CONNECT, new ConnectDecoder());
-        m_decoderMap.put(AbstractMessage.CONNACK, new ConnAckDecoder());
-        m_decoderMap.put(AbstractMessage.PUBLISH, new PublishDecoder());
-        m_decoderMap.put(AbstractMessage.PUBACK, new PubAckDecoder());
-        m_decoderMap.put(AbstractMessage.SUBSCRIBE, new SubscribeDecoder());
-        m_decoderMap.put(AbstractMessage.SUBACK, new SubAckDecoder());
-        m_decoderMap.put(AbstractMessage.UNSUBSCRIBE, new UnsubscribeDecoder());
-        m_decoderMap.put(AbstractMessage.DISCONNECT, new DisconnectDecoder());
-        m_decoderMap.put(AbstractMessage.PINGREQ, new PingReqDecoder());
-        m_decoderMap.put(AbstractMessage.PINGRESP, new PingRespDecoder());
-        m_decoderMap.put(AbstractMessage.UNSUBACK, new UnsubAckDecoder());
-        m_decoderMap.put(AbstractMessage.PUBCOMP, new PubCompDecoder());
-        m_decoderMap.put(AbstractMessage.PUBREC, new PubRecDecoder());
-        m_decoderMap.put(AbstractMessage.PUBREL, new PubRelDecoder());
+    static {
+        DECODERS[AbstractMessage.CONNECT] = new ConnectDecoder();
+        DECODERS[AbstractMessage.CONNACK] = new ConnAckDecoder();
+        DECODERS[AbstractMessage.PUBLISH] = new PublishDecoder();
+        DECODERS[AbstractMessage.PUBACK] = new PubAckDecoder();
+        DECODERS[AbstractMessage.SUBSCRIBE] = new SubscribeDecoder();
+        DECODERS[AbstractMessage.SUBACK] = new SubAckDecoder();
+        DECODERS[AbstractMessage.UNSUBSCRIBE] = new UnsubscribeDecoder();
+        DECODERS[AbstractMessage.DISCONNECT] = new DisconnectDecoder();
+        DECODERS[AbstractMessage.PINGREQ] = new PingReqDecoder();
+        DECODERS[AbstractMessage.PINGRESP] = new PingRespDecoder();
+        DECODERS[AbstractMessage.UNSUBACK] = new UnsubAckDecoder();
+        DECODERS[AbstractMessage.PUBCOMP] = new PubCompDecoder();
+        DECODERS[AbstractMessage.PUBREC] = new PubRecDecoder();
+        DECODERS[AbstractMessage.PUBREL] = new PubRelDecoder();
     }
 
+    //0 = 未收到CONNECT, 3 = 3.1, 4 = 3.1.1，只在io线程读写
+    byte protocolVersion;
+    boolean connected;
+
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
         in.markReaderIndex();
@@ -64,10 +65,10 @@ public class MQTTDecoder extends ByteToMessageDecoder {
 
         byte messageType = Utils.readMessageType(in);
 
-        DemuxDecoder decoder = m_decoderMap.get(messageType);
+        DemuxDecoder decoder = DECODERS[messageType & 0x0F];
         if (decoder == null) {
             throw new CorruptedFrameException("Can't find any suitable decoder for message type: " + messageType);
         }
-        decoder.decode(ctx, in, out);
+        decoder.decode(this, in, out);
     }
 }
@@ -17,40 +17,41 @@ package com.dempe.chat.common.mqtt.codec;
 
 import com.dempe.chat.common.mqtt.messages.AbstractMessage;
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.handler.codec.MessageToByteEncoder;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
+ * 无状态，所有连接可以共用一个实例
+ *
  * @author andrea
  */
+@ChannelHandler.Sharable
 public class MQTTEncoder extends MessageToByteEncoder<AbstractMessage> {
 
-    private Map<Byte, DemuxEncoder> m_encoderMap = new HashMap<Byte, DemuxEncoder>();
+    private static final DemuxEncoder[] ENCODERS = new DemuxEncoder[16];
 
-    public MQTTEncoder() {
-        m_encoderMap.put(AbstractMessage.CONNECT, new ConnectEncoder());
-        m_encoderMap.put(AbstractMessage.CONNACK, new ConnAckEncoder());
-        m_encoderMap.put(AbstractMessage.PUBLISH, new PublishEncoder());
-        m_encoderMap.put(AbstractMessage.PUBACK, new PubAckEncoder());
-        m_encoderMap.put(AbstractMessage.SUBSCRIBE, new SubscribeEncoder());
-        m_encoderMap.put(AbstractMessage.SUBACK, new SubAckEncoder());
-        m_encoderMap.put(AbstractMessage.UNSUBSCRIBE, new UnsubscribeEncoder());
-        m_encoderMap.put(AbstractMessage.DISCONNECT, new DisconnectEncoder());
-        m_encoderMap.put(AbstractMessage.PINGREQ, new PingReqEncoder());
-        m_encoderMap.put(AbstractMessage.PINGRESP, new PingRespEncoder());
-        m_encoderMap.put(AbstractMessage.UNSUBACK, new UnsubAckEncoder());
-        m_encoderMap.put(AbstractMessage.PUBCOMP, new PubCompEncoder());
-        m_encoderMap.put(AbstractMessage.PUBREC, new PubRecEncoder());
-        m_encoderMap.put(AbstractMessage.PUBREL, new PubRelEncoder());
+    static {
+        ENCODERS[AbstractMessage.CONNECT] = new ConnectEncoder();
+        ENCODERS[AbstractMessage.CONNACK] = new ConnAckEncoder();
+        ENCODERS[AbstractMessage.PUBLISH] = new PublishEncoder();
+        ENCODERS[AbstractMessage.PUBACK] = new PubAckEncoder();
+        ENCODERS[AbstractMessage.SUBSCRIBE] = new SubscribeEncoder();
+        ENCODERS[AbstractMessage.SUBACK] = new SubAckEncoder();
+        ENCODERS[AbstractMessage.UNSUBSCRIBE] = new UnsubscribeEncoder();
+        ENCODERS[AbstractMessage.DISCONNECT] = new DisconnectEncoder();
+        ENCODERS[AbstractMessage.PINGREQ] = new PingReqEncoder();
+        ENCODERS[AbstractMessage.PINGRESP] = new PingRespEncoder();
+        ENCODERS[AbstractMessage.UNSUBACK] = new UnsubAckEncoder();
+        ENCODERS[AbstractMessage.PUBCOMP] = new PubCompEncoder();
+        ENCODERS[AbstractMessage.PUBREC] = new PubRecEncoder();
+        ENCODERS[AbstractMessage.PUBREL] = new PubRelEncoder();
     }
 
     @Override
     protected void encode(ChannelHandlerContext chc, AbstractMessage msg, ByteBuf bb) throws Exception {
-        DemuxEncoder encoder = m_encoderMap.get(msg.getMessageType());
+        DemuxEncoder encoder = ENCODERS[msg.getMessageType() & 0x0F];
         if (encoder == null) {
             throw new CorruptedFrameException("Can't find any suitable decoder for message type: " + msg.getMessageType());
         }
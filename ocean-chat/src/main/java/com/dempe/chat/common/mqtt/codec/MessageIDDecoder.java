@@ -17,7 +17,6 @@ package com.dempe.chat.common.mqtt.codec;
 
 import com.dempe.chat.common.mqtt.messages.MessageIDMessage;
 import io.netty.buffer.ByteBuf;
-import io.netty.util.AttributeMap;
 
 import java.util.List;
 
@@ -29,7 +28,7 @@ abstract class MessageIDDecoder extends DemuxDecoder {
     protected abstract MessageIDMessage createMessage();
 
     @Override
-    void decode(AttributeMap ctx, ByteBuf in, List<Object> out) throws Exception {
+    void decode(MQTTDecoder ctx, ByteBuf in, List<Object> out) throws Exception {
         in.resetReaderIndex();
         //Common decoding part
         MessageIDMessage message = createMessage();
@@ -17,7 +17,6 @@ package com.dempe.chat.common.mqtt.codec;
 
 import com.dempe.chat.common.mqtt.messages.PingReqMessage;
 import io.netty.buffer.ByteBuf;
-import io.netty.util.AttributeMap;
 
 import java.util.List;
 
@@ -27,7 +26,7 @@ import java.util.List;
 class PingReqDecoder extends DemuxDecoder {
 
     @Override
-    void decode(AttributeMap ctx, ByteBuf in, List<Object> out) throws Exception {
+    void decode(MQTTDecoder ctx, ByteBuf in, List<Object> out) throws Exception {
         //Common decoding part
         in.resetReaderIndex();
         PingReqMessage message = new PingReqMessage();
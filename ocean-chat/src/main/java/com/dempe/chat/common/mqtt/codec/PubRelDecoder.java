@@ -18,7 +18,6 @@ package com.dempe.chat.common.mqtt.codec;
 import com.dempe.chat.common.mqtt.messages.MessageIDMessage;
 import com.dempe.chat.common.mqtt.messages.PubRelMessage;
 import io.netty.buffer.ByteBuf;
-import io.netty.util.AttributeMap;
 
 import java.io.UnsupportedEncodingException;
 import java.util.List;
@@ -29,7 +28,7 @@ import java.util.List;
 class PubRelDecoder extends DemuxDecoder {
 
     @Override
-    void decode(AttributeMap ctx, ByteBuf in, List<Object> out) throws UnsupportedEncodingException {
+    void decode(MQTTDecoder ctx, ByteBuf in, List<Object> out) throws UnsupportedEncodingException {
         in.resetReaderIndex();
         //Common decoding part
         MessageIDMessage message = new PubRelMessage();
@@ -20,7 +20,6 @@ import com.dempe.chat.common.mqtt.messages.PublishMessage;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.CorruptedFrameException;
-import io.netty.util.AttributeMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,7 +33,7 @@ class PublishDecoder extends DemuxDecoder {
     private static Logger LOG = LoggerFactory.getLogger(PublishDecoder.class);
 
     @Override
-    void decode(AttributeMap ctx, ByteBuf in, List<Object> out) throws Exception {
+    void decode(MQTTDecoder ctx, ByteBuf in, List<Object> out) throws Exception {
         LOG.debug("decode invoked with buffer {}", in);
         in.resetReaderIndex();
         int startPos = in.readerIndex();
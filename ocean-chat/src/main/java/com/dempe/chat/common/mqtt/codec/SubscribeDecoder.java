@@ -20,7 +20,6 @@ import com.dempe.chat.common.mqtt.messages.AbstractMessage;
 import com.dempe.chat.common.mqtt.messages.SubscribeMessage;
 import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.CorruptedFrameException;
-import io.netty.util.AttributeMap;
 
 import java.io.UnsupportedEncodingException;
 import java.util.List;
@@ -31,7 +30,7 @@ import java.util.List;
 class SubscribeDecoder extends DemuxDecoder {
 
     @Override
-    void decode(AttributeMap ctx, ByteBuf in, List<Object> out) throws Exception {
+    void decode(MQTTDecoder ctx, ByteBuf in, List<Object> out) throws Exception {
         //Common decoding part
         SubscribeMessage message = new SubscribeMessage();
         in.resetReaderIndex();
@@ -17,13 +17,14 @@ package com.dempe.chat.common.mqtt.codec;
 
 import com.dempe.chat.common.mqtt.messages.AbstractMessage;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.CorruptedFrameException;
-import io.netty.util.Attribute;
-import io.netty.util.AttributeMap;
 import org.slf4j.LoggerFactory;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 /**
  * @author andrea
@@ -164,6 +165,30 @@ public class Utils {
         return out;
     }
 
+    /**
+     * 编码完整的qos0 PUBLISH帧(qos0没有packet id，所有接收方的字节完全相同)，
+     * 广播时编码一次，之后每个连接写入同一个帧的duplicate即可
+     */
+    public static ByteBuf encodePublishFrame(ByteBufAllocator alloc, String topic, ByteBuffer payload, boolean retain) {
+        byte[] topicRaw = topic.getBytes(Charset.forName("UTF-8"));
+        int remainingLength = 2 + topicRaw.length + payload.remaining();
+        ByteBuf frame = alloc.buffer(1 + numBytesToEncode(remainingLength) + remainingLength);
+        frame.writeByte(AbstractMessage.PUBLISH << 4 | (retain ? 0x01 : 0x00));
+        int value = remainingLength;
+        do {
+            byte digit = (byte) (value % 128);
+            value = value / 128;
+            if (value > 0) {
+                digit = (byte) (digit | 0x80);
+            }
+            frame.writeByte(digit);
+        } while (value > 0);
+        frame.writeShort(topicRaw.length);
+        frame.writeBytes(topicRaw);
+        frame.writeBytes(payload.duplicate());
+        return frame;
+    }
+
     /**
      * Return the number of bytes to encode the given remaining length value
      */
@@ -187,12 +212,8 @@ public class Utils {
         return flags;
     }
 
-    static boolean isMQTT3_1_1(AttributeMap attrsMap) {
-        Attribute<Integer> versionAttr = attrsMap.attr(MQTTDecoder.PROTOCOL_VERSION);
-        Integer protocolVersion = versionAttr.get();
-        if (protocolVersion == null) {
-            return true;
-        }
-        return protocolVersion == VERSION_3_1_1;
+    static boolean isMQTT3_1_1(MQTTDecoder decoder) {
+        // 还没收到CONNECT时按3.1.1校验
+        return decoder.protocolVersion == 0 || decoder.protocolVersion == VERSION_3_1_1;
     }
 }
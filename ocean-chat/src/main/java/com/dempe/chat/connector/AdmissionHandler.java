@@ -0,0 +1,232 @@
+package com.dempe.chat.connector;
+
+import com.dempe.chat.common.mqtt.messages.ConnAckMessage;
+import com.dempe.chat.common.mqtt.messages.ConnectMessage;
+import com.dempe.chat.connector.processor.ConnMessageProcessor;
+import com.dempe.ocean.utils.TokenBucket;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerAdapter;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 连接准入控制，放在mqttDecoder之后、mqttHandler之前，防止重连风暴同时压垮connector和logic层：
+ * 1.新连接按来源ip限速，超出直接断开
+ * 2.CONNECT全局限速，超出回复SERVER_UNAVAILABLE
+ * 3.登录校验(可能rpc到logic层)放到独立的有界线程池里执行，不占用io线程；
+ * 排队的CONNECT超过上限说明logic层已经处理不过来，新的CONNECT直接回复SERVER_UNAVAILABLE，客户端稍后重连
+ * 校验期间暂停读取该连接；和CONNECT在同一个包里已经解码出来的消息先缓存，登录成功、CONNACK之后按顺序交给mqttHandler，
+ * 登录失败时丢弃，缓存超过上限直接断开；已经登录的连接再发CONNECT直接断开
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.admission.ipRate/ipBurst            单个ip每秒新建连接数/突发数，默认200/1000(运营商NAT后面可能有大量用户)
+ * ocean.admission.connectRate/connectBurst  全局每秒CONNECT数/突发数，默认5000/10000
+ * ocean.admission.authThreads               登录校验线程数，默认32
+ * ocean.admission.maxPendingAuth            排队等待校验的CONNECT上限，默认10000
+ * ocean.admission.maxEarlyMessages          校验期间单个连接缓存的消息上限，默认64
+ * </pre>
+ * 小于等于0的速率表示不限
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 18:10
+ * To change this template use File | Settings | File Templates.
+ */
+@ChannelHandler.Sharable
+@Component
+public class AdmissionHandler extends ChannelHandlerAdapter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionHandler.class);
+
+    // 不为null表示该连接的CONNECT正在校验，只在io线程读写
+    private static final AttributeKey<Queue<Object>> ATTR_KEY_EARLY = AttributeKey.valueOf("admissionEarly");
+
+    @Autowired
+    private ConnMessageProcessor connMessageProcessor;
+
+    private final double ipRate = Double.parseDouble(System.getProperty("ocean.admission.ipRate", "200"));
+    private final int ipBurst = Integer.getInteger("ocean.admission.ipBurst", 1000);
+    private final int maxEarlyMessages = Integer.getInteger("ocean.admission.maxEarlyMessages", 64);
+
+    private final TokenBucket connectBucket = new TokenBucket(
+            Double.parseDouble(System.getProperty("ocean.admission.connectRate", "5000")),
+            Integer.getInteger("ocean.admission.connectBurst", 10000));
+
+    // 长时间没有新连接的ip自动清理
+    private final Cache<String, TokenBucket> ipBuckets = CacheBuilder.newBuilder()
+            .maximumSize(100000).expireAfterAccess(1, TimeUnit.MINUTES).build();
+
+    private final ThreadPoolExecutor authExecutor;
+
+    private final AtomicLong ipRejected = new AtomicLong();
+    private final AtomicLong rateRejected = new AtomicLong();
+    private final AtomicLong overloadRejected = new AtomicLong();
+    private final AtomicLong earlyOverflow = new AtomicLong();
+
+    public AdmissionHandler() {
+        int authThreads = Integer.getInteger("ocean.admission.authThreads", 32);
+        authExecutor = new ThreadPoolExecutor(authThreads, authThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Integer.getInteger("ocean.admission.maxPendingAuth", 10000)),
+                new DefaultThreadFactory("connect-auth", true), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        if (!acquireIp(ctx.channel().remoteAddress())) {
+            long rejected = ipRejected.incrementAndGet();
+            LOGGER.debug("too many connections from {}, rejected {}", ctx.channel().remoteAddress(), rejected);
+            ctx.close();
+            return;
+        }
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, Object msg) throws Exception {
+        final Channel channel = ctx.channel();
+        Queue<Object> early = channel.attr(ATTR_KEY_EARLY).get();
+        if (early != null) {
+            // autoRead关闭之前已经解码出来的消息，等CONNECT处理完再交出去
+            if (early.size() >= maxEarlyMessages) {
+                long overflow = earlyOverflow.incrementAndGet();
+                LOGGER.warn("too many messages before CONNACK from {}, closed {}", channel.remoteAddress(), overflow);
+                early.clear();
+                ctx.close();
+                return;
+            }
+            early.add(msg);
+            return;
+        }
+        if (!(msg instanceof ConnectMessage)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        if (NettyUtils.connected(channel)) {
+            LOGGER.warn("duplicate CONNECT from {}, close", channel.remoteAddress());
+            ctx.close();
+            return;
+        }
+        final ConnectMessage connect = (ConnectMessage) msg;
+        if (!connectBucket.tryAcquire()) {
+            rateRejected.incrementAndGet();
+            reject(channel);
+            return;
+        }
+        channel.config().setAutoRead(false);
+        channel.attr(ATTR_KEY_EARLY).set(new ArrayDeque<Object>(4));
+        try {
+            authExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    processConnect(ctx, connect);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            channel.attr(ATTR_KEY_EARLY).set(null);
+            long rejected = overloadRejected.incrementAndGet();
+            LOGGER.warn("too many pending CONNECT, rejected {}", rejected);
+            reject(channel);
+        }
+    }
+
+    public long getIpRejected() {
+        return ipRejected.get();
+    }
+
+    public long getRateRejected() {
+        return rateRejected.get();
+    }
+
+    public long getOverloadRejected() {
+        return overloadRejected.get();
+    }
+
+    public long getEarlyOverflow() {
+        return earlyOverflow.get();
+    }
+
+    public int getPendingAuth() {
+        return authExecutor.getQueue().size();
+    }
+
+    private void processConnect(ChannelHandlerContext ctx, ConnectMessage connect) {
+        Channel channel = ctx.channel();
+        try {
+            if (channel.isActive()) {
+                connMessageProcessor.processConnect(channel, connect);
+            }
+            // 排队期间客户端已经断开时什么也不做
+        } catch (Exception e) {
+            LOGGER.error("process CONNECT of client <{}> error", connect.getClientID(), e);
+            channel.close();
+        } finally {
+            resume(ctx);
+        }
+    }
+
+    /**
+     * 回到io线程，排在CONNACK的写出之后，先交出缓存的消息再恢复读取
+     */
+    private void resume(final ChannelHandlerContext ctx) {
+        ctx.channel().eventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                Channel channel = ctx.channel();
+                Queue<Object> early = channel.attr(ATTR_KEY_EARLY).getAndSet(null);
+                if (!channel.isActive() || !NettyUtils.connected(channel)) {
+                    // 校验失败(CONNACK写出后关闭)或者已经断开，缓存的消息直接丢弃
+                    return;
+                }
+                if (early != null) {
+                    for (Object msg = early.poll(); msg != null; msg = early.poll()) {
+                        ctx.fireChannelRead(msg);
+                    }
+                }
+                channel.config().setAutoRead(true);
+            }
+        });
+    }
+
+    private boolean acquireIp(SocketAddress address) {
+        if (ipRate <= 0 || !(address instanceof InetSocketAddress)) {
+            return true;
+        }
+        String ip = ((InetSocketAddress) address).getAddress().getHostAddress();
+        try {
+            return ipBuckets.get(ip, new Callable<TokenBucket>() {
+                @Override
+                public TokenBucket call() throws Exception {
+                    return new TokenBucket(ipRate, ipBurst);
+                }
+            }).tryAcquire();
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    private void reject(Channel channel) {
+        ConnAckMessage connAck = new ConnAckMessage();
+        connAck.setReturnCode(ConnAckMessage.SERVER_UNAVAILABLE);
+        channel.writeAndFlush(connAck).addListener(ChannelFutureListener.CLOSE);
+    }
+}
@@ -15,8 +15,12 @@
  */
 package com.dempe.chat.connector;
 
+import com.dempe.chat.common.mqtt.messages.WillMessage;
+import com.dempe.chat.connector.store.ClientSession;
 import io.netty.channel.Channel;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Value object to maintain the information of single connection, like ClientID, IoSession,
  * and other clean session fla.
@@ -25,19 +29,42 @@ import io.netty.channel.Channel;
  */
 public class ConnectionDescriptor {
 
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+
     public final String clientID;
     public final Channel channel;
     public final boolean cleanSession;
+    /**
+     * 每个连接唯一的序号，同一clientID重连后序号不同，注销时据此判断注册表里的是不是自己
+     */
+    public final long generation;
+    /**
+     * 遗嘱属于连接而不是clientID，被新连接接管的旧连接不会发出遗嘱，也不会误删新连接的遗嘱
+     */
+    public final WillMessage will;
+    /**
+     * 这个连接注册时创建或沿用的会话，注销时只处理这个会话，不会误伤同一clientID的新连接新建的会话
+     */
+    public final ClientSession clientSession;
+
+    public ConnectionDescriptor(String clientID, Channel session, boolean cleanSession, ClientSession clientSession) {
+        this(clientID, session, cleanSession, null, clientSession);
+    }
 
-    public ConnectionDescriptor(String clientID, Channel session, boolean cleanSession) {
+    public ConnectionDescriptor(String clientID, Channel session, boolean cleanSession, WillMessage will,
+                                ClientSession clientSession) {
         this.clientID = clientID;
         this.channel = session;
         this.cleanSession = cleanSession;
+        this.will = will;
+        this.clientSession = clientSession;
+        this.generation = GENERATIONS.incrementAndGet();
     }
 
     @Override
     public String toString() {
-        return "ConnectionDescriptor{" + "clientID=" + clientID + ", cleanSession=" + cleanSession + '}';
+        return "ConnectionDescriptor{" + "clientID=" + clientID + ", cleanSession=" + cleanSession
+                + ", generation=" + generation + '}';
     }
 
     @Override
@@ -47,6 +74,7 @@ public class ConnectionDescriptor {
 
         ConnectionDescriptor that = (ConnectionDescriptor) o;
 
+        if (generation != that.generation) return false;
         if (clientID != null ? !clientID.equals(that.clientID) : that.clientID != null) return false;
         return !(channel != null ? !channel.equals(that.channel) : that.channel != null);
 
@@ -56,6 +84,7 @@ public class ConnectionDescriptor {
     public int hashCode() {
         int result = clientID != null ? clientID.hashCode() : 0;
         result = 31 * result + (channel != null ? channel.hashCode() : 0);
+        result = 31 * result + (int) (generation ^ (generation >>> 32));
         return result;
     }
 }
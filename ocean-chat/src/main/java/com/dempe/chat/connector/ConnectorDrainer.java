@@ -0,0 +1,137 @@
+package com.dempe.chat.connector;
+
+import com.dempe.chat.common.BootServer;
+import com.dempe.chat.common.mqtt.messages.AbstractMessage;
+import com.dempe.chat.common.mqtt.messages.PublishMessage;
+import com.dempe.chat.connector.persist.WriteBehindPersister;
+import com.dempe.chat.connector.processor.PublishMessageProcessor;
+import com.dempe.ocean.common.ExtendProtocol;
+import com.dempe.ocean.common.R;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * connector下线(滚动发布)，代替直接关闭event loop让所有连接同时断开、同时重连
+ * 1.关闭监听，不再接受新连接；开启SO_REUSEPORT时新进程已经绑定同一个端口，之后的新连接都进入新进程
+ * 2.给每个已连接的客户端下发重连提示(s|redirect)，每个连接的delay在[0, windowSec]内随机，客户端在delay后断开重连，
+ *   重连分散在整个窗口内；delay加graceSec后仍未断开的连接由服务端关闭，关闭前先flush已经写入的消息
+ * 3.这些连接断开时不发遗嘱
+ * 4.连接全部断开后等待群消息fan-out执行完，落库队列写完，最后停止event loop
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.drain.windowSec  重连分散的时间窗口，默认30秒
+ * ocean.drain.graceSec   提示的delay之后再等多久由服务端关闭连接，默认3秒
+ * ocean.drain.redirect   重连地址host:port，默认为空，客户端重连原地址(由SO_REUSEPORT的新进程或者负载均衡接收)
+ * ocean.drain.reusePort  监听时设置SO_REUSEPORT，见SessionServerSocketChannel，默认false
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 07:10
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class ConnectorDrainer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectorDrainer.class);
+
+    // 连接全部断开之后，群消息fan-out和落库各自最多等待的时间
+    private static final long FLUSH_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final long windowMillis = TimeUnit.SECONDS.toMillis(Integer.getInteger("ocean.drain.windowSec", 30));
+    private final long graceMillis = TimeUnit.SECONDS.toMillis(Integer.getInteger("ocean.drain.graceSec", 3));
+    private final String redirectAddress = System.getProperty("ocean.drain.redirect");
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    @Autowired
+    private PublishMessageProcessor publishMessageProcessor;
+
+    @Autowired
+    private WriteBehindPersister persister;
+
+    public boolean isDraining() {
+        return draining.get();
+    }
+
+    /**
+     * 阻塞到下线完成，重复调用只有第一次生效
+     */
+    public void drain(BootServer server) {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        SessionSlab slab = SessionSlab.getInstance();
+        long start = System.currentTimeMillis();
+        ChannelFuture unbind = server.unbind();
+        if (unbind != null) {
+            unbind.awaitUninterruptibly();
+        }
+        List<Channel> channels = slab.channels();
+        LOGGER.info("connector draining, stop accepting, redirect {} connections in {} ms", channels.size(), windowMillis);
+        for (Channel channel : channels) {
+            redirect(channel, windowMillis > 0 ? ThreadLocalRandom.current().nextLong(windowMillis + 1) : 0);
+        }
+
+        long deadline = start + windowMillis + graceMillis + FLUSH_TIMEOUT_MILLIS;
+        try {
+            while (slab.size() > 0 && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            // 监听关闭前刚accept的连接没有在快照里，到这里一起关闭
+            for (Channel channel : slab.channels()) {
+                NettyUtils.drained(channel, true);
+                closeAfterFlush(channel);
+            }
+            if (!publishMessageProcessor.awaitGroupFanout(FLUSH_TIMEOUT_MILLIS)) {
+                LOGGER.warn("group fan-out not finished in {} ms", FLUSH_TIMEOUT_MILLIS);
+            }
+            persister.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("connector drain interrupted");
+        }
+        LOGGER.info("connector drained in {} ms, committed {} messages, dropped {}",
+                System.currentTimeMillis() - start, persister.getCommitted(), persister.getDropped());
+        try {
+            server.stop();
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage(), e);
+        }
+    }
+
+    private void redirect(final Channel channel, long delayMillis) {
+        NettyUtils.drained(channel, true);
+        if (NettyUtils.clientID(channel) != null) {
+            PublishMessage hint = new PublishMessage();
+            hint.setTopicName(R.REDIRECT_TOPIC);
+            hint.setQos(AbstractMessage.QOSType.MOST_ONE);
+            hint.setPayload(ExtendProtocol.encodeRedirect(delayMillis, redirectAddress));
+            channel.writeAndFlush(hint);
+        }
+        channel.eventLoop().schedule(new Runnable() {
+            @Override
+            public void run() {
+                closeAfterFlush(channel);
+            }
+        }, delayMillis + graceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // 直接close会丢掉还在发送缓冲里的消息，写一个空buffer，flush完成后再关闭
+    private static void closeAfterFlush(Channel channel) {
+        if (channel.isActive()) {
+            channel.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.dempe.chat.connector;
 
 import com.dempe.chat.common.BootServer;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.socket.SocketChannel;
 
 import java.io.IOException;
 
@@ -17,30 +18,68 @@ public class ConnectorServer {
 
     private BootServer server;
 
-    private ChannelInitializer channelInitializer;
+    private ChannelInitializer<SocketChannel> channelInitializer;
 
     private MQTTHandler mqttHandler;
 
+    private AdmissionHandler admissionHandler;
+
+    private ConnectorDrainer drainer;
+
     public ConnectorServer(MQTTHandler mqttHandler) {
         this.mqttHandler = mqttHandler;
     }
 
-    public ChannelInitializer getChannelInitializer() {
+    public ConnectorServer(MQTTHandler mqttHandler, AdmissionHandler admissionHandler) {
+        this.mqttHandler = mqttHandler;
+        this.admissionHandler = admissionHandler;
+    }
+
+    public ChannelInitializer<SocketChannel> getChannelInitializer() {
         return channelInitializer;
     }
 
-    public void setChannelInitializer(ChannelInitializer channelInitializer) {
+    public void setChannelInitializer(ChannelInitializer<SocketChannel> channelInitializer) {
         this.channelInitializer = channelInitializer;
     }
 
+    public ConnectorDrainer getDrainer() {
+        return drainer;
+    }
+
+    /**
+     * 设置后进程退出(SIGTERM)时先下线再停止，见{@link ConnectorDrainer}
+     */
+    public void setDrainer(ConnectorDrainer drainer) {
+        this.drainer = drainer;
+    }
+
     public void start() throws IOException {
         if (channelInitializer == null) {
-            channelInitializer = new ServerChannelInitializer(mqttHandler);
+            channelInitializer = new ServerChannelInitializer(mqttHandler, admissionHandler);
+        }
+        // accept出来的连接带槽位号，连接状态存放在SessionSlab里
+        server = new BootServer(channelInitializer, SessionServerSocketChannel.class);
+        if (drainer != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, "connector-drain"));
         }
-        server = new BootServer(channelInitializer);
         server.start();
     }
 
+    /**
+     * 停止接受新连接，分散断开已有连接后停止，阻塞到完成
+     */
+    public void drain() {
+        if (drainer != null && server != null) {
+            drainer.drain(server);
+        }
+    }
+
     public static void main(String[] args) throws IOException {
 //        new ConnectorServer(new MQTTHandler()).start();
     }
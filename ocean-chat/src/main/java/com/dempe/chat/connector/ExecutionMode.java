@@ -0,0 +1,26 @@
+package com.dempe.chat.connector;
+
+/**
+ * 业务处理(CONNECT登录、PUBLISH路由等)在哪里执行，网络读写始终在io线程上，见{@link ProcessorDispatcher}
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 08:30
+ * To change this template use File | Settings | File Templates.
+ */
+public enum ExecutionMode {
+    EVENT_LOOP,// 直接在io线程上执行，登录rpc等阻塞调用会卡住同一个io线程上的所有连接
+    EXECUTOR,// 按clientID固定到OrderedExecutor的一条执行道，同一个连接的消息按序处理
+    VIRTUAL;// 每个连接一个按序执行的虚拟线程，有消息时才创建，需要jdk21以上
+
+    /**
+     * @return 名字不区分大小写，未知的名字返回null
+     */
+    public static ExecutionMode of(String name) {
+        for (ExecutionMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
@@ -40,11 +40,44 @@ public class MQTTHandler extends ChannelHandlerAdapter {
     private DisconnectMessageProcessor disconnectMessageProcessor;
 
 
+    @Autowired
+    private ProcessorDispatcher dispatcher;
+
+
     @Override
     public void channelRead(final ChannelHandlerContext ctx, Object message) {
-        AbstractMessage msg = (AbstractMessage) message;
+        final AbstractMessage msg = (AbstractMessage) message;
         LOGGER.info("Received a message of type {}", Utils.msgType2String(msg.getMessageType()));
-        Channel channel = ctx.channel();
+        final Channel channel = ctx.channel();
+        SessionSlab.getInstance().touch(channel);
+        if (msg.getMessageType() == PINGREQ) {
+            // 心跳不涉及业务，和其他消息没有顺序要求，总是在io线程上直接回
+            handlePingMsg(ctx);
+            return;
+        }
+        if (dispatcher.isEventLoop()) {
+            process(channel, msg);
+            return;
+        }
+        // 第一次分派时按clientID选定执行道，CONNECT还没处理时取CONNECT里的clientID
+        String clientID = msg instanceof ConnectMessage ? ((ConnectMessage) msg).getClientID()
+                : NettyUtils.clientID(channel);
+        dispatcher.dispatch(channel, clientID, new Runnable() {
+            @Override
+            public void run() {
+                process(channel, msg);
+            }
+        });
+    }
+
+    private void process(Channel channel, AbstractMessage msg) {
+        if (msg.getMessageType() != CONNECT && !NettyUtils.connected(channel)) {
+            // 没有登录成功(或者登录被拒绝)的连接只能发CONNECT，其他消息一律断开
+            LOGGER.warn("{} before CONNECT accepted from {}, close", Utils.msgType2String(msg.getMessageType()),
+                    channel.remoteAddress());
+            channel.close();
+            return;
+        }
         try {
             switch (msg.getMessageType()) {
                 case CONNECT:
@@ -76,9 +109,6 @@ public class MQTTHandler extends ChannelHandlerAdapter {
                     LOGGER.debug("---------handle disconnect message-------------");
                     disconnectMessageProcessor.processDisconnect(channel);
                     break;
-                case PINGREQ:
-                    handlePingMsg(ctx);
-                    break;
             }
         } catch (Exception ex) {
             LOGGER.error("Bad error in processing the message", ex);
@@ -93,18 +123,31 @@ public class MQTTHandler extends ChannelHandlerAdapter {
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-        String clientID = NettyUtils.clientID(ctx.channel());
+        final Channel channel = ctx.channel();
+        if (dispatcher.isEventLoop()) {
+            connectionLost(channel);
+        } else {
+            // 排在这个连接还没处理完的消息之后，CONNECT处理完才能注销；槽位在执行完之后才释放
+            SessionSlab.getInstance().flag(channel, SessionSlab.LOST_QUEUED, true);
+            dispatcher.dispatchCleanup(channel, NettyUtils.clientID(channel), new Runnable() {
+                @Override
+                public void run() {
+                    connectionLost(channel);
+                }
+            });
+        }
+        ctx.close();
+    }
+
+    private void connectionLost(Channel channel) {
+        String clientID = NettyUtils.clientID(channel);
         if (clientID != null && !clientID.isEmpty()) {
             //if the channel was of a correctly connected client, inform messaging
             //else it was of a not completed CONNECT message or sessionStolen
-            boolean stolen = false;
-            Boolean stolenAttr = NettyUtils.sessionStolen(ctx.channel());
-            if (stolenAttr != null && stolenAttr == Boolean.TRUE) {
-                stolen = true;
-            }
-            new SubscribeMessageProcessor().processConnectionLost(clientID, stolen, ctx.channel());
+            boolean stolen = NettyUtils.sessionStolen(channel);
+            connMessageProcessor.processConnectionLost(clientID, stolen, channel);
         }
-        ctx.close();
+        SessionSlab.getInstance().free(channel);
     }
 
     @Override
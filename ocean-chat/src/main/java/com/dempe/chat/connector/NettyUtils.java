@@ -15,66 +15,96 @@
  */
 package com.dempe.chat.connector;
 
-import com.dempe.chat.common.Constants;
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.util.Attribute;
-import io.netty.util.AttributeKey;
 
 /**
  * Some Netty's channels utilities.
+ * 连接状态保存在{@link SessionSlab}里，这里保留原来按channel读写的接口
  *
  * @author andrea
  */
 public class NettyUtils {
 
-    public static final String ATTR_USERNAME = "username";
-    public static final String ATTR_SESSION_STOLEN = "sessionStolen";
+    private static final SessionSlab SLAB = SessionSlab.getInstance();
 
-    private static final AttributeKey<Object> ATTR_KEY_KEEPALIVE = AttributeKey.valueOf(Constants.KEEP_ALIVE);
-    private static final AttributeKey<Object> ATTR_KEY_CLEANSESSION = AttributeKey.valueOf(Constants.CLEAN_SESSION);
-    private static final AttributeKey<Object> ATTR_KEY_CLIENTID = AttributeKey.valueOf(Constants.ATTR_CLIENTID);
-    private static final AttributeKey<Object> ATTR_KEY_USERNAME = AttributeKey.valueOf(ATTR_USERNAME);
-    private static final AttributeKey<Object> ATTR_KEY_SESSION_STOLEN = AttributeKey.valueOf(ATTR_SESSION_STOLEN);
+    public static void keepAlive(Channel channel, int keepAlive) {
+        SLAB.keepAlive(channel, keepAlive);
+    }
 
-    public static Object getAttribute(ChannelHandlerContext ctx, AttributeKey<Object> key) {
-        Attribute<Object> attr = ctx.channel().attr(key);
-        return attr.get();
+    public static int keepAlive(Channel channel) {
+        return SLAB.keepAlive(channel);
     }
 
-    public static void keepAlive(Channel channel, int keepAlive) {
-        channel.attr(NettyUtils.ATTR_KEY_KEEPALIVE).set(keepAlive);
+    /**
+     * @return 是否已经登录成功，见{@link SessionSlab#connected}
+     */
+    public static boolean connected(Channel channel) {
+        return SLAB.connected(channel);
     }
 
     public static void cleanSession(Channel channel, boolean cleanSession) {
-        channel.attr(NettyUtils.ATTR_KEY_CLEANSESSION).set(cleanSession);
+        SLAB.flag(channel, SessionSlab.CLEAN_SESSION, cleanSession);
     }
 
     public static boolean cleanSession(Channel channel) {
-        return (Boolean) channel.attr(NettyUtils.ATTR_KEY_CLEANSESSION).get();
+        return SLAB.flag(channel, SessionSlab.CLEAN_SESSION);
     }
 
     public static void clientID(Channel channel, String clientID) {
-        channel.attr(NettyUtils.ATTR_KEY_CLIENTID).set(clientID);
+        SLAB.clientID(channel, clientID);
     }
 
     public static String clientID(Channel channel) {
-        return (String) channel.attr(NettyUtils.ATTR_KEY_CLIENTID).get();
+        return SLAB.clientID(channel);
     }
 
     public static void userName(Channel channel, String username) {
-        channel.attr(NettyUtils.ATTR_KEY_USERNAME).set(username);
+        SLAB.userName(channel, username);
     }
 
     public static String userName(Channel channel) {
-        return (String) channel.attr(NettyUtils.ATTR_KEY_USERNAME).get();
+        return SLAB.userName(channel);
     }
 
     public static void sessionStolen(Channel channel, boolean value) {
-        channel.attr(NettyUtils.ATTR_KEY_SESSION_STOLEN).set(value);
+        SLAB.flag(channel, SessionSlab.SESSION_STOLEN, value);
+    }
+
+    public static boolean sessionStolen(Channel channel) {
+        return SLAB.flag(channel, SessionSlab.SESSION_STOLEN);
+    }
+
+    /**
+     * connector下线时由ConnectorDrainer标记，断开时不发遗嘱
+     */
+    public static void drained(Channel channel, boolean value) {
+        SLAB.flag(channel, SessionSlab.DRAINED, value);
+    }
+
+    public static boolean drained(Channel channel) {
+        return SLAB.flag(channel, SessionSlab.DRAINED);
+    }
+
+    public static void generation(Channel channel, long generation) {
+        SLAB.generation(channel, generation);
+    }
+
+    /**
+     * @return 连接注册时分配的序号，未完成CONNECT的连接返回null
+     */
+    public static Long generation(Channel channel) {
+        long generation = SLAB.generation(channel);
+        return generation == 0 ? null : generation;
+    }
+
+    public static void compressType(Channel channel, int compressType) {
+        SLAB.compressType(channel, compressType);
     }
 
-    public static Boolean sessionStolen(Channel channel) {
-        return (Boolean) channel.attr(NettyUtils.ATTR_KEY_SESSION_STOLEN).get();
+    /**
+     * @return 连接协商的下行压缩算法，没有协商时为0
+     */
+    public static int compressType(Channel channel) {
+        return SLAB.compressType(channel);
     }
 }
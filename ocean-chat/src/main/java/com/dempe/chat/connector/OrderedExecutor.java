@@ -0,0 +1,317 @@
+package com.dempe.chat.connector;
+
+import com.dempe.chat.connector.persist.MpscRingBuffer;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 按key保序的执行器：key(一般是clientID)按哈希固定到一条执行道，每条执行道是一个有界无锁MPSC队列加一个执行线程
+ * 1.同一个key的任务按提交顺序串行执行，不同执行道之间并行，提交和执行都不加锁
+ * 2.同一个key总在同一条执行道上，执行道的队列长度就是其上所有key的排队上限，满了按{@link OverflowPolicy}处理
+ * 3.每条执行道保留队列长度的1/16给不能丢的任务({@link Lane#executeReserved})，例如连接断开后的清理，
+ *   普通任务只能用到剩下的部分，执行道被普通任务占满时清理任务仍然能排在后面
+ * 4.提交、完成、拒绝、丢弃、异常的次数以及排队长度、最大排队长度可以随时读取
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 09:30
+ * To change this template use File | Settings | File Templates.
+ */
+public class OrderedExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderedExecutor.class);
+
+    // 执行线程空闲时的最长休眠时间，生产者正常情况下会主动唤醒
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // BLOCK策略下生产者等待队列空位的间隔
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int MAX_BATCH = 256;
+
+    /**
+     * 执行道队列满时的处理方式
+     */
+    public enum OverflowPolicy {
+        REJECT,// 抛出RejectedExecutionException，由提交方决定怎么办(例如断开连接)
+        DISCARD,// 丢弃新任务，只计数
+        BLOCK// 提交方等待直到有空位，不能在io线程上使用
+    }
+
+    private final Lane[] lanes;
+    private final OverflowPolicy policy;
+    private volatile boolean running = true;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * @param lanes         执行道数量，即执行线程数
+     * @param laneCapacity  每条执行道的队列长度，向上取到2的幂
+     * @param threadFactory 执行线程的ThreadFactory
+     */
+    public OrderedExecutor(int lanes, int laneCapacity, OverflowPolicy policy, ThreadFactory threadFactory) {
+        if (lanes <= 0) {
+            throw new IllegalArgumentException("lanes must be positive: " + lanes);
+        }
+        this.policy = policy;
+        this.lanes = new Lane[lanes];
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new Lane(laneCapacity);
+            this.lanes[i].thread = threadFactory.newThread(this.lanes[i]);
+        }
+        for (Lane lane : this.lanes) {
+            lane.thread.start();
+        }
+    }
+
+    /**
+     * @return key所在的执行道，调用方可以缓存下来，之后直接提交，省掉哈希计算
+     */
+    public Lane laneFor(Object key) {
+        int h = key.hashCode();
+        // 打散低位，连续的clientID也能均匀分布
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return lanes[(h & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    public void execute(Object key, Runnable task) {
+        laneFor(key).execute(task);
+    }
+
+    /**
+     * 不再接受新任务，已经排队的任务执行完后执行线程退出；
+     * 和关闭并发、已经放入队列的任务不会丢，执行线程退出后由提交方自己执行
+     */
+    public void shutdown() {
+        running = false;
+        for (Lane lane : lanes) {
+            LockSupport.unpark(lane.thread);
+        }
+    }
+
+    /**
+     * @return 所有执行线程在超时前退出时返回true
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Lane lane : lanes) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0) {
+                TimeUnit.NANOSECONDS.timedJoin(lane.thread, remaining);
+            }
+            if (lane.thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getLanes() {
+        return lanes.length;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getDiscarded() {
+        return discarded.sum();
+    }
+
+    /**
+     * @return 执行时抛出异常的任务数，也计入completed
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return 当前排队的任务数(近似值)
+     */
+    public int getQueued() {
+        int queued = 0;
+        for (Lane lane : lanes) {
+            queued += lane.queue.size();
+        }
+        return queued;
+    }
+
+    /**
+     * @return 各执行道出现过的最大排队长度中的最大值
+     */
+    public int getMaxDepth() {
+        int max = 0;
+        for (Lane lane : lanes) {
+            max = Math.max(max, lane.maxDepth);
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderedExecutor{lanes=" + lanes.length + ", policy=" + policy + ", submitted=" + submitted
+                + ", completed=" + completed + ", rejected=" + rejected + ", discarded=" + discarded
+                + ", failed=" + failed + ", queued=" + getQueued() + ", maxDepth=" + getMaxDepth() + "}";
+    }
+
+    public final class Lane implements Executor, Runnable {
+        private final MpscRingBuffer<Runnable> queue;
+        // 普通任务可用的队列长度，剩下的留给executeReserved
+        private final int limit;
+        private Thread thread;
+        private volatile boolean parked;
+        // 队列的消费权，执行线程退出前一直持有；关闭后放入的任务由拿到消费权的一方执行
+        private final AtomicBoolean consuming = new AtomicBoolean(true);
+        // 只有持有消费权的一方写
+        private volatile int maxDepth;
+
+        private Lane(int capacity) {
+            queue = new MpscRingBuffer<Runnable>(capacity);
+            limit = queue.capacity() - (queue.capacity() >>> 4);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (!running) {
+                rejected.increment();
+                throw new RejectedExecutionException("ordered executor shut down");
+            }
+            while (queue.size() >= limit || !queue.offer(task)) {
+                if (policy == OverflowPolicy.REJECT) {
+                    rejected.increment();
+                    throw new RejectedExecutionException("ordered executor lane full, limit " + limit);
+                }
+                if (policy == OverflowPolicy.DISCARD) {
+                    discarded.increment();
+                    return;
+                }
+                if (!running) {
+                    rejected.increment();
+                    throw new RejectedExecutionException("ordered executor shut down");
+                }
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            }
+            submitted.increment();
+            afterOffer();
+        }
+
+        /**
+         * 提交不能丢的任务，不受OverflowPolicy限制，可以用到保留的空位，排在这条执行道已有的任务之后；
+         * 保留的空位也用完时等待执行线程腾出空位，执行线程不依赖提交方，等待是有限的
+         *
+         * @throws RejectedExecutionException 执行器已经关闭
+         */
+        public void executeReserved(Runnable task) {
+            for (; ; ) {
+                if (!running) {
+                    rejected.increment();
+                    throw new RejectedExecutionException("ordered executor shut down");
+                }
+                if (queue.offer(task)) {
+                    break;
+                }
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            }
+            submitted.increment();
+            afterOffer();
+        }
+
+        /**
+         * 放入之后再检查running：执行线程可能在放入之前看到队列为空已经退出，这时由提交方把剩下的任务执行完
+         */
+        private void afterOffer() {
+            if (running) {
+                if (parked) {
+                    LockSupport.unpark(thread);
+                }
+                return;
+            }
+            List<Runnable> batch = Lists.newArrayListWithCapacity(MAX_BATCH);
+            // 没有消费权时isEmpty不可用，用任意线程都能调用的size
+            while (queue.size() > 0 && consuming.compareAndSet(false, true)) {
+                try {
+                    while (runBatch(batch)) {
+                        // 执行到队列为空
+                    }
+                } finally {
+                    consuming.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            List<Runnable> batch = Lists.newArrayListWithCapacity(MAX_BATCH);
+            for (; ; ) {
+                while (running || !queue.isEmpty()) {
+                    if (runBatch(batch)) {
+                        continue;
+                    }
+                    // 先标记再检查，生产者先放入再检查标记，两边都是volatile读写，不会同时错过
+                    parked = true;
+                    if (queue.isEmpty() && running) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    parked = false;
+                }
+                // 先交出消费权再检查队列，和afterOffer的先放入再抢消费权配合，最后放入的任务总有一方执行
+                consuming.set(false);
+                if (queue.isEmpty() || !consuming.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 只能由持有消费权的一方调用
+         *
+         * @return 是否取到了任务
+         */
+        private boolean runBatch(List<Runnable> batch) {
+            int depth = queue.size();
+            if (depth > maxDepth) {
+                maxDepth = depth;
+            }
+            queue.drain(batch, MAX_BATCH);
+            if (batch.isEmpty()) {
+                return false;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    batch.get(i).run();
+                } catch (Throwable t) {
+                    failed.increment();
+                    LOGGER.error("ordered task error", t);
+                }
+            }
+            completed.add(batch.size());
+            batch.clear();
+            return true;
+        }
+    }
+}
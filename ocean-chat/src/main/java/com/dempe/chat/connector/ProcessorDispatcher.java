@@ -0,0 +1,229 @@
+package com.dempe.chat.connector;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 把业务处理从io线程分派出去，同一个连接的消息保持接收顺序，网络读写以及直播频道的进出(见LiveRoomManager)仍在io线程上
+ * 1.EVENT_LOOP 直接执行，不分派
+ * 2.EXECUTOR   提交到{@link OrderedExecutor}，key为clientID(还没有时为连接本身)，
+ *              同一个clientID的新旧连接也在同一条执行道上；执行道满时断开这个连接，
+ *              连接断开后的清理使用执行道保留的空位，不会因为执行道满而丢弃或者提前执行
+ * 3.VIRTUAL    每个连接一个按序执行器，有待处理的消息时起一个虚拟线程依次执行，处理完退出；
+ *              jvm不支持虚拟线程时退化为EXECUTOR
+ * 连接第一次分派时选定的执行器存放在{@link SessionSlab}，之后不再变化
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.exec.mode       event_loop/executor/virtual，默认event_loop
+ * ocean.exec.threads    EXECUTOR模式的执行道(线程)数，默认cpu核数*4
+ * ocean.exec.queueSize  EXECUTOR模式每条执行道的排队上限，默认8192
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 08:30
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class ProcessorDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessorDispatcher.class);
+
+    private ExecutionMode mode;
+
+    private OrderedExecutor orderedExecutor;
+
+    // VIRTUAL模式下每个任务一个虚拟线程
+    private ExecutorService virtualExecutor;
+
+    @PostConstruct
+    public void init() {
+        String name = System.getProperty("ocean.exec.mode", ExecutionMode.EVENT_LOOP.name());
+        mode = ExecutionMode.of(name);
+        if (mode == null) {
+            LOGGER.warn("unknown ocean.exec.mode {}, use {}", name, ExecutionMode.EVENT_LOOP);
+            mode = ExecutionMode.EVENT_LOOP;
+        }
+        if (mode == ExecutionMode.VIRTUAL) {
+            virtualExecutor = newVirtualThreadExecutor();
+            if (virtualExecutor == null) {
+                LOGGER.warn("virtual threads not supported by this jvm, use {}", ExecutionMode.EXECUTOR);
+                mode = ExecutionMode.EXECUTOR;
+            }
+        }
+        if (mode == ExecutionMode.EXECUTOR) {
+            orderedExecutor = new OrderedExecutor(
+                    Integer.getInteger("ocean.exec.threads", Runtime.getRuntime().availableProcessors() * 4),
+                    Integer.getInteger("ocean.exec.queueSize", 8192), OrderedExecutor.OverflowPolicy.REJECT,
+                    new DefaultThreadFactory("processor", true));
+        }
+        LOGGER.info("processor execution mode {}", mode);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (orderedExecutor != null) {
+            orderedExecutor.shutdown();
+        }
+        if (virtualExecutor != null) {
+            virtualExecutor.shutdown();
+        }
+    }
+
+    public ExecutionMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return 是否直接在io线程上执行，调用方可以据此省掉Runnable的分配
+     */
+    public boolean isEventLoop() {
+        return mode == ExecutionMode.EVENT_LOOP;
+    }
+
+    /**
+     * @return EXECUTOR模式的执行器，其他模式为null
+     */
+    public OrderedExecutor getOrderedExecutor() {
+        return orderedExecutor;
+    }
+
+    /**
+     * 在io线程上调用，同一个连接的任务按调用顺序执行；排队已满时断开连接
+     *
+     * @param clientID 连接的clientID，还没有CONNECT时为null
+     */
+    public void dispatch(Channel channel, String clientID, Runnable task) {
+        Executor executor = executorFor(channel, clientID);
+        if (executor == null) {
+            task.run();
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("client <{}> too many pending messages, close connection: {}", clientID, e.getMessage());
+            channel.close();
+        }
+    }
+
+    /**
+     * 连接断开后的清理，排在这个连接所有已分派的任务之后执行，不能丢也不能插队(否则会先于还在排队的CONNECT执行)：
+     * EXECUTOR模式使用执行道保留的空位，保留的空位也满时等待；只有执行器已经关闭(进程退出)时才放弃
+     */
+    public void dispatchCleanup(Channel channel, String clientID, Runnable task) {
+        Executor executor = executorFor(channel, clientID);
+        if (executor == null) {
+            task.run();
+            return;
+        }
+        try {
+            if (executor instanceof OrderedExecutor.Lane) {
+                ((OrderedExecutor.Lane) executor).executeReserved(task);
+            } else {
+                executor.execute(task);
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("client <{}> cleanup dropped, processor executor shut down", clientID);
+        }
+    }
+
+    /**
+     * 连接第一次分派时选定执行器并存入槽位，之后的任务都从槽位取，CONNECT处理完之前也能和CONNECT在同一个执行器上；
+     * 槽位已经释放时(连接已经处理过connection lost)EXECUTOR模式仍然按clientID选执行道，不在当前线程执行
+     *
+     * @return 连接的按序执行器，EVENT_LOOP模式返回null
+     */
+    private Executor executorFor(Channel channel, String clientID) {
+        if (mode == ExecutionMode.EVENT_LOOP) {
+            return null;
+        }
+        SessionSlab slab = SessionSlab.getInstance();
+        Executor executor = slab.executor(channel);
+        if (executor != null) {
+            return executor;
+        }
+        if (mode == ExecutionMode.EXECUTOR) {
+            executor = orderedExecutor.laneFor(clientID != null ? clientID : channel);
+        } else {
+            executor = new SerialExecutor(virtualExecutor);
+        }
+        slab.executor(channel, executor);
+        return executor;
+    }
+
+    // Thread.ofVirtual()在jdk21才有，编译目标是1.8，这里反射取
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "processor-", 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            LOGGER.warn("create virtual thread executor error", e);
+            return null;
+        }
+    }
+
+    /**
+     * 按提交顺序执行的执行器，同一时刻最多占用底层executor的一个线程；
+     * 自己就是排空队列的任务，每个连接只有这一个对象和一个队列
+     */
+    static final class SerialExecutor implements Executor, Runnable {
+
+        private static final AtomicIntegerFieldUpdater<SerialExecutor> RUNNING =
+                AtomicIntegerFieldUpdater.newUpdater(SerialExecutor.class, "running");
+
+        private final Executor executor;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        private volatile int running;
+
+        SerialExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.offer(task);
+            if (RUNNING.compareAndSet(this, 0, 1)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            for (; ; ) {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        LOGGER.error("processor task error", t);
+                    }
+                }
+                running = 0;
+                // 清标记和提交者入队之间可能有新任务，抢回标记继续执行，抢不到说明已经有人提交了新的排空任务
+                if (tasks.isEmpty() || !RUNNING.compareAndSet(this, 0, 1)) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -10,18 +10,37 @@ public class ServerChannelInitializer extends ChannelInitializer<SocketChannel>
 
     private MQTTHandler mqttHandler;
 
+    private AdmissionHandler admissionHandler;
+
+    // 无状态，所有连接共用
+    private final MQTTEncoder mqttEncoder = new MQTTEncoder();
+
     public ServerChannelInitializer(MQTTHandler mqttHandler) {
+        this(mqttHandler, null);
+    }
+
+    /**
+     * @param admissionHandler 连接准入控制，为null时不限流，CONNECT直接在io线程上处理
+     */
+    public ServerChannelInitializer(MQTTHandler mqttHandler, AdmissionHandler admissionHandler) {
         this.mqttHandler = mqttHandler;
+        this.admissionHandler = admissionHandler;
     }
 
     @Override
     protected void initChannel(SocketChannel ch) throws Exception {
+        // 连接状态放在SessionSlab里，断开时由MQTTHandler释放
+        SessionSlab.getInstance().allocate(ch);
         ChannelPipeline p = ch.pipeline();
 
         // 解码
         p.addLast("mqttDecoder", new MQTTDecoder());
         // 编码
-        p.addLast("mqttEncoder", new MQTTEncoder());
+        p.addLast("mqttEncoder", mqttEncoder);
+        // 准入控制，需要解码后的CONNECT
+        if (admissionHandler != null) {
+            p.addLast("admissionHandler", admissionHandler);
+        }
 
         p.addLast("mqttHandler", mqttHandler);
     }
@@ -0,0 +1,76 @@
+package com.dempe.chat.connector;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+/**
+ * accept出来的连接为{@link SessionSocketChannel}
+ * -Docean.drain.reusePort=true 时监听前设置SO_REUSEPORT(linux，jdk9以上)，新进程可以在旧进程下线前绑定同一个端口，
+ * 旧进程关闭监听后新连接全部进入新进程，见{@link ConnectorDrainer}
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 03:20
+ * To change this template use File | Settings | File Templates.
+ */
+public class SessionServerSocketChannel extends NioServerSocketChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionServerSocketChannel.class);
+
+    private static final boolean REUSE_PORT = Boolean.getBoolean("ocean.drain.reusePort");
+
+    public SessionServerSocketChannel(EventLoop eventLoop, EventLoopGroup childGroup) {
+        super(eventLoop, childGroup);
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) throws Exception {
+        if (REUSE_PORT) {
+            setReusePort(javaChannel());
+        }
+        super.doBind(localAddress);
+    }
+
+    // StandardSocketOptions.SO_REUSEPORT在jdk9才有，编译目标是1.8，这里反射取
+    @SuppressWarnings("unchecked")
+    private static void setReusePort(ServerSocketChannel channel) {
+        try {
+            Field field = StandardSocketOptions.class.getField("SO_REUSEPORT");
+            channel.setOption((SocketOption<Boolean>) field.get(null), Boolean.TRUE);
+        } catch (NoSuchFieldException e) {
+            LOGGER.warn("SO_REUSEPORT not supported by this jvm, bind without it");
+        } catch (Exception e) {
+            LOGGER.warn("set SO_REUSEPORT error, bind without it", e);
+        }
+    }
+
+    @Override
+    protected int doReadMessages(List<Object> buf) throws Exception {
+        SocketChannel ch = javaChannel().accept();
+        if (ch == null) {
+            return 0;
+        }
+        try {
+            buf.add(new SessionSocketChannel(this, childEventLoopGroup().next(), ch));
+            return 1;
+        } catch (Throwable t) {
+            LOGGER.warn("Failed to create a new channel from an accepted socket.", t);
+            try {
+                ch.close();
+            } catch (Throwable t2) {
+                LOGGER.warn("Failed to close a socket.", t2);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,392 @@
+package com.dempe.chat.connector;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 连接状态的紧凑存储，按连接的槽位号索引的一组数组(struct-of-arrays)
+ * 1.每个连接只占各数组里的一格：channel、clientID、userName、直播频道、按序执行器、generation、状态字、最后活跃时间，
+ *   状态字里打包了cleanSession/sessionStolen/已CONNECT标记、压缩算法和keepAlive，不再有装箱的attribute
+ * 2.数组按页分配，页一旦分配就不再移动，扩容只复制页目录；释放的槽位进入空闲栈，下一个连接复用
+ * 3.读写都校验槽位上的channel是不是自己，已释放或者被复用的槽位对旧channel返回默认值
+ * 4.空闲检测也在这里做，见{@link #sweep}，代替每个连接一个IdleStateHandler和定时任务
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 03:20
+ * To change this template use File | Settings | File Templates.
+ */
+public final class SessionSlab {
+
+    private static final SessionSlab INSTANCE = new SessionSlab();
+
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    // 状态字：低8位为标记，8~15位为压缩算法，16~31位为keepAlive(mqtt里最大65535)
+    static final int CLEAN_SESSION = 1;
+    static final int SESSION_STOLEN = 1 << 1;
+    private static final int CONNECTED = 1 << 2;
+    // 清理时发现已经关闭，下一轮再释放，给channelInactive留出处理时间
+    private static final int CLOSE_SEEN = 1 << 3;
+    // 因为connector下线被关闭，断开时不发遗嘱
+    static final int DRAINED = 1 << 4;
+    // connection lost已经分派出去，由它释放槽位，清理时不释放，否则排队中的任务读不到连接状态
+    static final int LOST_QUEUED = 1 << 5;
+    private static final int COMPRESS_SHIFT = 8;
+    private static final int COMPRESS_MASK = 0xFF << COMPRESS_SHIFT;
+    private static final int KEEPALIVE_SHIFT = 16;
+
+    // 不是SessionSocketChannel的连接(例如embedded channel)退化为一个attribute
+    private static final AttributeKey<Integer> ATTR_KEY_SLOT = AttributeKey.valueOf("sessionSlot");
+
+    private final long epoch = System.nanoTime();
+
+    private volatile Page[] pages = new Page[0];
+
+    // 空闲槽位栈，由this保护
+    private int[] free = new int[0];
+    private int freeCount;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private SessionSlab() {
+    }
+
+    public static SessionSlab getInstance() {
+        return INSTANCE;
+    }
+
+    private static final class Page {
+        final AtomicReferenceArray<Channel> channels = new AtomicReferenceArray<Channel>(PAGE_SIZE);
+        final AtomicReferenceArray<String> clientIDs = new AtomicReferenceArray<String>(PAGE_SIZE);
+        final AtomicReferenceArray<String> userNames = new AtomicReferenceArray<String>(PAGE_SIZE);
+        // 进入过的直播频道，见LiveRoomManager
+        final AtomicReferenceArray<Set<String>> liveRooms = new AtomicReferenceArray<Set<String>>(PAGE_SIZE);
+        // 业务处理不在io线程上执行时，连接的按序执行器，见ProcessorDispatcher
+        final AtomicReferenceArray<Executor> executors = new AtomicReferenceArray<Executor>(PAGE_SIZE);
+        final AtomicLongArray generations = new AtomicLongArray(PAGE_SIZE);
+        final AtomicIntegerArray states = new AtomicIntegerArray(PAGE_SIZE);
+        // 相对epoch的秒数
+        final AtomicIntegerArray lastActive = new AtomicIntegerArray(PAGE_SIZE);
+    }
+
+    /**
+     * 连接建立时分配槽位，在ChannelInitializer里调用
+     */
+    public int allocate(Channel channel) {
+        int slot;
+        synchronized (this) {
+            if (freeCount == 0) {
+                grow();
+            }
+            slot = free[--freeCount];
+        }
+        Page page = pages[slot >>> PAGE_SHIFT];
+        int i = slot & PAGE_MASK;
+        page.clientIDs.set(i, null);
+        page.userNames.set(i, null);
+        page.liveRooms.set(i, null);
+        page.executors.set(i, null);
+        page.generations.set(i, 0);
+        page.states.set(i, 0);
+        page.lastActive.set(i, now());
+        page.channels.set(i, channel);
+        if (channel instanceof SessionSocketChannel) {
+            ((SessionSocketChannel) channel).slot = slot;
+        } else {
+            channel.attr(ATTR_KEY_SLOT).set(slot);
+        }
+        size.incrementAndGet();
+        return slot;
+    }
+
+    /**
+     * 连接断开并处理完connection lost后释放，重复调用无副作用
+     */
+    public void free(Channel channel) {
+        int slot = rawSlot(channel);
+        if (slot < 0) {
+            return;
+        }
+        Page page = pages[slot >>> PAGE_SHIFT];
+        int i = slot & PAGE_MASK;
+        if (!page.channels.compareAndSet(i, channel, null)) {
+            return;
+        }
+        page.clientIDs.set(i, null);
+        page.userNames.set(i, null);
+        page.liveRooms.set(i, null);
+        page.executors.set(i, null);
+        if (channel instanceof SessionSocketChannel) {
+            ((SessionSocketChannel) channel).slot = -1;
+        } else {
+            channel.attr(ATTR_KEY_SLOT).remove();
+        }
+        synchronized (this) {
+            free[freeCount++] = slot;
+        }
+        size.decrementAndGet();
+    }
+
+    /**
+     * @return 占用中的槽位数
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return 已分配的槽位总数
+     */
+    public int capacity() {
+        return pages.length * PAGE_SIZE;
+    }
+
+    /**
+     * @return 当前占用槽位的连接快照
+     */
+    public List<Channel> channels() {
+        List<Channel> channels = new ArrayList<Channel>(size());
+        for (Page page : pages) {
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                Channel channel = page.channels.get(i);
+                if (channel != null) {
+                    channels.add(channel);
+                }
+            }
+        }
+        return channels;
+    }
+
+    // 新增一页，空闲栈里低槽位在栈顶
+    private void grow() {
+        Page[] old = pages;
+        Page[] grown = new Page[old.length + 1];
+        System.arraycopy(old, 0, grown, 0, old.length);
+        grown[old.length] = new Page();
+        int[] newFree = new int[grown.length * PAGE_SIZE];
+        System.arraycopy(free, 0, newFree, 0, freeCount);
+        int base = old.length * PAGE_SIZE;
+        for (int i = PAGE_SIZE - 1; i >= 0; i--) {
+            newFree[freeCount++] = base + i;
+        }
+        free = newFree;
+        pages = grown;
+    }
+
+    private static int rawSlot(Channel channel) {
+        if (channel instanceof SessionSocketChannel) {
+            return ((SessionSocketChannel) channel).slot;
+        }
+        Integer slot = channel.attr(ATTR_KEY_SLOT).get();
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @return 属于这个channel的槽位，没有分配或者已经释放时返回-1
+     */
+    private int slotOf(Channel channel) {
+        int slot = rawSlot(channel);
+        if (slot < 0 || pages[slot >>> PAGE_SHIFT].channels.get(slot & PAGE_MASK) != channel) {
+            return -1;
+        }
+        return slot;
+    }
+
+    private int now() {
+        return (int) TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - epoch);
+    }
+
+    public void clientID(Channel channel, String clientID) {
+        int slot = slotOf(channel);
+        if (slot >= 0) {
+            pages[slot >>> PAGE_SHIFT].clientIDs.set(slot & PAGE_MASK, clientID);
+        }
+    }
+
+    public String clientID(Channel channel) {
+        int slot = slotOf(channel);
+        return slot < 0 ? null : pages[slot >>> PAGE_SHIFT].clientIDs.get(slot & PAGE_MASK);
+    }
+
+    public void userName(Channel channel, String userName) {
+        int slot = slotOf(channel);
+        if (slot >= 0) {
+            pages[slot >>> PAGE_SHIFT].userNames.set(slot & PAGE_MASK, userName);
+        }
+    }
+
+    public String userName(Channel channel) {
+        int slot = slotOf(channel);
+        return slot < 0 ? null : pages[slot >>> PAGE_SHIFT].userNames.get(slot & PAGE_MASK);
+    }
+
+    /**
+     * @return 是否设置成功，连接没有槽位时返回false
+     */
+    public boolean liveRooms(Channel channel, Set<String> liveRooms) {
+        int slot = slotOf(channel);
+        if (slot < 0) {
+            return false;
+        }
+        pages[slot >>> PAGE_SHIFT].liveRooms.set(slot & PAGE_MASK, liveRooms);
+        return true;
+    }
+
+    public Set<String> liveRooms(Channel channel) {
+        int slot = slotOf(channel);
+        return slot < 0 ? null : pages[slot >>> PAGE_SHIFT].liveRooms.get(slot & PAGE_MASK);
+    }
+
+    /**
+     * @return 是否设置成功，连接没有槽位时返回false
+     */
+    public boolean executor(Channel channel, Executor executor) {
+        int slot = slotOf(channel);
+        if (slot < 0) {
+            return false;
+        }
+        pages[slot >>> PAGE_SHIFT].executors.set(slot & PAGE_MASK, executor);
+        return true;
+    }
+
+    public Executor executor(Channel channel) {
+        int slot = slotOf(channel);
+        return slot < 0 ? null : pages[slot >>> PAGE_SHIFT].executors.get(slot & PAGE_MASK);
+    }
+
+    public void generation(Channel channel, long generation) {
+        int slot = slotOf(channel);
+        if (slot >= 0) {
+            pages[slot >>> PAGE_SHIFT].generations.set(slot & PAGE_MASK, generation);
+        }
+    }
+
+    /**
+     * @return 没有设置时为0
+     */
+    public long generation(Channel channel) {
+        int slot = slotOf(channel);
+        return slot < 0 ? 0 : pages[slot >>> PAGE_SHIFT].generations.get(slot & PAGE_MASK);
+    }
+
+    void flag(Channel channel, int flag, boolean value) {
+        update(channel, ~flag, value ? flag : 0);
+    }
+
+    boolean flag(Channel channel, int flag) {
+        return (state(channel) & flag) != 0;
+    }
+
+    /**
+     * 记录keepAlive，同时标记连接已经完成CONNECT，空闲检测从此按keepAlive计算
+     */
+    public void keepAlive(Channel channel, int keepAlive) {
+        update(channel, ~(0xFFFF << KEEPALIVE_SHIFT), ((keepAlive & 0xFFFF) << KEEPALIVE_SHIFT) | CONNECTED);
+    }
+
+    /**
+     * @return 连接是否已经通过CONNECT(登录成功)，槽位已释放的连接返回false
+     */
+    public boolean connected(Channel channel) {
+        return flag(channel, CONNECTED);
+    }
+
+    public int keepAlive(Channel channel) {
+        return state(channel) >>> KEEPALIVE_SHIFT;
+    }
+
+    public void compressType(Channel channel, int compressType) {
+        update(channel, ~COMPRESS_MASK, (compressType << COMPRESS_SHIFT) & COMPRESS_MASK);
+    }
+
+    public int compressType(Channel channel) {
+        return (state(channel) & COMPRESS_MASK) >>> COMPRESS_SHIFT;
+    }
+
+    /**
+     * 收到数据时调用，更新最后活跃时间
+     */
+    public void touch(Channel channel) {
+        int slot = slotOf(channel);
+        if (slot >= 0) {
+            pages[slot >>> PAGE_SHIFT].lastActive.lazySet(slot & PAGE_MASK, now());
+        }
+    }
+
+    private int state(Channel channel) {
+        int slot = slotOf(channel);
+        return slot < 0 ? 0 : pages[slot >>> PAGE_SHIFT].states.get(slot & PAGE_MASK);
+    }
+
+    private void update(Channel channel, int keepMask, int bits) {
+        int slot = slotOf(channel);
+        if (slot < 0) {
+            return;
+        }
+        AtomicIntegerArray states = pages[slot >>> PAGE_SHIFT].states;
+        int i = slot & PAGE_MASK;
+        for (; ; ) {
+            int current = states.get(i);
+            if (states.compareAndSet(i, current, (current & keepMask) | bits)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 关闭超时的连接：已CONNECT的连接超过1.5倍keepAlive没有收到数据(keepAlive为0时不检测)，
+     * 未CONNECT的连接建立后超过connectTimeoutSec；已经关闭但没有走到channelInactive的槽位在下一轮回收
+     *
+     * @return 关闭的连接数
+     */
+    public int sweep(int connectTimeoutSec) {
+        int now = now();
+        int closed = 0;
+        Page[] snapshot = pages;
+        for (Page page : snapshot) {
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                Channel channel = page.channels.get(i);
+                if (channel == null) {
+                    continue;
+                }
+                int state = page.states.get(i);
+                if (!channel.isOpen()) {
+                    if ((state & LOST_QUEUED) != 0) {
+                        continue;
+                    }
+                    if ((state & CLOSE_SEEN) != 0) {
+                        free(channel);
+                    } else {
+                        update(channel, ~0, CLOSE_SEEN);
+                    }
+                    continue;
+                }
+                int idle = now - page.lastActive.get(i);
+                int timeout;
+                if ((state & CONNECTED) != 0) {
+                    int keepAlive = state >>> KEEPALIVE_SHIFT;
+                    timeout = keepAlive == 0 ? Integer.MAX_VALUE : Math.round(keepAlive * 1.5f);
+                } else {
+                    timeout = connectTimeoutSec;
+                }
+                if (idle > timeout) {
+                    channel.close();
+                    closed++;
+                }
+            }
+        }
+        return closed;
+    }
+}
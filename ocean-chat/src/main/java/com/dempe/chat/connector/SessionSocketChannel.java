@@ -0,0 +1,24 @@
+package com.dempe.chat.connector;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.nio.channels.SocketChannel;
+
+/**
+ * 带会话槽位号的连接，连接状态存放在{@link SessionSlab}里，不再使用channel的attribute
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 03:20
+ * To change this template use File | Settings | File Templates.
+ */
+public class SessionSocketChannel extends NioSocketChannel {
+
+    // 未分配时为-1，由SessionSlab读写
+    volatile int slot = -1;
+
+    public SessionSocketChannel(Channel parent, EventLoop eventLoop, SocketChannel socket) {
+        super(parent, eventLoop, socket);
+    }
+}
@@ -0,0 +1,64 @@
+package com.dempe.chat.connector;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接空闲检测，单个线程定时扫描{@link SessionSlab}，代替每个连接一个IdleStateHandler
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.session.sweepSec           扫描间隔，默认5秒
+ * ocean.session.connectTimeoutSec  建立连接后多久没有完成CONNECT就关闭，默认30秒
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 03:40
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class SessionSweeper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionSweeper.class);
+
+    private final int sweepSec = Integer.getInteger("ocean.session.sweepSec", 5);
+    private final int connectTimeoutSec = Integer.getInteger("ocean.session.connectTimeoutSec", 30);
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("session-sweeper", true));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweep();
+            }
+        }, sweepSec, sweepSec, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private void sweep() {
+        try {
+            int closed = SessionSlab.getInstance().sweep(connectTimeoutSec);
+            if (closed > 0) {
+                LOGGER.info("close {} idle connections, {} sessions left", closed, SessionSlab.getInstance().size());
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("session sweep error", e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.dempe.chat.connector.auth;
+
+import com.dempe.logic.api.UserService;
+import com.dempe.ocean.db.model.User;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * connector的登录校验，避免大量客户端同时重连时每个CONNECT都rpc到logic层：
+ * 1.username带token登录前缀(R.TOKEN_USER_PREFIX)时密码为本节点签发的会话token，本地校验签名和有效期，不访问logic层；
+ * 凭证类型只由username决定，普通密码不会因为内容像token而被当作token
+ * 2.普通密码先查登录结果缓存，成功的结果缓存ocean.auth.cacheSec秒，失败的缓存ocean.auth.negativeCacheSec秒，
+ * 同一用户并发的登录请求只会有一个rpc，其他的等待它的结果
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.token.secret        token签名密钥，集群内的connector需一致；不配置时随机生成，token只在本进程内有效
+ * ocean.token.ttlSec        token有效期，默认86400
+ * ocean.auth.cacheSec       登录成功缓存时间，默认300
+ * ocean.auth.negativeCacheSec 登录失败缓存时间，默认30
+ * ocean.auth.cacheSize      缓存的最大用户数，默认200000
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 17:20
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class Authenticator {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(Authenticator.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String KEY_SEPARATOR = "\n";
+
+    @Autowired
+    private UserService userService;
+
+    private final SessionToken sessionToken;
+
+    private final Cache<String, Boolean> accepted;
+
+    private final Cache<String, Boolean> rejected;
+
+    public Authenticator() {
+        String secret = System.getProperty("ocean.token.secret");
+        byte[] secretBytes;
+        if (Strings.isNullOrEmpty(secret)) {
+            LOGGER.warn("ocean.token.secret not set, session tokens are only valid on this connector until restart");
+            secretBytes = new byte[32];
+            new SecureRandom().nextBytes(secretBytes);
+        } else {
+            secretBytes = secret.getBytes(UTF8);
+        }
+        sessionToken = new SessionToken(secretBytes,
+                TimeUnit.SECONDS.toMillis(Long.getLong("ocean.token.ttlSec", 86400L)));
+        long cacheSize = Long.getLong("ocean.auth.cacheSize", 200000L);
+        accepted = CacheBuilder.newBuilder().maximumSize(cacheSize)
+                .expireAfterWrite(Long.getLong("ocean.auth.cacheSec", 300L), TimeUnit.SECONDS).build();
+        rejected = CacheBuilder.newBuilder().maximumSize(cacheSize)
+                .expireAfterWrite(Long.getLong("ocean.auth.negativeCacheSec", 30L), TimeUnit.SECONDS).build();
+    }
+
+    /**
+     * @param loginName CONNECT里的username，用户uid，token登录时带R.TOKEN_USER_PREFIX前缀
+     * @param clientID  mqtt clientID，token与之绑定
+     * @param password  密码或者之前下发的会话token
+     * @return 是否登录成功
+     */
+    public boolean authenticate(String loginName, String clientID, byte[] password) {
+        final String username = SessionToken.username(loginName);
+        final String pwd = new String(password, UTF8);
+        if (SessionToken.isTokenLogin(loginName)) {
+            // token校验失败时不再当作密码去rpc，客户端需要用原密码重新登录
+            return sessionToken.verify(pwd, username, clientID);
+        }
+        // 缓存key里不保存明文密码
+        String key = username + KEY_SEPARATOR + Hashing.sha256().hashBytes(password).toString();
+        if (rejected.getIfPresent(key) != null) {
+            return false;
+        }
+        try {
+            return accepted.get(key, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    User user = userService.login(username, pwd);
+                    if (user == null) {
+                        throw new LoginRejectedException();
+                    }
+                    return Boolean.TRUE;
+                }
+            });
+        } catch (ExecutionException e) {
+            return onLoginError(key, username, e.getCause());
+        } catch (UncheckedExecutionException e) {
+            return onLoginError(key, username, e.getCause());
+        }
+    }
+
+    /**
+     * 签发新的会话token，每次登录成功都重新签发，延长有效期
+     */
+    public String issueToken(String username, String clientID) {
+        return sessionToken.issue(username, clientID);
+    }
+
+    private boolean onLoginError(String key, String username, Throwable cause) {
+        if (cause instanceof LoginRejectedException) {
+            rejected.put(key, Boolean.TRUE);
+        } else {
+            // rpc异常不缓存，下次重试
+            LOGGER.error("login rpc error for user {}", username, cause);
+        }
+        return false;
+    }
+
+    // 只用来区分登录失败和rpc异常，不需要堆栈
+    private static class LoginRejectedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        LoginRejectedException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.dempe.chat.connector.compress;
+
+import com.dempe.ocean.common.CompressType;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * payload压缩算法扩展点，实现类注册为spring bean即可被{@link PayloadCompression}使用
+ * 实现需要线程安全，io线程、群消息fan-out线程和rpc线程都会调用
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 02:15
+ * To change this template use File | Settings | File Templates.
+ */
+public interface Compressor {
+
+    CompressType type();
+
+    /**
+     * 压缩in的可读部分，写入out
+     */
+    void compress(ByteBuf in, ByteBuf out);
+
+    /**
+     * 解压in的可读部分，写入out；out的maxCapacity即解压后的大小上限，超过时抛出异常
+     */
+    void decompress(ByteBuf in, ByteBuf out);
+}
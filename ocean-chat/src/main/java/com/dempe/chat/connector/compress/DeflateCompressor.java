@@ -0,0 +1,100 @@
+package com.dempe.chat.connector.compress;
+
+import com.dempe.ocean.common.CompressType;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.compression.DecompressionException;
+import org.springframework.stereotype.Component;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * zlib格式，Deflater/Inflater按线程复用
+ * jdk7的Deflater只接受byte[]，direct buffer的输入需要先拷贝一次
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 02:25
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class DeflateCompressor implements Compressor {
+
+    private static final int CHUNK_SIZE = 4096;
+
+    private final int level = Integer.getInteger("ocean.compress.deflateLevel", Deflater.BEST_SPEED);
+
+    private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(level);
+        }
+    };
+
+    private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private final ThreadLocal<byte[]> chunks = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[CHUNK_SIZE];
+        }
+    };
+
+    @Override
+    public CompressType type() {
+        return CompressType.DEFLATE;
+    }
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        Deflater deflater = deflaters.get();
+        byte[] chunk = chunks.get();
+        deflater.reset();
+        if (in.hasArray()) {
+            deflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes());
+        } else {
+            deflater.setInput(toArray(in));
+        }
+        in.skipBytes(in.readableBytes());
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.writeBytes(chunk, 0, n);
+        }
+    }
+
+    @Override
+    public void decompress(ByteBuf in, ByteBuf out) {
+        Inflater inflater = inflaters.get();
+        byte[] chunk = chunks.get();
+        inflater.reset();
+        if (in.hasArray()) {
+            inflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes());
+        } else {
+            inflater.setInput(toArray(in));
+        }
+        in.skipBytes(in.readableBytes());
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DecompressionException("truncated deflate payload");
+                }
+                out.writeBytes(chunk, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new DecompressionException(e);
+        }
+    }
+
+    private static byte[] toArray(ByteBuf in) {
+        byte[] bytes = new byte[in.readableBytes()];
+        in.getBytes(in.readerIndex(), bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,147 @@
+package com.dempe.chat.connector.compress;
+
+import com.dempe.chat.connector.NettyUtils;
+import com.dempe.ocean.common.CompressType;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息payload压缩
+ * 1.客户端通过s|compress协商下行压缩算法，记录在连接上，超过阈值的下行消息压缩后以z|compressType|原topic下发
+ * 2.客户端也可以把上行消息压缩后以z|compressType|原topic发送；问答消息的压缩算法在topic里指定
+ * 3.压缩和解压都在池化的direct buffer上进行，结果拷贝成大小刚好的堆内buffer
+ * 4.压缩结果按原payload对象缓存(弱引用、按对象比较)，群消息fan-out给多个成员时同一条消息只压缩一次
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.compress.threshold     超过多少字节才压缩，默认512
+ * ocean.compress.maxSize       解压后的大小上限，默认1M
+ * ocean.compress.cacheSize     压缩结果缓存的消息条数，默认10000
+ * ocean.compress.deflateLevel  deflate压缩级别，默认1(最快)
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 02:30
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class PayloadCompression {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PayloadCompression.class);
+
+    // 压缩后没有变小，缓存这个结果避免重复尝试
+    private static final ByteBuffer NOT_SMALLER = ByteBuffer.allocate(0);
+
+    private final int threshold = Integer.getInteger("ocean.compress.threshold", 512);
+    private final int maxSize = Integer.getInteger("ocean.compress.maxSize", 1024 * 1024);
+
+    // 原payload -> 按CompressType.code索引的压缩结果
+    private final Cache<ByteBuffer, ByteBuffer[]> frames = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(Integer.getInteger("ocean.compress.cacheSize", 10000))
+            .expireAfterWrite(30, TimeUnit.SECONDS)
+            .build();
+
+    @Autowired(required = false)
+    private List<Compressor> compressorList = Collections.emptyList();
+
+    private final Compressor[] compressors = new Compressor[CompressType.values().length];
+
+    @PostConstruct
+    public void init() {
+        for (Compressor compressor : compressorList) {
+            compressors[compressor.type().getCode()] = compressor;
+        }
+        LOGGER.info("payload compressors {}, threshold {}", compressorList, threshold);
+    }
+
+    public boolean isSupported(int compressType) {
+        return compressType > 0 && compressType < compressors.length && compressors[compressType] != null;
+    }
+
+    /**
+     * 记录连接协商的下行压缩算法
+     *
+     * @return 实际采用的算法，不支持时为0
+     */
+    public int negotiate(Channel channel, int compressType) {
+        int accepted = isSupported(compressType) ? compressType : CompressType.NONE.getCode();
+        NettyUtils.compressType(channel, accepted);
+        return accepted;
+    }
+
+    /**
+     * @return 压缩后的payload；不支持、小于阈值或者压缩后没有变小时返回null，调用方原样发送
+     */
+    public ByteBuffer compress(int compressType, ByteBuffer payload) {
+        if (payload.remaining() < threshold || !isSupported(compressType)) {
+            return null;
+        }
+        ByteBuffer[] slots = frames.getIfPresent(payload);
+        if (slots == null) {
+            slots = new ByteBuffer[compressors.length];
+            ByteBuffer[] exists = frames.asMap().putIfAbsent(payload, slots);
+            if (exists != null) {
+                slots = exists;
+            }
+        }
+        // 并发时可能重复压缩一次，结果相同，不加锁
+        ByteBuffer compressed = slots[compressType];
+        if (compressed == null) {
+            compressed = doCompress(compressors[compressType], payload);
+            slots[compressType] = compressed;
+        }
+        return compressed == NOT_SMALLER ? null : compressed;
+    }
+
+    /**
+     * @throws RuntimeException 不支持的算法、数据损坏或者解压后超过上限
+     */
+    public ByteBuffer decompress(int compressType, ByteBuffer payload) {
+        if (compressType == CompressType.NONE.getCode()) {
+            return payload;
+        }
+        if (!isSupported(compressType)) {
+            throw new IllegalArgumentException("unsupported compress type " + compressType);
+        }
+        ByteBuf out = PooledByteBufAllocator.DEFAULT.directBuffer(
+                Math.min(Math.max(payload.remaining() * 4, 256), maxSize), maxSize);
+        try {
+            compressors[compressType].decompress(Unpooled.wrappedBuffer(payload.duplicate()), out);
+            return copyOf(out);
+        } finally {
+            out.release();
+        }
+    }
+
+    private ByteBuffer doCompress(Compressor compressor, ByteBuffer payload) {
+        int length = payload.remaining();
+        ByteBuf out = PooledByteBufAllocator.DEFAULT.directBuffer(length);
+        try {
+            compressor.compress(Unpooled.wrappedBuffer(payload.duplicate()), out);
+            return out.readableBytes() < length ? copyOf(out) : NOT_SMALLER;
+        } finally {
+            out.release();
+        }
+    }
+
+    private static ByteBuffer copyOf(ByteBuf buf) {
+        ByteBuffer copy = ByteBuffer.allocate(buf.readableBytes());
+        buf.readBytes(copy);
+        copy.flip();
+        return copy;
+    }
+}
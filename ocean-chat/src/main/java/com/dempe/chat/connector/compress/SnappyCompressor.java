@@ -0,0 +1,33 @@
+package com.dempe.chat.connector.compress;
+
+import com.dempe.ocean.common.CompressType;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.compression.Snappy;
+import org.springframework.stereotype.Component;
+
+/**
+ * snappy block格式(不带framing)，直接使用netty的实现，可以在direct buffer上操作
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 02:20
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class SnappyCompressor implements Compressor {
+
+    @Override
+    public CompressType type() {
+        return CompressType.SNAPPY;
+    }
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        // Snappy带状态，每次新建，对象很小
+        new Snappy().encode(in, out, in.readableBytes());
+    }
+
+    @Override
+    public void decompress(ByteBuf in, ByteBuf out) {
+        new Snappy().decode(in, out);
+    }
+}
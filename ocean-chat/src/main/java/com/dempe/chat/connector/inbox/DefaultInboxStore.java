@@ -0,0 +1,70 @@
+package com.dempe.chat.connector.inbox;
+
+import com.dempe.logic.api.MessageService;
+import com.dempe.ocean.db.model.im.InboxMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+/**
+ * connector使用的收件箱，按ocean.sync.store选择：memory为本地内存{@link MemoryInboxStore}(默认)，
+ * rpc为logic层的MessageService{@link RpcInboxStore}
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 00:50
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class DefaultInboxStore implements InboxStore {
+
+    private final boolean remote = "rpc".equals(System.getProperty("ocean.sync.store"));
+
+    @Autowired
+    private MessageService messageService;
+
+    private InboxStore delegate;
+
+    @PostConstruct
+    public void init() {
+        delegate = remote ? new RpcInboxStore(messageService) : new MemoryInboxStore();
+    }
+
+    /**
+     * @return 是否为远程存储，远程存储的调用会阻塞，不能在io线程上执行
+     */
+    public boolean isRemote() {
+        return remote;
+    }
+
+    @Override
+    public long append(String uid, String topic, byte[] payload) {
+        return delegate.append(uid, topic, payload);
+    }
+
+    @Override
+    public long[] appendAll(long[] uids, String topic, byte[] payload) {
+        return delegate.appendAll(uids, topic, payload);
+    }
+
+    @Override
+    public long[] appendBatch(List<InboxMessage> messages) {
+        return delegate.appendBatch(messages);
+    }
+
+    @Override
+    public long latestSeq(String uid) {
+        return delegate.latestSeq(uid);
+    }
+
+    @Override
+    public List<InboxMessage> fetch(String uid, long afterSeq, int limit) {
+        return delegate.fetch(uid, afterSeq, limit);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,46 @@
+package com.dempe.chat.connector.inbox;
+
+import com.dempe.ocean.db.model.im.InboxMessage;
+
+import java.util.List;
+
+/**
+ * 用户收件箱，按(uid, seq)保存待同步的消息
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 22:00
+ * To change this template use File | Settings | File Templates.
+ */
+public interface InboxStore {
+
+    /**
+     * 追加一条消息
+     *
+     * @return 分配的seq，同一用户内单调递增
+     */
+    long append(String uid, String topic, byte[] payload);
+
+    /**
+     * 同一条消息追加到多个用户
+     *
+     * @return 与uids一一对应的seq
+     */
+    long[] appendAll(long[] uids, String topic, byte[] payload);
+
+    /**
+     * 批量追加，每条消息需要填好uid
+     *
+     * @return 与messages一一对应的seq，写入失败的为0
+     */
+    long[] appendBatch(List<InboxMessage> messages);
+
+    /**
+     * @return 用户最新的seq，没有消息时为0
+     */
+    long latestSeq(String uid);
+
+    /**
+     * @return seq大于afterSeq的消息，按seq升序，最多limit条
+     */
+    List<InboxMessage> fetch(String uid, long afterSeq, int limit);
+}
@@ -0,0 +1,143 @@
+package com.dempe.chat.connector.inbox;
+
+import com.dempe.ocean.db.model.im.InboxMessage;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内存中的收件箱，每个用户保留最近maxPerUser条，超过ttl的消息不再返回
+ * 新建收件箱时seq从当前时间(毫秒*1000)开始，收件箱被淘汰或者进程重启后seq仍然大于之前分配的值，
+ * seq只保证单调递增，不保证连续
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.sync.maxPerUser   每个用户保留的消息数，默认1000
+ * ocean.sync.ttlSec       消息保留时间，默认7天
+ * ocean.sync.maxUsers     内存中的收件箱数，默认1000000
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 22:05
+ * To change this template use File | Settings | File Templates.
+ */
+public class MemoryInboxStore implements InboxStore {
+
+    private final int maxPerUser = Integer.getInteger("ocean.sync.maxPerUser", 1000);
+    private final long ttlMillis = TimeUnit.SECONDS.toMillis(Long.getLong("ocean.sync.ttlSec", 7 * 24 * 3600L));
+
+    private final Cache<String, UserInbox> inboxes = CacheBuilder.newBuilder()
+            .maximumSize(Long.getLong("ocean.sync.maxUsers", 1000000L))
+            .expireAfterAccess(ttlMillis, TimeUnit.MILLISECONDS).build();
+
+    @Override
+    public long append(String uid, String topic, byte[] payload) {
+        return inbox(uid).append(topic, payload);
+    }
+
+    @Override
+    public long[] appendAll(long[] uids, String topic, byte[] payload) {
+        long[] seqs = new long[uids.length];
+        for (int i = 0; i < uids.length; i++) {
+            seqs[i] = append(String.valueOf(uids[i]), topic, payload);
+        }
+        return seqs;
+    }
+
+    @Override
+    public long[] appendBatch(List<InboxMessage> messages) {
+        long[] seqs = new long[messages.size()];
+        for (int i = 0; i < seqs.length; i++) {
+            InboxMessage message = messages.get(i);
+            seqs[i] = append(message.getUid(), message.getTopic(), message.getPayload());
+        }
+        return seqs;
+    }
+
+    @Override
+    public long latestSeq(String uid) {
+        UserInbox inbox = inboxes.getIfPresent(uid);
+        return inbox == null ? 0 : inbox.latestSeq();
+    }
+
+    @Override
+    public List<InboxMessage> fetch(String uid, long afterSeq, int limit) {
+        UserInbox inbox = inboxes.getIfPresent(uid);
+        if (inbox == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        return inbox.fetch(afterSeq, limit, System.currentTimeMillis() - ttlMillis);
+    }
+
+    private UserInbox inbox(String uid) {
+        try {
+            return inboxes.get(uid, new Callable<UserInbox>() {
+                @Override
+                public UserInbox call() throws Exception {
+                    return new UserInbox(maxPerUser);
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 环形数组，seq连续分配，位置由seq直接算出，按需扩容到maxPerUser
+     */
+    private static final class UserInbox {
+        private final int capacity;
+        private InboxMessage[] ring = new InboxMessage[8];
+        private final long firstSeq;
+        private long lastSeq;
+
+        UserInbox(int capacity) {
+            this.capacity = capacity;
+            this.firstSeq = System.currentTimeMillis() * 1000;
+            this.lastSeq = firstSeq - 1;
+        }
+
+        synchronized long append(String topic, byte[] payload) {
+            long seq = ++lastSeq;
+            int count = (int) Math.min(seq - firstSeq + 1, capacity);
+            if (count > ring.length) {
+                grow(Math.min(capacity, ring.length * 2));
+            }
+            ring[(int) (seq % ring.length)] = new InboxMessage(seq, topic, payload, System.currentTimeMillis());
+            return seq;
+        }
+
+        synchronized long latestSeq() {
+            return lastSeq < firstSeq ? 0 : lastSeq;
+        }
+
+        synchronized List<InboxMessage> fetch(long afterSeq, int limit, long expireBefore) {
+            long oldest = Math.max(firstSeq, lastSeq - ring.length + 1);
+            long from = Math.max(afterSeq + 1, oldest);
+            if (from > lastSeq) {
+                return Collections.emptyList();
+            }
+            List<InboxMessage> result = new ArrayList<InboxMessage>((int) Math.min(limit, lastSeq - from + 1));
+            for (long seq = from; seq <= lastSeq && result.size() < limit; seq++) {
+                InboxMessage msg = ring[(int) (seq % ring.length)];
+                if (msg.getCreateTime() >= expireBefore) {
+                    result.add(msg);
+                }
+            }
+            return result;
+        }
+
+        private void grow(int newLength) {
+            InboxMessage[] newRing = new InboxMessage[newLength];
+            for (long seq = Math.max(firstSeq, lastSeq - ring.length); seq < lastSeq; seq++) {
+                newRing[(int) (seq % newLength)] = ring[(int) (seq % ring.length)];
+            }
+            ring = newRing;
+        }
+    }
+}
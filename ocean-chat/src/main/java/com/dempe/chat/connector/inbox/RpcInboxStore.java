@@ -0,0 +1,75 @@
+package com.dempe.chat.connector.inbox;
+
+import com.dempe.logic.api.MessageService;
+import com.dempe.ocean.db.model.im.InboxMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 收件箱存在logic层(MessageService)，多个connector共用，connector重启后消息不丢
+ * 每次调用都是一次同步rpc，不能在io线程上调用
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 00:05
+ * To change this template use File | Settings | File Templates.
+ */
+public class RpcInboxStore implements InboxStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RpcInboxStore.class);
+
+    private final MessageService messageService;
+
+    public RpcInboxStore(MessageService messageService) {
+        this.messageService = messageService;
+    }
+
+    @Override
+    public long append(String uid, String topic, byte[] payload) {
+        return messageService.append(uid, topic, payload);
+    }
+
+    @Override
+    public long[] appendAll(long[] uids, String topic, byte[] payload) {
+        if (uids.length == 0) {
+            return uids;
+        }
+        // rpc失败(超时、熔断)时seq为0，表示没有写入，同步时只是少了这条离线消息
+        long[] seqs;
+        try {
+            seqs = messageService.appendAll(uids, topic, payload);
+        } catch (RuntimeException e) {
+            LOGGER.warn("append to inbox of {} users error: {}", uids.length, e.toString());
+            seqs = null;
+        }
+        return seqs == null ? new long[uids.length] : seqs;
+    }
+
+    @Override
+    public long[] appendBatch(List<InboxMessage> messages) {
+        if (messages.isEmpty()) {
+            return new long[0];
+        }
+        long[] seqs;
+        try {
+            seqs = messageService.appendBatch(messages);
+        } catch (RuntimeException e) {
+            LOGGER.warn("append batch of {} messages to inbox error: {}", messages.size(), e.toString());
+            seqs = null;
+        }
+        return seqs == null ? new long[messages.size()] : seqs;
+    }
+
+    @Override
+    public long latestSeq(String uid) {
+        return messageService.latestSeq(uid);
+    }
+
+    @Override
+    public List<InboxMessage> fetch(String uid, long afterSeq, int limit) {
+        List<InboxMessage> messages = messageService.fetch(uid, afterSeq, limit);
+        return messages == null ? Collections.<InboxMessage>emptyList() : messages;
+    }
+}
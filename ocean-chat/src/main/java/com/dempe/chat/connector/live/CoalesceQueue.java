@@ -0,0 +1,84 @@
+package com.dempe.chat.connector.live;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个频道在合并窗口内等待下发的消息，分高低两个优先级：
+ * 服务端产生的频道事件(礼物、公告等)为高优先级，客户端的弹幕为低优先级
+ * 1.队列满时按丢弃策略丢掉最旧或者最新的一条
+ * 2.每次最多取出maxBatch条，高优先级在前；取完后剩下的低优先级消息已经过时，直接丢弃，高优先级的留到下一个窗口
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 21:20
+ * To change this template use File | Settings | File Templates.
+ */
+class CoalesceQueue {
+
+    enum DropPolicy {
+        OLDEST, NEWEST
+    }
+
+    private final ArrayDeque<ByteBuffer> high = new ArrayDeque<ByteBuffer>();
+    private final ArrayDeque<ByteBuffer> low = new ArrayDeque<ByteBuffer>();
+    private final int highCapacity;
+    private final int lowCapacity;
+    private final int maxBatch;
+    private final DropPolicy dropPolicy;
+    private final AtomicLong dropped;
+    private boolean scheduled;
+
+    CoalesceQueue(int highCapacity, int lowCapacity, int maxBatch, DropPolicy dropPolicy, AtomicLong dropped) {
+        this.highCapacity = highCapacity;
+        this.lowCapacity = lowCapacity;
+        this.maxBatch = maxBatch;
+        this.dropPolicy = dropPolicy;
+        this.dropped = dropped;
+    }
+
+    /**
+     * @return 是否需要调用方安排一次下发(窗口内的第一条消息)
+     */
+    synchronized boolean offer(ByteBuffer payload, boolean highPriority) {
+        ArrayDeque<ByteBuffer> queue = highPriority ? high : low;
+        if (queue.size() >= (highPriority ? highCapacity : lowCapacity)) {
+            dropped.incrementAndGet();
+            if (dropPolicy == DropPolicy.NEWEST) {
+                return false;
+            }
+            queue.pollFirst();
+        }
+        queue.addLast(payload);
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    /**
+     * 取出本窗口要下发的消息，仍有积压的高优先级消息时保持scheduled，调用方通过{@link #hasPending()}判断是否再安排一次
+     */
+    synchronized List<ByteBuffer> drain() {
+        List<ByteBuffer> batch = new ArrayList<ByteBuffer>(Math.min(maxBatch, high.size() + low.size()));
+        while (batch.size() < maxBatch && !high.isEmpty()) {
+            batch.add(high.pollFirst());
+        }
+        while (batch.size() < maxBatch && !low.isEmpty()) {
+            batch.add(low.pollFirst());
+        }
+        if (!low.isEmpty()) {
+            dropped.addAndGet(low.size());
+            low.clear();
+        }
+        scheduled = !high.isEmpty();
+        return batch;
+    }
+
+    synchronized boolean hasPending() {
+        return scheduled;
+    }
+}
@@ -0,0 +1,408 @@
+package com.dempe.chat.connector.live;
+
+import com.dempe.chat.common.mqtt.codec.Utils;
+import com.dempe.chat.connector.SessionSlab;
+import com.dempe.ocean.common.R;
+import com.dempe.ocean.common.TopicType;
+import com.dempe.ocean.utils.BatchPayload;
+import com.dempe.ocean.utils.TokenBucket;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 直播频道(房间)，订阅l|topSid[|subSid]即进入频道，向该topic发布即在频道内广播
+ * 1.观众按连接所属的event loop分片保存，每个分片只在自己的loop上读写，没有跨线程竞争
+ * 2.广播时只编码一次qos0 PUBLISH帧，各分片在自己的loop上把同一个帧写给本分片的观众，10万人的频道被拆成多个loop并行下发
+ * 3.同一个loop上积压的多次广播合并成一个任务，每个连接所有帧写完后只flush一次
+ * 4.可选的频道级限速，超出速率的弹幕直接丢弃；写缓冲已满(客户端收不过来)的连接跳过本条
+ * 5.可选的合并模式：窗口内的消息进入频道的优先级队列({@link CoalesceQueue})，窗口结束时打包成一个b|topic的PUBLISH，
+ * 客户端收到的帧数与消息量无关，只与窗口大小有关
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.live.roomRate/roomBurst          每个频道每秒广播消息数/突发数，默认0(不限)
+ * ocean.live.coalesceMillis              合并窗口，默认0(不合并，逐条下发)
+ * ocean.live.maxBatch                    每个合并帧最多包含的消息数，默认50
+ * ocean.live.highCapacity/lowCapacity    每个频道高/低优先级队列长度，默认200/500
+ * ocean.live.dropPolicy                  队列满时丢弃oldest或者newest，默认oldest
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 20:40
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class LiveRoomManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LiveRoomManager.class);
+
+    private final double roomRate = Double.parseDouble(System.getProperty("ocean.live.roomRate", "0"));
+    private final int roomBurst = Integer.getInteger("ocean.live.roomBurst", 100);
+    private final long coalesceMillis = Long.getLong("ocean.live.coalesceMillis", 0L);
+    private final int maxBatch = Integer.getInteger("ocean.live.maxBatch", 50);
+    private final int highCapacity = Integer.getInteger("ocean.live.highCapacity", 200);
+    private final int lowCapacity = Integer.getInteger("ocean.live.lowCapacity", 500);
+    private final CoalesceQueue.DropPolicy dropPolicy = CoalesceQueue.DropPolicy.valueOf(
+            System.getProperty("ocean.live.dropPolicy", "oldest").toUpperCase());
+
+    private final ConcurrentMap<EventExecutor, LoopShard> shards = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, Room> rooms = Maps.newConcurrentMap();
+
+    private final AtomicLong broadcasts = new AtomicLong();
+    private final AtomicLong rateDropped = new AtomicLong();
+    private final AtomicLong slowDropped = new AtomicLong();
+    private final AtomicLong overloadDropped = new AtomicLong();
+
+    // 合并窗口到期后打包下发，只做编码和投递
+    private final ScheduledExecutorService coalesceExecutor;
+
+    private final ChannelFutureListener closeListener = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+            leaveAll(future.channel());
+        }
+    };
+
+    public LiveRoomManager() {
+        coalesceExecutor = coalesceMillis > 0
+                ? Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("live-coalesce", true)) : null;
+    }
+
+    /**
+     * 进入频道，可以在任意线程调用(处理SUBSCRIBE时)，实际加入在连接自己的io线程上执行
+     */
+    public void join(final Channel channel, final String topic) {
+        if (!channel.eventLoop().inEventLoop()) {
+            // 分片的members和连接的频道集合只在io线程上修改，处理器不在io线程上执行时转过去
+            channel.eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    join(channel, topic);
+                }
+            });
+            return;
+        }
+        // close和close监听都在io线程上执行，这里连接还活着，之后的close监听一定能看到本次加入
+        if (!channel.isActive()) {
+            return;
+        }
+        Set<String> joined = SessionSlab.getInstance().liveRooms(channel);
+        if (joined == null) {
+            joined = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(4));
+            if (!SessionSlab.getInstance().liveRooms(channel, joined)) {
+                // 没有槽位，断开时找不到这个集合，不能加入
+                return;
+            }
+            // 连接断开时自动退出所有频道
+            channel.closeFuture().addListener(closeListener);
+        }
+        if (!joined.add(topic)) {
+            return;
+        }
+        for (; ; ) {
+            Room room = rooms.get(topic);
+            if (room == null) {
+                room = new Room();
+                Room prev = rooms.putIfAbsent(topic, room);
+                if (prev != null) {
+                    room = prev;
+                }
+            }
+            if (room.join()) {
+                break;
+            }
+            // 频道刚被最后一个观众关闭，移除后重建
+            rooms.remove(topic, room);
+        }
+        shard(channel.eventLoop()).join(topic, channel);
+    }
+
+    /**
+     * 退出频道，可以在任意线程调用，实际退出在连接自己的io线程上执行
+     */
+    public void leave(final Channel channel, final String topic) {
+        if (!channel.eventLoop().inEventLoop()) {
+            channel.eventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    leave(channel, topic);
+                }
+            });
+            return;
+        }
+        Set<String> joined = SessionSlab.getInstance().liveRooms(channel);
+        if (joined == null || !joined.remove(topic)) {
+            return;
+        }
+        shard(channel.eventLoop()).leave(topic, channel);
+        Room room = rooms.get(topic);
+        if (room != null && room.leave()) {
+            rooms.remove(topic, room);
+        }
+    }
+
+    /**
+     * 可以在任意线程调用，频道集合是并发集合
+     */
+    public boolean isJoined(Channel channel, String topic) {
+        Set<String> joined = SessionSlab.getInstance().liveRooms(channel);
+        return joined != null && joined.contains(topic);
+    }
+
+    /**
+     * 向频道内所有观众广播，可以在任意线程调用，只做编码和投递，实际写入在各分片的io线程上执行
+     *
+     * @param highPriority 合并模式下是否为高优先级，服务端产生的频道事件为true，客户端弹幕为false
+     * @return 是否进入下发，频道不存在或者超出频道限速时返回false
+     */
+    public boolean broadcast(final String topic, ByteBuffer payload, boolean highPriority) {
+        final Room room = rooms.get(topic);
+        if (room == null || room.viewers.get() <= 0) {
+            return false;
+        }
+        if (!room.limiter.tryAcquire()) {
+            rateDropped.incrementAndGet();
+            return false;
+        }
+        broadcasts.incrementAndGet();
+        if (room.queue == null) {
+            dispatch(topic, Utils.encodePublishFrame(PooledByteBufAllocator.DEFAULT, topic, payload, false));
+            return true;
+        }
+        if (room.queue.offer(payload.duplicate(), highPriority)) {
+            scheduleFlush(topic, room);
+        }
+        return true;
+    }
+
+    private void scheduleFlush(final String topic, final Room room) {
+        coalesceExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush(topic, room);
+            }
+        }, coalesceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(String topic, Room room) {
+        try {
+            List<ByteBuffer> batch = room.queue.drain();
+            if (batch.size() == 1) {
+                dispatch(topic, Utils.encodePublishFrame(PooledByteBufAllocator.DEFAULT, topic, batch.get(0), false));
+            } else if (!batch.isEmpty()) {
+                dispatch(topic, Utils.encodePublishFrame(PooledByteBufAllocator.DEFAULT,
+                        TopicType.BATCH.getType() + R.SPLIT + topic, BatchPayload.encode(batch), false));
+            }
+        } catch (Exception e) {
+            LOGGER.error("flush live room <{}> error", topic, e);
+        } finally {
+            if (room.queue.hasPending()) {
+                scheduleFlush(topic, room);
+            }
+        }
+    }
+
+    /**
+     * 把编码好的帧交给所有分片，frame的引用由本方法释放
+     */
+    private void dispatch(String topic, ByteBuf frame) {
+        try {
+            for (LoopShard shard : shards.values()) {
+                // 分片处理完后释放
+                shard.offer(new Frame(topic, frame.retain()));
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    public int viewers(String topic) {
+        Room room = rooms.get(topic);
+        return room == null ? 0 : Math.max(0, room.viewers.get());
+    }
+
+    public int roomCount() {
+        return rooms.size();
+    }
+
+    public long getBroadcasts() {
+        return broadcasts.get();
+    }
+
+    public long getRateDropped() {
+        return rateDropped.get();
+    }
+
+    public long getSlowDropped() {
+        return slowDropped.get();
+    }
+
+    public long getOverloadDropped() {
+        return overloadDropped.get();
+    }
+
+    private void leaveAll(Channel channel) {
+        Set<String> joined = SessionSlab.getInstance().liveRooms(channel);
+        if (joined == null) {
+            return;
+        }
+        for (String topic : Lists.newArrayList(joined)) {
+            leave(channel, topic);
+        }
+    }
+
+    private LoopShard shard(EventExecutor loop) {
+        LoopShard shard = shards.get(loop);
+        if (shard == null) {
+            shard = new LoopShard(loop);
+            LoopShard prev = shards.putIfAbsent(loop, shard);
+            if (prev != null) {
+                shard = prev;
+            }
+        }
+        return shard;
+    }
+
+    /**
+     * 频道的观众总数和限速，观众按loop分散在各个分片里
+     */
+    private final class Room {
+        // 最后一个观众离开后置为-1，之后不能再加入，需要新建
+        final AtomicInteger viewers = new AtomicInteger();
+        final TokenBucket limiter = new TokenBucket(roomRate, roomBurst);
+        // 不合并时为null
+        final CoalesceQueue queue = coalesceMillis > 0
+                ? new CoalesceQueue(highCapacity, lowCapacity, maxBatch, dropPolicy, overloadDropped) : null;
+
+        boolean join() {
+            for (; ; ) {
+                int current = viewers.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (viewers.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return 是否是最后一个观众，频道随之关闭
+         */
+        boolean leave() {
+            return viewers.decrementAndGet() == 0 && viewers.compareAndSet(0, -1);
+        }
+    }
+
+    private static final class Frame {
+        final String topic;
+        final ByteBuf buf;
+
+        Frame(String topic, ByteBuf buf) {
+            this.topic = topic;
+            this.buf = buf;
+        }
+    }
+
+    /**
+     * 一个event loop上的观众，members只在该loop上访问
+     */
+    private final class LoopShard implements Runnable {
+        final EventExecutor loop;
+        final Map<String, Set<Channel>> members = Maps.newHashMap();
+        final Queue<Frame> pending = new ConcurrentLinkedQueue<Frame>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        // 本轮写过的连接，最后统一flush，只在loop上使用
+        final Set<Channel> written = Sets.newIdentityHashSet();
+
+        LoopShard(EventExecutor loop) {
+            this.loop = loop;
+        }
+
+        void join(String topic, Channel channel) {
+            Set<Channel> channels = members.get(topic);
+            if (channels == null) {
+                channels = Sets.newHashSet();
+                members.put(topic, channels);
+            }
+            channels.add(channel);
+        }
+
+        void leave(String topic, Channel channel) {
+            Set<Channel> channels = members.get(topic);
+            if (channels != null && channels.remove(channel) && channels.isEmpty()) {
+                members.remove(topic);
+            }
+        }
+
+        void offer(Frame frame) {
+            pending.add(frame);
+            if (scheduled.compareAndSet(false, true)) {
+                loop.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            scheduled.set(false);
+            Frame frame;
+            try {
+                while ((frame = pending.poll()) != null) {
+                    try {
+                        write(frame);
+                    } finally {
+                        frame.buf.release();
+                    }
+                }
+                for (Channel channel : written) {
+                    channel.flush();
+                }
+            } catch (Exception e) {
+                LOGGER.error("live broadcast error", e);
+            } finally {
+                written.clear();
+            }
+        }
+
+        private void write(Frame frame) {
+            Set<Channel> channels = members.get(frame.topic);
+            if (channels == null) {
+                return;
+            }
+            for (Channel channel : channels) {
+                if (!channel.isWritable()) {
+                    slowDropped.incrementAndGet();
+                    continue;
+                }
+                channel.write(frame.buf.duplicate().retain());
+                written.add(channel);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.dempe.chat.connector.persist;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 有界无锁环形队列，多个生产者(io线程)、单个消费者(写线程)
+ * 每个槽位带一个序号：等于写位置时可写，等于写位置+1时可读，读完后改为下一圈的写位置
+ * 生产者只在抢写位置时做一次CAS，消费者不需要CAS，队列满时offer直接返回false
+ * 写线程和OrderedExecutor的执行线程共用
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 00:40
+ * To change this template use File | Settings | File Templates.
+ */
+public class MpscRingBuffer<E> {
+
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // 只有消费者线程读写
+    private long head;
+    // 消费者取到的位置，只用来估算长度
+    private final AtomicLong consumed = new AtomicLong();
+
+    public MpscRingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        buffer = new Object[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    public boolean offer(E e) {
+        for (; ; ) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[index] = e;
+                    // volatile写，和消费者休眠前的检查配对，见WriteBehindPersister
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // 这个槽位上一圈的数据还没被取走，队列已满
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 只能在消费者线程调用
+     *
+     * @return 取出的数量
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(List<? super E> to, int max) {
+        int n = 0;
+        while (n < max) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            to.add((E) buffer[index]);
+            buffer[index] = null;
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            n++;
+        }
+        if (n > 0) {
+            consumed.lazySet(head);
+        }
+        return n;
+    }
+
+    /**
+     * 只能在消费者线程调用
+     */
+    public boolean isEmpty() {
+        return sequences.get((int) (head & mask)) != head + 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * 任意线程可调用，并发写入时为近似值
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(tail.get() - consumed.get(), buffer.length));
+    }
+}
@@ -0,0 +1,244 @@
+package com.dempe.chat.connector.persist;
+
+import com.dempe.chat.common.mqtt.messages.AbstractMessage;
+import com.dempe.chat.common.mqtt.messages.PubAckMessage;
+import com.dempe.chat.common.mqtt.messages.PublishMessage;
+import com.dempe.chat.connector.inbox.DefaultInboxStore;
+import com.dempe.ocean.db.model.im.InboxMessage;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 消息异步落库(write-behind)
+ * io线程只把消息放进有界无锁队列，单独的写线程每次取出最多maxBatch条，一次批量写入收件箱存储(rpc存储时为一次rpc)，
+ * 写入次数和批大小成反比，不受单条写入延迟的限制
+ * 1.非durable模式下QoS1的PUBACK在路由后立即返回，队列满时丢弃这条消息的落库(消息已经直接下发)
+ * 2.durable模式下PUBACK在所在批次写入成功后才返回，队列满或者写入失败时不返回，由客户端重发
+ * 3.带CommitListener的消息(sync模式的好友消息)落库后才能下发，队列满时不能丢：
+ *   客户端的QoS1消息不回PUBACK，由客户端重发；其他消息在调用线程上同步写入后回调
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.persist.enabled    是否保存所有好友/群消息，默认false；开启sync时好友消息总是经过这里写入收件箱
+ * ocean.persist.durable    PUBACK是否等待落库，默认false
+ * ocean.persist.capacity   队列长度，默认65536
+ * ocean.persist.maxBatch   每批最多条数，默认512
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 00:55
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class WriteBehindPersister {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindPersister.class);
+
+    // 写线程空闲时一直休眠到生产者唤醒，这里只是兜底的超时，空闲时每秒只醒来几次
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final boolean enabled = Boolean.getBoolean("ocean.persist.enabled");
+    private final boolean durable = Boolean.getBoolean("ocean.persist.durable");
+    private final int maxBatch = Integer.getInteger("ocean.persist.maxBatch", 512);
+
+    private final MpscRingBuffer<Entry> ring = new MpscRingBuffer<Entry>(Integer.getInteger("ocean.persist.capacity", 65536));
+
+    private final AtomicLong committed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // 队列满时不回PUBACK让客户端重发的消息数
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    @Autowired
+    private DefaultInboxStore inboxStore;
+
+    private Thread writer;
+    private volatile boolean running = true;
+    private volatile boolean parked;
+
+    /**
+     * 落库完成后的回调，在写线程上执行
+     */
+    public interface CommitListener {
+        /**
+         * @param seq 分配的seq，写入失败时为0
+         */
+        void onCommit(long seq);
+    }
+
+    @PostConstruct
+    public void start() {
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isDurable() {
+        return durable;
+    }
+
+    /**
+     * 放入落库队列，不阻塞(队列满并且消息不能重发时除外，见类注释)
+     *
+     * @param uid      收件人(群消息为群topic)
+     * @param session  发送方连接，durable模式下用于回PUBACK，服务端产生的消息为null
+     * @param msg      原始PUBLISH，durable模式下QoS1时取其packet id
+     * @param listener 落库完成后的回调，可以为null；不为null时表示消息要落库后才能下发
+     * @return PUBACK是否由这里负责(发送或者为了让客户端重发而不发送)，调用方不需要再回
+     */
+    public boolean persist(String uid, String topic, byte[] payload, Channel session, PublishMessage msg,
+                           CommitListener listener) {
+        boolean retransmittable = session != null && msg.getQos() == AbstractMessage.QOSType.LEAST_ONE
+                && msg.getMessageID() != null;
+        boolean ownAck = durable && retransmittable;
+        Entry entry = new Entry(new InboxMessage(uid, topic, payload, System.currentTimeMillis()),
+                ownAck ? session : null, ownAck ? msg.getMessageID() : null, listener);
+        if (ring.offer(entry)) {
+            if (parked) {
+                LockSupport.unpark(writer);
+            }
+            return ownAck;
+        }
+        if (listener == null) {
+            dropped.incrementAndGet();
+            LOGGER.warn("write-behind queue full, drop message to <{}> on topic <{}>", uid, topic);
+            return ownAck;
+        }
+        if (retransmittable) {
+            // 没有落库也没有下发，不回PUBACK，客户端重发
+            rejected.incrementAndGet();
+            LOGGER.warn("write-behind queue full, withhold PUBACK of message to <{}> on topic <{}>", uid, topic);
+            return true;
+        }
+        LOGGER.warn("write-behind queue full, write message to <{}> on topic <{}> in caller thread", uid, topic);
+        commit(Lists.newArrayList(entry));
+        return ownAck;
+    }
+
+    public long getCommitted() {
+        return committed.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    private void drainLoop() {
+        List<Entry> batch = Lists.newArrayListWithCapacity(maxBatch);
+        while (running || !ring.isEmpty()) {
+            ring.drain(batch, maxBatch);
+            if (batch.isEmpty()) {
+                // 先标记再检查，生产者先放入再检查标记，两边都是volatile读写，不会同时错过
+                parked = true;
+                if (ring.isEmpty() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                parked = false;
+                continue;
+            }
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(List<Entry> batch) {
+        List<InboxMessage> messages = Lists.newArrayListWithCapacity(batch.size());
+        for (Entry entry : batch) {
+            messages.add(entry.message);
+        }
+        long[] seqs;
+        try {
+            seqs = inboxStore.appendBatch(messages);
+        } catch (Exception e) {
+            LOGGER.error("write-behind batch of {} messages error", messages.size(), e);
+            seqs = new long[messages.size()];
+        }
+        batches.incrementAndGet();
+        // 同一个连接的多个PUBACK只flush一次
+        Set<Channel> flushes = null;
+        for (int i = 0; i < batch.size(); i++) {
+            Entry entry = batch.get(i);
+            if (seqs[i] <= 0) {
+                failed.incrementAndGet();
+            } else {
+                committed.incrementAndGet();
+                if (entry.ackChannel != null && entry.ackChannel.isActive()) {
+                    PubAckMessage ack = new PubAckMessage();
+                    ack.setMessageID(entry.ackMessageId);
+                    entry.ackChannel.write(ack);
+                    if (flushes == null) {
+                        flushes = Sets.newIdentityHashSet();
+                    }
+                    flushes.add(entry.ackChannel);
+                }
+            }
+            if (entry.listener != null) {
+                try {
+                    entry.listener.onCommit(seqs[i]);
+                } catch (Exception e) {
+                    LOGGER.error("write-behind commit listener error", e);
+                }
+            }
+        }
+        if (flushes != null) {
+            for (Channel channel : flushes) {
+                channel.flush();
+            }
+        }
+    }
+
+    private static final class Entry {
+        final InboxMessage message;
+        final Channel ackChannel;
+        final Integer ackMessageId;
+        final CommitListener listener;
+
+        Entry(InboxMessage message, Channel ackChannel, Integer ackMessageId, CommitListener listener) {
+            this.message = message;
+            this.ackChannel = ackChannel;
+            this.ackMessageId = ackMessageId;
+            this.listener = listener;
+        }
+    }
+}
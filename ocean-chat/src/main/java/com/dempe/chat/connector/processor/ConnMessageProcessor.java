@@ -1,23 +1,22 @@
 package com.dempe.chat.connector.processor;
 
-import com.alibaba.fastjson.JSONObject;
 import com.dempe.chat.common.mqtt.messages.AbstractMessage;
 import com.dempe.chat.common.mqtt.messages.ConnAckMessage;
 import com.dempe.chat.common.mqtt.messages.ConnectMessage;
+import com.dempe.chat.common.mqtt.messages.PublishMessage;
 import com.dempe.chat.common.mqtt.messages.WillMessage;
-import com.dempe.chat.connector.ConnectionDescriptor;
 import com.dempe.chat.connector.NettyUtils;
-import com.dempe.logic.api.UserService;
-
-import com.dempe.ocean.db.model.User;
-import com.dempe.ocean.utils.JsonResult;
-import com.google.common.base.Strings;
+import com.dempe.chat.connector.auth.Authenticator;
+import com.dempe.chat.connector.auth.SessionToken;
+import com.dempe.ocean.common.R;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 /**
  * Created with IntelliJ IDEA.
@@ -28,16 +27,28 @@ import java.nio.ByteBuffer;
  */
 @Component
 public class ConnMessageProcessor extends MessageProcessor {
-    //
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Autowired
+    private Authenticator authenticator;
+
     @Autowired
-    private UserService userService;
+    private PublishMessageProcessor publishMessageProcessor;
+
+    @Autowired
+    private SyncMessageProcessor syncMessageProcessor;
 
     public void processConnect(Channel channel, ConnectMessage msg) throws Exception {
         LOGGER.debug("CONNECT for client <{}>", msg.getClientID());
+        if (NettyUtils.connected(channel)) {
+            // 同一连接上的第二个CONNECT是协议错误，直接断开
+            LOGGER.warn("duplicate CONNECT from client <{}>, close", msg.getClientID());
+            channel.close();
+            return;
+        }
         // version not support
         if (msg.getProtocolVersion() != 3 && msg.getProtocolVersion() != 4) {
             connAck(channel, ConnAckMessage.UNNACEPTABLE_PROTOCOL_VERSION);
-            channel.close();
             return;
         }
 
@@ -49,58 +60,43 @@ public class ConnMessageProcessor extends MessageProcessor {
 
         //handle user authentication
         if (msg.isUserFlag() && msg.isPasswordFlag() && StringUtils.isNotBlank(msg.getUsername())) {
-            byte[] pwd = msg.getPassword();
-            String username = msg.getUsername();
-            // 登录逻辑
-            User login = userService.login(username, new String(pwd));
-            if (!Strings.isNullOrEmpty(username)) {
-                LOGGER.info("login success,user", login);
-            } else {
+            // 登录逻辑，重连时优先使用会话token，本地校验
+            if (!authenticator.authenticate(msg.getUsername(), msg.getClientID(), msg.getPassword())) {
+                LOGGER.info("login failed, user {}, clientID {}", msg.getUsername(), msg.getClientID());
                 connAck(channel, ConnAckMessage.BAD_USERNAME_OR_PASSWORD);
                 return;
-
             }
-
         } else {
             connAck(channel, ConnAckMessage.BAD_USERNAME_OR_PASSWORD);
             return;
         }
 
-        //if an old client with the same ID already exists close its session.
-        if (m_clientIDs.containsKey(msg.getClientID())) {
-            LOGGER.info("Found an existing connection with same client ID <{}>, forcing to close", msg.getClientID());
-            //clean the subscriptions if the old used a cleanSession = true
-            Channel oldChannel = m_clientIDs.get(msg.getClientID()).channel;
-            oldChannel.close();
-            LOGGER.debug("Existing connection with same client ID <{}>, forced to close", msg.getClientID());
-        }
-
-        ConnectionDescriptor connDescr = new ConnectionDescriptor(msg.getClientID(), channel, msg.isCleanSession());
-        m_clientIDs.put(msg.getClientID(), connDescr);
-
         int keepAlive = msg.getKeepAlive();
         LOGGER.debug("Connect with keepAlive {} s", keepAlive);
         NettyUtils.keepAlive(channel, keepAlive);
         //session.attr(NettyUtils.ATTR_KEY_CLEANSESSION).set(msg.isCleanSession());
         NettyUtils.cleanSession(channel, msg.isCleanSession());
-        //used to track the client in the subscription and publishing phases.
-        //session.attr(NettyUtils.ATTR_KEY_CLIENTID).set(msg.getClientID());
-        NettyUtils.clientID(channel, msg.getClientID());
-        LOGGER.debug("Connect create session <{}>", channel);
-
-        setIdleTime(channel.pipeline(), Math.round(keepAlive * 1.5f));
+        // token登录时去掉username的前缀，之后都按uid处理
+        String username = SessionToken.username(msg.getUsername());
+        NettyUtils.userName(channel, username);
 
         //Handle will flag
+        WillMessage will = null;
         if (msg.isWillFlag()) {
             AbstractMessage.QOSType willQos = AbstractMessage.QOSType.valueOf(msg.getWillQos());
-            byte[] willPayload = msg.getWillMessage();
-            ByteBuffer bb = (ByteBuffer) ByteBuffer.allocate(willPayload.length).put(willPayload).flip();
-            //save the will testament in the clientID store
-            WillMessage will = new WillMessage(msg.getWillTopic(), bb, msg.isWillRetain(), willQos);
-            m_willStore.put(msg.getClientID(), will);
+            // 解码出的数组只属于这条CONNECT，直接包装，不再复制一份
+            will = new WillMessage(msg.getWillTopic(), ByteBuffer.wrap(msg.getWillMessage()), msg.isWillRetain(), willQos);
         }
 
+        //if an old client with the same ID already exists it is taken over by this one.
+        //used to track the client in the subscription and publishing phases.
+        register(msg.getClientID(), channel, msg.isCleanSession(), will);
+        LOGGER.debug("Connect create session <{}>", channel);
+
         connAck(channel, ConnAckMessage.CONNECTION_ACCEPTED);
+        sendToken(channel, username, msg.getClientID());
+        // 有未同步的消息时通知客户端来sync
+        syncMessageProcessor.onConnect(msg.getClientID());
         // TODO 连接成功，主动publish下发初始化信息，例如用户好友列表，群组等基础信息
         // 上述逻辑可以换HTTP协议实现，减少IM服务器逻辑复杂性和压力
 
@@ -112,10 +108,28 @@ public class ConnMessageProcessor extends MessageProcessor {
     }
 
 
+    /**
+     * 拒绝(返回码不为0)时写出后关闭连接
+     */
     private void connAck(Channel channel, byte returnCode) {
         ConnAckMessage okResp = new ConnAckMessage();
         okResp.setReturnCode(returnCode);
-        channel.writeAndFlush(okResp);
+        if (returnCode == ConnAckMessage.CONNECTION_ACCEPTED) {
+            channel.writeAndFlush(okResp);
+        } else {
+            channel.writeAndFlush(okResp).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * 下发新的会话token，客户端断线重连时用它代替密码
+     */
+    private void sendToken(Channel channel, String username, String clientID) {
+        PublishMessage tokenMsg = new PublishMessage();
+        tokenMsg.setTopicName(R.TOKEN_TOPIC);
+        tokenMsg.setQos(AbstractMessage.QOSType.MOST_ONE);
+        tokenMsg.setPayload(ByteBuffer.wrap(authenticator.issueToken(username, clientID).getBytes(UTF8)));
+        channel.writeAndFlush(tokenMsg);
     }
 
     /**
@@ -125,4 +139,9 @@ public class ConnMessageProcessor extends MessageProcessor {
 
 
     }
+
+    @Override
+    protected void forwardPublishWill(WillMessage will, String clientID) {
+        publishMessageProcessor.publishWill(clientID, will);
+    }
 }
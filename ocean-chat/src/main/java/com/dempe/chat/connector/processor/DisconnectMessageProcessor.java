@@ -1,5 +1,6 @@
 package com.dempe.chat.connector.processor;
 
+import com.dempe.chat.connector.ConnectionDescriptor;
 import com.dempe.chat.connector.NettyUtils;
 import io.netty.channel.Channel;
 import org.springframework.stereotype.Component;
@@ -19,11 +20,12 @@ public class DisconnectMessageProcessor extends MessageProcessor {
         boolean cleanSession = NettyUtils.cleanSession(channel);
         LOGGER.info("DISCONNECT client <{}> with clean session {}", clientID, cleanSession);
 
-        m_clientIDs.remove(clientID);
+        // 正常断开不发遗嘱，只注销自己，不影响同一clientID的新连接
+        ConnectionDescriptor connDescr = unregister(clientID, channel);
+        if (connDescr != null) {
+            releaseSession(connDescr);
+        }
         channel.close();
-
-        //cleanup the will store
-        m_willStore.remove(clientID);
         LOGGER.info("DISCONNECT client <{}> finished", clientID, cleanSession);
     }
 }
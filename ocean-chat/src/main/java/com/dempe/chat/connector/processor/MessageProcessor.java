@@ -4,17 +4,20 @@ import com.dempe.chat.common.mqtt.messages.AbstractMessage;
 import com.dempe.chat.common.mqtt.messages.PublishMessage;
 import com.dempe.chat.common.mqtt.messages.WillMessage;
 import com.dempe.chat.connector.ConnectionDescriptor;
+import com.dempe.chat.connector.NettyUtils;
+import com.dempe.chat.connector.compress.PayloadCompression;
+import com.dempe.chat.connector.store.ClientIdMap;
 import com.dempe.chat.connector.store.ClientSession;
 import com.dempe.chat.connector.store.SessionStoreImpl;
-import com.google.common.collect.Maps;
+import com.dempe.chat.connector.store.SubscriptionStore;
+import com.dempe.ocean.common.R;
+import com.dempe.ocean.common.TopicType;
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelPipeline;
-import io.netty.handler.timeout.IdleStateHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import java.nio.ByteBuffer;
-import java.util.concurrent.ConcurrentMap;
 
 /**
  * Created with IntelliJ IDEA.
@@ -27,27 +30,40 @@ public class MessageProcessor {
 
     protected final static Logger LOGGER = LoggerFactory.getLogger(MessageProcessor.class);
 
-    protected static ConcurrentMap<String, ConnectionDescriptor> m_clientIDs = Maps.newConcurrentMap();
+    // 在线连接注册表，uid形式的clientID按long存放
+    protected static ClientIdMap<ConnectionDescriptor> m_clientIDs = new ClientIdMap<ConnectionDescriptor>();
 
-    protected static ConcurrentMap<String, WillMessage> m_willStore = Maps.newConcurrentMap();
-    protected static SessionStoreImpl m_sessionsStore = new SessionStoreImpl();
+    protected static SubscriptionStore m_subscriptionStore = new SubscriptionStore();
 
+    protected static SessionStoreImpl m_sessionsStore = new SessionStoreImpl(m_subscriptionStore);
 
-    protected void setIdleTime(ChannelPipeline pipeline, int idleTime) {
-        if (pipeline.names().contains("idleStateHandler")) {
-            pipeline.remove("idleStateHandler");
-        }
-        pipeline.addFirst("idleStateHandler", new IdleStateHandler(0, 0, idleTime));
+    @Autowired
+    protected PayloadCompression payloadCompression;
+
+
+    /**
+     * qos为0的消息不带packet id
+     */
+    protected Integer nextMessageId(ClientSession clientSession, AbstractMessage.QOSType qos) {
+        return qos == AbstractMessage.QOSType.MOST_ONE ? null : clientSession.getNextMessageId();
     }
 
     protected void directSend(ClientSession clientsession, String topic, AbstractMessage.QOSType qos, ByteBuffer message, boolean retained, Integer messageID) {
+        directSend(clientsession, topic, qos, message, retained, messageID, true);
+    }
+
+    /**
+     * @param flush 是否立即flush，连续发给同一个连接的多条消息只在最后一条flush
+     */
+    protected void directSend(ClientSession clientsession, String topic, AbstractMessage.QOSType qos, ByteBuffer message, boolean retained, Integer messageID, boolean flush) {
         String clientId = clientsession.getClientID();
         LOGGER.debug("directSend invoked clientId <{}> on topic <{}> QoS {} retained {} messageID {}", clientId, topic, qos, retained, messageID);
         PublishMessage pubMessage = new PublishMessage();
         pubMessage.setRetainFlag(retained);
         pubMessage.setTopicName(topic);
         pubMessage.setQos(qos);
-        pubMessage.setPayload(message);
+        // 同一个payload可能fan-out给多个连接，编码时会移动position，这里每次发送用独立的视图
+        pubMessage.setPayload(message.duplicate());
         LOGGER.info("send publish message to <{}> on topic <{}>", clientId, topic);
         //set the PacketIdentifier only for QoS > 0
         if (pubMessage.getQos() != AbstractMessage.QOSType.MOST_ONE) {
@@ -57,56 +73,115 @@ public class MessageProcessor {
                 throw new RuntimeException("Internal bad error, trying to forwardPublish a QoS 0 message with PacketIdentifier: " + messageID);
             }
         }
-        if (m_clientIDs == null) {
-            throw new RuntimeException("Internal bad error, found m_clientIDs to null while it should be initialized, somewhere it's overwritten!!");
-        }
-        LOGGER.debug("clientIDs are {}", m_clientIDs);
-        if (m_clientIDs.get(clientId) == null) {
-            //TODO while we were publishing to the target client, that client disconnected,
-            // could happen is not an error HANDLE IT
-            throw new RuntimeException(String.format("Can't find a ConnectionDescriptor for client <%s> in cache <%s>", clientId, m_clientIDs));
+        ConnectionDescriptor descriptor = m_clientIDs.get(clientId);
+        if (descriptor == null || !descriptor.channel.isActive()) {
+            // 发送过程中对方已经下线，或者旧连接正在被新连接接管，不是错误
+            LOGGER.debug("client <{}> is offline, drop message on topic <{}>", clientId, topic);
+            return;
         }
-        Channel channel = m_clientIDs.get(clientId).channel;
+        Channel channel = descriptor.channel;
         LOGGER.debug("Session for clientId {} is {}", clientId, channel);
-        channel.writeAndFlush(pubMessage);
+        int compressType = NettyUtils.compressType(channel);
+        if (compressType != 0) {
+            // 同一个payload对象的压缩结果有缓存，群消息fan-out时只压缩一次
+            ByteBuffer compressed = payloadCompression.compress(compressType, message);
+            if (compressed != null) {
+                pubMessage.setTopicName(TopicType.COMPRESSED.getType() + R.SPLIT + compressType + R.SPLIT + topic);
+                pubMessage.setPayload(compressed.duplicate());
+            }
+        }
+        if (flush) {
+            channel.writeAndFlush(pubMessage);
+        } else {
+            channel.write(pubMessage);
+        }
+    }
+
+    /**
+     * 注册新连接，同一clientID已有连接时由新连接接管：
+     * 先用新的连接描述替换注册表中的旧值，再给旧连接打上stolen标记并关闭，整个过程不加锁，
+     * 并发的多个CONNECT最终只有最后替换成功的那个保留，其余的都会被后来者关闭
+     */
+    protected ConnectionDescriptor register(String clientID, Channel channel, boolean cleanSession, WillMessage will) {
+        // 旧连接的会话状态(消息id等)在cleanSession为false时交接给新连接
+        ClientSession clientSession = m_sessionsStore.createOrReuseSession(clientID, cleanSession);
+        ConnectionDescriptor connDescr = new ConnectionDescriptor(clientID, channel, cleanSession, will, clientSession);
+        // 注册前先写好channel属性，保证之后任何时候断开都能找到自己的注册信息
+        NettyUtils.clientID(channel, clientID);
+        NettyUtils.generation(channel, connDescr.generation);
+        ConnectionDescriptor old = m_clientIDs.put(clientID, connDescr);
+        // 沿用的会话可能在put之前被旧连接的注销置为不活跃，put之后再激活一次，见releaseSession
+        clientSession.activate();
+        if (old != null && old.channel != channel) {
+            LOGGER.info("client <{}> reconnected, take over connection generation {} by {}",
+                    clientID, old.generation, connDescr.generation);
+            // 先标记再关闭，旧连接断开时不会发遗嘱，也不会注销新连接
+            NettyUtils.sessionStolen(old.channel, true);
+            old.channel.close();
+        }
+        if (!channel.isActive()) {
+            // 注册过程中新连接自己也断开了，它的channelInactive可能已经执行过，这里补一次注销
+            processConnectionLost(clientID, false, channel);
+        }
+        return connDescr;
+    }
+
+    /**
+     * 只有注册表里仍是该连接时才移除；按channel比较，不读槽位里的状态：
+     * 登录校验在独立线程上执行，连接可能在register之前就断开并释放了槽位
+     *
+     * @return 移除的连接描述，已经被接管或者已经注销时返回null
+     */
+    protected ConnectionDescriptor unregister(String clientID, Channel channel) {
+        if (clientID == null) {
+            return null;
+        }
+        ConnectionDescriptor current = m_clientIDs.get(clientID);
+        if (current != null && current.channel == channel && m_clientIDs.remove(clientID, current)) {
+            return current;
+        }
+        return null;
     }
 
     public void processConnectionLost(String clientID, boolean sessionStolen, Channel channel) {
-        ConnectionDescriptor oldConnDescr = new ConnectionDescriptor(clientID, channel, true);
-        m_clientIDs.remove(clientID, oldConnDescr);
-        //If already removed a disconnect message was already processed for this clientID
-        if (sessionStolen) {
-            //de-activate the subscriptions for this ClientID
-            ClientSession clientSession = m_sessionsStore.sessionForClient(clientID);
-            clientSession.deactivate();
-            LOGGER.info("Lost connection with client <{}>", clientID);
+        ConnectionDescriptor connDescr = unregister(clientID, channel);
+        if (connDescr == null) {
+            // 已经被新连接接管或者已经处理过DISCONNECT，会话和遗嘱都归新连接所有
+            LOGGER.debug("connection of client <{}> already replaced, stolen {}", clientID, sessionStolen);
+            return;
         }
+        releaseSession(connDescr);
+        LOGGER.info("Lost connection with client <{}>", clientID);
         //publish the Will message (if any) for the clientID
-        if (!sessionStolen && m_willStore.containsKey(clientID)) {
-            WillMessage will = m_willStore.get(clientID);
-            forwardPublishWill(will, clientID);
-            m_willStore.remove(clientID);
+        // connector下线时关闭的连接会重连到其他connector，不算异常断开
+        if (connDescr.will != null && !NettyUtils.drained(channel)) {
+            forwardPublishWill(connDescr.will, clientID);
         }
     }
 
 
     /**
-     * TODO
-     * Specialized version to publish will testament message.
+     * 注销成功后处理这个连接自己的会话，而不是按clientID重新查找：并发接管的新连接可能已经新建了会话
+     * cleanSession为false的新连接会沿用同一个会话对象，已经被新连接注册的会话保持活跃，也不删除
      */
-    private void forwardPublishWill(WillMessage will, String clientID) {
-        //it has just to publish the message downstream to the subscribers
-        //NB it's a will publish, it needs a PacketIdentifier for this conn, default to 1
-        short messageId = 0;
-        if (will.getQos() != AbstractMessage.QOSType.MOST_ONE) {
-            messageId = m_sessionsStore.sessionForClient(clientID).getNextMessageId();
+    protected void releaseSession(ConnectionDescriptor connDescr) {
+        ClientSession clientSession = connDescr.clientSession;
+        clientSession.deactivate();
+        ConnectionDescriptor current = m_clientIDs.get(connDescr.clientID);
+        if (current != null && current.clientSession == clientSession) {
+            clientSession.activate();
+            return;
+        }
+        if (connDescr.cleanSession) {
+            m_sessionsStore.removeSession(connDescr.clientID, clientSession);
         }
-
-//        IMessagesStore.StoredMessage tobeStored = asStoredMessage(will);
-//        tobeStored.setClientID(clientID);
-//        tobeStored.setMessageID(messageId);
-//        route2Subscribers(tobeStored);
     }
 
-
+    /**
+     * 非正常断开时发布遗嘱，由负责路由的子类实现，这里默认丢弃
+     * 在断开连接的io线程上调用，实现中不能有阻塞操作
+     */
+    protected void forwardPublishWill(WillMessage will, String clientID) {
+        LOGGER.debug("no route for will of client <{}> on topic <{}>", clientID, will.getTopic());
+    }
 }
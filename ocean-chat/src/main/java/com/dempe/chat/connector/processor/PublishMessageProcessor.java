@@ -1,24 +1,47 @@
 package com.dempe.chat.connector.processor;
 
-import com.alibaba.fastjson.JSONArray;
-import com.alibaba.fastjson.JSONObject;
 import com.dempe.chat.common.mqtt.messages.AbstractMessage;
+import com.dempe.chat.common.mqtt.messages.PubAckMessage;
 import com.dempe.chat.common.mqtt.messages.PublishMessage;
+import com.dempe.chat.common.mqtt.messages.WillMessage;
 import com.dempe.chat.connector.NettyUtils;
+import com.dempe.chat.connector.live.LiveRoomManager;
+import com.dempe.chat.connector.persist.WriteBehindPersister;
 import com.dempe.chat.connector.store.ClientSession;
+import com.dempe.chat.connector.store.RetainedStore;
+import com.dempe.chat.connector.store.Subscription;
+import com.dempe.chat.connector.store.TopicTrie;
 import com.dempe.logic.api.UserGroupService;
+import com.dempe.ocean.common.ExtendProtocol;
+import com.dempe.ocean.common.R;
 import com.dempe.ocean.common.TopicType;
+import com.dempe.ocean.utils.BatchPayload;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import io.netty.channel.Channel;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * 扩展publish消息，规定topicName为空的时候为单播请求，即问答模式
- * publish消息里层协议封装
+ * publish消息里层协议封装(开启ocean.sync.enabled时，见{@link SyncMessageProcessor})
  * 1.有新的消息后server主动push
  * 2.client收到push消息后，发sync同步消息，
- * 3.server按redis sort set里面版本好发送消息给客户端
+ * 3.server按收件箱里的seq发送消息给客户端
  * 4.client返回收到的序列号
  * User: Dempe
  * Date: 2016/4/11
@@ -28,13 +51,80 @@ import org.springframework.stereotype.Component;
 @Component
 public class PublishMessageProcessor extends MessageProcessor {
 
+    /**
+     * 群消息fan-out时每次rpc拉取的成员数
+     */
+    private static final int GROUP_PAGE_SIZE = 1000;
+
+    private static final String COMPRESSED_PREFIX = TopicType.COMPRESSED.getType() + R.SPLIT;
+
+    /**
+     * 群消息合并窗口(ocean.group.coalesceMillis)，大于0时同一个群窗口内的消息打包成b|topic下发给每个成员，
+     * 每个合并帧最多ocean.group.maxBatch条；默认0，收到即下发
+     */
+    private final long groupCoalesceMillis = Long.getLong("ocean.group.coalesceMillis", 0L);
+    private final int groupMaxBatch = Integer.getInteger("ocean.group.maxBatch", 100);
+
+    /**
+     * 排队等待fan-out的批次上限(ocean.group.maxPending)，默认10000，每批最多ocean.group.maxBatch条消息；
+     * 超过时新的群消息直接拒绝，QoS1不回PUBACK由客户端重发，QoS0和遗嘱丢弃
+     */
+    private final int groupMaxPending = Integer.getInteger("ocean.group.maxPending", 10000);
+
     //
     @Autowired
     private UserGroupService userGroupService;
 
+    @Autowired
+    private RetainedStore retainedStore;
+
+    @Autowired
+    private LiveRoomManager liveRoomManager;
+
+    @Autowired
+    private SyncMessageProcessor syncMessageProcessor;
+
+    @Autowired
+    private WriteBehindPersister persister;
+
+    @Autowired
+    private RpcMessageProcessor rpcMessageProcessor;
+
+    // 群消息需要rpc拉取成员，不能占用io线程；同一个群固定由同一个线程处理，保证群内消息的顺序
+    private final ScheduledExecutorService[] groupFanoutExecutors;
+
+    // 每个群待fan-out的消息，同一个群短时间内的多条消息(比如大量成员同时掉线产生的遗嘱)合并成一次成员拉取
+    private final ConcurrentMap<String, GroupBatch> pendingGroupMsgs = Maps.newConcurrentMap();
+
+    // 已经提交还没开始执行的fan-out批次数，即fan-out线程的队列长度
+    private final AtomicInteger queuedGroupBatches = new AtomicInteger();
+    private final AtomicLong groupRejected = new AtomicLong();
+
+    public PublishMessageProcessor() {
+        groupFanoutExecutors = new ScheduledExecutorService[Runtime.getRuntime().availableProcessors()];
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory("group-fanout", true);
+        for (int i = 0; i < groupFanoutExecutors.length; i++) {
+            groupFanoutExecutors[i] = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        }
+    }
+
+    /**
+     * 已经提交的批次(包括合并窗口还没到的)仍会执行完
+     */
+    @PreDestroy
+    public void close() {
+        for (ScheduledExecutorService executor : groupFanoutExecutors) {
+            executor.shutdown();
+        }
+    }
+
+    public long getGroupRejected() {
+        return groupRejected.get();
+    }
+
     /**
-     * 1.存储消息到mongodb
-     * 2.
+     * 1.路由消息，好友/群消息开启落库时放入write-behind队列异步存储
+     * 2.QoS1回PUBACK，durable模式下由write-behind在落库后回
      *
      * @param session
      * @param msg
@@ -48,64 +138,422 @@ public class PublishMessageProcessor extends MessageProcessor {
         final Integer messageID = msg.getMessageID();
         LOGGER.info("PUBLISH from clientID <{}> on topic <{}> with QoS {}", clientID, topic, qos);
 
+        if (!route(topic, session, msg)) {
+            pubAck(session, msg);
+        }
+    }
+
+    private void pubAck(Channel session, PublishMessage msg) {
+        if (msg.getQos() == AbstractMessage.QOSType.LEAST_ONE && msg.getMessageID() != null) {
+            PubAckMessage ack = new PubAckMessage();
+            ack.setMessageID(msg.getMessageID());
+            session.writeAndFlush(ack);
+        }
+    }
+
+    /**
+     * 遗嘱消息和普通PUBLISH走同样的路由，相当于断开的客户端在断开时刻发出了这条消息
+     * 在连接断开的io线程上调用，这里只做内存操作，群消息的成员拉取在fan-out线程执行
+     */
+    public void publishWill(String clientID, WillMessage will) {
+        if (StringUtils.startsWith(will.getTopic(), TopicType.MYSELF.getType())) {
+            // 问答消息需要应答的连接，遗嘱没有意义
+            LOGGER.warn("ignore will of client <{}> on topic <{}>", clientID, will.getTopic());
+            return;
+        }
+        LOGGER.info("publish will of client <{}> on topic <{}> with QoS {}", clientID, will.getTopic(), will.getQos());
+        PublishMessage msg = new PublishMessage();
+        msg.setTopicName(will.getTopic());
+        msg.setQos(will.getQos());
+        msg.setRetainFlag(will.isRetained());
+        msg.setPayload(will.getPayload());
+        try {
+            route(will.getTopic(), null, msg);
+        } catch (Exception e) {
+            LOGGER.error("publish will of client <{}> error", clientID, e);
+        }
+    }
+
+    /**
+     * @return 调用方是否不再回PUBACK：已经交给write-behind在落库后发送，或者过载拒绝、由客户端重发
+     */
+    private boolean route(String topic, Channel session, PublishMessage msg) throws Exception {
         if (StringUtils.isBlank(topic)) {
             // 规定如果是null topic，则为内置协议
 
+        } else if (StringUtils.startsWith(topic, COMPRESSED_PREFIX)) {
+            // 压缩过的消息，解压后按原topic路由
+            return routeCompressed(topic, session, msg);
+        } else if (R.COMPRESS_TOPIC.equals(topic)) {
+            // 下行压缩协商
+            if (session != null) {
+                handleCompressMsg(session, msg);
+            }
         } else if (StringUtils.startsWith(topic, TopicType.FRIEND.getType())) {
             // 发给朋友的消息
-            handleFriendMsg(topic, msg);
+            return handleFriendMsg(topic, session, msg);
         } else if (StringUtils.startsWith(topic, TopicType.GROUP.getType())) {
             // 发给群组的消息
-            handleGroupMsg(topic, msg);
+            return handleGroupMsg(topic, session, msg);
 
         } else if (StringUtils.startsWith(topic, TopicType.MYSELF.getType())) {
             // 发给自己的，属于传统的问答模式的消息，这类消息需要直接透传到逻辑层，交由逻辑层处理
-            handleMyselfMsg(topic, session, msg);
+            if (session != null) {
+                rpcMessageProcessor.processRequest(topic, session, msg);
+            }
+        } else if (R.SYNC_TOPIC.equals(topic) || R.SYNC_ACK_TOPIC.equals(topic)) {
+            // 扩展协议的sync请求和ack，只接受已连接客户端发来的
+            if (session != null) {
+                if (R.SYNC_TOPIC.equals(topic)) {
+                    syncMessageProcessor.processSync(session, msg);
+                } else {
+                    syncMessageProcessor.processAck(session, msg);
+                }
+            }
+        } else if (StringUtils.startsWith(topic, TopicType.LIVE.getType())) {
+            // 直播频道内广播，只有已经进入频道的连接可以发言(遗嘱除外)
+            if (session == null || liveRoomManager.isJoined(session, topic)) {
+                liveRoomManager.broadcast(topic, msg.getPayload(), false);
+            } else {
+                LOGGER.debug("client <{}> not in live room <{}>", NettyUtils.clientID(session), topic);
+            }
+        } else if (StringUtils.startsWith(topic, TopicType.OTHER.getType())) {
+            // 其他topic按订阅关系下发，客户端只能在这类topic上保留消息
+            publish(topic, msg.getQos(), msg.getPayload(), msg.isRetainFlag());
+        }
+        return false;
+    }
+
+    /**
+     * z|compressType|原topic，不允许嵌套；解压失败的消息丢弃
+     */
+    private boolean routeCompressed(String topic, Channel session, PublishMessage msg) throws Exception {
+        int split = topic.indexOf(R.SPLIT, COMPRESSED_PREFIX.length());
+        String originTopic = split < 0 ? null : topic.substring(split + 1);
+        ByteBuffer payload;
+        try {
+            if (originTopic == null || originTopic.startsWith(COMPRESSED_PREFIX)) {
+                throw new IllegalArgumentException("bad compressed topic");
+            }
+            int compressType = Integer.parseInt(topic.substring(COMPRESSED_PREFIX.length(), split));
+            payload = payloadCompression.decompress(compressType, msg.getPayload());
+        } catch (RuntimeException e) {
+            LOGGER.warn("drop compressed message on topic <{}>: {}", topic, e.toString());
+            return false;
+        }
+        msg.setTopicName(originTopic);
+        msg.setPayload(payload);
+        return route(originTopic, session, msg);
+    }
+
+    private void handleCompressMsg(Channel session, PublishMessage msg) {
+        int compressType;
+        try {
+            compressType = ExtendProtocol.decodeCompress(msg.getPayload());
+        } catch (RuntimeException e) {
+            LOGGER.warn("malformed compress negotiation from client <{}>", NettyUtils.clientID(session), e);
+            return;
         }
+        int accepted = payloadCompression.negotiate(session, compressType);
+        LOGGER.info("client <{}> compress type {}, accepted {}", NettyUtils.clientID(session), compressType, accepted);
+        PublishMessage rsp = new PublishMessage();
+        rsp.setTopicName(R.COMPRESS_TOPIC);
+        rsp.setQos(AbstractMessage.QOSType.MOST_ONE);
+        rsp.setPayload(ExtendProtocol.encodeCompress(accepted));
+        session.writeAndFlush(rsp);
+    }
 
+    /**
+     * 按订阅关系下发(直播频道topic在频道内广播)，retain为true时同时保存为该topic的保留消息，之后订阅的客户端也能收到
+     * 系统topic等服务端自己产生的消息也通过这里下发
+     */
+    public void publish(String topic, AbstractMessage.QOSType qos, ByteBuffer payload, boolean retain) {
+        if (!TopicTrie.isValidTopic(topic)) {
+            LOGGER.warn("can not publish to topic <{}>", topic);
+            return;
+        }
+        if (retain) {
+            retainedStore.put(topic, qos, payload);
+        }
+        if (StringUtils.startsWith(topic, TopicType.LIVE.getType())) {
+            liveRoomManager.broadcast(topic, payload, true);
+            return;
+        }
+        for (Subscription subscription : m_subscriptionStore.matches(topic).values()) {
+            AbstractMessage.QOSType deliverQos = qos.byteValue() <= subscription.getRequestedQos().byteValue()
+                    ? qos : subscription.getRequestedQos();
+            ClientSession clientSession = m_sessionsStore.sessionForClient(subscription.getClientId());
+            directSend(clientSession, topic, deliverQos, payload, false, nextMessageId(clientSession, deliverQos));
+        }
     }
 
-    private void handleFriendMsg(String topic, final PublishMessage msg) {
+    /**
+     * sync模式下先写入接收方收件箱，写入后push；否则直接下发，开启落库时再异步保存到接收方收件箱
+     */
+    private boolean handleFriendMsg(String topic, Channel session, final PublishMessage msg) {
         LOGGER.info("handleFriendMsg topic:{},msg:{}", topic, msg);
         String[] split = topic.split("\\|");
-        if (split.length == 2) {
-            String toUid = split[1];
-            ClientSession clientSession = m_sessionsStore.sessionForClient(toUid);
-            directSend(clientSession, topic, msg.getQos(), msg.getPayload(), false,
-                    (int) clientSession.getNextMessageId());
+        if (split.length != 2) {
+            return false;
         }
+        final String toUid = split[1];
+        if (syncMessageProcessor.isEnabled()) {
+            return persister.persist(toUid, topic, SyncMessageProcessor.toBytes(msg.getPayload()), session, msg,
+                    new WriteBehindPersister.CommitListener() {
+                        @Override
+                        public void onCommit(long seq) {
+                            syncMessageProcessor.push(toUid, seq);
+                        }
+                    });
+        }
+        ClientSession clientSession = m_sessionsStore.sessionForClient(toUid);
+        directSend(clientSession, topic, msg.getQos(), msg.getPayload(), false,
+                nextMessageId(clientSession, msg.getQos()));
+        if (persister.isEnabled()) {
+            return persister.persist(toUid, topic, SyncMessageProcessor.toBytes(msg.getPayload()), session, msg, null);
+        }
+        return false;
     }
 
 
-    private void handleGroupMsg(String topic, final PublishMessage msg) {
+    /**
+     * 开启落库时群消息以群topic为收件人保存一份，作为群的历史消息
+     */
+    private boolean handleGroupMsg(final String topic, Channel session, final PublishMessage msg) {
         String[] split = topic.split("\\|");
         if (split.length != 2) {
             LOGGER.warn("wrong topic for request & response msg");
-            return;
+            return false;
+        }
+        final String groupId = split[1];
+        // 先占一个名额再落库，超出上限时退回名额并拒绝，客户端重发时不会重复保存
+        if (queuedGroupBatches.incrementAndGet() > groupMaxPending) {
+            queuedGroupBatches.decrementAndGet();
+            rejectGroupMsg(groupId);
+            return true;
+        }
+        boolean ackOwned = false;
+        if (persister.isEnabled()) {
+            ackOwned = persister.persist(topic, topic, SyncMessageProcessor.toBytes(msg.getPayload()), session, msg, null);
+        }
+        for (; ; ) {
+            GroupBatch batch = pendingGroupMsgs.get(groupId);
+            boolean created = false;
+            if (batch == null) {
+                batch = new GroupBatch(groupMaxBatch);
+                GroupBatch prev = pendingGroupMsgs.putIfAbsent(groupId, batch);
+                if (prev != null) {
+                    batch = prev;
+                } else {
+                    created = true;
+                }
+            }
+            if (batch.offer(msg)) {
+                if (!created) {
+                    // 并入已经排队的一批，名额用不上
+                    queuedGroupBatches.decrementAndGet();
+                } else if (!scheduleGroupBatch(groupId, batch)) {
+                    pendingGroupMsgs.remove(groupId, batch);
+                    batch.close();
+                    rejectGroupMsg(groupId);
+                    return true;
+                }
+                return ackOwned;
+            }
+            // 这一批已经开始下发或者已满，移除后重新建一批，新任务排在同一个线程上，顺序不变
+            pendingGroupMsgs.remove(groupId, batch);
+        }
+    }
+
+    /**
+     * 合并窗口内同一个群的后续消息都会进入这一批，调用方已经占好queuedGroupBatches的名额，执行时释放
+     *
+     * @return fan-out线程已经关闭时返回false，名额已释放
+     */
+    private boolean scheduleGroupBatch(final String groupId, final GroupBatch batch) {
+        try {
+            groupFanoutExecutor(groupId).schedule(new Runnable() {
+                @Override
+                public void run() {
+                    queuedGroupBatches.decrementAndGet();
+                    pendingGroupMsgs.remove(groupId, batch);
+                    if (syncMessageProcessor.isEnabled()) {
+                        syncGroupMsgs(groupId, batch.close());
+                    } else {
+                        fanoutGroupMsgs(groupId, coalesce(batch.close()));
+                    }
+                }
+            }, groupCoalesceMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            queuedGroupBatches.decrementAndGet();
+            return false;
+        }
+    }
+
+    private void rejectGroupMsg(String groupId) {
+        long rejected = groupRejected.incrementAndGet();
+        LOGGER.warn("too many pending group fan-out, message to group {} rejected, total {}", groupId, rejected);
+    }
+
+    /**
+     * 分页拉取群成员，每拿到一页就立即下发，内存占用只和页大小有关，前面的成员也能更早收到消息
+     * 同一批的多条消息共用一次成员拉取，每个成员的消息连续写入后只flush一次
+     */
+    private void fanoutGroupMsgs(String groupId, final List<PublishMessage> msgs) {
+        forEachMemberPage(groupId, new MemberPageVisitor() {
+            @Override
+            public void visit(long[] page) {
+                for (long uid : page) {
+                    if (!m_clientIDs.containsKey(uid)) {
+                        // 不在线的成员跳过，不影响其他成员
+                        continue;
+                    }
+                    ClientSession clientSession = m_sessionsStore.sessionForClient(uid);
+                    for (int i = 0; i < msgs.size(); i++) {
+                        PublishMessage msg = msgs.get(i);
+                        directSend(clientSession, msg.getTopicName(), msg.getQos(), msg.getPayload(), false,
+                                nextMessageId(clientSession, msg.getQos()), i == msgs.size() - 1);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * sync模式下每条消息写入所有成员(包括离线成员)的收件箱，在线成员整批只收到一条push
+     * 每页成员每条消息只调用一次存储(rpc存储时为一次rpc)
+     */
+    private void syncGroupMsgs(String groupId, List<PublishMessage> msgs) {
+        final String[] topics = new String[msgs.size()];
+        final byte[][] payloads = new byte[msgs.size()][];
+        for (int i = 0; i < msgs.size(); i++) {
+            topics[i] = msgs.get(i).getTopicName();
+            payloads[i] = SyncMessageProcessor.toBytes(msgs.get(i).getPayload());
         }
-        String groupId = split[1];
-        JSONObject jsonObject = userGroupService.listUidByGroupId(groupId);
-        JSONArray data = jsonObject.getJSONArray("data");
-        for (int i = 0; i < data.size(); i++) {
-            String uid = data.getString(i);
-            ClientSession clientSession = m_sessionsStore.sessionForClient(uid);
-            directSend(clientSession, topic, AbstractMessage.QOSType.QOSType, msg.getPayload(), false,
-                    (int) clientSession.getNextMessageId());
+        forEachMemberPage(groupId, new MemberPageVisitor() {
+            @Override
+            public void visit(long[] page) {
+                long[] seqs = null;
+                for (int i = 0; i < topics.length; i++) {
+                    seqs = syncMessageProcessor.appendAll(page, topics[i], payloads[i]);
+                }
+                for (int i = 0; i < page.length; i++) {
+                    syncMessageProcessor.push(page[i], seqs[i]);
+                }
+            }
+        });
+    }
+
+    private void forEachMemberPage(String groupId, MemberPageVisitor visitor) {
+        long afterUid = 0;
+        long[] page;
+        do {
+            try {
+                page = userGroupService.listUidsByGroupId(groupId, afterUid, GROUP_PAGE_SIZE);
+            } catch (Exception e) {
+                LOGGER.error("list members of group {} after uid {} error", groupId, afterUid, e);
+                return;
+            }
+            if (page == null) {
+                LOGGER.warn("list members of group {} after uid {} failed", groupId, afterUid);
+                return;
+            }
+            visitor.visit(page);
+            if (page.length > 0) {
+                afterUid = page[page.length - 1];
+            }
+        } while (page.length == GROUP_PAGE_SIZE);
+    }
 
+    private interface MemberPageVisitor {
+        void visit(long[] page);
+    }
+
+    /**
+     * 开启合并时把同一topic的连续多条消息打包成b|topic的一条消息，qos取其中最高的
+     */
+    private List<PublishMessage> coalesce(List<PublishMessage> msgs) {
+        if (groupCoalesceMillis <= 0 || msgs.size() <= 1) {
+            return msgs;
         }
+        List<PublishMessage> frames = Lists.newArrayList();
+        int from = 0;
+        while (from < msgs.size()) {
+            String topic = msgs.get(from).getTopicName();
+            int to = from + 1;
+            while (to < msgs.size() && to - from < groupMaxBatch && topic.equals(msgs.get(to).getTopicName())) {
+                to++;
+            }
+            if (to - from == 1) {
+                frames.add(msgs.get(from));
+            } else {
+                List<ByteBuffer> payloads = Lists.newArrayListWithCapacity(to - from);
+                AbstractMessage.QOSType qos = AbstractMessage.QOSType.MOST_ONE;
+                for (int i = from; i < to; i++) {
+                    PublishMessage msg = msgs.get(i);
+                    payloads.add(msg.getPayload());
+                    if (msg.getQos().byteValue() > qos.byteValue()) {
+                        qos = msg.getQos();
+                    }
+                }
+                PublishMessage frame = new PublishMessage();
+                frame.setTopicName(TopicType.BATCH.getType() + R.SPLIT + topic);
+                frame.setQos(qos);
+                frame.setPayload(BatchPayload.encode(payloads));
+                frames.add(frame);
+            }
+            from = to;
+        }
+        return frames;
     }
 
     /**
-     * 处理问答类型的消息，消息透传到logic层，logic层返回数据后直接封装到mqtt publish msg的payload中返回给客户端
-     * 这类消息Qos为0，不保证消息一定到达
+     * 等待已经提交的群消息fan-out全部执行完，connector下线时调用
+     * 每个fan-out线程上排一个和合并窗口同样延迟的空任务，单线程按触发时间执行，空任务执行时之前的批次都已经下发
      *
-     * @param topic
-     * @param session
-     * @param msg
-     * @throws Exception
+     * @return 超时前全部完成时返回true
      */
-    private void handleMyselfMsg(String topic, final Channel session, final PublishMessage msg) throws Exception {
+    public boolean awaitGroupFanout(long timeoutMillis) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(groupFanoutExecutors.length);
+        for (ScheduledExecutorService executor : groupFanoutExecutors) {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    latch.countDown();
+                }
+            }, groupCoalesceMillis, TimeUnit.MILLISECONDS);
+        }
+        return latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
 
+    private ScheduledExecutorService groupFanoutExecutor(String groupId) {
+        return groupFanoutExecutors[(groupId.hashCode() & Integer.MAX_VALUE) % groupFanoutExecutors.length];
     }
 
+    /**
+     * 同一个群等待fan-out的一批消息，开始下发后关闭，之后的消息进入新的一批
+     */
+    private static class GroupBatch {
+        private final List<PublishMessage> msgs = Lists.newArrayListWithCapacity(4);
+        private final int capacity;
+        private boolean closed;
+
+        GroupBatch(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized boolean offer(PublishMessage msg) {
+            if (closed || msgs.size() >= capacity) {
+                return false;
+            }
+            msgs.add(msg);
+            return true;
+        }
+
+        synchronized List<PublishMessage> close() {
+            closed = true;
+            return msgs;
+        }
+    }
 }
@@ -0,0 +1,219 @@
+package com.dempe.chat.connector.processor;
+
+import com.alibaba.fastjson.JSON;
+import com.dempe.chat.common.mqtt.messages.AbstractMessage;
+import com.dempe.chat.common.mqtt.messages.PublishMessage;
+import com.dempe.chat.connector.NettyUtils;
+import com.dempe.ocean.common.ExtendProtocol;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 问答消息(m|service|method[|compressType])转发到logic层的服务
+ * 1.启动时按白名单从motan referer上解析出每个方法，生成绑定好referer的MethodHandle缓存起来，调用时只查一次map
+ * 2.payload为参数的json数组，返回值编码为json；topic里带compressType时请求按该算法解压，
+ *   超过阈值的响应用同样的算法压缩，见{@link com.dempe.chat.connector.compress.PayloadCompression}
+ * 3.rpc在单独的线程池执行，不占用io线程；线程池满时直接返回busy
+ * 4.响应在同一个topic上以qos0返回给发请求的连接，带上请求的packet id，见{@link ExtendProtocol#encodeRpcRsp}
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.rpc.services   允许客户端调用的服务，逗号分隔，Service表示整个接口，Service.method表示单个方法，
+ *                      默认UserService.imInit,UserService.chInit；重载的方法不支持
+ * ocean.rpc.threads    执行rpc的线程数，默认cpu核数*4
+ * ocean.rpc.queueSize  等待执行的请求数上限，默认10000
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 01:30
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class RpcMessageProcessor extends MessageProcessor {
+
+    private static final String API_PACKAGE = "com.dempe.logic.api.";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    private final String services = System.getProperty("ocean.rpc.services", "UserService.imInit,UserService.chInit");
+
+    // service|method -> invoker，启动后只读
+    private final Map<String, Invoker> invokers = Maps.newHashMap();
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() throws Exception {
+        for (String entry : Splitter.on(',').trimResults().omitEmptyStrings().split(services)) {
+            String serviceName = StringUtils.substringBefore(entry, ".");
+            String methodName = StringUtils.substringAfter(entry, ".");
+            Class<?> iface = Class.forName(API_PACKAGE + serviceName);
+            Object referer = applicationContext.getBean(iface);
+            Map<String, Method> methods = Maps.newHashMap();
+            for (Method method : iface.getMethods()) {
+                if (methods.put(method.getName(), method) != null) {
+                    // 按方法名路由，重载的方法无法区分
+                    methods.put(method.getName(), null);
+                }
+            }
+            for (Map.Entry<String, Method> e : methods.entrySet()) {
+                if (StringUtils.isNotEmpty(methodName) && !methodName.equals(e.getKey())) {
+                    continue;
+                }
+                if (e.getValue() == null) {
+                    LOGGER.warn("skip overloaded method {}.{}", serviceName, e.getKey());
+                    continue;
+                }
+                invokers.put(serviceName + "|" + e.getKey(), new Invoker(e.getValue(), referer));
+            }
+        }
+        int threads = Integer.getInteger("ocean.rpc.threads", Runtime.getRuntime().availableProcessors() * 4);
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Integer.getInteger("ocean.rpc.queueSize", 10000)),
+                new DefaultThreadFactory("rpc-bridge", true));
+        LOGGER.info("rpc bridge methods {}", invokers.keySet());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public void processRequest(final String topic, final Channel channel, PublishMessage msg) {
+        final int packetId = msg.getMessageID() == null ? 0 : msg.getMessageID();
+        // m|service|method[|compressType]
+        List<String> parts = Splitter.on('|').splitToList(topic);
+        if (parts.size() < 3 || parts.size() > 4) {
+            respond(channel, topic, packetId, ExtendProtocol.RPC_BAD_REQUEST, "bad topic");
+            return;
+        }
+        final int compressType = parts.size() == 4 ? NumberUtils.toInt(parts.get(3), -1) : 0;
+        if (compressType != 0 && !payloadCompression.isSupported(compressType)) {
+            respond(channel, topic, packetId, ExtendProtocol.RPC_BAD_REQUEST, "unsupported compress type " + parts.get(3));
+            return;
+        }
+        final Invoker invoker = invokers.get(parts.get(1) + "|" + parts.get(2));
+        if (invoker == null) {
+            respond(channel, topic, packetId, ExtendProtocol.RPC_NOT_FOUND, parts.get(1) + "." + parts.get(2));
+            return;
+        }
+        final ByteBuffer payload = msg.getPayload();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    invoke(invoker, topic, channel, packetId, compressType, payload);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("rpc bridge busy, reject <{}> from client <{}>", topic, NettyUtils.clientID(channel));
+            respond(channel, topic, packetId, ExtendProtocol.RPC_BUSY, "busy");
+        }
+    }
+
+    private void invoke(Invoker invoker, String topic, Channel channel, int packetId, int compressType,
+                        ByteBuffer payload) {
+        Object[] args;
+        try {
+            args = invoker.decodeArgs(SyncMessageProcessor.toBytes(payloadCompression.decompress(compressType, payload)));
+        } catch (RuntimeException e) {
+            LOGGER.debug("bad rpc arguments on <{}>", topic, e);
+            respond(channel, topic, packetId, ExtendProtocol.RPC_BAD_REQUEST, "bad arguments");
+            return;
+        }
+        ByteBuffer body;
+        try {
+            body = ByteBuffer.wrap(JSON.toJSONBytes(invoker.invoke(args)));
+        } catch (Throwable e) {
+            LOGGER.error("rpc <{}> from client <{}> error", topic, NettyUtils.clientID(channel), e);
+            respond(channel, topic, packetId, ExtendProtocol.RPC_ERROR, String.valueOf(e.getMessage()));
+            return;
+        }
+        ByteBuffer compressed = compressType == 0 ? null : payloadCompression.compress(compressType, body);
+        if (compressed != null) {
+            respond(channel, topic, packetId, ExtendProtocol.RPC_OK, compressType, compressed);
+        } else {
+            respond(channel, topic, packetId, ExtendProtocol.RPC_OK, 0, body);
+        }
+    }
+
+    private void respond(Channel channel, String topic, int packetId, int code, String error) {
+        respond(channel, topic, packetId, code, 0, ByteBuffer.wrap(error.getBytes(UTF8)));
+    }
+
+    /**
+     * packet id只在发请求的连接上有意义，连接已经断开时丢弃响应
+     */
+    private void respond(Channel channel, String topic, int packetId, int code, int compressType, ByteBuffer body) {
+        if (!channel.isActive()) {
+            LOGGER.debug("client <{}> is offline, drop response on topic <{}>", NettyUtils.clientID(channel), topic);
+            return;
+        }
+        PublishMessage rsp = new PublishMessage();
+        rsp.setTopicName(topic);
+        rsp.setQos(AbstractMessage.QOSType.MOST_ONE);
+        rsp.setPayload(ExtendProtocol.encodeRpcRsp(packetId, code, compressType, body));
+        channel.writeAndFlush(rsp);
+    }
+
+    /**
+     * 绑定了referer的方法句柄，类型统一为(Object[])Object，调用时不再做反射查找
+     */
+    private static final class Invoker {
+        private final MethodHandle handle;
+        private final Type[] paramTypes;
+
+        Invoker(Method method, Object target) throws IllegalAccessException {
+            int arity = method.getParameterTypes().length;
+            this.handle = MethodHandles.publicLookup().unreflect(method).bindTo(target)
+                    .asType(MethodType.genericMethodType(arity))
+                    .asSpreader(Object[].class, arity);
+            this.paramTypes = method.getGenericParameterTypes();
+        }
+
+        Object[] decodeArgs(byte[] payload) {
+            if (payload.length == 0) {
+                if (paramTypes.length != 0) {
+                    throw new IllegalArgumentException("expect " + paramTypes.length + " arguments");
+                }
+                return EMPTY_ARGS;
+            }
+            List<Object> args = JSON.parseArray(new String(payload, UTF8), paramTypes);
+            if (args == null || args.size() != paramTypes.length) {
+                throw new IllegalArgumentException("expect " + paramTypes.length + " arguments");
+            }
+            return args.toArray();
+        }
+
+        Object invoke(Object[] args) throws Throwable {
+            return (Object) handle.invokeExact(args);
+        }
+    }
+}
@@ -4,10 +4,17 @@ import com.dempe.chat.common.mqtt.messages.AbstractMessage;
 import com.dempe.chat.common.mqtt.messages.SubAckMessage;
 import com.dempe.chat.common.mqtt.messages.SubscribeMessage;
 import com.dempe.chat.connector.NettyUtils;
+import com.dempe.chat.connector.live.LiveRoomManager;
 import com.dempe.chat.connector.store.ClientSession;
+import com.dempe.chat.connector.store.RetainedMessage;
+import com.dempe.chat.connector.store.RetainedStore;
 import com.dempe.chat.connector.store.Subscription;
+import com.dempe.chat.connector.store.TopicTrie;
+import com.dempe.ocean.common.TopicType;
 import com.google.common.collect.Lists;
 import io.netty.channel.Channel;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -22,6 +29,12 @@ import java.util.List;
 @Component
 public class SubscribeMessageProcessor extends MessageProcessor {
 
+    @Autowired
+    private RetainedStore retainedStore;
+
+    @Autowired
+    private LiveRoomManager liveRoomManager;
+
     public void processSubscribe(Channel channel, SubscribeMessage msg) {
         String clientID = NettyUtils.clientID(channel);
         LOGGER.debug("SUBSCRIBE client <{}> packetID {}", clientID, msg.getMessageID());
@@ -33,11 +46,27 @@ public class SubscribeMessageProcessor extends MessageProcessor {
 
         List<Subscription> newSubscriptions = Lists.newArrayList();
         for (SubscribeMessage.Couple req : msg.subscriptions()) {
+            if (!TopicTrie.isValidFilter(req.topicFilter)) {
+                LOGGER.warn("client <{}> subscribe invalid topic filter <{}>", clientID, req.topicFilter);
+                ackMessage.addType(AbstractMessage.QOSType.FAILURE);
+                continue;
+            }
+            if (StringUtils.startsWith(req.topicFilter, TopicType.LIVE.getType())) {
+                // 直播频道不走订阅树，按连接加入频道；频道内的消息只以qos0下发
+                if (!TopicTrie.isValidTopic(req.topicFilter)) {
+                    ackMessage.addType(AbstractMessage.QOSType.FAILURE);
+                    continue;
+                }
+                liveRoomManager.join(channel, req.topicFilter);
+                ackMessage.addType(AbstractMessage.QOSType.MOST_ONE);
+                newSubscriptions.add(new Subscription(clientID, req.topicFilter, AbstractMessage.QOSType.MOST_ONE));
+                continue;
+            }
             AbstractMessage.QOSType qos = AbstractMessage.QOSType.valueOf(req.qos);
             Subscription newSubscription = new Subscription(clientID, req.topicFilter, qos);
-
-            // TODO 存储订阅关系
-
+            m_subscriptionStore.add(clientSession, newSubscription);
+            ackMessage.addType(qos);
+            newSubscriptions.add(newSubscription);
         }
 
         //save session, persist subscriptions from session
@@ -45,7 +74,23 @@ public class SubscribeMessageProcessor extends MessageProcessor {
 
         channel.writeAndFlush(ackMessage);
 
+        // SUBACK之后下发匹配的保留消息，不需要访问logic层
+        for (Subscription subscription : newSubscriptions) {
+            publishRetained(clientSession, subscription);
+        }
+        channel.flush();
     }
 
+    private void publishRetained(final ClientSession clientSession, final Subscription subscription) {
+        retainedStore.match(subscription.getTopicFilter(), new TopicTrie.Visitor<RetainedMessage>() {
+            @Override
+            public void visit(RetainedMessage retained) {
+                AbstractMessage.QOSType qos = retained.getQos().byteValue() <= subscription.getRequestedQos().byteValue()
+                        ? retained.getQos() : subscription.getRequestedQos();
+                directSend(clientSession, retained.getTopic(), qos, retained.getPayload(), true,
+                        nextMessageId(clientSession, qos), false);
+            }
+        });
+    }
 
 }
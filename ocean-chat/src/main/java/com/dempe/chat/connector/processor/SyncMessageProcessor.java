@@ -0,0 +1,196 @@
+package com.dempe.chat.connector.processor;
+
+import com.dempe.chat.common.mqtt.messages.AbstractMessage;
+import com.dempe.chat.common.mqtt.messages.PublishMessage;
+import com.dempe.chat.connector.NettyUtils;
+import com.dempe.chat.connector.inbox.DefaultInboxStore;
+import com.dempe.chat.connector.store.ClientSession;
+import com.dempe.ocean.common.ExtendProtocol;
+import com.dempe.ocean.common.R;
+import com.dempe.ocean.db.model.im.InboxMessage;
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * push/sync扩展协议，见{@link ExtendProtocol}
+ * 开启后(ocean.sync.enabled)好友和群消息先写入接收方的收件箱，在线的接收方只收到一条带最新seq的push，
+ * 再由客户端按自己记录的seq增量sync，离线期间的消息在重连时同样通过sync拿到
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.sync.enabled    是否开启，默认false，消息直接下发
+ * ocean.sync.maxBatch   每次sync最多返回的条数，默认100
+ * ocean.sync.store      收件箱存储，memory为connector本地内存(默认)，rpc为logic层的MessageService
+ * ocean.sync.threads    rpc存储时执行sync请求的线程数，默认cpu核数*2
+ * </pre>
+ * 好友消息通过{@link com.dempe.chat.connector.persist.WriteBehindPersister}批量写入收件箱，写入后再push；
+ * rpc存储时sync请求不在io线程上执行，按uid固定到同一个线程
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 22:20
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class SyncMessageProcessor extends MessageProcessor {
+
+    private final boolean enabled = Boolean.getBoolean("ocean.sync.enabled");
+    private final int maxBatch = Integer.getInteger("ocean.sync.maxBatch", 100);
+
+    @Autowired
+    private DefaultInboxStore inboxStore;
+
+    // 存储在远端时执行存储操作，本地内存存储直接在调用线程执行
+    private ExecutorService[] storeExecutors;
+
+    @PostConstruct
+    public void init() {
+        if (enabled && inboxStore.isRemote()) {
+            storeExecutors = new ExecutorService[Integer.getInteger("ocean.sync.threads",
+                    Runtime.getRuntime().availableProcessors() * 2)];
+            DefaultThreadFactory threadFactory = new DefaultThreadFactory("inbox-store", true);
+            for (int i = 0; i < storeExecutors.length; i++) {
+                storeExecutors[i] = Executors.newSingleThreadExecutor(threadFactory);
+            }
+        }
+        LOGGER.info("inbox sync enabled {}, store {}", enabled, inboxStore);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (storeExecutors != null) {
+            for (ExecutorService executor : storeExecutors) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 同一条消息写入多个用户的收件箱，会阻塞，只在群消息fan-out线程上调用
+     *
+     * @return 与uids一一对应的seq
+     */
+    public long[] appendAll(long[] uids, String topic, byte[] payload) {
+        return inboxStore.appendAll(uids, topic, payload);
+    }
+
+    /**
+     * push只是通知，qos为0，丢失时客户端在下次push或者重连时补齐
+     */
+    public void push(String uid, long latestSeq) {
+        if (latestSeq <= 0 || !m_clientIDs.containsKey(uid)) {
+            return;
+        }
+        push(m_sessionsStore.sessionForClient(uid), latestSeq);
+    }
+
+    /**
+     * 群消息写入收件箱后按uid push，离线成员直接跳过
+     */
+    public void push(long uid, long latestSeq) {
+        if (latestSeq <= 0 || !m_clientIDs.containsKey(uid)) {
+            return;
+        }
+        push(m_sessionsStore.sessionForClient(uid), latestSeq);
+    }
+
+    /**
+     * 客户端已经确认同步到latestSeq时不再通知，例如沿用会话重连、或者sync响应已经带上了这条消息
+     */
+    private void push(ClientSession clientSession, long latestSeq) {
+        if (clientSession == null || latestSeq <= clientSession.getAckedSeq()) {
+            return;
+        }
+        directSend(clientSession, R.SYNC_PUSH_TOPIC, AbstractMessage.QOSType.MOST_ONE,
+                ExtendProtocol.encodeSrvPush(latestSeq), false, null);
+    }
+
+    /**
+     * 连接成功后push一次最新seq，客户端据此判断是否需要同步离线消息
+     */
+    public void onConnect(final String clientID) {
+        if (!enabled) {
+            return;
+        }
+        execute(clientID, new Runnable() {
+            @Override
+            public void run() {
+                push(clientID, inboxStore.latestSeq(clientID));
+            }
+        });
+    }
+
+    public void processSync(Channel channel, PublishMessage msg) {
+        final String clientID = NettyUtils.clientID(channel);
+        final ExtendProtocol.SynReq req;
+        try {
+            req = ExtendProtocol.decodeCliSynReq(msg.getPayload());
+        } catch (RuntimeException e) {
+            LOGGER.warn("malformed sync request from client <{}>", clientID, e);
+            return;
+        }
+        final int limit = req.getLimit() <= 0 ? maxBatch : Math.min(req.getLimit(), maxBatch);
+        execute(clientID, new Runnable() {
+            @Override
+            public void run() {
+                long latestSeq = inboxStore.latestSeq(clientID);
+                List<InboxMessage> messages = inboxStore.fetch(clientID, req.getAfterSeq(), limit);
+                LOGGER.debug("sync client <{}> after seq {}, {} messages, latest seq {}",
+                        clientID, req.getAfterSeq(), messages.size(), latestSeq);
+                ClientSession clientSession = m_sessionsStore.sessionForClient(clientID);
+                directSend(clientSession, R.SYNC_TOPIC, AbstractMessage.QOSType.MOST_ONE,
+                        ExtendProtocol.encodeSrvSynRsp(latestSeq, messages), false, null);
+            }
+        });
+    }
+
+    public void processAck(Channel channel, PublishMessage msg) {
+        String clientID = NettyUtils.clientID(channel);
+        try {
+            m_sessionsStore.sessionForClient(clientID).ack(ExtendProtocol.decodeSeqRsp(msg.getPayload()));
+        } catch (RuntimeException e) {
+            LOGGER.warn("malformed sync ack from client <{}>", clientID, e);
+        }
+    }
+
+    private void execute(final String uid, final Runnable task) {
+        Runnable guarded = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.error("inbox store operation of <{}> error", uid, e);
+                }
+            }
+        };
+        if (storeExecutors == null) {
+            guarded.run();
+            return;
+        }
+        try {
+            storeExecutors[(uid.hashCode() & Integer.MAX_VALUE) % storeExecutors.length].execute(guarded);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("inbox store executor shutdown, drop task of <{}>", uid);
+        }
+    }
+
+    static byte[] toBytes(ByteBuffer payload) {
+        ByteBuffer buf = payload.duplicate();
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        return bytes;
+    }
+}
@@ -3,8 +3,12 @@ package com.dempe.chat.connector.processor;
 import com.dempe.chat.common.mqtt.messages.UnsubAckMessage;
 import com.dempe.chat.common.mqtt.messages.UnsubscribeMessage;
 import com.dempe.chat.connector.NettyUtils;
+import com.dempe.chat.connector.live.LiveRoomManager;
 import com.dempe.chat.connector.store.ClientSession;
+import com.dempe.ocean.common.TopicType;
 import io.netty.channel.Channel;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -19,6 +23,9 @@ import java.util.List;
 @Component
 public class UnSubscriptionMessageProcessor extends MessageProcessor {
 
+    @Autowired
+    private LiveRoomManager liveRoomManager;
+
     public void processUnsubscribe(Channel channel, UnsubscribeMessage msg) {
         List<String> topics = msg.topicFilters();
         int messageID = msg.getMessageID();
@@ -28,6 +35,11 @@ public class UnSubscriptionMessageProcessor extends MessageProcessor {
 
         ClientSession clientSession = m_sessionsStore.sessionForClient(clientID);
         for (String topic : topics) {
+            if (StringUtils.startsWith(topic, TopicType.LIVE.getType())) {
+                liveRoomManager.leave(channel, topic);
+            } else {
+                m_subscriptionStore.remove(clientSession, topic);
+            }
         }
 
         //ack the client
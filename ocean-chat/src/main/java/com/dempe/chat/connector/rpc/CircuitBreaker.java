@@ -0,0 +1,124 @@
+package com.dempe.chat.connector.rpc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 单个rpc方法的熔断器
+ * 1.CLOSED 统计最近window次调用，次数不少于minCalls且失败比例达到failureRatio时打开
+ * 2.OPEN   openMillis内所有调用直接失败，不访问logic层
+ * 3.HALF_OPEN 之后只放过一个探测调用，成功则关闭，失败则重新打开
+ * 状态变化不频繁，直接用对象锁
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 10:20
+ * To change this template use File | Settings | File Templates.
+ */
+class CircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final double failureRatio;
+    private final int minCalls;
+    private final long openMillis;
+
+    // 最近window次调用的结果，环形数组
+    private final boolean[] failures;
+    private int next;
+    private int calls;
+    private int failed;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probing;
+
+    CircuitBreaker(String name, int window, double failureRatio, int minCalls, long openMillis) {
+        this.name = name;
+        this.failures = new boolean[window];
+        this.failureRatio = failureRatio;
+        this.minCalls = Math.min(minCalls, window);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return 是否允许本次调用；HALF_OPEN时返回true的调用必须随后调用onSuccess或onFailure
+     */
+    synchronized boolean allow() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        if (probing) {
+            return false;
+        }
+        probing = true;
+        return true;
+    }
+
+    synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            LOGGER.info("circuit of {} closed", name);
+            reset(State.CLOSED);
+            return;
+        }
+        add(false);
+    }
+
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        if (state == State.OPEN) {
+            return;
+        }
+        add(true);
+        if (calls >= minCalls && failed >= calls * failureRatio) {
+            open();
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private void add(boolean failure) {
+        if (calls == failures.length) {
+            if (failures[next]) {
+                failed--;
+            }
+        } else {
+            calls++;
+        }
+        failures[next] = failure;
+        if (failure) {
+            failed++;
+        }
+        next = (next + 1) % failures.length;
+    }
+
+    private void open() {
+        LOGGER.warn("circuit of {} opened, fail fast for {} ms, failed {}/{}", name, openMillis, failed, calls);
+        reset(State.OPEN);
+        openedAt = System.currentTimeMillis();
+    }
+
+    private void reset(State state) {
+        this.state = state;
+        probing = false;
+        next = 0;
+        calls = 0;
+        failed = 0;
+    }
+}
@@ -0,0 +1,54 @@
+package com.dempe.chat.connector.rpc;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 最近N次调用的耗时，定期排序算出p95/p99，供自适应超时和对冲延迟使用
+ * 写入无锁，分位数每SAMPLE_INTERVAL次写入重算一次，读取只是读volatile字段
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 10:20
+ * To change this template use File | Settings | File Templates.
+ */
+class LatencyWindow {
+
+    // 重算分位数的间隔，窗口越大排序越贵，间隔相应放大
+    private static final int SAMPLE_INTERVAL = 64;
+
+    private final long[] samples;
+    private final AtomicLong count = new AtomicLong();
+
+    private volatile long p95 = -1;
+    private volatile long p99 = -1;
+
+    LatencyWindow(int size) {
+        samples = new long[size];
+    }
+
+    /**
+     * @param micros 一次调用的耗时，超时的调用记为超时时间
+     */
+    void record(long micros) {
+        long n = count.getAndIncrement();
+        // 并发写同一个槽位只会丢一个样本，不影响分位数
+        samples[(int) (n % samples.length)] = micros;
+        if ((n + 1) % SAMPLE_INTERVAL == 0 && n + 1 >= samples.length / 4) {
+            long[] sorted = Arrays.copyOf(samples, (int) Math.min(n + 1, samples.length));
+            Arrays.sort(sorted);
+            p95 = sorted[(int) (sorted.length * 0.95)];
+            p99 = sorted[(int) (sorted.length * 0.99)];
+        }
+    }
+
+    /**
+     * @return 样本不足时返回-1
+     */
+    long p95() {
+        return p95;
+    }
+
+    long p99() {
+        return p99;
+    }
+}
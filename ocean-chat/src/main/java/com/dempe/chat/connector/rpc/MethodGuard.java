@@ -0,0 +1,264 @@
+package com.dempe.chat.connector.rpc;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.weibo.api.motan.exception.MotanBizException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个referer方法的调用保护，见{@link ResilientReferers}
+ * 1.幂等的读方法的超时时间为最近调用的p99乘以系数，限制在[minTimeout, maxTimeout]内，样本不足时用maxTimeout；
+ *   非幂等的写方法在调用线程上直接调用，超时由referer的requestTimeout决定，不会被提前取消
+ * 2.幂等的读方法在p95之后还没有返回(或者已经失败)时再发一次对冲请求，取先成功的结果；
+ *   对冲次数不超过调用次数的hedgeRatio，避免logic层整体变慢时请求翻倍
+ * 3.超时和调用异常计入熔断器，打开时直接失败
+ * 4.幂等的读方法成功的结果按参数缓存，失败或熔断时返回缓存的旧结果
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 10:20
+ * To change this template use File | Settings | File Templates.
+ */
+class MethodGuard {
+
+    private static final long MIN_HEDGE_DELAY_MICROS = 2000;
+
+    private final String name;
+    private final Method method;
+    private final Object target;
+    private final ExecutorService executor;
+    private final ResilientReferers.Settings settings;
+    private final boolean idempotent;
+
+    private final LatencyWindow latency;
+    private final CircuitBreaker breaker;
+    // 幂等方法最近一次成功的结果，非幂等方法为null
+    private final Cache<ArgsKey, Object> lastGood;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    MethodGuard(String name, Method method, Object target, ExecutorService executor,
+                ResilientReferers.Settings settings, boolean idempotent) {
+        this.name = name;
+        this.method = method;
+        this.target = target;
+        this.executor = executor;
+        this.settings = settings;
+        this.idempotent = idempotent;
+        this.latency = new LatencyWindow(settings.window);
+        this.breaker = new CircuitBreaker(name, settings.breakerWindow, settings.failureRatio, settings.minCalls,
+                settings.openMillis);
+        this.lastGood = idempotent ? CacheBuilder.newBuilder().maximumSize(settings.fallbackSize)
+                .expireAfterWrite(settings.fallbackSec, TimeUnit.SECONDS).<ArgsKey, Object>build() : null;
+    }
+
+    Object invoke(final Object[] args) throws Throwable {
+        calls.incrementAndGet();
+        if (!breaker.allow()) {
+            rejected.incrementAndGet();
+            return fallback(args, new RpcUnavailableException("circuit of " + name + " is open"));
+        }
+        if (!idempotent) {
+            return invokeDirect(args);
+        }
+        Callable<Object> call = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : new ExecutionException(cause);
+                }
+            }
+        };
+        long timeoutMicros = timeoutMicros();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MICROSECONDS.toNanos(timeoutMicros);
+        long hedgeAt = idempotent ? start + TimeUnit.MICROSECONDS.toNanos(hedgeDelayMicros(timeoutMicros)) : deadline;
+        CompletionService<Object> completion = new ExecutorCompletionService<Object>(executor);
+        List<Future<Object>> attempts = Lists.newArrayListWithCapacity(2);
+        Throwable failure = null;
+        try {
+            attempts.add(completion.submit(call));
+            int pending = 1;
+            while (pending > 0) {
+                long now = System.nanoTime();
+                boolean canHedge = attempts.size() == 1 && hedgeAllowed();
+                long waitUntil = canHedge ? Math.min(hedgeAt, deadline) : deadline;
+                Future<Object> done = completion.poll(Math.max(0, waitUntil - now), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    if (System.nanoTime() - deadline >= 0) {
+                        break;
+                    }
+                    if (canHedge) {
+                        hedge(completion, call, attempts);
+                        pending++;
+                    }
+                    continue;
+                }
+                pending--;
+                try {
+                    Object result = done.get();
+                    onSuccess(start, args, result, done != attempts.get(0));
+                    return result;
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                    if (failure instanceof MotanBizException) {
+                        // 业务异常说明logic层是好的，不计入熔断，也不对冲
+                        onSuccess(start, null, null, false);
+                        throw failure;
+                    }
+                    // 读方法第一次调用很快失败时不等p95，直接对冲，代替motan的retries
+                    if (pending == 0 && attempts.size() == 1 && hedgeAllowed() && System.nanoTime() < deadline) {
+                        hedge(completion, call, attempts);
+                        pending++;
+                    }
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            failure = new RpcUnavailableException("rpc call pool is full", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } finally {
+            for (Future<Object> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+        if (failure == null) {
+            timeouts.incrementAndGet();
+            latency.record(timeoutMicros);
+            failure = new RpcUnavailableException(name + " timeout after " + timeoutMicros / 1000 + " ms");
+        } else {
+            failures.incrementAndGet();
+        }
+        breaker.onFailure();
+        return fallback(args, failure);
+    }
+
+    /**
+     * 写方法被自适应超时取消时可能已经在logic层提交(例如一批消息已经写入收件箱)，调用方当作失败重发就会重复写入，
+     * 所以只在熔断打开时拒绝(请求不会发出)，其余按motan的requestTimeout等待结果
+     */
+    private Object invokeDirect(Object[] args) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            Object result = method.invoke(target, args);
+            onSuccess(start, null, null, false);
+            return result;
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MotanBizException) {
+                onSuccess(start, null, null, false);
+            } else {
+                failures.incrementAndGet();
+                breaker.onFailure();
+            }
+            throw cause;
+        }
+    }
+
+    /**
+     * @return 当前的超时时间
+     */
+    long timeoutMicros() {
+        long p99 = latency.p99();
+        if (p99 < 0) {
+            return settings.maxTimeoutMicros;
+        }
+        return Math.max(settings.minTimeoutMicros, Math.min(settings.maxTimeoutMicros,
+                (long) (p99 * settings.timeoutFactor)));
+    }
+
+    CircuitBreaker.State getState() {
+        return breaker.getState();
+    }
+
+    @Override
+    public String toString() {
+        Object timeoutMs = idempotent ? timeoutMicros() / 1000 : "referer";
+        return name + "{state=" + breaker.getState() + ", timeoutMs=" + timeoutMs
+                + ", p95Us=" + latency.p95() + ", p99Us=" + latency.p99() + ", calls=" + calls
+                + ", timeouts=" + timeouts + ", failures=" + failures + ", rejected=" + rejected
+                + ", hedges=" + hedges + ", hedgeWins=" + hedgeWins + ", fallbacks=" + fallbacks + "}";
+    }
+
+    private long hedgeDelayMicros(long timeoutMicros) {
+        long p95 = latency.p95();
+        return p95 < 0 ? timeoutMicros / 2 : Math.max(MIN_HEDGE_DELAY_MICROS, p95);
+    }
+
+    private boolean hedgeAllowed() {
+        return idempotent && hedges.get() < calls.get() * settings.hedgeRatio;
+    }
+
+    private void hedge(CompletionService<Object> completion, Callable<Object> call, List<Future<Object>> attempts) {
+        hedges.incrementAndGet();
+        attempts.add(completion.submit(call));
+    }
+
+    private void onSuccess(long start, Object[] args, Object result, boolean hedged) {
+        latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        breaker.onSuccess();
+        if (hedged) {
+            hedgeWins.incrementAndGet();
+        }
+        if (lastGood != null && result != null) {
+            lastGood.put(new ArgsKey(args), result);
+        }
+    }
+
+    private Object fallback(Object[] args, Throwable failure) throws Throwable {
+        if (lastGood != null) {
+            Object stale = lastGood.getIfPresent(new ArgsKey(args));
+            if (stale != null) {
+                fallbacks.incrementAndGet();
+                return stale;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * 参数里有long[]等数组，按内容比较
+     */
+    private static final class ArgsKey {
+        private final Object[] args;
+        private final int hash;
+
+        ArgsKey(Object[] args) {
+            this.args = args == null ? new Object[0] : args;
+            this.hash = Arrays.deepHashCode(this.args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ArgsKey && Arrays.deepEquals(args, ((ArgsKey) o).args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
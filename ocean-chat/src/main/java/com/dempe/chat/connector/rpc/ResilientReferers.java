@@ -0,0 +1,182 @@
+package com.dempe.chat.connector.rpc;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.commons.lang3.ClassUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 给logic层的referer(bean id以Referer结尾、实现com.dempe.logic.api接口的bean)套一层调用保护，
+ * 注入到Authenticator、PublishMessageProcessor、rpc转发等处的都是保护后的代理：
+ * 1.ocean.rpc.idempotent里的读方法自适应超时，超时时间跟随最近调用的p99，见{@link MethodGuard}
+ * 2.这些读方法慢于p95时发对冲请求，失败或熔断时返回本地缓存的上次结果
+ * 3.按方法熔断，logic层慢或者不可用时直接失败，不再排队占满连接；motan自身的retries配置为0，避免重试放大流量
+ * 读方法在rpc-call线程池里执行，调用方等待结果或者超时；其他方法(登录、消息写入、好友/群组变更等)
+ * 只受熔断保护，在调用线程上直接调用，超时为referer的requestTimeout，已经提交的写入不会因为提前超时被当作失败重发
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.rpc.idempotent        自适应超时、可以对冲和缓存的方法，Service.method逗号分隔，
+ *                             默认UserGroupService的listUidByGroupId、listUidsByGroupId、listUidsByGroupIds和UserService.listUserByUids
+ * ocean.rpc.minTimeoutMs      自适应超时的下限，默认50
+ * ocean.rpc.maxTimeoutMs      自适应超时的上限，也是样本不足时的超时，默认1000，需小于referer的requestTimeout
+ * ocean.rpc.timeoutFactor     超时时间为p99的倍数，默认3
+ * ocean.rpc.hedgeRatio        对冲请求占调用次数的比例上限，默认0.1
+ * ocean.rpc.window            统计耗时分位数的最近调用次数，默认512
+ * ocean.rpc.breakerWindow     熔断统计失败比例的最近调用次数，默认100
+ * ocean.rpc.failureRatio      熔断的失败比例，默认0.5
+ * ocean.rpc.minCalls          熔断至少需要的调用次数，默认20
+ * ocean.rpc.openMs            熔断后直接失败的时间，默认5000
+ * ocean.rpc.fallbackSize      每个幂等方法缓存的结果数，默认10000
+ * ocean.rpc.fallbackSec       缓存结果的有效期，默认600
+ * ocean.rpc.callThreads       执行rpc调用的线程数，默认64
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 10:20
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class ResilientReferers implements BeanPostProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResilientReferers.class);
+
+    private static final String API_PACKAGE = "com.dempe.logic.api";
+    private static final String REFERER_SUFFIX = "Referer";
+
+    private final Settings settings = new Settings();
+
+    private final Set<String> idempotent = Sets.newHashSet(Splitter.on(',').trimResults().omitEmptyStrings()
+            .split(System.getProperty("ocean.rpc.idempotent", "UserGroupService.listUidByGroupId,"
+                    + "UserGroupService.listUidsByGroupId,UserGroupService.listUidsByGroupIds,UserService.listUserByUids")));
+
+    private final ThreadPoolExecutor executor;
+
+    private final List<MethodGuard> guards = Collections.synchronizedList(Lists.<MethodGuard>newArrayList());
+
+    public ResilientReferers() {
+        int threads = Integer.getInteger("ocean.rpc.callThreads", 64);
+        // 队列满说明logic层已经跟不上，直接失败，比排队等到超时好
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * 4), new DefaultThreadFactory("rpc-call", true));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void close() {
+        LOGGER.info("referer guards {}", guards);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return 每个方法的状态、超时时间和计数
+     */
+    public List<String> stats() {
+        List<String> stats = Lists.newArrayList();
+        synchronized (guards) {
+            for (MethodGuard guard : guards) {
+                stats.add(guard.toString());
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        // motan referer是FactoryBean，getObject()返回的代理也会经过这里
+        if (!beanName.endsWith(REFERER_SUFFIX) || bean instanceof Guarded) {
+            return bean;
+        }
+        List<Class<?>> apis = Lists.newArrayList();
+        for (Class<?> iface : ClassUtils.getAllInterfaces(bean.getClass())) {
+            if (iface.getName().startsWith(API_PACKAGE + ".")) {
+                apis.add(iface);
+            }
+        }
+        if (apis.isEmpty()) {
+            return bean;
+        }
+        Map<Method, MethodGuard> methodGuards = Maps.newHashMap();
+        for (Class<?> api : apis) {
+            for (Method method : api.getMethods()) {
+                String name = api.getSimpleName() + "." + method.getName();
+                MethodGuard guard = new MethodGuard(name, method, bean, executor, settings, idempotent.contains(name));
+                methodGuards.put(method, guard);
+                guards.add(guard);
+            }
+        }
+        apis.add(Guarded.class);
+        LOGGER.info("guard referer {} methods {}", beanName, methodGuards.size());
+        return Proxy.newProxyInstance(getClass().getClassLoader(), apis.toArray(new Class<?>[apis.size()]),
+                new GuardHandler(bean, methodGuards));
+    }
+
+    /**
+     * 标记已经套过保护的代理
+     */
+    interface Guarded {
+    }
+
+    private static final class GuardHandler implements InvocationHandler {
+        private final Object target;
+        // 构造后只读
+        private final Map<Method, MethodGuard> guards;
+
+        GuardHandler(Object target, Map<Method, MethodGuard> guards) {
+            this.target = target;
+            this.guards = guards;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            MethodGuard guard = guards.get(method);
+            if (guard != null) {
+                return guard.invoke(args);
+            }
+            // equals/hashCode/toString
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    static final class Settings {
+        final long minTimeoutMicros = TimeUnit.MILLISECONDS.toMicros(Long.getLong("ocean.rpc.minTimeoutMs", 50L));
+        final long maxTimeoutMicros = TimeUnit.MILLISECONDS.toMicros(Long.getLong("ocean.rpc.maxTimeoutMs", 1000L));
+        final double timeoutFactor = Double.parseDouble(System.getProperty("ocean.rpc.timeoutFactor", "3"));
+        final double hedgeRatio = Double.parseDouble(System.getProperty("ocean.rpc.hedgeRatio", "0.1"));
+        final int window = Integer.getInteger("ocean.rpc.window", 512);
+        final int breakerWindow = Integer.getInteger("ocean.rpc.breakerWindow", 100);
+        final double failureRatio = Double.parseDouble(System.getProperty("ocean.rpc.failureRatio", "0.5"));
+        final int minCalls = Integer.getInteger("ocean.rpc.minCalls", 20);
+        final long openMillis = Long.getLong("ocean.rpc.openMs", 5000L);
+        final long fallbackSize = Long.getLong("ocean.rpc.fallbackSize", 10000L);
+        final long fallbackSec = Long.getLong("ocean.rpc.fallbackSec", 600L);
+    }
+}
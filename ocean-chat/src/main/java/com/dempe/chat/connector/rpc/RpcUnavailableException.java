@@ -0,0 +1,21 @@
+package com.dempe.chat.connector.rpc;
+
+/**
+ * logic层暂时不可用：超时、熔断或者调用线程池已满，且没有可用的本地缓存结果
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 10:20
+ * To change this template use File | Settings | File Templates.
+ */
+public class RpcUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RpcUnavailableException(String message) {
+        super(message);
+    }
+
+    public RpcUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,75 @@
+package com.dempe.chat.connector.store;
+
+import com.dempe.ocean.utils.ConcurrentLongObjectMap;
+import com.google.common.collect.Maps;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按clientID索引的并发表
+ * clientID就是uid的十进制串(不带正号和前导0)时按long存进{@link ConcurrentLongObjectMap}，不保存key的String；
+ * 其他clientID(例如调试客户端)放在普通的ConcurrentHashMap里。群消息fan-out等按uid查找时直接用long，不再拼字符串
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 05:30
+ * To change this template use File | Settings | File Templates.
+ */
+public class ClientIdMap<V> {
+
+    private final ConcurrentLongObjectMap<V> uids = new ConcurrentLongObjectMap<V>();
+    private final ConcurrentMap<String, V> others = Maps.newConcurrentMap();
+
+    /**
+     * @return clientID对应的uid，不是规范的非负十进制long时返回-1
+     */
+    static long toUid(String clientID) {
+        int length = clientID.length();
+        if (length == 0 || length > 19 || (length > 1 && clientID.charAt(0) == '0')) {
+            return -1;
+        }
+        long uid = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = clientID.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            uid = uid * 10 + digit;
+            if (uid < 0) {
+                // 超过Long.MAX_VALUE
+                return -1;
+            }
+        }
+        return uid;
+    }
+
+    public V get(String clientID) {
+        long uid = toUid(clientID);
+        return uid >= 0 ? uids.get(uid) : others.get(clientID);
+    }
+
+    public V get(long uid) {
+        return uid >= 0 ? uids.get(uid) : others.get(String.valueOf(uid));
+    }
+
+    public boolean containsKey(String clientID) {
+        return get(clientID) != null;
+    }
+
+    public boolean containsKey(long uid) {
+        return get(uid) != null;
+    }
+
+    public V put(String clientID, V value) {
+        long uid = toUid(clientID);
+        return uid >= 0 ? uids.put(uid, value) : others.put(clientID, value);
+    }
+
+    public boolean remove(String clientID, V value) {
+        long uid = toUid(clientID);
+        return uid >= 0 ? uids.remove(uid, value) : others.remove(clientID, value);
+    }
+
+    public int size() {
+        return uids.size() + others.size();
+    }
+}
@@ -1,5 +1,12 @@
 package com.dempe.chat.connector.store;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 /**
  * Created with IntelliJ IDEA.
  * User: Dempe
@@ -8,10 +15,24 @@ package com.dempe.chat.connector.store;
  * To change this template use File | Settings | File Templates.
  */
 public class ClientSession {
+    // 每个在线用户一个实例，计数器用field updater，不再各带一个Atomic对象
+    private static final AtomicIntegerFieldUpdater<ClientSession> NEXT_MESSAGE_ID =
+            AtomicIntegerFieldUpdater.newUpdater(ClientSession.class, "nextMessageId");
+    private static final AtomicLongFieldUpdater<ClientSession> ACKED_SEQ =
+            AtomicLongFieldUpdater.newUpdater(ClientSession.class, "ackedSeq");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ClientSession, Set> SUBSCRIPTIONS =
+            AtomicReferenceFieldUpdater.newUpdater(ClientSession.class, Set.class, "subscriptions");
+
     private final String clientID;
-    private short nextMessageId = 1;
+    // connector的io线程和群消息fan-out线程都会分配消息id
+    private volatile int nextMessageId = 1;
     private volatile boolean cleanSession;
-    private boolean active = false;
+    private volatile boolean active = false;
+    // 订阅过的filter，订阅关系本身在SubscriptionStore里；大多数连接不订阅，第一次订阅时才创建
+    private volatile Set<String> subscriptions;
+    // 客户端确认已经同步到的收件箱seq，不超过它的push不再下发
+    private volatile long ackedSeq;
 
 
     public ClientSession(String clientID, boolean cleanSession) {
@@ -32,13 +53,62 @@ public class ClientSession {
         this.active = false;
     }
 
-    public short getNextMessageId() {
-        short rc = nextMessageId;
-        nextMessageId++;
-        if (nextMessageId == 0) {
-            nextMessageId = 1;
+    public boolean isCleanSession() {
+        return cleanSession;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    void addSubscription(String topicFilter) {
+        Set<String> set = subscriptions;
+        if (set == null) {
+            SUBSCRIPTIONS.compareAndSet(this, null, Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(4)));
+            set = subscriptions;
+        }
+        set.add(topicFilter);
+    }
+
+    void removeSubscription(String topicFilter) {
+        Set<String> set = subscriptions;
+        if (set != null) {
+            set.remove(topicFilter);
+        }
+    }
+
+    public Set<String> getSubscriptions() {
+        Set<String> set = subscriptions;
+        return set == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * 只前进不后退，多端或者乱序的ack不会把已确认的seq改小
+     */
+    public void ack(long seq) {
+        for (; ; ) {
+            long current = ackedSeq;
+            if (seq <= current || ACKED_SEQ.compareAndSet(this, current, seq)) {
+                return;
+            }
+        }
+    }
+
+    public long getAckedSeq() {
+        return ackedSeq;
+    }
+
+    /**
+     * mqtt的packet id范围为1~65535
+     */
+    public int getNextMessageId() {
+        for (; ; ) {
+            int current = nextMessageId;
+            int next = current >= 0xFFFF ? 1 : current + 1;
+            if (NEXT_MESSAGE_ID.compareAndSet(this, current, next)) {
+                return current;
+            }
         }
-        return rc;
     }
 
 }
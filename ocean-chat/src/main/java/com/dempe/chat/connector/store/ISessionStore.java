@@ -9,5 +9,23 @@ package com.dempe.chat.connector.store;
  */
 public interface ISessionStore {
 
+    /**
+     * 在线客户端返回它的会话，不在线时返回一个临时会话，不会保存
+     */
     public ClientSession sessionForClient(String clientID);
+
+    /**
+     * 同上，按uid查找，群消息fan-out时不用再转成字符串
+     */
+    public ClientSession sessionForClient(long uid);
+
+    /**
+     * CONNECT成功时调用，cleanSession为false时沿用之前的会话(消息id等状态随之交接给新连接)，否则新建
+     */
+    public ClientSession createOrReuseSession(String clientID, boolean cleanSession);
+
+    /**
+     * 连接断开时调用，只删除指定的会话，不影响已经被新连接替换的会话
+     */
+    public void removeSession(String clientID, ClientSession session);
 }
@@ -0,0 +1,40 @@
+package com.dempe.chat.connector.store;
+
+import com.dempe.chat.common.mqtt.messages.AbstractMessage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 某个topic上保留的最新一条消息，payload只读，下发时各自duplicate
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 20:05
+ * To change this template use File | Settings | File Templates.
+ */
+public class RetainedMessage {
+    private final String topic;
+    private final AbstractMessage.QOSType qos;
+    private final ByteBuffer payload;
+
+    public RetainedMessage(String topic, AbstractMessage.QOSType qos, ByteBuffer payload) {
+        this.topic = topic;
+        this.qos = qos;
+        this.payload = payload;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public AbstractMessage.QOSType getQos() {
+        return qos;
+    }
+
+    public ByteBuffer getPayload() {
+        return payload.duplicate();
+    }
+
+    public int size() {
+        return payload.remaining();
+    }
+}
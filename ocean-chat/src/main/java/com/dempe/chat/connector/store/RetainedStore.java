@@ -0,0 +1,235 @@
+package com.dempe.chat.connector.store;
+
+import com.dempe.chat.common.mqtt.messages.AbstractMessage;
+import com.google.common.base.Strings;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 保留消息，每个topic只保留最新一条，订阅时按filter在{@link TopicTrie}里查找，新订阅者不用访问logic层就能拿到最新状态
+ * 1.小payload放在堆内，超过offHeapThreshold的复制到堆外，减少大对象对老年代的压力
+ * 2.所有payload总大小不超过maxBytes，超出时拒绝新的保留消息(已有topic的更新只要放得下仍然接受)
+ * 3.配置了file时定期把全部保留消息写入文件(先写临时文件再改名)，启动时加载
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.retained.maxBytes          payload总大小上限，默认64M
+ * ocean.retained.offHeapThreshold  超过该大小的payload放堆外，默认1024，小于0表示全部放堆内
+ * ocean.retained.file              持久化文件，不配置时只在内存中
+ * ocean.retained.flushSec          有变化时写文件的间隔，默认5
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 20:10
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class RetainedStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetainedStore.class);
+
+    private static final int FILE_MAGIC = 0x4F524D31;
+
+    private final long maxBytes = Long.getLong("ocean.retained.maxBytes", 64L * 1024 * 1024);
+    private final int offHeapThreshold = Integer.getInteger("ocean.retained.offHeapThreshold", 1024);
+
+    private final TopicTrie<RetainedMessage> topics = new TopicTrie<RetainedMessage>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final File file;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private ScheduledExecutorService flushExecutor;
+
+    public RetainedStore() {
+        String path = System.getProperty("ocean.retained.file");
+        file = Strings.isNullOrEmpty(path) ? null : new File(path);
+        if (file == null) {
+            return;
+        }
+        load();
+        long flushSec = Long.getLong("ocean.retained.flushSec", 5L);
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("retained-flush", true));
+        flushExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, flushSec, flushSec, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 保存topic上的最新消息，payload为空时删除该topic的保留消息(mqtt规范)
+     *
+     * @return 是否保存成功，超出容量时返回false
+     */
+    public boolean put(String topic, AbstractMessage.QOSType qos, ByteBuffer payload) {
+        if (payload == null || !payload.hasRemaining()) {
+            remove(topic);
+            return true;
+        }
+        int size = payload.remaining();
+        // 先占用额度，放不下时不复制payload
+        if (usedBytes.addAndGet(size) > maxBytes) {
+            RetainedMessage existing = topics.get(topic);
+            if (existing == null || usedBytes.get() - existing.size() > maxBytes) {
+                usedBytes.addAndGet(-size);
+                long count = rejected.incrementAndGet();
+                LOGGER.warn("retained store full ({} bytes), reject topic <{}>, rejected {}", maxBytes, topic, count);
+                return false;
+            }
+        }
+        RetainedMessage old = topics.put(topic, new RetainedMessage(topic, qos, copy(payload)));
+        if (old != null) {
+            usedBytes.addAndGet(-old.size());
+        }
+        dirty.set(true);
+        return true;
+    }
+
+    public void remove(String topic) {
+        RetainedMessage old = topics.remove(topic);
+        if (old != null) {
+            usedBytes.addAndGet(-old.size());
+            dirty.set(true);
+        }
+    }
+
+    public RetainedMessage get(String topic) {
+        return topics.get(topic);
+    }
+
+    /**
+     * 找出匹配订阅filter的所有保留消息，在调用线程上执行
+     */
+    public void match(String topicFilter, TopicTrie.Visitor<RetainedMessage> visitor) {
+        topics.matchTopics(topicFilter, visitor);
+    }
+
+    public int size() {
+        return topics.size();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            flush();
+        }
+    }
+
+    private ByteBuffer copy(ByteBuffer payload) {
+        int size = payload.remaining();
+        ByteBuffer copy = offHeapThreshold >= 0 && size > offHeapThreshold
+                ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        copy.put(payload.duplicate()).flip();
+        return copy.asReadOnlyBuffer();
+    }
+
+    private synchronized void flush() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(FILE_MAGIC);
+                final IOException[] error = new IOException[1];
+                topics.forEach(new TopicTrie.Visitor<RetainedMessage>() {
+                    @Override
+                    public void visit(RetainedMessage msg) {
+                        if (error[0] != null) {
+                            return;
+                        }
+                        try {
+                            ByteBuffer payload = msg.getPayload();
+                            byte[] bytes = new byte[payload.remaining()];
+                            payload.get(bytes);
+                            out.writeUTF(msg.getTopic());
+                            out.writeByte(msg.getQos().byteValue());
+                            out.writeInt(bytes.length);
+                            out.write(bytes);
+                        } catch (IOException e) {
+                            error[0] = e;
+                        }
+                    }
+                });
+                if (error[0] != null) {
+                    throw error[0];
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+                throw new IOException("rename " + tmp + " to " + file + " failed");
+            }
+        } catch (IOException e) {
+            // 下次继续尝试
+            dirty.set(true);
+            LOGGER.error("flush retained messages to {} error", file, e);
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        int count = 0;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != FILE_MAGIC) {
+                    LOGGER.error("{} is not a retained message file, ignored", file);
+                    return;
+                }
+                for (; ; ) {
+                    String topic;
+                    try {
+                        topic = in.readUTF();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    AbstractMessage.QOSType qos = AbstractMessage.QOSType.valueOf(in.readByte());
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    if (put(topic, qos, ByteBuffer.wrap(bytes))) {
+                        count++;
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.error("load retained messages from {} error, {} loaded", file, count, e);
+        }
+        dirty.set(false);
+        LOGGER.info("load {} retained messages ({} bytes) from {}", count, usedBytes.get(), file);
+    }
+}
@@ -1,9 +1,5 @@
 package com.dempe.chat.connector.store;
 
-import com.google.common.collect.Maps;
-
-import java.util.Map;
-
 /**
  * Created with IntelliJ IDEA.
  * User: Dempe
@@ -13,7 +9,13 @@ import java.util.Map;
  */
 public class SessionStoreImpl implements ISessionStore {
 
-    private final static Map<String, ClientSession> m_sessionStore = Maps.newConcurrentMap();
+    private final static ClientIdMap<ClientSession> m_sessionStore = new ClientIdMap<ClientSession>();
+
+    private final SubscriptionStore subscriptionStore;
+
+    public SessionStoreImpl(SubscriptionStore subscriptionStore) {
+        this.subscriptionStore = subscriptionStore;
+    }
 
     @Override
     public ClientSession sessionForClient(String clientID) {
@@ -23,4 +25,39 @@ public class SessionStoreImpl implements ISessionStore {
         }
         return clientSession;
     }
+
+    @Override
+    public ClientSession sessionForClient(long uid) {
+        ClientSession clientSession = m_sessionStore.get(uid);
+        if (clientSession == null) {
+            clientSession = new ClientSession(String.valueOf(uid), false);
+        }
+        return clientSession;
+    }
+
+    @Override
+    public ClientSession createOrReuseSession(String clientID, boolean cleanSession) {
+        if (!cleanSession) {
+            ClientSession existing = m_sessionStore.get(clientID);
+            if (existing != null) {
+                existing.activate();
+                return existing;
+            }
+        }
+        ClientSession clientSession = new ClientSession(clientID, cleanSession);
+        clientSession.activate();
+        ClientSession old = m_sessionStore.put(clientID, clientSession);
+        if (old != null) {
+            // cleanSession的新连接丢弃之前保留的订阅
+            subscriptionStore.removeAll(old);
+        }
+        return clientSession;
+    }
+
+    @Override
+    public void removeSession(String clientID, ClientSession session) {
+        if (m_sessionStore.remove(clientID, session)) {
+            subscriptionStore.removeAll(session);
+        }
+    }
 }
@@ -0,0 +1,72 @@
+package com.dempe.chat.connector.store;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 订阅关系，按filter存在{@link TopicTrie}里，发布时用具体topic匹配出所有订阅者
+ * 每个客户端订阅过的filter同时记在它的{@link ClientSession}里，会话清除时据此删除
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 19:55
+ * To change this template use File | Settings | File Templates.
+ */
+public class SubscriptionStore {
+
+    // filter -> (clientID -> 订阅)
+    private final TopicTrie<ConcurrentMap<String, Subscription>> filters = new TopicTrie<ConcurrentMap<String, Subscription>>();
+
+    public synchronized void add(ClientSession session, Subscription subscription) {
+        ConcurrentMap<String, Subscription> subscribers = filters.get(subscription.getTopicFilter());
+        if (subscribers == null) {
+            subscribers = Maps.newConcurrentMap();
+            filters.put(subscription.getTopicFilter(), subscribers);
+        }
+        subscribers.put(subscription.getClientId(), subscription);
+        session.addSubscription(subscription.getTopicFilter());
+    }
+
+    public synchronized void remove(ClientSession session, String topicFilter) {
+        session.removeSubscription(topicFilter);
+        ConcurrentMap<String, Subscription> subscribers = filters.get(topicFilter);
+        if (subscribers != null) {
+            subscribers.remove(session.getClientID());
+            if (subscribers.isEmpty()) {
+                filters.remove(topicFilter);
+            }
+        }
+    }
+
+    public void removeAll(ClientSession session) {
+        for (String topicFilter : session.getSubscriptions()) {
+            remove(session, topicFilter);
+        }
+    }
+
+    /**
+     * 匹配topic的订阅，同一客户端有多个filter匹配时只保留qos最高的一个，避免重复下发
+     *
+     * @return clientID -> 订阅
+     */
+    public Map<String, Subscription> matches(String topic) {
+        final Map<String, Subscription> result = Maps.newHashMap();
+        filters.matchFilters(topic, new TopicTrie.Visitor<ConcurrentMap<String, Subscription>>() {
+            @Override
+            public void visit(ConcurrentMap<String, Subscription> subscribers) {
+                for (Subscription subscription : subscribers.values()) {
+                    Subscription existing = result.get(subscription.getClientId());
+                    if (existing == null || existing.getRequestedQos().byteValue() < subscription.getRequestedQos().byteValue()) {
+                        result.put(subscription.getClientId(), subscription);
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+    public int filterCount() {
+        return filters.size();
+    }
+}
@@ -0,0 +1,228 @@
+package com.dempe.chat.connector.store;
+
+import com.dempe.ocean.common.R;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按topic层级组织的前缀树，层级分隔符为{@link R#SPLIT}，通配符与mqtt一致：
+ * + 匹配一层，# 匹配剩余所有层(包括零层)，以$开头的topic不会被首层通配符匹配
+ * 同一棵树有两种用法：
+ * 1.保存具体topic(保留消息)，用带通配符的订阅去查 {@link #matchTopics}
+ * 2.保存订阅filter(订阅关系)，用具体topic去查 {@link #matchFilters}
+ * 读不加锁，可以在任意线程并发执行；写操作互斥，删除时顺带清理空节点
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 19:40
+ * To change this template use File | Settings | File Templates.
+ */
+public class TopicTrie<V> {
+
+    public static final String SINGLE_LEVEL = "+";
+    public static final String MULTI_LEVEL = "#";
+
+    public interface Visitor<V> {
+        void visit(V value);
+    }
+
+    private final Node<V> root = new Node<V>();
+    private int size;
+
+    /**
+     * 检查订阅filter是否合法：通配符必须单独占一层，#只能在最后一层
+     */
+    public static boolean isValidFilter(String filter) {
+        if (StringUtils.isEmpty(filter)) {
+            return false;
+        }
+        String[] levels = levels(filter);
+        for (int i = 0; i < levels.length; i++) {
+            String level = levels[i];
+            if (MULTI_LEVEL.equals(level)) {
+                if (i != levels.length - 1) {
+                    return false;
+                }
+            } else if (!SINGLE_LEVEL.equals(level) && (level.contains(MULTI_LEVEL) || level.contains(SINGLE_LEVEL))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 具体topic(发布用)不能包含通配符
+     */
+    public static boolean isValidTopic(String topic) {
+        return StringUtils.isNotEmpty(topic) && !topic.contains(MULTI_LEVEL) && !topic.contains(SINGLE_LEVEL);
+    }
+
+    public V get(String key) {
+        Node<V> node = root;
+        for (String level : levels(key)) {
+            node = node.children.get(level);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node.value;
+    }
+
+    /**
+     * @return 原来的值
+     */
+    public synchronized V put(String key, V value) {
+        Node<V> node = root;
+        for (String level : levels(key)) {
+            Node<V> child = node.children.get(level);
+            if (child == null) {
+                child = new Node<V>();
+                node.children.put(level, child);
+            }
+            node = child;
+        }
+        V old = node.value;
+        node.value = value;
+        if (old == null) {
+            size++;
+        }
+        return old;
+    }
+
+    /**
+     * @return 删除的值
+     */
+    public synchronized V remove(String key) {
+        String[] levels = levels(key);
+        List<Node<V>> path = new ArrayList<Node<V>>(levels.length + 1);
+        Node<V> node = root;
+        path.add(node);
+        for (String level : levels) {
+            node = node.children.get(level);
+            if (node == null) {
+                return null;
+            }
+            path.add(node);
+        }
+        V old = node.value;
+        if (old == null) {
+            return null;
+        }
+        node.value = null;
+        size--;
+        // 从叶子往上删掉没有值也没有子节点的节点
+        for (int i = levels.length; i > 0; i--) {
+            Node<V> current = path.get(i);
+            if (current.value != null || !current.children.isEmpty()) {
+                break;
+            }
+            path.get(i - 1).children.remove(levels[i - 1], current);
+        }
+        return old;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 树中保存的是具体topic，找出所有匹配filter的值
+     */
+    public void matchTopics(String filter, Visitor<V> visitor) {
+        matchTopics(root, levels(filter), 0, visitor);
+    }
+
+    /**
+     * 树中保存的是订阅filter，找出所有能匹配topic的值
+     */
+    public void matchFilters(String topic, Visitor<V> visitor) {
+        matchFilters(root, levels(topic), 0, visitor);
+    }
+
+    /**
+     * 遍历树中所有的值
+     */
+    public void forEach(Visitor<V> visitor) {
+        visitAll(root, visitor, false);
+    }
+
+    private void matchTopics(Node<V> node, String[] filter, int index, Visitor<V> visitor) {
+        if (index == filter.length) {
+            visitValue(node, visitor);
+            return;
+        }
+        String level = filter[index];
+        if (MULTI_LEVEL.equals(level)) {
+            visitAll(node, visitor, index == 0);
+        } else if (SINGLE_LEVEL.equals(level)) {
+            for (ConcurrentMap.Entry<String, Node<V>> entry : node.children.entrySet()) {
+                if (index == 0 && isSystemLevel(entry.getKey())) {
+                    continue;
+                }
+                matchTopics(entry.getValue(), filter, index + 1, visitor);
+            }
+        } else {
+            Node<V> child = node.children.get(level);
+            if (child != null) {
+                matchTopics(child, filter, index + 1, visitor);
+            }
+        }
+    }
+
+    private void matchFilters(Node<V> node, String[] topic, int index, Visitor<V> visitor) {
+        boolean wildcardAllowed = index > 0 || topic.length == 0 || !isSystemLevel(topic[0]);
+        if (wildcardAllowed) {
+            Node<V> multi = node.children.get(MULTI_LEVEL);
+            if (multi != null) {
+                visitValue(multi, visitor);
+            }
+        }
+        if (index == topic.length) {
+            visitValue(node, visitor);
+            return;
+        }
+        if (wildcardAllowed) {
+            Node<V> single = node.children.get(SINGLE_LEVEL);
+            if (single != null) {
+                matchFilters(single, topic, index + 1, visitor);
+            }
+        }
+        Node<V> exact = node.children.get(topic[index]);
+        if (exact != null) {
+            matchFilters(exact, topic, index + 1, visitor);
+        }
+    }
+
+    private void visitAll(Node<V> node, Visitor<V> visitor, boolean skipSystem) {
+        visitValue(node, visitor);
+        for (ConcurrentMap.Entry<String, Node<V>> entry : node.children.entrySet()) {
+            if (skipSystem && isSystemLevel(entry.getKey())) {
+                continue;
+            }
+            visitAll(entry.getValue(), visitor, false);
+        }
+    }
+
+    private void visitValue(Node<V> node, Visitor<V> visitor) {
+        V value = node.value;
+        if (value != null) {
+            visitor.visit(value);
+        }
+    }
+
+    private static boolean isSystemLevel(String level) {
+        return level.startsWith("$");
+    }
+
+    private static String[] levels(String key) {
+        return StringUtils.splitPreserveAllTokens(key, R.SPLIT);
+    }
+
+    private static final class Node<V> {
+        final ConcurrentMap<String, Node<V>> children = new ConcurrentHashMap<String, Node<V>>(4);
+        volatile V value;
+    }
+}
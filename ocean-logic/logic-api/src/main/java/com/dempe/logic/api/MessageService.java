@@ -0,0 +1,52 @@
+package com.dempe.logic.api;
+
+import com.dempe.ocean.db.model.im.InboxMessage;
+
+import java.util.List;
+
+/**
+ * 用户收件箱，按(uid, seq)保存消息，connector通过它实现push/sync增量同步
+ * seq在同一用户内单调递增，不保证连续
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 23:10
+ * To change this template use File | Settings | File Templates.
+ */
+public interface MessageService {
+
+    /**
+     * 追加一条消息
+     *
+     * @return 分配的seq
+     */
+    long append(String uid, String topic, byte[] payload);
+
+    /**
+     * 同一条消息追加到多个用户的收件箱，群消息fan-out时每页成员一次rpc
+     *
+     * @return 与uids一一对应的seq
+     */
+    long[] appendAll(long[] uids, String topic, byte[] payload);
+
+    /**
+     * 批量追加，每条消息需要填好uid、topic、payload、createTime，同一用户的多条按顺序分配seq
+     *
+     * @return 与messages一一对应的seq
+     */
+    long[] appendBatch(List<InboxMessage> messages);
+
+    /**
+     * @return 用户最新的seq，没有消息时为0
+     */
+    long latestSeq(String uid);
+
+    /**
+     * 增量拉取
+     *
+     * @param uid      用户uid
+     * @param afterSeq 已经同步到的seq，返回比它大的消息
+     * @param limit    最多返回的条数
+     * @return 按seq升序，不包含已过期的消息
+     */
+    List<InboxMessage> fetch(String uid, long afterSeq, int limit);
+}
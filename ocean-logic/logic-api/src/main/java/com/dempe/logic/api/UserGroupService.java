@@ -2,6 +2,9 @@ package com.dempe.logic.api;
 
 import com.alibaba.fastjson.JSONObject;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Created with IntelliJ IDEA.
  * User: Dempe
@@ -11,7 +14,31 @@ import com.alibaba.fastjson.JSONObject;
  */
 public interface UserGroupService {
 
-    JSONObject listUidByGroupId(String groupId);
+    /**
+     * 查询群的全部成员，一次返回，只适合小群；大群或者消息fan-out请使用分页的listUidsByGroupId
+     *
+     * @param groupId 群id
+     * @return 成员uid，按uid升序
+     */
+    long[] listUidByGroupId(String groupId);
+
+    /**
+     * 批量查询多个群的成员，connector启动、缓存预热以及多群fan-out时一次rpc完成
+     *
+     * @param groupIds 群id
+     * @return groupId -> 成员uid，没有成员的群对应空数组
+     */
+    Map<String, long[]> listUidsByGroupIds(Collection<String> groupIds);
+
+    /**
+     * 按uid升序分页遍历群成员
+     *
+     * @param groupId  群id
+     * @param afterUid 上一页最后一个uid，第一页传0
+     * @param limit    每页最多返回的数量
+     * @return 本页成员uid，长度小于limit表示已经是最后一页
+     */
+    long[] listUidsByGroupId(String groupId, long afterUid, int limit);
 
     JSONObject saveUserGroup(Long uid, String groupId);
 
@@ -3,6 +3,8 @@ package com.dempe.logic.api;
 import com.alibaba.fastjson.JSONObject;
 import com.dempe.ocean.db.model.User;
 
+import java.util.List;
+
 /**
  * Created with IntelliJ IDEA.
  * User: Dempe
@@ -20,6 +22,14 @@ public interface UserService {
      */
     User login(String uid, String pwd);
 
+    /**
+     * 批量查询用户资料
+     *
+     * @param uids 用户uid
+     * @return 存在的用户，不保证与uids顺序一致
+     */
+    List<User> listUserByUids(long[] uids);
+
     JSONObject imInit();
 
     JSONObject chInit();
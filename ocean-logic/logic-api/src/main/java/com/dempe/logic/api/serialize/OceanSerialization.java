@@ -0,0 +1,119 @@
+package com.dempe.logic.api.serialize;
+
+import com.dempe.ocean.utils.Varints;
+import com.weibo.api.motan.codec.Serialization;
+import com.weibo.api.motan.core.extension.SpiMeta;
+import com.weibo.api.motan.serialize.Hessian2Serialization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * logic层rpc使用的序列化方式，在motan:protocol上配置serialization="ocean"启用，client和server两端需一致
+ * 群成员这类uid列表(long[]以及HashMap&lt;String, long[]&gt;)按差值varint编码，其余类型仍交给hessian2
+ * 第一个字节为类型标记
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 14:30
+ * To change this template use File | Settings | File Templates.
+ */
+@SpiMeta(name = "ocean")
+public class OceanSerialization implements Serialization {
+
+    private static final byte TAG_HESSIAN = 0;
+    private static final byte TAG_LONG_ARRAY = 1;
+    private static final byte TAG_LONG_ARRAY_MAP = 2;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Hessian2Serialization hessian = new Hessian2Serialization();
+
+    @Override
+    public byte[] serialize(Object obj) throws IOException {
+        if (obj instanceof long[]) {
+            long[] values = (long[]) obj;
+            byte[] bytes = new byte[1 + Varints.sizeOfDeltas(values)];
+            bytes[0] = TAG_LONG_ARRAY;
+            Varints.writeDeltas(values, bytes, 1);
+            return bytes;
+        }
+        if (obj != null && obj.getClass() == HashMap.class && isLongArrayMap((Map<?, ?>) obj)) {
+            return serializeLongArrayMap((Map<?, ?>) obj);
+        }
+        byte[] body = hessian.serialize(obj);
+        byte[] bytes = new byte[body.length + 1];
+        bytes[0] = TAG_HESSIAN;
+        System.arraycopy(body, 0, bytes, 1, body.length);
+        return bytes;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T deserialize(byte[] bytes, Class<T> clz) throws IOException {
+        if (bytes == null || bytes.length == 0) {
+            throw new IOException("empty bytes to deserialize " + clz);
+        }
+        try {
+            switch (bytes[0]) {
+                case TAG_LONG_ARRAY:
+                    return (T) Varints.readDeltas(ByteBuffer.wrap(bytes, 1, bytes.length - 1));
+                case TAG_LONG_ARRAY_MAP:
+                    return (T) deserializeLongArrayMap(ByteBuffer.wrap(bytes, 1, bytes.length - 1));
+                case TAG_HESSIAN:
+                    return hessian.deserialize(Arrays.copyOfRange(bytes, 1, bytes.length), clz);
+                default:
+                    throw new IOException("unknown serialization tag " + bytes[0] + " for " + clz);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("deserialize " + clz + " error", e);
+        }
+    }
+
+    private boolean isLongArrayMap(Map<?, ?> map) {
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof long[])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] serializeLongArrayMap(Map<?, ?> map) {
+        int size = 1 + Varints.sizeOf(map.size());
+        byte[][] keys = new byte[map.size()][];
+        int i = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            keys[i] = ((String) entry.getKey()).getBytes(UTF8);
+            size += Varints.sizeOf(keys[i].length) + keys[i].length + Varints.sizeOfDeltas((long[]) entry.getValue());
+            i++;
+        }
+        byte[] bytes = new byte[size];
+        bytes[0] = TAG_LONG_ARRAY_MAP;
+        int pos = Varints.write(map.size(), bytes, 1);
+        i = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            pos = Varints.write(keys[i].length, bytes, pos);
+            System.arraycopy(keys[i], 0, bytes, pos, keys[i].length);
+            pos += keys[i].length;
+            pos = Varints.writeDeltas((long[]) entry.getValue(), bytes, pos);
+            i++;
+        }
+        return bytes;
+    }
+
+    private Map<String, long[]> deserializeLongArrayMap(ByteBuffer buf) {
+        int size = (int) Varints.read(buf);
+        Map<String, long[]> map = new HashMap<String, long[]>(Math.max(4, size * 4 / 3 + 1));
+        for (int i = 0; i < size; i++) {
+            int keyLength = (int) Varints.read(buf);
+            String key = new String(buf.array(), buf.arrayOffset() + buf.position(), keyLength, UTF8);
+            buf.position(buf.position() + keyLength);
+            map.put(key, Varints.readDeltas(buf));
+        }
+        return map;
+    }
+}
@@ -1,5 +1,6 @@
 package com.dempe.logic.server;
 
+import com.dempe.logic.server.metrics.ServiceMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
@@ -19,6 +20,8 @@ public class LogicServer {
 
     public static void main(String[] args) throws InterruptedException {
         ApplicationContext applicationContext = new ClassPathXmlApplicationContext(new String[]{"classpath*:app*.xml"});
+        // 每个导出方法的排队、执行、mongo耗时，见ServiceMetrics
+        ServiceMetrics.getInstance().startReporter();
 
         LOGGER.info("server start...");
     }
@@ -0,0 +1,149 @@
+package com.dempe.logic.server.bench;
+
+import com.dempe.logic.server.cache.BusinessCache;
+import com.dempe.logic.server.cache.BusinessCaches;
+import com.dempe.logic.server.cache.CacheStats;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 业务缓存在Zipfian(少数key占大多数访问)分布下的吞吐和命中率，对比不缓存、LRU和W-TinyLFU，
+ * 未命中时park一段时间模拟一次mongo查询，不需要mongo：
+ * <pre>
+ * bench.keys        key的总数，默认1000000
+ * bench.cacheSize   缓存条目数，默认10000
+ * bench.theta       Zipfian参数，越大越集中，默认0.99(YCSB的默认值)
+ * bench.threads     并发线程数，默认8
+ * bench.loadMicros  每次加载的耗时，默认500
+ * bench.seconds     每种实现的压测时长，默认10，之前先预热同样的时长
+ * bench.impls       对比的实现，默认none,lru,tinylfu
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 13:10
+ * To change this template use File | Settings | File Templates.
+ */
+public class CacheBenchmark {
+
+    private final int keys = Integer.getInteger("bench.keys", 1000000);
+    private final int cacheSize = Integer.getInteger("bench.cacheSize", 10000);
+    private final double theta = Double.parseDouble(System.getProperty("bench.theta", "0.99"));
+    private final int threads = Integer.getInteger("bench.threads", 8);
+    private final long loadNanos = TimeUnit.MICROSECONDS.toNanos(Long.getLong("bench.loadMicros", 500L));
+    private final int seconds = Integer.getInteger("bench.seconds", 10);
+    private final String[] impls = System.getProperty("bench.impls", "none,lru,tinylfu").split(",");
+
+    private final LongAdder loads = new LongAdder();
+
+    public static void main(String[] args) throws InterruptedException {
+        new CacheBenchmark().run();
+    }
+
+    public void run() throws InterruptedException {
+        ZipfianGenerator generator = new ZipfianGenerator(keys, theta);
+        System.out.println(String.format("keys %d, cache size %d, theta %.2f, threads %d, load %d us, %d s each",
+                keys, cacheSize, theta, threads, TimeUnit.NANOSECONDS.toMicros(loadNanos), seconds));
+        for (String impl : impls) {
+            BusinessCache<Long, Long> cache = BusinessCaches.newCache(impl.trim(), impl.trim(), cacheSize, 0);
+            run(cache, generator);
+            CacheStats warm = cache.stats();
+            long loadsBefore = loads.sum();
+            long ops = run(cache, generator);
+            CacheStats stats = cache.stats().minus(warm);
+            System.out.println(String.format("%-8s qps %9d, hitRatio %.3f, loads/s %7d, evictions %d, size %d",
+                    impl.trim(), ops / seconds, stats.hitRatio(), (loads.sum() - loadsBefore) / seconds,
+                    stats.getEvictions(), stats.getSize()));
+        }
+    }
+
+    private long run(final BusinessCache<Long, Long> cache, final ZipfianGenerator generator)
+            throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final LongAdder ops = new LongAdder();
+        final CountDownLatch done = new CountDownLatch(threads);
+        final BusinessCache.Loader<Long, Long> loader = new BusinessCache.Loader<Long, Long>() {
+            @Override
+            public Long load(Long key) {
+                loads.increment();
+                LockSupport.parkNanos(loadNanos);
+                return key;
+            }
+        };
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (running.get()) {
+                            cache.get(generator.next(), loader);
+                            ops.increment();
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "bench-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        TimeUnit.SECONDS.sleep(seconds);
+        running.set(false);
+        done.await();
+        return ops.sum();
+    }
+
+    /**
+     * YCSB的Zipfian生成器(Gray等, Quickly Generating Billion-Record Synthetic Databases)，
+     * 生成的排名再打散，热点key不挨在一起
+     */
+    static final class ZipfianGenerator {
+
+        private final long items;
+        private final double theta;
+        private final double zetan;
+        private final double alpha;
+        private final double eta;
+
+        ZipfianGenerator(long items, double theta) {
+            this.items = items;
+            this.theta = theta;
+            this.zetan = zeta(items, theta);
+            double zeta2 = zeta(2, theta);
+            this.alpha = 1.0 / (1.0 - theta);
+            this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetan);
+        }
+
+        long next() {
+            double u = ThreadLocalRandom.current().nextDouble();
+            double uz = u * zetan;
+            long rank;
+            if (uz < 1.0) {
+                rank = 0;
+            } else if (uz < 1.0 + Math.pow(0.5, theta)) {
+                rank = 1;
+            } else {
+                rank = (long) (items * Math.pow(eta * u - eta + 1, alpha));
+            }
+            return scramble(Math.min(rank, items - 1));
+        }
+
+        private long scramble(long rank) {
+            long h = rank * 0x9e3779b97f4a7c15L;
+            h ^= h >>> 31;
+            return (h & Long.MAX_VALUE) % items;
+        }
+
+        private static double zeta(long n, double theta) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+    }
+}
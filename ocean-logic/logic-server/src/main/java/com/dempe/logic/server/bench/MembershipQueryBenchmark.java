@@ -0,0 +1,138 @@
+package com.dempe.logic.server.bench;
+
+import com.dempe.ocean.utils.LatencyHistogram;
+import com.google.common.collect.Lists;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+import com.mongodb.WriteConcern;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 群成员查询在有无索引、是否覆盖查询下的耗时对比，需要一个本地mongo(不要用线上库，会删掉并重建测试集合)：
+ * <pre>
+ * bench.mongoHost/bench.mongoPort  默认localhost:27017
+ * bench.db                         默认ocean_bench
+ * bench.rows                       user_group文档数，默认10000000，集合里数量不一致时重新生成
+ * bench.groupSize                  每个群的人数，默认500
+ * bench.scanQueries                无索引时的查询次数，全表扫描很慢，默认20
+ * bench.queries                    有索引时的查询次数，默认2000
+ * </pre>
+ * 查询条件与UserGroupDao一致：
+ * scan          无索引，取整个文档(原来的Morphia asList)
+ * index         (groupId, uid)索引，取整个文档
+ * covered       (groupId, uid)索引，投影{uid:1, _id:0}，只读索引
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 16:20
+ * To change this template use File | Settings | File Templates.
+ */
+public class MembershipQueryBenchmark {
+
+    private static final String COLLECTION = "user_group";
+    private static final int INSERT_BATCH = 10000;
+
+    private final String host = System.getProperty("bench.mongoHost", "localhost");
+    private final int port = Integer.getInteger("bench.mongoPort", 27017);
+    private final String dbName = System.getProperty("bench.db", "ocean_bench");
+    private final long rows = Long.getLong("bench.rows", 10000000L);
+    private final int groupSize = Integer.getInteger("bench.groupSize", 500);
+    private final int scanQueries = Integer.getInteger("bench.scanQueries", 20);
+    private final int queries = Integer.getInteger("bench.queries", 2000);
+
+    private final Random random = new Random(7);
+    private long blackhole;
+
+    public static void main(String[] args) throws IOException {
+        new MembershipQueryBenchmark().run();
+    }
+
+    public void run() throws IOException {
+        MongoClient client = new MongoClient(host, port);
+        try {
+            DB db = client.getDB(dbName);
+            DBCollection collection = db.getCollection(COLLECTION);
+            prepare(collection);
+            long groups = Math.max(1, rows / groupSize);
+
+            collection.dropIndexes();
+            LatencyHistogram scan = query(collection, groups, scanQueries, null);
+
+            long start = System.currentTimeMillis();
+            collection.createIndex(new BasicDBObject("groupId", 1).append("uid", 1));
+            System.out.println(String.format("create index (groupId, uid) in %d ms", System.currentTimeMillis() - start));
+            // 预热，让索引尽量进入内存
+            query(collection, groups, queries, new BasicDBObject("uid", 1).append("_id", 0));
+
+            LatencyHistogram index = query(collection, groups, queries, null);
+            LatencyHistogram covered = query(collection, groups, queries, new BasicDBObject("uid", 1).append("_id", 0));
+
+            System.out.println(String.format("rows %d, groups %d, group size %d, latency in us", rows, groups, groupSize));
+            System.out.println("scan     " + scan.summary());
+            System.out.println("index    " + index.summary());
+            System.out.println("covered  " + covered.summary());
+            DBObject explain = collection.find(new BasicDBObject("groupId", "0"), new BasicDBObject("uid", 1).append("_id", 0))
+                    .sort(new BasicDBObject("uid", 1)).explain();
+            System.out.println("covered explain: " + explain);
+            if (blackhole == 42) {
+                System.out.println();
+            }
+        } finally {
+            client.close();
+        }
+    }
+
+    private void prepare(DBCollection collection) {
+        if (collection.count() == rows) {
+            System.out.println(String.format("reuse %s.%s with %d rows", dbName, COLLECTION, rows));
+            return;
+        }
+        collection.drop();
+        long start = System.currentTimeMillis();
+        List<DBObject> batch = Lists.newArrayListWithCapacity(INSERT_BATCH);
+        for (long i = 0; i < rows; i++) {
+            // 同一个群的成员在插入顺序上分散开，更接近真实数据的物理分布
+            long group = i % Math.max(1, rows / groupSize);
+            batch.add(new BasicDBObject("groupId", String.valueOf(group))
+                    .append("uid", 100000000L + random.nextInt(50000000))
+                    .append("createTime", System.currentTimeMillis()));
+            if (batch.size() == INSERT_BATCH) {
+                collection.insert(batch, WriteConcern.ACKNOWLEDGED);
+                batch.clear();
+            }
+            if (i > 0 && i % 1000000 == 0) {
+                System.out.println(String.format("inserted %d rows in %d ms", i, System.currentTimeMillis() - start));
+            }
+        }
+        if (!batch.isEmpty()) {
+            collection.insert(batch, WriteConcern.ACKNOWLEDGED);
+        }
+        System.out.println(String.format("inserted %d rows in %d ms", rows, System.currentTimeMillis() - start));
+    }
+
+    private LatencyHistogram query(DBCollection collection, long groups, int times, DBObject fields) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < times; i++) {
+            String groupId = String.valueOf((long) (random.nextDouble() * groups));
+            long start = System.nanoTime();
+            DBCursor cursor = fields == null ? collection.find(new BasicDBObject("groupId", groupId))
+                    : collection.find(new BasicDBObject("groupId", groupId), fields);
+            try {
+                cursor.sort(new BasicDBObject("uid", 1));
+                while (cursor.hasNext()) {
+                    blackhole += ((Number) cursor.next().get("uid")).longValue();
+                }
+            } finally {
+                cursor.close();
+            }
+            histogram.record((System.nanoTime() - start) / 1000);
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,140 @@
+package com.dempe.logic.server.bench;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.dempe.logic.api.serialize.OceanSerialization;
+import com.dempe.ocean.utils.JsonResult;
+import com.google.common.primitives.Longs;
+import com.weibo.api.motan.codec.Serialization;
+import com.weibo.api.motan.serialize.Hessian2Serialization;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 群成员列表rpc返回值的序列化对比，直接运行main：
+ * <pre>
+ * bench.members     群成员数，默认10000
+ * bench.iterations  每种方式的测量次数，默认2000(之前另有同样次数的预热)
+ * </pre>
+ * 对比的几种方式：
+ * jsonResult+hessian2  原来的方式，JsonResult经hessian2传输，connector再getJSONArray("data").getString(i)逐个解析
+ * fastjson text        JsonResult直接转成json文本传输
+ * long[]+hessian2      typed返回值，motan默认序列化
+ * long[]+ocean         typed返回值，差值varint编码
+ * 耗时为序列化/反序列化(到connector可直接使用的long[])单次的平均值
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 15:10
+ * To change this template use File | Settings | File Templates.
+ */
+public class SerializationBenchmark {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final int members = Integer.getInteger("bench.members", 10000);
+    private final int iterations = Integer.getInteger("bench.iterations", 2000);
+
+    /**
+     * 防止JIT把结果当成无用代码消除
+     */
+    private long blackhole;
+
+    public static void main(String[] args) throws IOException {
+        new SerializationBenchmark().run();
+    }
+
+    public void run() throws IOException {
+        long[] uids = generateUids();
+        System.out.println(String.format("group members %d, iterations %d", members, iterations));
+        System.out.println(String.format("%-22s %10s %14s %14s", "codec", "bytes", "serialize(us)", "deserialize(us)"));
+        for (int round = 0; round < 2; round++) {
+            // 第一轮为预热，只输出第二轮的结果
+            boolean print = round == 1;
+            benchJsonResult(new Hessian2Serialization(), "jsonResult+hessian2", uids, print);
+            benchJsonText(uids, print);
+            benchLongArray(new Hessian2Serialization(), "long[]+hessian2", uids, print);
+            benchLongArray(new OceanSerialization(), "long[]+ocean", uids, print);
+        }
+        if (blackhole == 42) {
+            System.out.println();
+        }
+    }
+
+    private long[] generateUids() {
+        // 真实群成员的uid一般分布在较大的范围内，这里在1亿附近随机取，按uid升序(与分页接口的返回顺序一致)
+        Random random = new Random(members);
+        long[] uids = new long[members];
+        long uid = 100000000L;
+        for (int i = 0; i < members; i++) {
+            uid += 1 + random.nextInt(2000);
+            uids[i] = uid;
+        }
+        return uids;
+    }
+
+    private void benchJsonResult(Serialization serialization, String name, long[] uids, boolean print) throws IOException {
+        List<Long> uidList = Longs.asList(uids);
+        byte[] bytes = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            bytes = serialization.serialize(JsonResult.getJsonResult(uidList));
+        }
+        long serializeNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            JSONObject result = serialization.deserialize(bytes, JsonResult.class);
+            blackhole += toUids(result.getJSONArray("data")).length;
+        }
+        report(name, bytes.length, serializeNanos, System.nanoTime() - start, print);
+    }
+
+    private void benchJsonText(long[] uids, boolean print) {
+        List<Long> uidList = Longs.asList(uids);
+        byte[] bytes = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            bytes = JsonResult.getJsonResult(uidList).toJSONString().getBytes(UTF8);
+        }
+        long serializeNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            JSONObject result = JSON.parseObject(new String(bytes, UTF8));
+            blackhole += toUids(result.getJSONArray("data")).length;
+        }
+        report("fastjson text", bytes.length, serializeNanos, System.nanoTime() - start, print);
+    }
+
+    private void benchLongArray(Serialization serialization, String name, long[] uids, boolean print) throws IOException {
+        byte[] bytes = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            bytes = serialization.serialize(uids);
+        }
+        long serializeNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            blackhole += serialization.deserialize(bytes, long[].class).length;
+        }
+        report(name, bytes.length, serializeNanos, System.nanoTime() - start, print);
+    }
+
+    private long[] toUids(JSONArray data) {
+        // 与原来connector里的处理方式一致
+        long[] result = new long[data.size()];
+        for (int i = 0; i < data.size(); i++) {
+            result[i] = Long.parseLong(data.getString(i));
+        }
+        return result;
+    }
+
+    private void report(String name, int bytes, long serializeNanos, long deserializeNanos, boolean print) {
+        if (print) {
+            System.out.println(String.format("%-22s %10d %14.1f %14.1f", name, bytes,
+                    serializeNanos / 1000D / iterations, deserializeNanos / 1000D / iterations));
+        }
+    }
+}
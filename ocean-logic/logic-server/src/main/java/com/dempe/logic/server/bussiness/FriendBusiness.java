@@ -1,5 +1,7 @@
 package com.dempe.logic.server.bussiness;
 
+import com.dempe.logic.server.cache.BusinessCache;
+import com.dempe.logic.server.cache.BusinessCaches;
 import com.dempe.logic.server.dao.FriendDao;
 import org.springframework.stereotype.Service;
 
@@ -15,6 +17,9 @@ import javax.annotation.Resource;
 @Service
 public class FriendBusiness {
 
+    // uid -> 好友uid，接受申请和删除好友时双方都失效
+    private final BusinessCache<Long, long[]> friendCache = BusinessCaches.create("friends", 100000, 300);
+
     @Resource
     private FriendDao friendDao;
 
@@ -26,6 +31,8 @@ public class FriendBusiness {
      */
     public void acceptFriend(Long uid, Long friendUid) {
         friendDao.acceptFriend(uid, friendUid);
+        friendCache.invalidate(uid);
+        friendCache.invalidate(friendUid);
     }
 
 
@@ -41,6 +48,22 @@ public class FriendBusiness {
     }
 
 
+    /**
+     * 好友uid列表
+     *
+     * @param uid
+     * @return
+     */
+    public long[] listFriendUid(Long uid) {
+        return friendCache.get(uid, new BusinessCache.Loader<Long, long[]>() {
+            @Override
+            public long[] load(Long key) {
+                return friendDao.listFriendUid(key);
+            }
+        });
+    }
+
+
     /**
      * 删除好友
      *
@@ -49,6 +72,8 @@ public class FriendBusiness {
      */
     public void delFriend(Long uid, Long friendUid) {
         friendDao.delFriend(uid, friendUid);
+        friendCache.invalidate(uid);
+        friendCache.invalidate(friendUid);
     }
 
 }
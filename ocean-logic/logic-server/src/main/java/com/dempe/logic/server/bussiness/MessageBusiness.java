@@ -0,0 +1,121 @@
+package com.dempe.logic.server.bussiness;
+
+import com.dempe.logic.server.store.MessageStore;
+import com.dempe.ocean.db.model.im.InboxMessage;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 收件箱消息，存储引擎默认为mongo；配置id为messageStore的bean时使用该bean，例如本地日志文件版：
+ * <pre>
+ * &lt;bean id="messageStore" class="com.dempe.logic.server.store.LocalMessageStore" destroy-method="close"&gt;
+ *     &lt;constructor-arg value="/data/ocean/inbox"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.message.ttlDays         消息保留天数，默认7
+ * ocean.message.compactMinutes  过期清理间隔，默认10分钟
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 23:50
+ * To change this template use File | Settings | File Templates.
+ */
+@Service
+public class MessageBusiness {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(MessageBusiness.class);
+
+    /**
+     * 单次拉取最多返回的条数
+     */
+    public static final int MAX_FETCH_SIZE = 500;
+
+    private final long ttlMillis = TimeUnit.DAYS.toMillis(Long.getLong("ocean.message.ttlDays", 7L));
+    private final long compactMinutes = Long.getLong("ocean.message.compactMinutes", 10L);
+
+    @Resource
+    private MessageStore messageStore;
+
+    private ScheduledExecutorService compactExecutor;
+
+    @PostConstruct
+    public void start() {
+        compactExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("inbox-compact").setDaemon(true).build());
+        compactExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    messageStore.compact(System.currentTimeMillis() - ttlMillis);
+                } catch (Exception e) {
+                    LOGGER.error("compact inbox messages error", e);
+                }
+            }
+        }, compactMinutes, compactMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        compactExecutor.shutdownNow();
+    }
+
+    public long append(String uid, String topic, byte[] payload) {
+        return messageStore.append(Collections.singletonList(
+                new InboxMessage(uid, topic, payload, System.currentTimeMillis())))[0];
+    }
+
+    public long[] appendAll(long[] uids, String topic, byte[] payload) {
+        long now = System.currentTimeMillis();
+        List<InboxMessage> messages = Lists.newArrayListWithCapacity(uids.length);
+        for (long uid : uids) {
+            messages.add(new InboxMessage(String.valueOf(uid), topic, payload, now));
+        }
+        return messageStore.append(messages);
+    }
+
+    public long[] appendBatch(List<InboxMessage> messages) {
+        long now = System.currentTimeMillis();
+        for (InboxMessage message : messages) {
+            if (message.getCreateTime() <= 0) {
+                message.setCreateTime(now);
+            }
+        }
+        return messageStore.append(messages);
+    }
+
+    public long latestSeq(String uid) {
+        return messageStore.latestSeq(uid);
+    }
+
+    /**
+     * 过期清理是定时做的，这里再过滤一次还没清理掉的过期消息
+     */
+    public List<InboxMessage> fetch(String uid, long afterSeq, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<InboxMessage> messages = messageStore.fetch(uid, afterSeq, Math.min(limit, MAX_FETCH_SIZE));
+        long expireBefore = System.currentTimeMillis() - ttlMillis;
+        for (Iterator<InboxMessage> it = messages.iterator(); it.hasNext(); ) {
+            if (it.next().getCreateTime() < expireBefore) {
+                it.remove();
+            }
+        }
+        return messages;
+    }
+}
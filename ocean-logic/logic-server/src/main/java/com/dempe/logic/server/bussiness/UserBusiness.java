@@ -1,10 +1,20 @@
 package com.dempe.logic.server.bussiness;
 
+import com.dempe.logic.server.cache.BusinessCache;
+import com.dempe.logic.server.cache.BusinessCaches;
 import com.dempe.logic.server.dao.UserDao;
 import com.dempe.ocean.db.model.User;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Longs;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * Created with IntelliJ IDEA.
@@ -16,15 +26,54 @@ import javax.annotation.Resource;
 @Service
 public class UserBusiness {
 
+    // uid -> User，登录和批量取用户信息共用，save时失效
+    private final BusinessCache<Long, User> userCache = BusinessCaches.create("user", 100000, 600);
+
     @Resource
     private UserDao userDao;
 
     public User login(String uid, String pwd) {
-        return userDao.login(uid, pwd);
+        long id;
+        try {
+            id = Long.parseLong(uid);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        User user = findByUid(id);
+        return user != null && Objects.equals(pwd, user.getPwd()) ? user : null;
+    }
+
+    public User findByUid(long uid) {
+        return userCache.get(uid, new BusinessCache.Loader<Long, User>() {
+            @Override
+            public User load(Long key) {
+                return userDao.findByUid(key);
+            }
+        });
+    }
+
+    public List<User> listUserByUids(long[] uids) {
+        if (uids == null || uids.length == 0) {
+            return Collections.emptyList();
+        }
+        Map<Long, User> users = userCache.getAll(Longs.asList(uids), new BusinessCache.BatchLoader<Long, User>() {
+            @Override
+            public Map<Long, User> loadAll(Collection<Long> keys) {
+                Map<Long, User> loaded = Maps.newHashMap();
+                for (User user : userDao.listUserByUids(keys)) {
+                    loaded.put(user.getUid(), user);
+                }
+                return loaded;
+            }
+        });
+        return Lists.newArrayList(users.values());
     }
 
     public void save(User user) {
         userDao.save(user);
+        if (user.getUid() != null) {
+            userCache.invalidate(user.getUid());
+        }
     }
 
 }
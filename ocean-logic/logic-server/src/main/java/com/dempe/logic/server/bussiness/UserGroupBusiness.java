@@ -1,13 +1,17 @@
 package com.dempe.logic.server.bussiness;
 
+import com.dempe.logic.server.cache.BusinessCache;
+import com.dempe.logic.server.cache.BusinessCaches;
 import com.dempe.logic.server.dao.UserGroupDao;
 import com.dempe.ocean.db.model.im.UserGroup;
-import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.mongodb.WriteResult;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * Created with IntelliJ IDEA.
@@ -19,25 +23,84 @@ import java.util.List;
 @Service
 public class UserGroupBusiness {
 
+    /**
+     * 单页最多返回的成员数
+     */
+    public static final int MAX_PAGE_SIZE = 5000;
+
+    /**
+     * 成员数超过ocean.cache.groupMaxMembers(默认5000)的群不缓存，只按页读取
+     */
+    private static final int CACHE_MAX_MEMBERS = Integer.getInteger("ocean.cache.groupMaxMembers", 5000);
+
+    private static final long[] EMPTY = new long[0];
+
+    // groupId -> 按uid升序的成员，成员变更时失效
+    private final BusinessCache<String, long[]> memberCache = BusinessCaches.create("groupMembers", 10000, 300,
+            new BusinessCache.Admission<long[]>() {
+                @Override
+                public boolean admit(long[] uids) {
+                    return uids.length <= CACHE_MAX_MEMBERS;
+                }
+            });
+
     @Resource
     private UserGroupDao userGroupDao;
 
-    public List<Long> listUidByGroupId(String groupId) {
-        List<UserGroup> userGroupList = userGroupDao.listUserGroupByGroupId(groupId);
-        List<Long> uidList = Lists.newArrayList();
-        for (UserGroup userGroup : userGroupList) {
-            uidList.add(userGroup.getUid());
+    public long[] listUidByGroupId(String groupId) {
+        return memberCache.get(groupId, new BusinessCache.Loader<String, long[]>() {
+            @Override
+            public long[] load(String key) {
+                return userGroupDao.listUidByGroupId(key);
+            }
+        });
+    }
+
+    public Map<String, long[]> listUidsByGroupIds(Collection<String> groupIds) {
+        if (groupIds == null || groupIds.isEmpty()) {
+            return Maps.newHashMap();
         }
-        return uidList;
+        return memberCache.getAll(groupIds, new BusinessCache.BatchLoader<String, long[]>() {
+            @Override
+            public Map<String, long[]> loadAll(Collection<String> keys) {
+                Map<String, long[]> loaded = userGroupDao.listUidByGroupIds(keys);
+                // 没有成员的群也缓存，避免反复查询
+                for (String groupId : keys) {
+                    if (!loaded.containsKey(groupId)) {
+                        loaded.put(groupId, EMPTY);
+                    }
+                }
+                return loaded;
+            }
+        });
+    }
 
+    /**
+     * 已缓存的群直接从成员数组里截取，否则按页查询
+     */
+    public long[] listUidsByGroupId(String groupId, long afterUid, int limit) {
+        if (limit <= 0) {
+            return new long[0];
+        }
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+        long[] uids = memberCache.getIfPresent(groupId);
+        if (uids == null) {
+            return userGroupDao.listUidByGroupId(groupId, afterUid, pageSize);
+        }
+        int from = Arrays.binarySearch(uids, afterUid);
+        from = from >= 0 ? from + 1 : -from - 1;
+        return Arrays.copyOfRange(uids, from, Math.min(uids.length, from + pageSize));
     }
 
     public void saveUserGroup(UserGroup userGroup) {
         userGroupDao.save(userGroup);
+        memberCache.invalidate(userGroup.getGroupId());
     }
 
     public WriteResult delUserGroup(String groupId, Long uid) {
-        return userGroupDao.delUserGroup(groupId, uid);
+        WriteResult result = userGroupDao.delUserGroup(groupId, uid);
+        memberCache.invalidate(groupId);
+        return result;
     }
 
 
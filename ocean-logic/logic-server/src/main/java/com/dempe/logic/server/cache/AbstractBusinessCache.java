@@ -0,0 +1,141 @@
+package com.dempe.logic.server.cache;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 读穿和命中计数，子类只需要实现存取和淘汰
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 13:10
+ * To change this template use File | Settings | File Templates.
+ */
+public abstract class AbstractBusinessCache<K, V> implements BusinessCache<K, V> {
+
+    private final String name;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    // 每次失效加一，加载期间有失效时不放入加载到的结果，它可能是写入之前读到的旧数据
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile Admission<V> admission;
+
+    protected AbstractBusinessCache(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public V get(K key, Loader<K, V> loader) {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        // 并发未命中时可能重复加载，结果相同，后放入的覆盖先放入的；检查和放入之间的失效由ttl兜底
+        long generation = invalidations.get();
+        value = loader.load(key);
+        if (value != null && invalidations.get() == generation && admit(value)) {
+            putLoaded(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public Map<K, V> getAll(Collection<K> keys, BatchLoader<K, V> loader) {
+        Map<K, V> result = Maps.newLinkedHashMap();
+        List<K> missing = Lists.newArrayList();
+        for (K key : keys) {
+            V value = getIfPresent(key);
+            result.put(key, value);
+            if (value == null) {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long generation = invalidations.get();
+            Map<K, V> loaded = loader.loadAll(missing);
+            boolean cacheable = invalidations.get() == generation;
+            for (K key : missing) {
+                V value = loaded.get(key);
+                if (value == null) {
+                    result.remove(key);
+                } else {
+                    result.put(key, value);
+                    if (cacheable && admit(value)) {
+                        putLoaded(key, value);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public final void invalidate(K key) {
+        invalidations.incrementAndGet();
+        remove(key);
+    }
+
+    @Override
+    public final void invalidateAll() {
+        invalidations.incrementAndGet();
+        clear();
+    }
+
+    @Override
+    public V getIfPresent(K key) {
+        V value = lookup(key);
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    void setAdmission(Admission<V> admission) {
+        this.admission = admission;
+    }
+
+    private boolean admit(V value) {
+        Admission<V> current = admission;
+        return current == null || current.admit(value);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions(), size());
+    }
+
+    @Override
+    public String toString() {
+        return name + "{" + stats() + "}";
+    }
+
+    /**
+     * 读穿时放入刚刚未命中、加载到的值，这次访问已经在lookup里记过，默认同put
+     */
+    protected void putLoaded(K key, V value) {
+        put(key, value);
+    }
+
+    /**
+     * 查找，不计数
+     */
+    protected abstract V lookup(K key);
+
+    protected abstract void remove(K key);
+
+    protected abstract void clear();
+
+    protected abstract long evictions();
+}
@@ -0,0 +1,59 @@
+package com.dempe.logic.server.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 业务层的进程内缓存，实现见{@link BusinessCaches#create}
+ * 缓存的值(例如uid数组)是共享的，调用方不能修改
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 13:10
+ * To change this template use File | Settings | File Templates.
+ */
+public interface BusinessCache<K, V> {
+
+    /**
+     * 读穿：命中时直接返回，未命中时调用loader加载并放入缓存；loader返回null或者Admission不接受时不缓存
+     */
+    V get(K key, Loader<K, V> loader);
+
+    /**
+     * 批量读穿：未命中的key一次交给loader加载，loader没有返回的key不出现在结果里
+     *
+     * @return key -> value，按keys的顺序
+     */
+    Map<K, V> getAll(Collection<K> keys, BatchLoader<K, V> loader);
+
+    V getIfPresent(K key);
+
+    void put(K key, V value);
+
+    /**
+     * 数据写入后调用，下次读取重新加载
+     */
+    void invalidate(K key);
+
+    void invalidateAll();
+
+    long size();
+
+    String getName();
+
+    CacheStats stats();
+
+    interface Loader<K, V> {
+        V load(K key);
+    }
+
+    interface BatchLoader<K, V> {
+        Map<K, V> loadAll(Collection<K> keys);
+    }
+
+    /**
+     * 读穿加载到的值是否放入缓存，例如超大的群成员列表只返回不缓存
+     */
+    interface Admission<V> {
+        boolean admit(V value);
+    }
+}
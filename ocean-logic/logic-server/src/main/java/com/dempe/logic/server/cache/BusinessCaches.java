@@ -0,0 +1,132 @@
+package com.dempe.logic.server.cache;
+
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 业务缓存的创建和登记，ServiceMetrics输出统计时一起输出每个缓存本周期的命中率
+ * 失效只作用于本进程，多个logic server时其它进程上的旧数据最多保留ttl，ttl即允许的最大不一致时间
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.cache.impl            tinylfu(默认)、lru，none为不缓存
+ * ocean.cache.segments        tinylfu的分段数(lru的并发度)，默认16
+ * ocean.cache.[name].maxSize  单个缓存的最大条目数，默认值由业务给出
+ * ocean.cache.[name].ttlSec   单个缓存写入后的有效期，默认值由业务给出
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 13:10
+ * To change this template use File | Settings | File Templates.
+ */
+public final class BusinessCaches {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BusinessCaches.class);
+
+    public static final String TINY_LFU = "tinylfu";
+    public static final String LRU = "lru";
+    public static final String NONE = "none";
+
+    private static final ConcurrentMap<String, BusinessCache<?, ?>> CACHES = Maps.newConcurrentMap();
+    private static final Map<String, CacheStats> LAST_REPORTED = Maps.newHashMap();
+
+    private BusinessCaches() {
+    }
+
+    /**
+     * 按ocean.cache.impl创建缓存并登记，同名缓存重复创建时后创建的替换先创建的
+     */
+    public static <K, V> BusinessCache<K, V> create(String name, long defaultMaxSize, long defaultTtlSec) {
+        return create(name, defaultMaxSize, defaultTtlSec, null);
+    }
+
+    /**
+     * @param admission 读穿时决定加载到的值是否放入缓存，null为全部放入
+     */
+    public static <K, V> BusinessCache<K, V> create(String name, long defaultMaxSize, long defaultTtlSec,
+                                                    BusinessCache.Admission<V> admission) {
+        long maxSize = Long.getLong("ocean.cache." + name + ".maxSize", defaultMaxSize);
+        long ttlSec = Long.getLong("ocean.cache." + name + ".ttlSec", defaultTtlSec);
+        AbstractBusinessCache<K, V> cache = newCache(System.getProperty("ocean.cache.impl", TINY_LFU), name, maxSize,
+                ttlSec);
+        cache.setAdmission(admission);
+        CACHES.put(name, cache);
+        LOGGER.info("business cache {}: {}, maxSize={}, ttlSec={}", name, cache.getClass().getSimpleName(), maxSize,
+                ttlSec);
+        return cache;
+    }
+
+    /**
+     * 按实现名创建，不登记，压测时用来对比不同实现
+     */
+    public static <K, V> AbstractBusinessCache<K, V> newCache(String impl, String name, long maxSize, long ttlSec) {
+        int segments = Integer.getInteger("ocean.cache.segments", 16);
+        if (maxSize <= 0 || NONE.equalsIgnoreCase(impl)) {
+            return new NoCache<K, V>(name);
+        }
+        if (LRU.equalsIgnoreCase(impl)) {
+            return new LruCache<K, V>(name, maxSize, ttlSec, segments);
+        }
+        if (!TINY_LFU.equalsIgnoreCase(impl)) {
+            throw new IllegalArgumentException("unknown ocean.cache.impl: " + impl);
+        }
+        return new TinyLfuCache<K, V>(name, maxSize, ttlSec, segments);
+    }
+
+    public static Collection<BusinessCache<?, ?>> all() {
+        return Collections.unmodifiableCollection(CACHES.values());
+    }
+
+    /**
+     * 输出每个缓存自上次输出以来的命中率
+     */
+    public static synchronized void report() {
+        for (BusinessCache<?, ?> cache : CACHES.values()) {
+            CacheStats stats = cache.stats();
+            CacheStats last = LAST_REPORTED.put(cache.getName(), stats);
+            LOGGER.info("cache {}: {}", cache.getName(), last == null ? stats : stats.minus(last));
+        }
+    }
+
+    /**
+     * 不缓存，每次都调用loader，用来关闭缓存或者作为压测的基线
+     */
+    static final class NoCache<K, V> extends AbstractBusinessCache<K, V> {
+
+        NoCache(String name) {
+            super(name);
+        }
+
+        @Override
+        protected V lookup(K key) {
+            return null;
+        }
+
+        @Override
+        public void put(K key, V value) {
+        }
+
+        @Override
+        protected void remove(K key) {
+        }
+
+        @Override
+        protected void clear() {
+        }
+
+        @Override
+        public long size() {
+            return 0;
+        }
+
+        @Override
+        protected long evictions() {
+            return 0;
+        }
+    }
+}
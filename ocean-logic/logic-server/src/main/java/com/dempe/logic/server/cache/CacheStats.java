@@ -0,0 +1,57 @@
+package com.dempe.logic.server.cache;
+
+/**
+ * 缓存计数的快照，计数从创建起累计
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 13:10
+ * To change this template use File | Settings | File Templates.
+ */
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long size;
+
+    public CacheStats(long hits, long misses, long evictions, long size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public double hitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * @return 本快照相对于更早的快照的增量，size取本快照的值
+     */
+    public CacheStats minus(CacheStats earlier) {
+        return new CacheStats(hits - earlier.hits, misses - earlier.misses, evictions - earlier.evictions, size);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, hitRatio=%.3f, evictions=%d, size=%d",
+                hits, misses, hitRatio(), evictions, size);
+    }
+}
@@ -0,0 +1,76 @@
+package com.dempe.logic.server.cache;
+
+/**
+ * TinyLFU的访问频率估计：count-min sketch，4位计数器，每个long放16个；
+ * 每个key落在同一个long里的4个计数器上(long按16位分4组，每组由hash选一个)，取最小值作为频率，上限15
+ * 累计访问数达到sampleSize时所有计数减半，旧的热点逐渐冷却
+ * 非线程安全，由所在的段加锁
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 13:10
+ * To change this template use File | Settings | File Templates.
+ */
+class FrequencySketch {
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L};
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        table = new long[size];
+        tableMask = size - 1;
+        sampleSize = 10 * Math.max(1, capacity);
+    }
+
+    int frequency(int hash) {
+        int index = indexOf(hash);
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int offset = counterOffset(hash, i);
+            frequency = Math.min(frequency, (int) ((table[index] >>> offset) & 0xfL));
+        }
+        return frequency;
+    }
+
+    void increment(int hash) {
+        int index = indexOf(hash);
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int offset = counterOffset(hash, i);
+            long mask = 0xfL << offset;
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    private int indexOf(int hash) {
+        long h = (hash + SEEDS[0]) * SEEDS[1];
+        h ^= h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    // 第i个计数器：组i(每组4个计数器，16位)里由hash决定的一个
+    private static int counterOffset(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[(i + 1) & 3];
+        int inGroup = (int) (h >>> 62);
+        return ((i << 2) + inGroup) << 2;
+    }
+}
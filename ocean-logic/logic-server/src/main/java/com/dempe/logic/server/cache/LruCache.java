@@ -0,0 +1,69 @@
+package com.dempe.logic.server.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于guava cache的LRU缓存，作为W-TinyLFU的对照，或者key分布接近均匀时使用
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 13:10
+ * To change this template use File | Settings | File Templates.
+ */
+public class LruCache<K, V> extends AbstractBusinessCache<K, V> {
+
+    private final Cache<K, V> cache;
+    private final LongAdder evictions = new LongAdder();
+
+    public LruCache(String name, long maximumSize, long ttlSeconds, int concurrencyLevel) {
+        super(name);
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maximumSize)
+                .concurrencyLevel(Math.max(1, concurrencyLevel));
+        if (ttlSeconds > 0) {
+            builder.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS);
+        }
+        this.cache = builder.removalListener(new RemovalListener<K, V>() {
+            @Override
+            public void onRemoval(RemovalNotification<K, V> notification) {
+                if (notification.wasEvicted()) {
+                    evictions.increment();
+                }
+            }
+        }).build();
+    }
+
+    @Override
+    protected V lookup(K key) {
+        return cache.getIfPresent(key);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        cache.put(key, value);
+    }
+
+    @Override
+    protected void remove(K key) {
+        cache.invalidate(key);
+    }
+
+    @Override
+    protected void clear() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return cache.size();
+    }
+
+    @Override
+    protected long evictions() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,301 @@
+package com.dempe.logic.server.cache;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * W-TinyLFU缓存，按key哈希分段，每段一把锁、一份LRU窗口、SLRU主区和频率sketch：
+ * 1.新key先进入窗口区(容量的1%)，窗口满时最旧的进入主区的试用区
+ * 2.主区满时试用区最旧的(牺牲者)和刚从窗口出来的(候选者)比较sketch里的访问频率，频率高的留下，
+ *   偶发的一次性访问(例如扫描)进不了主区，不会冲掉热点
+ * 3.试用区的key再次被访问时升入保护区(主区的80%)，保护区满时最旧的降回试用区
+ * 4.写入超过ttl的条目读取时视为不存在
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 13:10
+ * To change this template use File | Settings | File Templates.
+ */
+public class TinyLfuCache<K, V> extends AbstractBusinessCache<K, V> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maximumSize 最大条目数，平均分到各段
+     * @param ttlSeconds  写入后的有效期，0为不过期
+     * @param segments    段数，向上取到2的幂
+     */
+    @SuppressWarnings("unchecked")
+    public TinyLfuCache(String name, long maximumSize, long ttlSeconds, int segments) {
+        super(name);
+        long ttlNanos = ttlSeconds > 0 ? TimeUnit.SECONDS.toNanos(ttlSeconds) : 0;
+        int count = Integer.highestOneBit(Math.max(1, segments) - 1) << 1;
+        if (count <= 0) {
+            count = 1;
+        }
+        int perSegment = (int) Math.max(1, Math.min(Integer.MAX_VALUE, (maximumSize + count - 1) / count));
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[count];
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Segment<K, V>(perSegment, ttlNanos, evictions);
+        }
+        this.segmentMask = count - 1;
+    }
+
+    @Override
+    protected V lookup(K key) {
+        int hash = spread(key.hashCode());
+        return segmentFor(hash).get(key, hash);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        int hash = spread(key.hashCode());
+        segmentFor(hash).put(key, hash, value, true);
+    }
+
+    /**
+     * 未命中时get已经在sketch里计过这次访问，不再重复计数
+     */
+    @Override
+    protected void putLoaded(K key, V value) {
+        int hash = spread(key.hashCode());
+        segmentFor(hash).put(key, hash, value, false);
+    }
+
+    @Override
+    protected void remove(K key) {
+        int hash = spread(key.hashCode());
+        segmentFor(hash).remove(key);
+    }
+
+    @Override
+    protected void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    protected long evictions() {
+        return evictions.get();
+    }
+
+    private Segment<K, V> segmentFor(int hash) {
+        return segments[(hash >>> 16) & segmentMask];
+    }
+
+    private static int spread(int h) {
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final int hash;
+        V value;
+        long writeNanos;
+        int queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, int hash) {
+            this.key = key;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * 带哨兵的双向链表，头部最旧，尾部最新
+     */
+    private static final class AccessQueue<K, V> {
+        final Node<K, V> head = new Node<K, V>(null, 0);
+        int size;
+
+        AccessQueue() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = head.prev;
+            node.next = head;
+            head.prev.next = node;
+            head.prev = node;
+            size++;
+        }
+
+        void remove(Node<K, V> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            remove(node);
+            addLast(node);
+        }
+
+        Node<K, V> first() {
+            return head.next == head ? null : head.next;
+        }
+
+        void clear() {
+            head.prev = head;
+            head.next = head;
+            size = 0;
+        }
+    }
+
+    private static final class Segment<K, V> {
+        private final Map<K, Node<K, V>> data = Maps.newHashMap();
+        private final FrequencySketch sketch;
+        private final AccessQueue<K, V> window = new AccessQueue<K, V>();
+        private final AccessQueue<K, V> probation = new AccessQueue<K, V>();
+        private final AccessQueue<K, V> protectedQueue = new AccessQueue<K, V>();
+        private final int maximum;
+        private final int windowMaximum;
+        private final int protectedMaximum;
+        private final long ttlNanos;
+        private final AtomicLong evictions;
+
+        Segment(int maximum, long ttlNanos, AtomicLong evictions) {
+            this.maximum = maximum;
+            this.ttlNanos = ttlNanos;
+            this.evictions = evictions;
+            this.windowMaximum = Math.max(1, maximum / 100);
+            this.protectedMaximum = (int) ((maximum - windowMaximum) * 0.8);
+            this.sketch = new FrequencySketch(maximum);
+        }
+
+        synchronized V get(K key, int hash) {
+            sketch.increment(hash);
+            Node<K, V> node = data.get(key);
+            if (node == null) {
+                return null;
+            }
+            if (ttlNanos > 0 && System.nanoTime() - node.writeNanos > ttlNanos) {
+                unlink(node);
+                data.remove(key);
+                return null;
+            }
+            onAccess(node);
+            return node.value;
+        }
+
+        /**
+         * @param count 是否在sketch里计一次访问，读穿放入时get已经计过
+         */
+        synchronized void put(K key, int hash, V value, boolean count) {
+            Node<K, V> node = data.get(key);
+            if (node != null) {
+                node.value = value;
+                node.writeNanos = System.nanoTime();
+                onAccess(node);
+                return;
+            }
+            if (count) {
+                sketch.increment(hash);
+            }
+            node = new Node<K, V>(key, hash);
+            node.value = value;
+            node.writeNanos = System.nanoTime();
+            node.queue = WINDOW;
+            data.put(key, node);
+            window.addLast(node);
+            // 删除之后窗口可能没满而总数已到上限，每次插入都检查，窗口最旧的作为候选者
+            if (window.size > windowMaximum || data.size() > maximum) {
+                Node<K, V> candidate = window.first();
+                window.remove(candidate);
+                candidate.queue = PROBATION;
+                probation.addLast(candidate);
+                if (data.size() > maximum) {
+                    evict(candidate);
+                }
+            }
+        }
+
+        synchronized void remove(K key) {
+            Node<K, V> node = data.remove(key);
+            if (node != null) {
+                unlink(node);
+            }
+        }
+
+        synchronized void clear() {
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+        }
+
+        synchronized int size() {
+            return data.size();
+        }
+
+        private void onAccess(Node<K, V> node) {
+            if (node.queue == WINDOW) {
+                window.moveToLast(node);
+            } else if (node.queue == PROBATION) {
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedQueue.addLast(node);
+                if (protectedQueue.size > protectedMaximum) {
+                    Node<K, V> demoted = protectedQueue.first();
+                    protectedQueue.remove(demoted);
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+            } else {
+                protectedQueue.moveToLast(node);
+            }
+        }
+
+        /**
+         * 候选者刚进入试用区尾部，牺牲者是试用区头部(试用区只有候选者时取保护区头部)
+         */
+        private void evict(Node<K, V> candidate) {
+            Node<K, V> victim = probation.first();
+            if (victim == candidate) {
+                victim = protectedQueue.first();
+            }
+            Node<K, V> evicted;
+            if (victim == null || sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) {
+                evicted = victim == null ? candidate : victim;
+            } else {
+                evicted = candidate;
+            }
+            unlink(evicted);
+            data.remove(evicted.key);
+            evictions.incrementAndGet();
+        }
+
+        private void unlink(Node<K, V> node) {
+            if (node.queue == WINDOW) {
+                window.remove(node);
+            } else if (node.queue == PROBATION) {
+                probation.remove(node);
+            } else {
+                protectedQueue.remove(node);
+            }
+        }
+    }
+}
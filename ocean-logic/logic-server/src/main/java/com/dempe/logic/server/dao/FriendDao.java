@@ -1,6 +1,9 @@
 package com.dempe.logic.server.dao;
 
 import com.dempe.ocean.db.model.im.Friend;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
 import org.mongodb.morphia.Datastore;
 import org.mongodb.morphia.dao.BasicDAO;
 import org.mongodb.morphia.query.Query;
@@ -9,6 +12,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * Created with IntelliJ IDEA.
@@ -20,6 +24,8 @@ import java.io.Serializable;
 @Repository
 public class FriendDao extends BasicDAO<Friend, Serializable> {
 
+    private static final DBObject FRIEND_UID_FIELDS = new BasicDBObject("friendUid", 1).append("_id", 0);
+
     @Autowired
     protected FriendDao(Datastore dataStore) {
         super(dataStore);
@@ -30,7 +36,7 @@ public class FriendDao extends BasicDAO<Friend, Serializable> {
     public void acceptFriend(Long uid, Long friendUid) {
         Query<Friend> query = createQuery().field("uid").equal(uid).field("friendUid").equal(friendUid);
         UpdateOperations<Friend> opt = createUpdateOperations().set("acceptTime", System.currentTimeMillis())
-                .set("stat", Friend.StatCode.FRIEND);
+                .set("stat", Friend.StatCode.FRIEND.getStat());
         updateFirst(query, opt);
     }
 
@@ -45,6 +51,31 @@ public class FriendDao extends BasicDAO<Friend, Serializable> {
         save(friend);
     }
 
+    /**
+     * 好友uid列表，按(uid, stat)走(uid, stat, friendUid)索引，只取friendUid字段、不取_id，不用读取文档
+     */
+    public long[] listFriendUid(Long uid) {
+        DBObject query = new BasicDBObject("uid", uid).append("stat", Friend.StatCode.FRIEND.getStat());
+        DBCursor cursor = getCollection().find(query, FRIEND_UID_FIELDS);
+        long[] uids = new long[16];
+        int size = 0;
+        try {
+            while (cursor.hasNext()) {
+                Number friendUid = (Number) cursor.next().get("friendUid");
+                if (friendUid == null) {
+                    continue;
+                }
+                if (size == uids.length) {
+                    uids = Arrays.copyOf(uids, size << 1);
+                }
+                uids[size++] = friendUid.longValue();
+            }
+        } finally {
+            cursor.close();
+        }
+        return Arrays.copyOf(uids, size);
+    }
+
     public void delFriend(Long uid, Long friendUid) {
         Query<Friend> query = createQuery().field("uid").equal(uid).field("friendUid").equal(friendUid);
         deleteByQuery(query);
@@ -0,0 +1,142 @@
+package com.dempe.logic.server.dao;
+
+import com.dempe.logic.server.store.MessageStore;
+import com.dempe.ocean.db.model.im.InboxMessage;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+import org.mongodb.morphia.Datastore;
+import org.mongodb.morphia.dao.BasicDAO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * mongo版收件箱
+ * 1.每个用户的seq计数器单独存一个文档(inbox_seq)，一批消息里同一用户只做一次$inc，消息过期删除后计数器仍然保留；
+ * 计数器和内存、本地存储一样从当前时间(毫秒*1000)开始，切换存储实现后seq仍然大于之前分配的值
+ * 2.消息本身一批只做一次批量insert，不经过morphia映射
+ * 3.按(uid, seq)索引范围读取
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 23:20
+ * To change this template use File | Settings | File Templates.
+ */
+@Repository
+public class InboxMessageDao extends BasicDAO<InboxMessage, Serializable> implements MessageStore {
+
+    private static final String SEQ_COLLECTION = "inbox_seq";
+
+    private static final DBObject SEQ_FIELDS = new BasicDBObject("seq", 1);
+    private static final DBObject MESSAGE_FIELDS = new BasicDBObject("seq", 1).append("topic", 1)
+            .append("payload", 1).append("createTime", 1).append("_id", 0);
+    private static final DBObject SEQ_ORDER = new BasicDBObject("seq", 1);
+
+    private final DBCollection seqCollection;
+
+    @Autowired
+    protected InboxMessageDao(Datastore dataStore) {
+        super(dataStore);
+        ensureIndexes();// 自动创建索引
+        seqCollection = dataStore.getDB().getCollection(SEQ_COLLECTION);
+    }
+
+    @Override
+    public long[] append(List<InboxMessage> messages) {
+        long[] seqs = new long[messages.size()];
+        if (messages.isEmpty()) {
+            return seqs;
+        }
+        // 每个用户本批的条数，一次$inc分配一段连续的seq
+        Map<String, long[]> counters = Maps.newHashMap();
+        for (InboxMessage message : messages) {
+            long[] counter = counters.get(message.getUid());
+            if (counter == null) {
+                counters.put(message.getUid(), counter = new long[1]);
+            }
+            counter[0]++;
+        }
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            long last = incSeq(entry.getKey(), entry.getValue()[0]);
+            // 改为该用户本批的下一个seq
+            entry.getValue()[0] = last - entry.getValue()[0] + 1;
+        }
+        List<DBObject> rows = Lists.newArrayListWithCapacity(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            InboxMessage message = messages.get(i);
+            long[] counter = counters.get(message.getUid());
+            seqs[i] = counter[0]++;
+            message.setSeq(seqs[i]);
+            rows.add(new BasicDBObject("uid", message.getUid()).append("seq", seqs[i])
+                    .append("topic", message.getTopic()).append("payload", message.getPayload())
+                    .append("createTime", message.getCreateTime()));
+        }
+        getCollection().insert(rows, WriteConcern.ACKNOWLEDGED);
+        return seqs;
+    }
+
+    @Override
+    public long latestSeq(String uid) {
+        DBObject row = seqCollection.findOne(new BasicDBObject("_id", uid), SEQ_FIELDS);
+        return row == null ? 0 : ((Number) row.get("seq")).longValue();
+    }
+
+    @Override
+    public List<InboxMessage> fetch(String uid, long afterSeq, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        DBObject query = new BasicDBObject("uid", uid).append("seq", new BasicDBObject("$gt", afterSeq));
+        DBCursor cursor = getCollection().find(query, MESSAGE_FIELDS).sort(SEQ_ORDER).limit(limit).batchSize(limit);
+        List<InboxMessage> messages = Lists.newArrayListWithCapacity(Math.min(limit, 128));
+        try {
+            while (cursor.hasNext()) {
+                DBObject row = cursor.next();
+                messages.add(new InboxMessage(((Number) row.get("seq")).longValue(), (String) row.get("topic"),
+                        (byte[]) row.get("payload"), ((Number) row.get("createTime")).longValue()));
+            }
+        } finally {
+            cursor.close();
+        }
+        return messages;
+    }
+
+    @Override
+    public long compact(long expireBefore) {
+        return getCollection().remove(new BasicDBObject("createTime", new BasicDBObject("$lt", expireBefore))).getN();
+    }
+
+    /**
+     * @return 本次分配的最后一个seq
+     */
+    private long incSeq(String uid, long count) {
+        DBObject query = new BasicDBObject("_id", uid);
+        while (true) {
+            DBObject row = seqCollection.findAndModify(query, SEQ_FIELDS, null, false,
+                    new BasicDBObject("$inc", new BasicDBObject("seq", count)), true, false);
+            if (row != null) {
+                return ((Number) row.get("seq")).longValue();
+            }
+            // 第一次分配，$inc和$setOnInsert不能作用于同一字段，直接插入起始值，并发插入失败时重新$inc
+            long last = System.currentTimeMillis() * 1000 + count - 1;
+            try {
+                seqCollection.insert(new BasicDBObject("_id", uid).append("seq", last), WriteConcern.ACKNOWLEDGED);
+                return last;
+            } catch (MongoException e) {
+                // 11000/11001是唯一键冲突，其他线程已经创建了计数器
+                if (e.getCode() != 11000 && e.getCode() != 11001) {
+                    throw e;
+                }
+            }
+        }
+    }
+}
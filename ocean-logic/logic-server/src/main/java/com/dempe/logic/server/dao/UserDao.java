@@ -7,6 +7,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * Created with IntelliJ IDEA.
@@ -25,7 +27,22 @@ public class UserDao extends BasicDAO<User, Serializable> {
     }
 
     public User login(String uid, String pwd) {
-        return createQuery().field("uid").equal(uid).field("pwd").equal(pwd).get();
+        // uid是Long类型的_id，按字符串查询永远匹配不到
+        long id;
+        try {
+            id = Long.parseLong(uid);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return createQuery().field("uid").equal(id).field("pwd").equal(pwd).get();
+    }
+
+    public User findByUid(long uid) {
+        return createQuery().field("uid").equal(uid).get();
+    }
+
+    public List<User> listUserByUids(Collection<Long> uids) {
+        return createQuery().field("uid").in(uids).asList();
     }
 
 
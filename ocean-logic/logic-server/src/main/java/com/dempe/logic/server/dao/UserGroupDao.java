@@ -1,6 +1,10 @@
 package com.dempe.logic.server.dao;
 
 import com.dempe.ocean.db.model.im.UserGroup;
+import com.google.common.collect.Maps;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
 import com.mongodb.WriteResult;
 import org.mongodb.morphia.Datastore;
 import org.mongodb.morphia.dao.BasicDAO;
@@ -9,7 +13,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import java.io.Serializable;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * Created with IntelliJ IDEA.
@@ -21,14 +27,79 @@ import java.util.List;
 @Repository
 public class UserGroupDao extends BasicDAO<UserGroup, Serializable> {
 
+    private static final int CURSOR_BATCH_SIZE = 1000;
+
+    // 投影中排除_id，才能只靠索引返回结果
+    private static final DBObject UID_FIELDS = new BasicDBObject("uid", 1).append("_id", 0);
+    private static final DBObject GROUP_UID_FIELDS = new BasicDBObject("groupId", 1).append("uid", 1).append("_id", 0);
+    private static final DBObject UID_ORDER = new BasicDBObject("uid", 1);
+    private static final DBObject GROUP_UID_ORDER = new BasicDBObject("groupId", 1).append("uid", 1);
+
     @Autowired
     protected UserGroupDao(Datastore dataStore) {
         super(dataStore);
         ensureIndexes();// 自动创建索引
     }
 
-    public List<UserGroup> listUserGroupByGroupId(String groupId) {
-        return createQuery().field("groupId").equal(groupId).asList();
+    /**
+     * 只取uid的覆盖查询，走(groupId, uid)索引，不需要读取文档本身
+     */
+    public long[] listUidByGroupId(String groupId) {
+        DBCursor cursor = getCollection().find(new BasicDBObject("groupId", groupId), UID_FIELDS).sort(UID_ORDER)
+                .batchSize(CURSOR_BATCH_SIZE);
+        return readUids(cursor);
+    }
+
+    /**
+     * 按uid升序取afterUid之后的一页成员
+     */
+    public long[] listUidByGroupId(String groupId, long afterUid, int limit) {
+        DBObject query = new BasicDBObject("groupId", groupId).append("uid", new BasicDBObject("$gt", afterUid));
+        // 一页的数据在一个batch里取完，不再额外getMore
+        DBCursor cursor = getCollection().find(query, UID_FIELDS).sort(UID_ORDER).limit(limit).batchSize(limit);
+        return readUids(cursor);
+    }
+
+    /**
+     * 多个群的成员一次查出，同样是覆盖查询，结果按(groupId, uid)有序，逐个群切分
+     *
+     * @return 只包含有成员的群
+     */
+    public Map<String, long[]> listUidByGroupIds(Collection<String> groupIds) {
+        DBObject query = new BasicDBObject("groupId", new BasicDBObject("$in", groupIds));
+        DBCursor cursor = getCollection().find(query, GROUP_UID_FIELDS).sort(GROUP_UID_ORDER)
+                .batchSize(CURSOR_BATCH_SIZE);
+        Map<String, long[]> result = Maps.newHashMap();
+        String current = null;
+        long[] uids = new long[16];
+        int size = 0;
+        try {
+            while (cursor.hasNext()) {
+                DBObject row = cursor.next();
+                String groupId = (String) row.get("groupId");
+                Number uid = (Number) row.get("uid");
+                if (uid == null) {
+                    continue;
+                }
+                if (!groupId.equals(current)) {
+                    if (current != null) {
+                        result.put(current, Arrays.copyOf(uids, size));
+                    }
+                    current = groupId;
+                    size = 0;
+                }
+                if (size == uids.length) {
+                    uids = Arrays.copyOf(uids, size << 1);
+                }
+                uids[size++] = uid.longValue();
+            }
+        } finally {
+            cursor.close();
+        }
+        if (current != null) {
+            result.put(current, Arrays.copyOf(uids, size));
+        }
+        return result;
     }
 
     public WriteResult delUserGroup(String groupId, Long uid) {
@@ -36,4 +107,24 @@ public class UserGroupDao extends BasicDAO<UserGroup, Serializable> {
         return deleteByQuery(query);
     }
 
+    private long[] readUids(DBCursor cursor) {
+        long[] uids = new long[16];
+        int size = 0;
+        try {
+            while (cursor.hasNext()) {
+                Number uid = (Number) cursor.next().get("uid");
+                if (uid == null) {
+                    continue;
+                }
+                if (size == uids.length) {
+                    uids = Arrays.copyOf(uids, size << 1);
+                }
+                uids[size++] = uid.longValue();
+            }
+        } finally {
+            cursor.close();
+        }
+        return size == uids.length ? uids : Arrays.copyOf(uids, size);
+    }
+
 }
\ No newline at end of file
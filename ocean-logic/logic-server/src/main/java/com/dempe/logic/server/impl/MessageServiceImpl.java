@@ -0,0 +1,47 @@
+package com.dempe.logic.server.impl;
+
+import com.dempe.logic.api.MessageService;
+import com.dempe.logic.server.bussiness.MessageBusiness;
+import com.dempe.ocean.db.model.im.InboxMessage;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+/**
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 23:55
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class MessageServiceImpl implements MessageService {
+
+    @Resource
+    private MessageBusiness messageBusiness;
+
+    @Override
+    public long append(String uid, String topic, byte[] payload) {
+        return messageBusiness.append(uid, topic, payload);
+    }
+
+    @Override
+    public long[] appendAll(long[] uids, String topic, byte[] payload) {
+        return messageBusiness.appendAll(uids, topic, payload);
+    }
+
+    @Override
+    public long[] appendBatch(List<InboxMessage> messages) {
+        return messageBusiness.appendBatch(messages);
+    }
+
+    @Override
+    public long latestSeq(String uid) {
+        return messageBusiness.latestSeq(uid);
+    }
+
+    @Override
+    public List<InboxMessage> fetch(String uid, long afterSeq, int limit) {
+        return messageBusiness.fetch(uid, afterSeq, limit);
+    }
+}
@@ -8,6 +8,9 @@ import com.dempe.ocean.utils.JsonResult;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Created with IntelliJ IDEA.
  * User: Dempe
@@ -21,8 +24,16 @@ public class UserGroupServiceImpl implements UserGroupService {
     @Autowired
     private UserGroupBusiness userGroupBusiness;
 
-    public JSONObject listUidByGroupId(String groupId) {
-        return JsonResult.getJsonResult(userGroupBusiness.listUidByGroupId(groupId));
+    public long[] listUidByGroupId(String groupId) {
+        return userGroupBusiness.listUidByGroupId(groupId);
+    }
+
+    public Map<String, long[]> listUidsByGroupIds(Collection<String> groupIds) {
+        return userGroupBusiness.listUidsByGroupIds(groupIds);
+    }
+
+    public long[] listUidsByGroupId(String groupId, long afterUid, int limit) {
+        return userGroupBusiness.listUidsByGroupId(groupId, afterUid, limit);
     }
 
     public JSONObject saveUserGroup(Long uid, String groupId) {
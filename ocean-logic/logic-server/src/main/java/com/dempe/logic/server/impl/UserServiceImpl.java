@@ -9,6 +9,7 @@ import org.springframework.stereotype.Component;
 
 
 import javax.annotation.Resource;
+import java.util.List;
 
 /**
  * Created with IntelliJ IDEA.
@@ -26,12 +27,13 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public User login(String uid, String pwd) {
-        User user = new User();
-        user.setUserName(uid);
-        user.setPwd(pwd);
-        return user;
+        return userBusiness.login(uid, pwd);
     }
 
+    @Override
+    public List<User> listUserByUids(long[] uids) {
+        return userBusiness.listUserByUids(uids);
+    }
 
     public JSONObject imInit() {
         JSONObject result = new JSONObject();
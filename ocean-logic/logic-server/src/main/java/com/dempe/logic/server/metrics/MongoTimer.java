@@ -0,0 +1,51 @@
+package com.dempe.logic.server.metrics;
+
+/**
+ * 当前线程处理一个rpc请求期间在mongo上花的时间
+ * ServiceMetricsFilter在请求开始时清零、结束时读取，MongoTimingPostProcessor在每次dao调用前后累加；
+ * dao方法互相调用时只算最外层
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 11:40
+ * To change this template use File | Settings | File Templates.
+ */
+public final class MongoTimer {
+
+    // [0]累计纳秒，[1]dao调用嵌套深度，[2]最外层调用开始的纳秒
+    private static final ThreadLocal<long[]> STATE = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[3];
+        }
+    };
+
+    private MongoTimer() {
+    }
+
+    public static void reset() {
+        long[] state = STATE.get();
+        state[0] = 0;
+        state[1] = 0;
+    }
+
+    public static void enter() {
+        long[] state = STATE.get();
+        if (state[1]++ == 0) {
+            state[2] = System.nanoTime();
+        }
+    }
+
+    public static void exit() {
+        long[] state = STATE.get();
+        if (--state[1] == 0) {
+            state[0] += System.nanoTime() - state[2];
+        }
+    }
+
+    /**
+     * @return 上次reset之后累计的微秒数
+     */
+    public static long elapsedMicros() {
+        return STATE.get()[0] / 1000;
+    }
+}
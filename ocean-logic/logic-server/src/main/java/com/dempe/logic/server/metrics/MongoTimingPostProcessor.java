@@ -0,0 +1,59 @@
+package com.dempe.logic.server.metrics;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 给@Repository的dao套一层计时，dao方法的耗时计入{@link MongoTimer}
+ * dao是BasicDAO的子类，没有接口，用cglib子类代理，注入处的类型不变
+ * motan的ServiceConfigBean也是BeanPostProcessor，创建时会连带创建服务实现和dao，
+ * 这里实现PriorityOrdered，先于它注册，否则那些dao不会被代理
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 11:40
+ * To change this template use File | Settings | File Templates.
+ */
+@Component
+public class MongoTimingPostProcessor implements BeanPostProcessor, PriorityOrdered {
+
+    private static final MethodInterceptor TIMING = new MethodInterceptor() {
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            MongoTimer.enter();
+            try {
+                return invocation.proceed();
+            } finally {
+                MongoTimer.exit();
+            }
+        }
+    };
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (AnnotationUtils.findAnnotation(bean.getClass(), Repository.class) == null) {
+            return bean;
+        }
+        ProxyFactory factory = new ProxyFactory(bean);
+        factory.setProxyTargetClass(true);
+        factory.addAdvice(TIMING);
+        return factory.getProxy(bean.getClass().getClassLoader());
+    }
+}
@@ -0,0 +1,158 @@
+package com.dempe.logic.server.metrics;
+
+import com.dempe.logic.server.cache.BusinessCaches;
+import com.dempe.ocean.utils.LatencyHistogram;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * logic server每个导出方法(Service.method)的统计，由ServiceMetricsFilter记录：
+ * 1.queue  请求解码后到worker线程开始执行的时间，持续偏高说明maxWorkerThread不够
+ * 2.exec   方法本身的执行时间
+ * 3.mongo  执行期间花在dao上的时间，exec减去mongo就是业务代码自身的耗时
+ * 4.正在执行的请求数，整体和按方法各一个，以及统计周期内的峰值，峰值接近maxWorkerThread时需要扩容
+ * 直方图单位为微秒，每个周期输出一次日志后清零，同时输出业务缓存本周期的命中率
+ * 配置(系统属性)：
+ * <pre>
+ * ocean.metrics.reportSec  输出统计日志的周期，默认60，0为不输出
+ * </pre>
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 11:40
+ * To change this template use File | Settings | File Templates.
+ */
+public class ServiceMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceMetrics.class);
+
+    // filter由motan的SPI创建，不在spring容器里，统计放在进程内单例上
+    private static final ServiceMetrics INSTANCE = new ServiceMetrics();
+
+    private final ConcurrentMap<String, MethodStats> methods = Maps.newConcurrentMap();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    private ScheduledExecutorService reporter;
+
+    public static ServiceMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public MethodStats method(String name) {
+        MethodStats stats = methods.get(name);
+        if (stats == null) {
+            MethodStats created = new MethodStats();
+            stats = methods.putIfAbsent(name, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    public Map<String, MethodStats> getMethods() {
+        return methods;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    void enter(MethodStats stats) {
+        updatePeak(peakInFlight, inFlight.incrementAndGet());
+        updatePeak(stats.peakInFlight, stats.inFlight.incrementAndGet());
+    }
+
+    void exit(MethodStats stats) {
+        inFlight.decrementAndGet();
+        stats.inFlight.decrementAndGet();
+    }
+
+    /**
+     * 按ocean.metrics.reportSec周期输出统计，重复调用只启动一次
+     */
+    public synchronized void startReporter() {
+        long periodSec = Long.getLong("ocean.metrics.reportSec", 60L);
+        if (reporter != null || periodSec <= 0) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }, periodSec, periodSec, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 输出并清零本周期的统计
+     */
+    public void report() {
+        LOGGER.info("rpc in flight {}, peak {}", inFlight.get(), peakInFlight.getAndSet(inFlight.get()));
+        for (Map.Entry<String, MethodStats> e : methods.entrySet()) {
+            MethodStats stats = e.getValue();
+            LatencyHistogram exec = stats.exec.getAndReset();
+            if (exec.count() == 0) {
+                continue;
+            }
+            LOGGER.info("{} errors={} inFlight={} peak={}\n  queue: {}\n  exec:  {}\n  mongo: {}", e.getKey(),
+                    stats.errors.getAndSet(0), stats.inFlight.get(), stats.peakInFlight.getAndSet(stats.inFlight.get()),
+                    stats.queue.getAndReset().summary(), exec.summary(), stats.mongo.getAndReset().summary());
+        }
+        BusinessCaches.report();
+    }
+
+    private static void updatePeak(AtomicInteger peak, int value) {
+        int current = peak.get();
+        while (value > current && !peak.compareAndSet(current, value)) {
+            current = peak.get();
+        }
+    }
+
+    public static final class MethodStats {
+        final LatencyHistogram queue = new LatencyHistogram();
+        final LatencyHistogram exec = new LatencyHistogram();
+        final LatencyHistogram mongo = new LatencyHistogram();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger peakInFlight = new AtomicInteger();
+        final AtomicLong errors = new AtomicLong();
+
+        public LatencyHistogram getQueue() {
+            return queue;
+        }
+
+        public LatencyHistogram getExec() {
+            return exec;
+        }
+
+        public LatencyHistogram getMongo() {
+            return mongo;
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+    }
+}
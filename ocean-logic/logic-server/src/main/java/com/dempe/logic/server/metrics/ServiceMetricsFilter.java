@@ -0,0 +1,52 @@
+package com.dempe.logic.server.metrics;
+
+import com.weibo.api.motan.core.extension.SpiMeta;
+import com.weibo.api.motan.filter.Filter;
+import com.weibo.api.motan.rpc.Caller;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.rpc.Response;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.Map;
+
+/**
+ * 服务端每个rpc请求的排队时间、执行时间、mongo时间和并发数，记录到{@link ServiceMetrics}
+ * 在motan:basicService上配置filter="ocean-metrics"，所有导出的服务都会经过；
+ * 排队时间需要服务端协议同时配置codec="ocean-timing"，见{@link TimingCodec}
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 11:40
+ * To change this template use File | Settings | File Templates.
+ */
+@SpiMeta(name = "ocean-metrics")
+public class ServiceMetricsFilter implements Filter {
+
+    private final ServiceMetrics metrics = ServiceMetrics.getInstance();
+
+    @Override
+    public Response filter(Caller<?> caller, Request request) {
+        long start = System.nanoTime();
+        ServiceMetrics.MethodStats stats = metrics.method(
+                StringUtils.substringAfterLast(request.getInterfaceName(), ".") + "." + request.getMethodName());
+        Map<String, String> attachments = request.getAttachments();
+        long received = attachments == null ? 0 : NumberUtils.toLong(attachments.get(TimingCodec.RECEIVED_NANOS));
+        if (received != 0) {
+            stats.queue.record((start - received) / 1000);
+        }
+        MongoTimer.reset();
+        metrics.enter(stats);
+        Response response = null;
+        try {
+            response = caller.call(request);
+            return response;
+        } finally {
+            metrics.exit(stats);
+            stats.exec.record((System.nanoTime() - start) / 1000);
+            stats.mongo.record(MongoTimer.elapsedMicros());
+            if (response == null || response.getException() != null) {
+                stats.errors.incrementAndGet();
+            }
+        }
+    }
+}
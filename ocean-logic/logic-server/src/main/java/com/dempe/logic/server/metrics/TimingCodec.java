@@ -0,0 +1,32 @@
+package com.dempe.logic.server.metrics;
+
+import com.weibo.api.motan.core.extension.SpiMeta;
+import com.weibo.api.motan.protocol.rpc.DefaultRpcCodec;
+import com.weibo.api.motan.rpc.Request;
+import com.weibo.api.motan.transport.Channel;
+
+import java.io.IOException;
+
+/**
+ * 与motan默认codec的编码完全相同，只是在io线程上解出请求时记下接收时间，
+ * ServiceMetricsFilter据此算出请求在worker线程池里排队的时间
+ * 在服务端的motan:protocol上配置codec="ocean-timing"启用，client不需要改
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 11:40
+ * To change this template use File | Settings | File Templates.
+ */
+@SpiMeta(name = "ocean-timing")
+public class TimingCodec extends DefaultRpcCodec {
+
+    static final String RECEIVED_NANOS = "_ocean_received";
+
+    @Override
+    public Object decode(Channel channel, String remoteIp, byte[] data) throws IOException {
+        Object message = super.decode(channel, remoteIp, data);
+        if (message instanceof Request) {
+            ((Request) message).setAttachment(RECEIVED_NANOS, Long.toString(System.nanoTime()));
+        }
+        return message;
+    }
+}
@@ -0,0 +1,432 @@
+package com.dempe.logic.server.store;
+
+import com.dempe.ocean.db.model.im.InboxMessage;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * 本地日志文件版收件箱，不依赖mongo，用于单机部署和测试
+ * 1.所有用户的消息顺序追加到同一组段文件(0000000000.log ...)，一批消息编码后一次写入，超过segmentBytes后换新段
+ * 2.每条记录为 长度 + crc32 + (seq, createTime, uid, topic, payload)，启动时mmap扫描全部段重建内存索引，尾部写坏的记录截掉
+ * 3.内存里每个用户一份(seq, 段号+偏移)的有序索引，范围读取二分定位后按偏移读文件
+ * 4.段按时间有序，过期清理整段删除，被删段上的索引一并去掉
+ * seq取 max(上一个seq + 1, 当前毫秒 * 1000)，用户的消息全部过期、索引被回收后seq仍然单调递增
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 23:30
+ * To change this template use File | Settings | File Templates.
+ */
+public class LocalMessageStore implements MessageStore, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalMessageStore.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8;// 长度 + crc32
+    private static final int FIXED_BODY_SIZE = 8 + 8 + 2 + 2 + 4;
+    private static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private final File dir;
+    private final long segmentBytes;
+    private final boolean fsync;
+
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<Integer, Segment>();
+    private final ConcurrentMap<String, UserIndex> users = Maps.newConcurrentMap();
+    // 只在持有this锁时修改
+    private Segment active;
+
+    public LocalMessageStore(String dir) throws IOException {
+        this(new File(dir), DEFAULT_SEGMENT_BYTES, false);
+    }
+
+    /**
+     * @param segmentBytes 单个段文件的大小上限
+     * @param fsync        每批写入后是否force到磁盘
+     */
+    public LocalMessageStore(File dir, long segmentBytes, boolean fsync) throws IOException {
+        if (segmentBytes <= 0 || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segmentBytes out of range: " + segmentBytes);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can not create dir " + dir);
+        }
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        recover();
+    }
+
+    @Override
+    public synchronized long[] append(List<InboxMessage> messages) {
+        long[] seqs = new long[messages.size()];
+        if (messages.isEmpty()) {
+            return seqs;
+        }
+        long now = System.currentTimeMillis();
+        Map<String, Long> lastSeqs = Maps.newHashMap();
+        byte[][] uids = new byte[messages.size()][];
+        byte[][] topics = new byte[messages.size()][];
+        int size = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            InboxMessage message = messages.get(i);
+            Long last = lastSeqs.get(message.getUid());
+            if (last == null) {
+                UserIndex index = users.get(message.getUid());
+                last = index == null ? 0 : index.lastSeq();
+            }
+            seqs[i] = Math.max(last + 1, now * 1000);
+            lastSeqs.put(message.getUid(), seqs[i]);
+            uids[i] = message.getUid().getBytes(UTF8);
+            topics[i] = message.getTopic().getBytes(UTF8);
+            size += HEADER_SIZE + FIXED_BODY_SIZE + uids[i].length + topics[i].length + message.getPayload().length;
+        }
+        try {
+            if (active.size > 0 && active.size + size > segmentBytes) {
+                roll();
+            }
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            int[] offsets = new int[messages.size()];
+            long maxCreateTime = active.maxCreateTime;
+            for (int i = 0; i < messages.size(); i++) {
+                InboxMessage message = messages.get(i);
+                offsets[i] = (int) (active.size + buf.position());
+                writeRecord(buf, seqs[i], message.getCreateTime(), uids[i], topics[i], message.getPayload());
+                maxCreateTime = Math.max(maxCreateTime, message.getCreateTime());
+            }
+            buf.flip();
+            long position = active.size;
+            while (buf.hasRemaining()) {
+                position += active.channel.write(buf, position);
+            }
+            if (fsync) {
+                active.channel.force(false);
+            }
+            active.size = position;
+            active.maxCreateTime = maxCreateTime;
+            active.count += messages.size();
+            for (int i = 0; i < messages.size(); i++) {
+                InboxMessage message = messages.get(i);
+                message.setSeq(seqs[i]);
+                index(message.getUid()).add(seqs[i], position(active.id, offsets[i]));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("append inbox messages to " + dir + " error", e);
+        }
+        return seqs;
+    }
+
+    @Override
+    public long latestSeq(String uid) {
+        UserIndex index = users.get(uid);
+        return index == null ? 0 : index.lastSeq();
+    }
+
+    @Override
+    public List<InboxMessage> fetch(String uid, long afterSeq, int limit) {
+        UserIndex index = users.get(uid);
+        if (index == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        long[] positions = index.positionsAfter(afterSeq, limit);
+        List<InboxMessage> messages = Lists.newArrayListWithCapacity(positions.length);
+        for (long position : positions) {
+            Segment segment = segments.get(segmentId(position));
+            if (segment == null) {
+                // 读取过程中所在的段被清理
+                continue;
+            }
+            try {
+                messages.add(readRecord(segment, offset(position)));
+            } catch (ClosedChannelException e) {
+                LOGGER.debug("segment {} compacted while reading", segment.id);
+            } catch (IOException e) {
+                throw new IllegalStateException("read inbox of " + uid + " from " + segment.file + " error", e);
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public synchronized long compact(long expireBefore) {
+        try {
+            if (active.size > 0 && active.maxCreateTime < expireBefore) {
+                roll();
+            }
+        } catch (IOException e) {
+            LOGGER.error("roll segment in {} error", dir, e);
+        }
+        long removed = 0;
+        Iterator<Segment> it = segments.values().iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            if (segment == active || segment.maxCreateTime >= expireBefore) {
+                break;
+            }
+            it.remove();
+            segment.close();
+            if (!segment.file.delete()) {
+                LOGGER.warn("can not delete expired segment {}", segment.file);
+            }
+            removed += segment.count;
+        }
+        if (removed > 0) {
+            int firstSegment = segments.firstKey();
+            long minSeq = System.currentTimeMillis() * 1000;
+            Iterator<UserIndex> indexes = users.values().iterator();
+            while (indexes.hasNext()) {
+                UserIndex index = indexes.next();
+                // 没有消息的用户不再保留索引，之后分配的seq取自当前时间，仍比原来的大
+                if (index.dropBefore(firstSegment) && index.lastSeq() < minSeq) {
+                    indexes.remove();
+                }
+            }
+            LOGGER.info("compact {} expired messages in {}", removed, dir);
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+    }
+
+    private UserIndex index(String uid) {
+        UserIndex index = users.get(uid);
+        if (index == null) {
+            index = new UserIndex();
+            UserIndex prev = users.putIfAbsent(uid, index);
+            if (prev != null) {
+                index = prev;
+            }
+        }
+        return index;
+    }
+
+    private void roll() throws IOException {
+        active = openSegment(active.id + 1);
+        LOGGER.info("roll to segment {}", active.file);
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        Segment segment = new Segment(id, new File(dir, String.format("%010d%s", id, SUFFIX)));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void recover() throws IOException {
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                int id = Integer.parseInt(file.getName().substring(0, file.getName().length() - SUFFIX.length()));
+                scan(openSegment(id));
+            }
+        }
+        if (segments.isEmpty()) {
+            active = openSegment(0);
+        } else {
+            active = segments.lastEntry().getValue();
+            if (active.size >= segmentBytes) {
+                roll();
+            }
+        }
+        LOGGER.info("recover {} users from {} segments in {}", users.size(), segments.size(), dir);
+    }
+
+    /**
+     * 顺序扫描段文件重建索引，遇到不完整或者校验失败的记录时截断
+     */
+    private void scan(Segment segment) throws IOException {
+        long fileSize = segment.channel.size();
+        MappedByteBuffer map = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        CRC32 crc = new CRC32();
+        int pos = 0;
+        while (map.remaining() >= HEADER_SIZE + FIXED_BODY_SIZE) {
+            int length = map.getInt(pos);
+            int checksum = map.getInt(pos + 4);
+            if (length < FIXED_BODY_SIZE || length > map.limit() - pos - HEADER_SIZE) {
+                break;
+            }
+            ByteBuffer body = map.duplicate();
+            body.position(pos + HEADER_SIZE).limit(pos + HEADER_SIZE + length);
+            crc.reset();
+            crc.update(toArray(body.duplicate()));
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            long seq = body.getLong();
+            long createTime = body.getLong();
+            byte[] uid = new byte[body.getShort() & 0xFFFF];
+            body.get(uid);
+            index(new String(uid, UTF8)).add(seq, position(segment.id, pos));
+            segment.maxCreateTime = Math.max(segment.maxCreateTime, createTime);
+            segment.count++;
+            pos += HEADER_SIZE + length;
+            map.position(pos);
+        }
+        if (pos < fileSize) {
+            LOGGER.warn("truncate segment {} from {} to {}", segment.file, fileSize, pos);
+            segment.channel.truncate(pos);
+        }
+        segment.size = pos;
+    }
+
+    private static void writeRecord(ByteBuffer buf, long seq, long createTime, byte[] uid, byte[] topic, byte[] payload) {
+        int start = buf.position();
+        buf.position(start + HEADER_SIZE);
+        buf.putLong(seq).putLong(createTime);
+        buf.putShort((short) uid.length).put(uid);
+        buf.putShort((short) topic.length).put(topic);
+        buf.putInt(payload.length).put(payload);
+        int end = buf.position();
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), buf.arrayOffset() + start + HEADER_SIZE, end - start - HEADER_SIZE);
+        buf.putInt(start, end - start - HEADER_SIZE);
+        buf.putInt(start + 4, (int) crc.getValue());
+    }
+
+    private static InboxMessage readRecord(Segment segment, int offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(segment.channel, header, offset);
+        ByteBuffer body = ByteBuffer.allocate(header.getInt(0));
+        readFully(segment.channel, body, offset + HEADER_SIZE);
+        long seq = body.getLong();
+        long createTime = body.getLong();
+        int uidLength = body.getShort() & 0xFFFF;
+        body.position(body.position() + uidLength);
+        byte[] topic = new byte[body.getShort() & 0xFFFF];
+        body.get(topic);
+        byte[] payload = new byte[body.getInt()];
+        body.get(payload);
+        return new InboxMessage(seq, new String(topic, UTF8), payload, createTime);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position + buf.position());
+            if (n < 0) {
+                throw new IOException("unexpected end of segment at " + position);
+            }
+        }
+        buf.flip();
+    }
+
+    private static byte[] toArray(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        return bytes;
+    }
+
+    private static long position(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentId(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int offset(long position) {
+        return (int) position;
+    }
+
+    private static final class Segment {
+        final int id;
+        final File file;
+        final FileChannel channel;
+        // 以下字段只在持有store锁时修改
+        volatile long size;
+        volatile long maxCreateTime;
+        long count;
+
+        Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            this.size = channel.size();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("close segment {} error", file, e);
+            }
+        }
+    }
+
+    /**
+     * 一个用户按seq升序的(seq, 位置)索引
+     */
+    private static final class UserIndex {
+        private long[] seqs = new long[4];
+        private long[] positions = new long[4];
+        private int size;
+        private long lastSeq;
+
+        synchronized void add(long seq, long position) {
+            if (size == seqs.length) {
+                seqs = Arrays.copyOf(seqs, size << 1);
+                positions = Arrays.copyOf(positions, size << 1);
+            }
+            seqs[size] = seq;
+            positions[size++] = position;
+            lastSeq = Math.max(lastSeq, seq);
+        }
+
+        synchronized long lastSeq() {
+            return lastSeq;
+        }
+
+        synchronized long[] positionsAfter(long afterSeq, int limit) {
+            int from = Arrays.binarySearch(seqs, 0, size, afterSeq);
+            from = from >= 0 ? from + 1 : -from - 1;
+            return Arrays.copyOfRange(positions, from, from + Math.min(limit, size - from));
+        }
+
+        /**
+         * 去掉段号小于segmentId的索引
+         *
+         * @return 是否已经没有索引
+         */
+        synchronized boolean dropBefore(int segmentId) {
+            int n = 0;
+            while (n < size && segmentId(positions[n]) < segmentId) {
+                n++;
+            }
+            if (n > 0) {
+                System.arraycopy(seqs, n, seqs, 0, size - n);
+                System.arraycopy(positions, n, positions, 0, size - n);
+                size -= n;
+            }
+            return size == 0;
+        }
+    }
+}
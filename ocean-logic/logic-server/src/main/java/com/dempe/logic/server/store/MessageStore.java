@@ -0,0 +1,41 @@
+package com.dempe.logic.server.store;
+
+import com.dempe.ocean.db.model.im.InboxMessage;
+
+import java.util.List;
+
+/**
+ * 收件箱消息的存储引擎
+ * 默认实现为mongo({@link com.dempe.logic.server.dao.InboxMessageDao})，
+ * 不依赖mongo的场景(单机部署、测试)可以换成本地日志文件实现{@link LocalMessageStore}
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 23:15
+ * To change this template use File | Settings | File Templates.
+ */
+public interface MessageStore {
+
+    /**
+     * 批量追加，分配的seq同时回填到消息里；同一用户的多条按在列表中的顺序分配
+     *
+     * @return 与messages一一对应的seq
+     */
+    long[] append(List<InboxMessage> messages);
+
+    /**
+     * @return 用户最新的seq，没有消息时为0；消息过期清理后仍然保留
+     */
+    long latestSeq(String uid);
+
+    /**
+     * @return seq大于afterSeq的消息，按seq升序，最多limit条
+     */
+    List<InboxMessage> fetch(String uid, long afterSeq, int limit);
+
+    /**
+     * 清理createTime早于expireBefore的消息，实现可以按自己的粒度清理(比如整个文件段)，不保证立即全部删除
+     *
+     * @return 清理的消息数
+     */
+    long compact(long expireBefore);
+}
@@ -0,0 +1,37 @@
+package com.dempe.ocean.common;
+
+/**
+ * payload压缩算法，code出现在问答topic(m|service|method|compressType)、压缩消息topic(z|compressType|原topic)
+ * 以及压缩协商(s|compress)的payload里
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 02:10
+ * To change this template use File | Settings | File Templates.
+ */
+public enum CompressType {
+    NONE(0),
+    DEFLATE(1),// zlib格式，java.util.zip
+    SNAPPY(2),// snappy block格式，不带framing
+    LZ4(3);// 保留
+    private int code;
+
+    private CompressType(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return 未知的code返回null
+     */
+    public static CompressType valueOf(int code) {
+        for (CompressType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,290 @@
+package com.dempe.ocean.common;
+
+import com.dempe.ocean.db.model.im.InboxMessage;
+import com.dempe.ocean.utils.Varints;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 扩展协议，主要用来优化mqtt对im支持，参见陌陌&微信的处理方法
+ * 1.有新的消息后server主动push，只带该用户最新的seq {@link #encodeSrvPush}
+ * 2.client收到push消息后，发sync同步消息，带上已收到的seq {@link #encodeCliSynReq}
+ * 3.server按seq返回之后的消息，一次最多limit条，client发现最新seq更大时继续sync {@link #encodeSrvSynRsp}
+ * 4.client返回收到的序列号 {@link #encodeSeqRsp}
+ * 各消息的topic见{@link R#SYNC_PUSH_TOPIC}、{@link R#SYNC_TOPIC}、{@link R#SYNC_ACK_TOPIC}，数字均为varint
+ * 问答消息(m|service|method[|compressType])的响应在同一个topic上返回 {@link #encodeRpcRsp}
+ * 压缩协商(s|compress) {@link #encodeCompress}
+ * 重连提示(s|redirect) {@link #encodeRedirect}
+ * connector和sdk共用
+ * User: Dempe
+ * Date: 2016/4/12
+ * Time: 13:20
+ * To change this template use File | Settings | File Templates.
+ */
+public final class ExtendProtocol {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * 问答响应的状态码
+     */
+    public static final int RPC_OK = 0;
+    public static final int RPC_NOT_FOUND = 1;
+    public static final int RPC_BAD_REQUEST = 2;
+    public static final int RPC_BUSY = 3;
+    public static final int RPC_ERROR = 4;
+
+    private ExtendProtocol() {
+    }
+
+    /**
+     * push: latestSeq
+     */
+    public static ByteBuffer encodeSrvPush(long latestSeq) {
+        return encodeLong(latestSeq);
+    }
+
+    public static long decodeSrvPush(ByteBuffer buf) {
+        return Varints.read(buf.duplicate());
+    }
+
+    /**
+     * sync请求: afterSeq + limit，返回seq大于afterSeq的消息
+     */
+    public static ByteBuffer encodeCliSynReq(long afterSeq, int limit) {
+        ByteBuffer buf = ByteBuffer.allocate(Varints.sizeOf(afterSeq) + Varints.sizeOf(limit));
+        Varints.write(afterSeq, buf);
+        Varints.write(limit, buf);
+        buf.flip();
+        return buf;
+    }
+
+    public static SynReq decodeCliSynReq(ByteBuffer buf) {
+        ByteBuffer in = buf.duplicate();
+        long afterSeq = Varints.read(in);
+        long limit = in.hasRemaining() ? Varints.read(in) : 0;
+        return new SynReq(afterSeq, (int) Math.min(limit, Integer.MAX_VALUE));
+    }
+
+    /**
+     * sync响应: latestSeq + 条数 + (seq与前一条的差值 + topic长度 + topic + payload长度 + payload) * 条数
+     */
+    public static ByteBuffer encodeSrvSynRsp(long latestSeq, List<InboxMessage> list) {
+        int size = Varints.sizeOf(latestSeq) + Varints.sizeOf(list.size());
+        byte[][] topics = new byte[list.size()][];
+        long prev = 0;
+        for (int i = 0; i < list.size(); i++) {
+            InboxMessage msg = list.get(i);
+            topics[i] = msg.getTopic().getBytes(UTF8);
+            size += Varints.sizeOf(msg.getSeq() - prev) + Varints.sizeOf(topics[i].length) + topics[i].length
+                    + Varints.sizeOf(msg.getPayload().length) + msg.getPayload().length;
+            prev = msg.getSeq();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        Varints.write(latestSeq, buf);
+        Varints.write(list.size(), buf);
+        prev = 0;
+        for (int i = 0; i < list.size(); i++) {
+            InboxMessage msg = list.get(i);
+            Varints.write(msg.getSeq() - prev, buf);
+            Varints.write(topics[i].length, buf);
+            buf.put(topics[i]);
+            Varints.write(msg.getPayload().length, buf);
+            buf.put(msg.getPayload());
+            prev = msg.getSeq();
+        }
+        buf.flip();
+        return buf;
+    }
+
+    public static SynRsp decodeSrvSynRsp(ByteBuffer buf) {
+        ByteBuffer in = buf.duplicate();
+        long latestSeq = Varints.read(in);
+        long count = Varints.read(in);
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("malformed sync response, count " + count);
+        }
+        List<InboxMessage> list = new ArrayList<InboxMessage>((int) count);
+        long seq = 0;
+        for (int i = 0; i < count; i++) {
+            seq += Varints.read(in);
+            String topic = new String(readBytes(in), UTF8);
+            list.add(new InboxMessage(seq, topic, readBytes(in), 0));
+        }
+        return new SynRsp(latestSeq, list);
+    }
+
+    /**
+     * ack: 已处理到的seq
+     */
+    public static ByteBuffer encodeSeqRsp(long seq) {
+        return encodeLong(seq);
+    }
+
+    public static long decodeSeqRsp(ByteBuffer buf) {
+        return Varints.read(buf.duplicate());
+    }
+
+    /**
+     * 问答响应: 请求的packet id(qos0请求为0) + 状态码 + body的CompressType + body
+     * 成功时body为返回值，失败时为错误描述(utf-8)；body较小或者压缩无收益时CompressType为0
+     */
+    public static ByteBuffer encodeRpcRsp(int packetId, int code, int compressType, ByteBuffer body) {
+        ByteBuffer buf = ByteBuffer.allocate(Varints.sizeOf(packetId) + Varints.sizeOf(code)
+                + Varints.sizeOf(compressType) + body.remaining());
+        Varints.write(packetId, buf);
+        Varints.write(code, buf);
+        Varints.write(compressType, buf);
+        buf.put(body.duplicate());
+        buf.flip();
+        return buf;
+    }
+
+    public static RpcRsp decodeRpcRsp(ByteBuffer buf) {
+        ByteBuffer in = buf.duplicate();
+        int packetId = (int) Varints.read(in);
+        int code = (int) Varints.read(in);
+        int compressType = (int) Varints.read(in);
+        byte[] body = new byte[in.remaining()];
+        in.get(body);
+        return new RpcRsp(packetId, code, compressType, body);
+    }
+
+    /**
+     * 压缩协商: CompressType
+     */
+    public static ByteBuffer encodeCompress(int compressType) {
+        return encodeLong(compressType);
+    }
+
+    public static int decodeCompress(ByteBuffer buf) {
+        return (int) Varints.read(buf.duplicate());
+    }
+
+    /**
+     * 重连提示: 延迟毫秒数 + 新地址(host:port，utf-8，为空表示重连原地址)
+     */
+    public static ByteBuffer encodeRedirect(long delayMillis, String address) {
+        byte[] bytes = address == null ? new byte[0] : address.getBytes(UTF8);
+        ByteBuffer buf = ByteBuffer.allocate(Varints.sizeOf(delayMillis) + bytes.length);
+        Varints.write(delayMillis, buf);
+        buf.put(bytes);
+        buf.flip();
+        return buf;
+    }
+
+    public static Redirect decodeRedirect(ByteBuffer buf) {
+        ByteBuffer in = buf.duplicate();
+        long delayMillis = Varints.read(in);
+        byte[] bytes = new byte[in.remaining()];
+        in.get(bytes);
+        return new Redirect(delayMillis, bytes.length == 0 ? null : new String(bytes, UTF8));
+    }
+
+    private static ByteBuffer encodeLong(long value) {
+        ByteBuffer buf = ByteBuffer.allocate(Varints.sizeOf(value));
+        Varints.write(value, buf);
+        buf.flip();
+        return buf;
+    }
+
+    private static byte[] readBytes(ByteBuffer in) {
+        long length = Varints.read(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("malformed sync response, length " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    public static class SynReq {
+        private final long afterSeq;
+        private final int limit;
+
+        public SynReq(long afterSeq, int limit) {
+            this.afterSeq = afterSeq;
+            this.limit = limit;
+        }
+
+        public long getAfterSeq() {
+            return afterSeq;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+    }
+
+    public static class SynRsp {
+        private final long latestSeq;
+        private final List<InboxMessage> messages;
+
+        public SynRsp(long latestSeq, List<InboxMessage> messages) {
+            this.latestSeq = latestSeq;
+            this.messages = messages;
+        }
+
+        public long getLatestSeq() {
+            return latestSeq;
+        }
+
+        public List<InboxMessage> getMessages() {
+            return messages;
+        }
+    }
+
+    public static class RpcRsp {
+        private final int packetId;
+        private final int code;
+        private final int compressType;
+        private final byte[] body;
+
+        public RpcRsp(int packetId, int code, int compressType, byte[] body) {
+            this.packetId = packetId;
+            this.code = code;
+            this.compressType = compressType;
+            this.body = body;
+        }
+
+        public int getPacketId() {
+            return packetId;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public int getCompressType() {
+            return compressType;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+    public static class Redirect {
+        private final long delayMillis;
+        private final String address;
+
+        public Redirect(long delayMillis, String address) {
+            this.delayMillis = delayMillis;
+            this.address = address;
+        }
+
+        public long getDelayMillis() {
+            return delayMillis;
+        }
+
+        /**
+         * @return host:port，为null时重连原地址
+         */
+        public String getAddress() {
+            return address;
+        }
+    }
+}
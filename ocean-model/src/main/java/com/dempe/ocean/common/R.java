@@ -9,4 +9,44 @@ package com.dempe.ocean.common;
  */
 public interface R {
     String SPLIT = "|";
+
+    /**
+     * connector登录成功后下发会话token的topic，payload为token(UTF-8)
+     */
+    String TOKEN_TOPIC = "s" + SPLIT + "token";
+
+    /**
+     * 会话token的前缀(格式版本)
+     */
+    String TOKEN_PREFIX = "t1.";
+
+    /**
+     * 用会话token登录时username为此前缀加uid，密码字段为token；connector按username区分token和普通密码
+     */
+    String TOKEN_USER_PREFIX = "t" + SPLIT;
+
+    /**
+     * 增量同步，payload格式见ExtendProtocol：
+     * SYNC_PUSH_TOPIC  server->client 有新消息，只带最新seq
+     * SYNC_TOPIC       client->server 同步请求(已收到的seq，条数)；server->client 同步响应(最新seq，消息列表)
+     * SYNC_ACK_TOPIC   client->server 已处理到的seq
+     */
+    String SYNC_PUSH_TOPIC = "s" + SPLIT + "push";
+
+    String SYNC_TOPIC = "s" + SPLIT + "sync";
+
+    String SYNC_ACK_TOPIC = "s" + SPLIT + "ack";
+
+    /**
+     * 压缩协商，client->server payload为客户端支持的CompressType(varint)，0表示关闭；
+     * server->client 返回实际采用的CompressType，服务端不支持时为0
+     * 之后超过阈值的下行消息以z|compressType|原topic下发
+     */
+    String COMPRESS_TOPIC = "s" + SPLIT + "compress";
+
+    /**
+     * connector下线前的重连提示，server->client，payload格式见ExtendProtocol#encodeRedirect
+     * 客户端在delay之后主动断开并重连(address不为空时连到address)，connector在delay加上宽限时间后关闭仍未断开的连接
+     */
+    String REDIRECT_TOPIC = "s" + SPLIT + "redirect";
 }
@@ -12,6 +12,9 @@ public enum TopicType {
     FRIEND("f"),// for朋友
     MYSELF("m"),//for自己，属于问答模式
     SYS("s"),//系统内部消息，包括syn，push
+    LIVE("l"),//直播频道，l|topSid或l|topSid|subSid，订阅即进入频道
+    BATCH("b"),//服务端合并下发的多条消息，b|原topic，payload格式见BatchPayload
+    COMPRESSED("z"),//压缩过的消息，z|compressType|原topic，见CompressType
     OTHER("o");//其他
     private String type;
 
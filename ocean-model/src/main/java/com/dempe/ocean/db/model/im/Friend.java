@@ -2,6 +2,8 @@ package com.dempe.ocean.db.model.im;
 
 import org.mongodb.morphia.annotations.Entity;
 import org.mongodb.morphia.annotations.Id;
+import org.mongodb.morphia.annotations.Index;
+import org.mongodb.morphia.annotations.Indexes;
 
 import java.io.Serializable;
 
@@ -13,6 +15,9 @@ import java.io.Serializable;
  * To change this template use File | Settings | File Templates.
  */
 @Entity("friend")
+// 申请/接受/删除好友都按(uid, friendUid)定位；好友列表按(uid, stat)过滤、只取friendUid，走(uid, stat, friendUid)覆盖索引
+@Indexes({@Index(value = "uid, friendUid", background = true),
+        @Index(value = "uid, stat, friendUid", background = true)})
 public class Friend implements Serializable {
 
     // uid&friendUid联合主键
@@ -0,0 +1,88 @@
+package com.dempe.ocean.db.model.im;
+
+import org.mongodb.morphia.annotations.Entity;
+import org.mongodb.morphia.annotations.Id;
+import org.mongodb.morphia.annotations.Index;
+import org.mongodb.morphia.annotations.Indexes;
+
+import java.io.Serializable;
+
+/**
+ * 用户收件箱里的一条消息，seq在同一个用户内单调递增
+ * 客户端收到push通知后按seq增量拉取，多端各自记录已同步到的seq
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 21:50
+ * To change this template use File | Settings | File Templates.
+ */
+@Entity(value = "inbox_message", noClassnameStored = true)
+// 增量同步按(uid, seq)范围读取；过期清理按createTime删除
+@Indexes({@Index(value = "uid, seq", unique = true, background = true), @Index(value = "createTime", background = true)})
+public class InboxMessage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private String id;
+    private String uid;// 收件人，sync响应里不带
+    private long seq;
+    private String topic;// 原始topic，例如f|uid、g|groupId
+    private byte[] payload;
+    private long createTime;
+
+    public InboxMessage() {
+    }
+
+    public InboxMessage(long seq, String topic, byte[] payload, long createTime) {
+        this.seq = seq;
+        this.topic = topic;
+        this.payload = payload;
+        this.createTime = createTime;
+    }
+
+    public InboxMessage(String uid, String topic, byte[] payload, long createTime) {
+        this.uid = uid;
+        this.topic = topic;
+        this.payload = payload;
+        this.createTime = createTime;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public void setUid(String uid) {
+        this.uid = uid;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(long createTime) {
+        this.createTime = createTime;
+    }
+}
@@ -2,6 +2,8 @@ package com.dempe.ocean.db.model.im;
 
 import org.mongodb.morphia.annotations.Entity;
 import org.mongodb.morphia.annotations.Id;
+import org.mongodb.morphia.annotations.Index;
+import org.mongodb.morphia.annotations.Indexes;
 
 import java.io.Serializable;
 
@@ -13,6 +15,8 @@ import java.io.Serializable;
  * To change this template use File | Settings | File Templates.
  */
 @Entity("user_group")
+// 按群查成员以及删除成员都走(groupId, uid)，只取uid时为覆盖查询，不需要回表
+@Indexes(@Index(value = "groupId, uid", background = true))
 public class UserGroup implements Serializable {
 
     @Id
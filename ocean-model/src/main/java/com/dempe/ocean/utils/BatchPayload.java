@@ -0,0 +1,67 @@
+package com.dempe.ocean.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多条消息合并成一个PUBLISH时的payload格式：
+ * <pre>
+ * varint 消息条数 + (varint 长度 + 消息体) * 条数
+ * </pre>
+ * 合并后的消息发到topic b|原topic，客户端拆开后按原topic逐条处理
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 21:10
+ * To change this template use File | Settings | File Templates.
+ */
+public final class BatchPayload {
+
+    private BatchPayload() {
+    }
+
+    public static int sizeOf(List<ByteBuffer> payloads) {
+        int size = Varints.sizeOf(payloads.size());
+        for (ByteBuffer payload : payloads) {
+            size += Varints.sizeOf(payload.remaining()) + payload.remaining();
+        }
+        return size;
+    }
+
+    /**
+     * 不改变各payload的position
+     */
+    public static ByteBuffer encode(List<ByteBuffer> payloads) {
+        ByteBuffer buf = ByteBuffer.allocate(sizeOf(payloads));
+        Varints.write(payloads.size(), buf);
+        for (ByteBuffer payload : payloads) {
+            Varints.write(payload.remaining(), buf);
+            buf.put(payload.duplicate());
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * @return 各条消息的切片，与buf共享数据
+     */
+    public static List<ByteBuffer> decode(ByteBuffer buf) {
+        ByteBuffer in = buf.duplicate();
+        long count = Varints.read(in);
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("malformed batch payload, count " + count);
+        }
+        List<ByteBuffer> payloads = new ArrayList<ByteBuffer>((int) count);
+        for (int i = 0; i < count; i++) {
+            long length = Varints.read(in);
+            if (length < 0 || length > in.remaining()) {
+                throw new IllegalArgumentException("malformed batch payload, length " + length);
+            }
+            ByteBuffer payload = in.slice();
+            payload.limit((int) length);
+            payloads.add(payload);
+            in.position(in.position() + (int) length);
+        }
+        return payloads;
+    }
+}
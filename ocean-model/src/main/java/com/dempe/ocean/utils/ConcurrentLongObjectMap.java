@@ -0,0 +1,273 @@
+package com.dempe.ocean.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * long -> 对象的并发哈希表，开放寻址(线性探测)，key直接存在long数组里，没有装箱的Long和每个entry一个Node
+ * 1.按key的哈希分成多个段，写操作锁所在的段，读不加锁
+ * 2.删除只把value换成墓碑，key留在槽位上，读线程的探测不会因为删除提前结束；墓碑在段重建时清理
+ * 3.槽位上的key写入后直到重建都不再改变，写入时先写value再写key，读到key时一定能读到对应的value
+ * 4.key为0的项(数组里0表示空槽)单独存放
+ * 不支持null值
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 05:10
+ * To change this template use File | Settings | File Templates.
+ */
+public class ConcurrentLongObjectMap<V> {
+
+    private static final Object TOMBSTONE = new Object();
+    private static final int MIN_CAPACITY = 8;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    public ConcurrentLongObjectMap() {
+        this(64);
+    }
+
+    /**
+     * @param concurrencyLevel 段数，向上取到2的幂
+     */
+    public ConcurrentLongObjectMap(int concurrencyLevel) {
+        int n = 1;
+        int bits = 0;
+        while (n < concurrencyLevel) {
+            n <<= 1;
+            bits++;
+        }
+        segments = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            segments[i] = new Segment();
+        }
+        segmentShift = 64 - bits;
+    }
+
+    static long hash(long key) {
+        // murmur3的fmix64，打散连续的uid
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long hash = hash(key);
+        return (V) segmentFor(hash).get(key, hash);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return 之前的值
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        checkValue(value);
+        long hash = hash(key);
+        return (V) segmentFor(hash).put(key, hash, value, false);
+    }
+
+    /**
+     * @return 已经存在的值，放入成功时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(long key, V value) {
+        checkValue(value);
+        long hash = hash(key);
+        return (V) segmentFor(hash).put(key, hash, value, true);
+    }
+
+    /**
+     * @return 移除的值
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        long hash = hash(key);
+        return (V) segmentFor(hash).remove(key, hash, null);
+    }
+
+    /**
+     * 只有当前值equals value时才移除
+     */
+    public boolean remove(long key, Object value) {
+        if (value == null) {
+            return false;
+        }
+        long hash = hash(key);
+        return segmentFor(hash).remove(key, hash, value) != null;
+    }
+
+    public int size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    public boolean isEmpty() {
+        for (Segment segment : segments) {
+            if (segment.size != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void checkValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException("null value");
+        }
+    }
+
+    private static final class Table {
+        final AtomicLongArray keys;
+        final AtomicReferenceArray<Object> values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            values = new AtomicReferenceArray<Object>(capacity);
+            mask = capacity - 1;
+        }
+    }
+
+    private static final class Segment {
+        volatile Table table = new Table(MIN_CAPACITY);
+        volatile Object zeroValue;
+        volatile int size;
+        // 有效项加墓碑占用的槽位数，只在锁内读写
+        int used;
+
+        Object get(long key, long hash) {
+            if (key == 0) {
+                return zeroValue;
+            }
+            Table t = table;
+            int i = (int) hash & t.mask;
+            for (; ; ) {
+                long k = t.keys.get(i);
+                if (k == key) {
+                    Object v = t.values.get(i);
+                    return v == TOMBSTONE ? null : v;
+                }
+                if (k == 0) {
+                    return null;
+                }
+                i = (i + 1) & t.mask;
+            }
+        }
+
+        synchronized Object put(long key, long hash, Object value, boolean onlyIfAbsent) {
+            if (key == 0) {
+                Object old = zeroValue;
+                if (old == null || !onlyIfAbsent) {
+                    zeroValue = value;
+                }
+                if (old == null) {
+                    size++;
+                }
+                return old;
+            }
+            Table t = table;
+            int i = (int) hash & t.mask;
+            for (; ; ) {
+                long k = t.keys.get(i);
+                if (k == key) {
+                    Object old = t.values.get(i);
+                    if (old == TOMBSTONE) {
+                        t.values.set(i, value);
+                        size++;
+                        return null;
+                    }
+                    if (!onlyIfAbsent) {
+                        t.values.set(i, value);
+                    }
+                    return old;
+                }
+                if (k == 0) {
+                    break;
+                }
+                i = (i + 1) & t.mask;
+            }
+            // 空槽，装载率超过3/4时先重建
+            if ((used + 1) * 4L > (t.mask + 1) * 3L) {
+                rebuild();
+                return put(key, hash, value, onlyIfAbsent);
+            }
+            t.values.set(i, value);
+            t.keys.set(i, key);
+            used++;
+            size++;
+            return null;
+        }
+
+        synchronized Object remove(long key, long hash, Object expected) {
+            if (key == 0) {
+                Object old = zeroValue;
+                if (old == null || (expected != null && !expected.equals(old))) {
+                    return null;
+                }
+                zeroValue = null;
+                size--;
+                return old;
+            }
+            Table t = table;
+            int i = (int) hash & t.mask;
+            for (; ; ) {
+                long k = t.keys.get(i);
+                if (k == key) {
+                    Object old = t.values.get(i);
+                    if (old == TOMBSTONE || (expected != null && !expected.equals(old))) {
+                        return null;
+                    }
+                    t.values.set(i, TOMBSTONE);
+                    size--;
+                    return old;
+                }
+                if (k == 0) {
+                    return null;
+                }
+                i = (i + 1) & t.mask;
+            }
+        }
+
+        // 按有效项数重新分配，有效项不超过一半容量，顺便清掉墓碑
+        private void rebuild() {
+            Table old = table;
+            int live = size - (zeroValue == null ? 0 : 1);
+            int capacity = MIN_CAPACITY;
+            while (capacity < (live + 1) * 2) {
+                capacity <<= 1;
+            }
+            Table t = new Table(capacity);
+            for (int j = 0; j <= old.mask; j++) {
+                long k = old.keys.get(j);
+                Object v = old.values.get(j);
+                if (k == 0 || v == TOMBSTONE) {
+                    continue;
+                }
+                int i = (int) hash(k) & t.mask;
+                while (t.keys.get(i) != 0) {
+                    i = (i + 1) & t.mask;
+                }
+                t.values.lazySet(i, v);
+                t.keys.lazySet(i, k);
+            }
+            used = live;
+            // volatile写，之后的读线程看到完整的新表
+            table = t;
+        }
+    }
+}
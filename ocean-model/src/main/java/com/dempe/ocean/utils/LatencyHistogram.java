@@ -0,0 +1,138 @@
+package com.dempe.ocean.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 线程安全的延迟直方图，对数分桶(每个2的幂区间再线性切分32份)，相对误差约3%
+ * 记录值的单位由调用方决定(一般为微秒)，record无锁，适合在IO线程上高频调用
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 10:12
+ * To change this template use File | Settings | File Templates.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(value);
+        long max = maxValue.get();
+        while (value > max && !maxValue.compareAndSet(max, value)) {
+            max = maxValue.get();
+        }
+    }
+
+    public long count() {
+        return totalCount.get();
+    }
+
+    public long max() {
+        return maxValue.get();
+    }
+
+    public double mean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalValue.get() / count;
+    }
+
+    /**
+     * @param percentile 0~100
+     * @return 该分位所在桶的上界，不超过记录到的最大值
+     */
+    public long percentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * Math.min(100D, Math.max(0D, percentile)) / 100D);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+
+    /**
+     * 合并另一个直方图的数据，用于汇总多个统计周期
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        totalValue.addAndGet(other.totalValue.get());
+        long otherMax = other.maxValue.get();
+        long max = maxValue.get();
+        while (otherMax > max && !maxValue.compareAndSet(max, otherMax)) {
+            max = maxValue.get();
+        }
+    }
+
+    /**
+     * 取出当前数据并清零，返回的直方图包含清零前的全部记录
+     */
+    public LatencyHistogram getAndReset() {
+        LatencyHistogram snapshot = new LatencyHistogram();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long c = counts.getAndSet(i, 0);
+            if (c != 0) {
+                snapshot.counts.set(i, c);
+            }
+        }
+        snapshot.totalCount.set(totalCount.getAndSet(0));
+        snapshot.totalValue.set(totalValue.getAndSet(0));
+        snapshot.maxValue.set(maxValue.getAndSet(0));
+        return snapshot;
+    }
+
+    public String summary() {
+        return String.format("count=%d, mean=%.1f, p50=%d, p90=%d, p99=%d, p999=%d, max=%d",
+                count(), mean(), percentile(50), percentile(90), percentile(99), percentile(99.9), max());
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" + summary() + '}';
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int bucket = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        int offset = (int) (value >>> bucket) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + bucket * SUB_BUCKET_COUNT + offset;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int bucket = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        long offset = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        long highest = ((offset + SUB_BUCKET_COUNT + 1) << bucket) - 1;
+        return highest < 0 ? Long.MAX_VALUE : highest;
+    }
+}
@@ -0,0 +1,188 @@
+package com.dempe.ocean.utils;
+
+import java.util.Arrays;
+
+/**
+ * long集合，开放寻址(线性探测)，元素直接存在long数组里，没有装箱的Long和每个元素一个Node
+ * 删除时把后面同一探测链上的元素前移，不留墓碑；0值单独记录
+ * 非线程安全，并发访问时由调用方加锁
+ * User: Dempe
+ * Date: 2026/10/19
+ * Time: 05:10
+ * To change this template use File | Settings | File Templates.
+ */
+public class LongHashSet {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] elements;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    public LongHashSet(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        // 装载率不超过1/2
+        while (capacity < expectedSize * 2L) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        elements = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private int indexOf(long value) {
+        return (int) ConcurrentLongObjectMap.hash(value) & mask;
+    }
+
+    public boolean contains(long value) {
+        if (value == 0) {
+            return containsZero;
+        }
+        int i = indexOf(value);
+        for (; ; ) {
+            long e = elements[i];
+            if (e == value) {
+                return true;
+            }
+            if (e == 0) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * @return 原来不存在时返回true
+     */
+    public boolean add(long value) {
+        if (value == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int i = indexOf(value);
+        for (; ; ) {
+            long e = elements[i];
+            if (e == value) {
+                return false;
+            }
+            if (e == 0) {
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        elements[i] = value;
+        size++;
+        if (size * 2L > elements.length) {
+            rehash(elements.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * @return 原来存在时返回true
+     */
+    public boolean remove(long value) {
+        if (value == 0) {
+            if (!containsZero) {
+                return false;
+            }
+            containsZero = false;
+            size--;
+            return true;
+        }
+        int i = indexOf(value);
+        for (; ; ) {
+            long e = elements[i];
+            if (e == value) {
+                break;
+            }
+            if (e == 0) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        // 后移删除：把探测链上能放到空位的元素依次前移
+        int hole = i;
+        int j = i;
+        for (; ; ) {
+            j = (j + 1) & mask;
+            long e = elements[j];
+            if (e == 0) {
+                break;
+            }
+            int home = indexOf(e);
+            // home不在(hole, j]之间时可以移到hole
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                elements[hole] = e;
+                hole = j;
+            }
+        }
+        elements[hole] = 0;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return 所有元素，无序
+     */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int n = 0;
+        if (containsZero) {
+            result[n++] = 0;
+        }
+        for (long e : elements) {
+            if (e != 0) {
+                result[n++] = e;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return 所有元素，升序
+     */
+    public long[] toSortedArray() {
+        long[] result = toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = elements;
+        allocate(capacity);
+        for (long e : old) {
+            if (e != 0) {
+                int i = indexOf(e);
+                while (elements[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                elements[i] = e;
+            }
+        }
+    }
+}
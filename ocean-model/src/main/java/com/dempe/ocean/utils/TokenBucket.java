@@ -0,0 +1,41 @@
+package com.dempe.ocean.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶，按GCRA方式实现：只记录下一个令牌的理论可用时间，一次CAS完成取令牌
+ * 每秒补充rate个令牌，最多积累burst个，rate小于等于0表示不限流
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 18:02
+ * To change this template use File | Settings | File Templates.
+ */
+public class TokenBucket {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong nextFreeNanos = new AtomicLong(System.nanoTime());
+
+    public TokenBucket(double ratePerSecond, int burst) {
+        this.intervalNanos = ratePerSecond <= 0 ? 0 : Math.max(1L, (long) (1000000000D / ratePerSecond));
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+    }
+
+    public boolean tryAcquire() {
+        if (intervalNanos == 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        for (; ; ) {
+            long next = nextFreeNanos.get();
+            // 桶已经积满时从当前时间算起，空闲期间不会无限积累令牌
+            long newNext = (next - now < 0 ? now : next) + intervalNanos;
+            if (newNext - now > burstNanos) {
+                return false;
+            }
+            if (nextFreeNanos.compareAndSet(next, newNext)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.dempe.ocean.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * protobuf风格的变长整数编码，每字节7位有效数据，最高位表示后面是否还有字节
+ * 有符号数先做zigzag转换，小的负数同样只占1~2个字节
+ * User: Dempe
+ * Date: 2026/10/18
+ * Time: 14:05
+ * To change this template use File | Settings | File Templates.
+ */
+public final class Varints {
+
+    private Varints() {
+    }
+
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 按无符号数编码value需要的字节数，1~10
+     */
+    public static int sizeOf(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * 写入buf的pos位置，调用方保证空间足够
+     *
+     * @return 写入后的位置
+     */
+    public static int write(long value, byte[] buf, int pos) {
+        while ((value & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+
+    public static void write(long value, ByteBuffer buf) {
+        while ((value & ~0x7FL) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    public static long read(ByteBuffer buf) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    /**
+     * 编码long数组需要的字节数，格式见{@link #writeDeltas}
+     */
+    public static int sizeOfDeltas(long[] values) {
+        int size = sizeOf(values.length);
+        long prev = 0;
+        for (long value : values) {
+            size += sizeOf(zigZag(value - prev));
+            prev = value;
+        }
+        return size;
+    }
+
+    /**
+     * 长度 + 相邻元素差值的zigzag varint，升序的uid列表一般每个只占1~2个字节
+     * 无序数组同样可以正确编解码，只是压缩效果差一些
+     *
+     * @return 写入后的位置
+     */
+    public static int writeDeltas(long[] values, byte[] buf, int pos) {
+        pos = write(values.length, buf, pos);
+        long prev = 0;
+        for (long value : values) {
+            pos = write(zigZag(value - prev), buf, pos);
+            prev = value;
+        }
+        return pos;
+    }
+
+    public static long[] readDeltas(ByteBuffer buf) {
+        long length = read(buf);
+        if (length < 0 || length > buf.remaining()) {
+            // 每个元素至少占1个字节，长度超过剩余字节数说明数据有问题
+            throw new IllegalArgumentException("malformed long array, length " + length);
+        }
+        long[] values = new long[(int) length];
+        long prev = 0;
+        for (int i = 0; i < values.length; i++) {
+            prev += unZigZag(read(buf));
+            values[i] = prev;
+        }
+        return values;
+    }
+}
@@ -1,6 +1,8 @@
 package com.dempe.ocean.sdk;
 
 /**
+ * 服务端合并下发的批量消息(b|topic)由ChatSdk拆开，按原topic逐条回调
+ * 后来增加的回调都有空的默认实现，已有的实现类不用修改
  * Created with IntelliJ IDEA.
  * User: Dempe
  * Date: 2016/4/21
@@ -11,6 +13,28 @@ public interface Callback {
     // 问答消息的返回
     void onResponse(String topic, byte[] payload);
 
+    /**
+     * 问答消息的返回，带上请求的packet id，同一个topic上有多个请求时用来对应请求；默认转给onResponse(topic, payload)
+     *
+     * @param topic
+     * @param packetId 请求的mqtt消息id，qos0的请求为0
+     * @param payload
+     */
+    default void onResponse(String topic, int packetId, byte[] payload) {
+        onResponse(topic, payload);
+    }
+
+    /**
+     * 问答消息调用失败，默认忽略
+     *
+     * @param topic
+     * @param packetId 请求的mqtt消息id，qos0的请求为0
+     * @param code     见ExtendProtocol.RPC_*
+     * @param message
+     */
+    default void onResponseError(String topic, int packetId, int code, String message) {
+    }
+
     /**
      * 好友消息
      *
@@ -34,4 +58,13 @@ public interface Callback {
      * @param payload
      */
     void onSysMsg(String topic, byte[] payload);
+
+    /**
+     * 直播频道消息，默认忽略
+     *
+     * @param topic
+     * @param payload
+     */
+    default void onLiveMsg(String topic, byte[] payload) {
+    }
 }
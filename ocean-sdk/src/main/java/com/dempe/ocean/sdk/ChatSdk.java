@@ -1,12 +1,25 @@
 package com.dempe.ocean.sdk;
 
+import com.dempe.ocean.common.CompressType;
+import com.dempe.ocean.common.ExtendProtocol;
 import com.dempe.ocean.common.R;
 import com.dempe.ocean.common.TopicType;
+import com.dempe.ocean.db.model.im.InboxMessage;
+import com.dempe.ocean.utils.BatchPayload;
 import org.apache.commons.lang3.StringUtils;
 import org.fusesource.mqtt.client.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
 /**
  * Created with IntelliJ IDEA.
  * User: Dempe
@@ -18,11 +31,29 @@ public class ChatSdk {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(ChatSdk.class);
 
-    private FutureConnection connection;
+    private final static long TOKEN_EXPIRE_MARGIN_MS = 60000L;
+
+    private final static String BATCH_PREFIX = TopicType.BATCH.getType() + R.SPLIT;
+
+    private final static String COMPRESSED_PREFIX = TopicType.COMPRESSED.getType() + R.SPLIT;
+
+    // sync响应是qos0，超过这个时间没有收到响应时允许重新发起sync
+    private final static long SYNC_TIMEOUT_MS = 10000L;
+
+    private final static int SYNC_LIMIT = 100;
+
+    // 接收线程每次等待消息的最长时间，超时后检查连接是否已经更换
+    private final static long RECEIVE_POLL_MS = 1000L;
+
+    private volatile FutureConnection connection;
 
     private String uid;
     private String pwd;
     private String clientID;// 由客户端维护唯一性
+    private volatile String token;// connector下发的会话token，重连时代替密码
+    private volatile long lastSeq;// 已经同步到的收件箱seq，由调用方持久化，重启后通过setLastSeq恢复
+    private volatile long syncStartTime;// 正在进行的sync的发起时间，0表示没有
+    private volatile int compressType;// 服务端接受的下行压缩算法，sdk只支持deflate
 
     private MQTT mqtt;
 
@@ -47,24 +78,52 @@ public class ChatSdk {
         d_thread = new Thread(new Runnable() {
             @Override
             public void run() {
+                // 重连提示会换成新的连接，每次等待有超时，发现连接换了就在新连接上接收
+                FutureConnection current = null;
+                Future<Message> receive = null;
                 while (true) {
                     try {
-                        Future<Message> receive = connection.receive();
-                        Message message = receive.await();
+                        if (current != connection) {
+                            current = connection;
+                            receive = current.receive();
+                        } else if (receive == null) {
+                            receive = current.receive();
+                        }
+                        Message message;
+                        try {
+                            message = receive.await(RECEIVE_POLL_MS, TimeUnit.MILLISECONDS);
+                        } catch (TimeoutException e) {
+                            continue;
+                        }
+                        receive = null;
                         String topic = message.getTopic();
                         byte[] payload = message.getPayload();
-                        if (StringUtils.isBlank(topic)) {
-                            // 规定如果是null topic，则为内置协议
-                            callback.onSysMsg(topic, payload);
-                        } else if (StringUtils.startsWith(topic, TopicType.FRIEND.getType())) {
-                            // 发给朋友的消息
-                            callback.onFriendMsg(topic, payload);
-                        } else if (StringUtils.startsWith(topic, TopicType.GROUP.getType())) {
-                            // 发给群组的消息
-                            callback.onGroupMsg(topic, payload);
-                        } else if (StringUtils.startsWith(topic, TopicType.MYSELF.getType())) {
-                            // 发给自己的，属于传统的问答模式的消息，这类消息需要直接透传到逻辑层，交由逻辑层处理
-                            callback.onResponse(topic, payload);
+                        if (StringUtils.startsWith(topic, COMPRESSED_PREFIX)) {
+                            // 压缩过的下行消息，解压后按原topic处理
+                            int split = topic.indexOf(R.SPLIT, COMPRESSED_PREFIX.length());
+                            payload = decompress(Integer.parseInt(topic.substring(COMPRESSED_PREFIX.length(), split)), payload);
+                            topic = topic.substring(split + 1);
+                        }
+                        if (R.TOKEN_TOPIC.equals(topic)) {
+                            token = new String(payload, "UTF-8");
+                        } else if (R.COMPRESS_TOPIC.equals(topic)) {
+                            compressType = ExtendProtocol.decodeCompress(ByteBuffer.wrap(payload));
+                        } else if (R.REDIRECT_TOPIC.equals(topic)) {
+                            onRedirect(ExtendProtocol.decodeRedirect(ByteBuffer.wrap(payload)));
+                        } else if (R.SYNC_PUSH_TOPIC.equals(topic)) {
+                            onPush(ExtendProtocol.decodeSrvPush(ByteBuffer.wrap(payload)));
+                        } else if (R.SYNC_TOPIC.equals(topic)) {
+                            onSync(ExtendProtocol.decodeSrvSynRsp(ByteBuffer.wrap(payload)));
+                        } else if (StringUtils.startsWith(topic, BATCH_PREFIX)) {
+                            // 服务端合并下发的多条消息，拆开后按原topic逐条回调
+                            String originTopic = topic.substring(BATCH_PREFIX.length());
+                            for (ByteBuffer part : BatchPayload.decode(ByteBuffer.wrap(payload))) {
+                                byte[] bytes = new byte[part.remaining()];
+                                part.get(bytes);
+                                dispatch(originTopic, bytes);
+                            }
+                        } else {
+                            dispatch(topic, payload);
                         }
                         message.ack();
                     } catch (Exception e) {
@@ -80,6 +139,162 @@ public class ChatSdk {
     }
 
 
+    /**
+     * connector即将下线，delay之后先连上新地址(没有时为原地址)再断开旧连接；
+     * 旧连接正常DISCONNECT，服务端不会发遗嘱
+     */
+    private void onRedirect(final ExtendProtocol.Redirect redirect) {
+        LOGGER.info("connector going away, reconnect to {} in {} ms",
+                redirect.getAddress() == null ? "same address" : redirect.getAddress(), redirect.getDelayMillis());
+        Thread reconnect = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(redirect.getDelayMillis());
+                    if (redirect.getAddress() != null) {
+                        int split = redirect.getAddress().lastIndexOf(':');
+                        mqtt.setHost(redirect.getAddress().substring(0, split),
+                                Integer.parseInt(redirect.getAddress().substring(split + 1)));
+                    }
+                    FutureConnection old = connection;
+                    connect();
+                    old.disconnect();
+                } catch (Exception e) {
+                    LOGGER.error("reconnect on redirect error", e);
+                }
+            }
+        }, "RedirectThread");
+        reconnect.setDaemon(true);
+        reconnect.start();
+    }
+
+    /**
+     * 服务端通知有新消息，比本地新并且没有进行中的sync时发起sync
+     */
+    private void onPush(long latestSeq) {
+        if (latestSeq <= lastSeq) {
+            return;
+        }
+        if (syncStartTime > 0 && System.currentTimeMillis() - syncStartTime < SYNC_TIMEOUT_MS) {
+            return;
+        }
+        requestSync();
+    }
+
+    /**
+     * 按seq顺序回调，确认后如果服务端还有更新的消息继续sync
+     */
+    private void onSync(ExtendProtocol.SynRsp rsp) {
+        for (InboxMessage msg : rsp.getMessages()) {
+            if (msg.getSeq() > lastSeq) {
+                dispatch(msg.getTopic(), msg.getPayload());
+                lastSeq = msg.getSeq();
+            }
+        }
+        if (rsp.getMessages().isEmpty() && rsp.getLatestSeq() > lastSeq) {
+            // 中间的消息在服务端已经过期，直接跳到最新
+            lastSeq = rsp.getLatestSeq();
+        }
+        connection.publish(R.SYNC_ACK_TOPIC, toArray(ExtendProtocol.encodeSeqRsp(lastSeq)), QoS.AT_MOST_ONCE, false);
+        if (rsp.getLatestSeq() > lastSeq) {
+            requestSync();
+        } else {
+            syncStartTime = 0;
+        }
+    }
+
+    private void requestSync() {
+        syncStartTime = System.currentTimeMillis();
+        connection.publish(R.SYNC_TOPIC, toArray(ExtendProtocol.encodeCliSynReq(lastSeq, SYNC_LIMIT)), QoS.AT_MOST_ONCE, false);
+    }
+
+    private static byte[] compress(int compressType, byte[] payload) {
+        if (compressType == CompressType.NONE.getCode()) {
+            return payload;
+        }
+        if (compressType != CompressType.DEFLATE.getCode()) {
+            throw new IllegalArgumentException("unsupported compress type " + compressType);
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 2 + 16);
+            byte[] chunk = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(int compressType, byte[] payload) throws DataFormatException {
+        if (compressType == CompressType.NONE.getCode()) {
+            return payload;
+        }
+        if (compressType != CompressType.DEFLATE.getCode()) {
+            throw new DataFormatException("unsupported compress type " + compressType);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length * 4);
+            byte[] chunk = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("truncated deflate payload");
+                }
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        return bytes;
+    }
+
+    private void dispatch(String topic, byte[] payload) {
+        if (StringUtils.isBlank(topic)) {
+            // 规定如果是null topic，则为内置协议
+            callback.onSysMsg(topic, payload);
+        } else if (StringUtils.startsWith(topic, TopicType.FRIEND.getType())) {
+            // 发给朋友的消息
+            callback.onFriendMsg(topic, payload);
+        } else if (StringUtils.startsWith(topic, TopicType.GROUP.getType())) {
+            // 发给群组的消息
+            callback.onGroupMsg(topic, payload);
+        } else if (StringUtils.startsWith(topic, TopicType.MYSELF.getType())) {
+            // 问答消息的响应，拆出packet id和状态码
+            onResponse(topic, ExtendProtocol.decodeRpcRsp(ByteBuffer.wrap(payload)));
+        } else if (StringUtils.startsWith(topic, TopicType.LIVE.getType())) {
+            callback.onLiveMsg(topic, payload);
+        }
+    }
+
+    private void onResponse(String topic, ExtendProtocol.RpcRsp rsp) {
+        if (rsp.getCode() == ExtendProtocol.RPC_OK) {
+            byte[] body;
+            try {
+                body = decompress(rsp.getCompressType(), rsp.getBody());
+            } catch (DataFormatException e) {
+                callback.onResponseError(topic, rsp.getPacketId(), ExtendProtocol.RPC_ERROR, e.getMessage());
+                return;
+            }
+            callback.onResponse(topic, rsp.getPacketId(), body);
+        } else {
+            callback.onResponseError(topic, rsp.getPacketId(), rsp.getCode(),
+                    new String(rsp.getBody(), Charset.forName("UTF-8")));
+        }
+    }
+
     public void init(String host, int port) throws Exception {
         mqtt = new MQTT();
         mqtt.setHost(host, port);
@@ -88,7 +303,15 @@ public class ChatSdk {
         mqtt.setClientId(uid);
     }
 
+    /**
+     * 有未过期的会话token时用token登录(username加R.TOKEN_USER_PREFIX前缀)，connector本地校验即可，不需要访问logic层；
+     * 如果token登录被拒绝(例如connector更换了密钥)，调用clearToken()后重新connect，使用原密码登录
+     */
     public FutureConnection connect() throws Exception {
+        boolean useToken = tokenUsable();
+        mqtt.setUserName(useToken ? R.TOKEN_USER_PREFIX + uid : uid);
+        mqtt.setPassword(useToken ? token : pwd);
+        syncStartTime = 0;
         this.connection = mqtt.futureConnection();
         Future<Void> connect = connection.connect();
         return connection;
@@ -130,17 +353,17 @@ public class ChatSdk {
     }
 
     /**
-     * 发送问答类请求
+     * 发送问答类请求，响应通过onResponse/onResponseError回调
      *
-     * @param serviceName
+     * @param serviceName  logic层的服务接口名，例如UserService
      * @param methodName
      * @param compressType
-     * @param payload
+     * @param payload      参数的json数组
      * @return
      */
     public Future<Void> send(String serviceName, String methodName, int compressType, final byte[] payload) {
         String topic = TopicType.MYSELF.getType() + R.SPLIT + serviceName + R.SPLIT + methodName + R.SPLIT + compressType;
-        return connection.publish(topic, payload, QoS.AT_LEAST_ONCE, false);
+        return connection.publish(topic, compress(compressType, payload), QoS.AT_LEAST_ONCE, false);
     }
 
     /**
@@ -157,6 +380,72 @@ public class ChatSdk {
     }
 
 
+    /**
+     * 请求服务端对超过阈值的下行消息做deflate压缩，服务端的应答更新到getCompressType()
+     */
+    public Future<Void> enableCompress() {
+        return connection.publish(R.COMPRESS_TOPIC, toArray(ExtendProtocol.encodeCompress(CompressType.DEFLATE.getCode())),
+                QoS.AT_MOST_ONCE, false);
+    }
+
+    public int getCompressType() {
+        return compressType;
+    }
+
+    /**
+     * 进入直播频道，之后频道内的消息通过onLiveMsg回调
+     *
+     * @param room topSid或者topSid|subSid
+     */
+    public Future<byte[]> joinLive(String room) {
+        String topic = TopicType.LIVE.getType() + R.SPLIT + room;
+        return connection.subscribe(new Topic[]{new Topic(topic, QoS.AT_MOST_ONCE)});
+    }
+
+    public Future<Void> leaveLive(String room) {
+        return connection.unsubscribe(new String[]{TopicType.LIVE.getType() + R.SPLIT + room});
+    }
+
+    /**
+     * 在直播频道内发言(弹幕)，服务端高负载时可能丢弃，不保证送达
+     */
+    public Future<Void> publishToLive(String room, final byte[] payload) {
+        String topic = TopicType.LIVE.getType() + R.SPLIT + room;
+        return connection.publish(topic, payload, QoS.AT_MOST_ONCE, false);
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    public void setLastSeq(long lastSeq) {
+        this.lastSeq = lastSeq;
+    }
+
+    public void clearToken() {
+        token = null;
+    }
+
+    /**
+     * token格式为 t1.过期时间(毫秒).签名，离过期不足1分钟时不再使用
+     */
+    private boolean tokenUsable() {
+        String current = token;
+        if (current == null || !current.startsWith(R.TOKEN_PREFIX)) {
+            return false;
+        }
+        int dot = current.indexOf('.', R.TOKEN_PREFIX.length());
+        if (dot < 0) {
+            return false;
+        }
+        try {
+            long expireTime = Long.parseLong(current.substring(R.TOKEN_PREFIX.length(), dot));
+            return expireTime - System.currentTimeMillis() > TOKEN_EXPIRE_MARGIN_MS;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
     public FutureConnection getConnection() {
         return connection;
     }
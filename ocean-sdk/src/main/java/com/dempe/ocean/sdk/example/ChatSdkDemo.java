@@ -30,6 +30,16 @@ public class ChatSdkDemo {
                 LOGGER.info("onResponse topci:{},payload:{}", topic, payload);
             }
 
+            @Override
+            public void onResponse(String topic, int packetId, byte[] payload) {
+                LOGGER.info("onResponse topci:{},packetId:{},payload:{}", topic, packetId, payload);
+            }
+
+            @Override
+            public void onResponseError(String topic, int packetId, int code, String message) {
+                LOGGER.info("onResponseError topci:{},packetId:{},code:{},message:{}", topic, packetId, code, message);
+            }
+
             @Override
             public void onFriendMsg(String topic, byte[] payload) {
                 LOGGER.info("onFriendMsg topci:{},payload:{}", topic, payload);
@@ -44,6 +54,11 @@ public class ChatSdkDemo {
             public void onSysMsg(String topic, byte[] payload) {
                 LOGGER.info("onSysMsg topci:{},payload:{}", topic, payload);
             }
+
+            @Override
+            public void onLiveMsg(String topic, byte[] payload) {
+                LOGGER.info("onLiveMsg topci:{},payload:{}", topic, payload);
+            }
         });
         sdk.connect();
         sdk.start();